@@ -0,0 +1,104 @@
+/******************************************************************************
+ * RPNCalc
+ * 
+ * RPNCalc is is an easy to use console based RPN calculator
+ * 
+ *  Copyright (c) 2013-2021 Michael Fross
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *           
+ ******************************************************************************/
+package org.fross.rpncalc;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * BenchmarkBase: Common setup shared by the benchmarks. The engine's stack is filled to the
+ * requested depth, each measurement iteration gets a fresh undo history so it doesn't keep growing
+ * and anything the commands print is thrown away.
+ * 
+ * Run every benchmark with: mvn -P benchmark verify
+ * 
+ * @author michael.d.fross
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Djava.util.prefs.userRoot=target/jmh/prefs", "-Duser.home=target/jmh/home" })
+public abstract class BenchmarkBase {
+	@Param({ "10", "1000", "100000", "1000000" })
+	public int depth;
+
+	protected RpnEngine engine;
+	private PrintStream originalOut;
+
+	/**
+	 * Fill(): Return a stack of the provided depth holding a spread of positive and negative values
+	 * 
+	 * @param depth
+	 * @return
+	 */
+	public static DoubleStack Fill(int depth) {
+		double[] values = new double[depth];
+		for (int i = 0; i < depth; i++) {
+			values[i] = (i % 997) * 1.25 - 300.5;
+		}
+		return new DoubleStack(values);
+	}
+
+	@Setup(Level.Trial)
+	public void SetupTrial() {
+		originalOut = System.out;
+		System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+		engine = new RpnEngine(RpnEngine.SILENT);
+		engine.calcStack = Fill(depth);
+		Main.engine = engine;
+	}
+
+	@Setup(Level.Iteration)
+	public void SetupIteration() {
+		engine.undoStack = new UndoHistory();
+	}
+
+	@TearDown(Level.Iteration)
+	public void TearDownIteration() {
+		engine.undoStack.Close();
+	}
+
+	@TearDown(Level.Trial)
+	public void TearDownTrial() {
+		System.setOut(originalOut);
+	}
+
+}
@@ -0,0 +1,59 @@
+/******************************************************************************
+ * RPNCalc
+ * 
+ * RPNCalc is is an easy to use console based RPN calculator
+ * 
+ *  Copyright (c) 2013-2021 Michael Fross
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *           
+ ******************************************************************************/
+package org.fross.rpncalc;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * DispatchBenchmark: RpnEngine.Execute() over a mix of command lines: numbers, operators, number
+ * operator pairs, fractions and named commands. The mix leaves the stack depth unchanged. The same
+ * work is also run as a single program line, which is parsed once and cached.
+ * 
+ * @author michael.d.fross
+ *
+ */
+@State(Scope.Thread)
+public class DispatchBenchmark extends BenchmarkBase {
+	private static final String[] LINES = { "12.5", "7", "+", "3*", "1 3/4", "sqrt", "-2.25", "abs", "s", "d", "d", "d" };
+	private static final String PROGRAM = String.join(" ", LINES);
+	private int next = 0;
+
+	@Benchmark
+	public boolean processCommand() {
+		String line = LINES[next];
+		next = (next + 1) % LINES.length;
+		return engine.Execute(line);
+	}
+
+	@Benchmark
+	public boolean programLine() {
+		return engine.Execute(PROGRAM);
+	}
+
+}
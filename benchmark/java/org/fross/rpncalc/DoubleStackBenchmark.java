@@ -0,0 +1,109 @@
+/******************************************************************************
+ * RPNCalc
+ * 
+ * RPNCalc is is an easy to use console based RPN calculator
+ * 
+ *  Copyright (c) 2013-2021 Michael Fross
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *           
+ ******************************************************************************/
+package org.fross.rpncalc;
+
+import java.util.Stack;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * DoubleStackBenchmark: DoubleStack compared with the java.util.Stack<Double> it replaced, for a
+ * push/pop pair, a walk over every element and an undo snapshot.
+ * 
+ * @author michael.d.fross
+ *
+ */
+@State(Scope.Thread)
+public class DoubleStackBenchmark extends BenchmarkBase {
+	private DoubleStack doubleStack;
+	private Stack<Double> boxedStack;
+
+	@Setup(Level.Trial)
+	public void SetupStacks() {
+		doubleStack = Fill(depth);
+		boxedStack = new Stack<>();
+		for (int i = 0; i < depth; i++) {
+			boxedStack.push(doubleStack.get(i));
+		}
+	}
+
+	@Benchmark
+	public double pushPopDoubleStack() {
+		doubleStack.push(1.5);
+		return doubleStack.pop();
+	}
+
+	@Benchmark
+	public double pushPopBoxedStack() {
+		boxedStack.push(1.5);
+		return boxedStack.pop();
+	}
+
+	@Benchmark
+	public double sumDoubleStack() {
+		double total = 0.0;
+		for (int i = 0; i < doubleStack.size(); i++) {
+			total += doubleStack.get(i);
+		}
+		return total;
+	}
+
+	@Benchmark
+	public double sumBoxedStack() {
+		double total = 0.0;
+		for (int i = 0; i < boxedStack.size(); i++) {
+			total += boxedStack.get(i);
+		}
+		return total;
+	}
+
+	/**
+	 * Snapshot the stack and change line1, which is what an undo save costs
+	 */
+	@Benchmark
+	public int snapshotDoubleStack() {
+		DoubleStack snap = doubleStack.snapshot();
+		doubleStack.set(depth - 1, 2.5);
+		return snap.size();
+	}
+
+	/**
+	 * Clone the stack and change line1, which is what an undo save used to cost
+	 */
+	@Benchmark
+	@SuppressWarnings("unchecked")
+	public int cloneBoxedStack() {
+		Stack<Double> copy = (Stack<Double>) boxedStack.clone();
+		boxedStack.set(depth - 1, 2.5);
+		return copy.size();
+	}
+
+}
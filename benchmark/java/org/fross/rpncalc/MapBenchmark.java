@@ -0,0 +1,94 @@
+/******************************************************************************
+ * RPNCalc
+ * 
+ * RPNCalc is is an easy to use console based RPN calculator
+ * 
+ *  Copyright (c) 2013-2021 Michael Fross
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *           
+ ******************************************************************************/
+package org.fross.rpncalc;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * MapBenchmark: Applying one operation to the whole stack with map, including saving it to the undo
+ * history, compared with changing every element one at a time. The operations are their own inverse
+ * or leave the values bounded so the stack doesn't drift between invocations.
+ * 
+ * @author michael.d.fross
+ *
+ */
+@State(Scope.Thread)
+public class MapBenchmark extends BenchmarkBase {
+
+	/**
+	 * Scale the stack by -1, a kernel the JIT can vectorize
+	 */
+	@Benchmark
+	public double mapScale() {
+		StackOps.cmdMap(engine, "* -1");
+		return engine.calcStack.peek();
+	}
+
+	/**
+	 * Take the absolute value and then the square root of every element
+	 */
+	@Benchmark
+	public double mapSqrt() {
+		StackOps.cmdMap(engine, "abs");
+		StackOps.cmdMap(engine, "sqrt");
+		return engine.calcStack.peek();
+	}
+
+	/**
+	 * Take the sine of every element. Each call is a library call so this one isn't vectorized.
+	 */
+	@Benchmark
+	public double mapSin() {
+		StackOps.cmdMap(engine, "sin rad");
+		return engine.calcStack.peek();
+	}
+
+	/**
+	 * Add to the top 10 elements only
+	 */
+	@Benchmark
+	public double mapTop10() {
+		StackOps.cmdMap(engine, "+ 1 " + java.lang.Math.min(10, depth));
+		return engine.calcStack.peek();
+	}
+
+	/**
+	 * Scale the stack by -1 one element at a time, the way it was done before map
+	 */
+	@Benchmark
+	public double setEachElement() {
+		DoubleStack stk = engine.calcStack;
+		engine.undoStack.push(stk);
+		for (int i = 0; i < stk.size(); i++) {
+			stk.set(i, stk.get(i) * -1);
+		}
+		return stk.peek();
+	}
+
+}
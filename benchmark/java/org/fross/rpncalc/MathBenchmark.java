@@ -0,0 +1,56 @@
+/******************************************************************************
+ * RPNCalc
+ * 
+ * RPNCalc is is an easy to use console based RPN calculator
+ * 
+ *  Copyright (c) 2013-2021 Michael Fross
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *           
+ ******************************************************************************/
+package org.fross.rpncalc;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * MathBenchmark: Math.Parse() for each of the basic operators. A value is pushed before each
+ * operation and the result is put back afterwards so the depth and the values stay the same.
+ * 
+ * @author michael.d.fross
+ *
+ */
+@State(Scope.Thread)
+public class MathBenchmark extends BenchmarkBase {
+	@Param({ "+", "-", "*", "/", "^" })
+	public String op;
+
+	@Benchmark
+	public double parse() {
+		DoubleStack stk = engine.calcStack;
+		double top = stk.peek();
+		stk.push(2.0);
+		double result = Math.Parse(op, stk).peek();
+		stk.set(stk.size() - 1, top);
+		return result;
+	}
+
+}
@@ -0,0 +1,115 @@
+/******************************************************************************
+ * RPNCalc
+ * 
+ * RPNCalc is is an easy to use console based RPN calculator
+ * 
+ *  Copyright (c) 2013-2021 Michael Fross
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *           
+ ******************************************************************************/
+package org.fross.rpncalc;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * PrecisionBenchmark: The adaptive precision mode against plain doubles and against doing everything
+ * in BigDecimal. Each operator is run with an operand that keeps the double fast path (2) and one
+ * that needs BigDecimal (0.1). The top of the stack is put back afterwards so the depth and the
+ * values stay the same. The sums add up the whole stack as 'aa keep' does.
+ * 
+ * @author michael.d.fross
+ *
+ */
+@State(Scope.Thread)
+public class PrecisionBenchmark extends BenchmarkBase {
+	private static final MathContext MC = AdaptiveMath.QueryMathContext(AdaptiveMath.DEFAULT_DIGITS);
+
+	@Param({ "+", "*", "/" })
+	public String op;
+
+	@Param({ "2", "0.1" })
+	public double operand;
+
+	@Benchmark
+	public double operatorDouble() {
+		return Operator(null);
+	}
+
+	@Benchmark
+	public double operatorAdaptive() {
+		return Operator(MC);
+	}
+
+	@Benchmark
+	public BigDecimal operatorBigDecimal() {
+		BigDecimal a = BigDecimal.valueOf(engine.calcStack.peek());
+		BigDecimal b = BigDecimal.valueOf(operand);
+		switch (op) {
+		case "+":
+			return a.add(b, MC);
+		case "*":
+			return a.multiply(b, MC);
+		default:
+			return a.divide(b, MC);
+		}
+	}
+
+	@Benchmark
+	public double sumDouble() {
+		return engine.calcStack.QuerySum();
+	}
+
+	@Benchmark
+	public double sumAdaptive() {
+		return AdaptiveMath.Sum(engine.calcStack, MC);
+	}
+
+	@Benchmark
+	public BigDecimal sumBigDecimal() {
+		DoubleStack stk = engine.calcStack;
+		BigDecimal sum = BigDecimal.ZERO;
+		for (int i = 0; i < stk.size(); i++) {
+			sum = sum.add(BigDecimal.valueOf(stk.get(i)));
+		}
+		return sum.round(MC);
+	}
+
+	/**
+	 * Operator(): Run the operator on the top of the stack and the operand with the provided precision
+	 * 
+	 * @param mc
+	 * @return
+	 */
+	private double Operator(MathContext mc) {
+		DoubleStack stk = engine.calcStack;
+		double top = stk.peek();
+		stk.push(operand);
+		double result = Math.Parse(op, stk, mc).peek();
+		stk.set(stk.size() - 1, top);
+		return result;
+	}
+
+}
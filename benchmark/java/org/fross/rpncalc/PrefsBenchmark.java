@@ -0,0 +1,68 @@
+/******************************************************************************
+ * RPNCalc
+ * 
+ * RPNCalc is is an easy to use console based RPN calculator
+ * 
+ *  Copyright (c) 2013-2021 Michael Fross
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *           
+ ******************************************************************************/
+package org.fross.rpncalc;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * PrefsBenchmark: Saving and restoring a stack through the preferences. The preferences and the stack
+ * files are written under target/jmh so the benchmark doesn't touch the real saved stacks.
+ * 
+ * @author michael.d.fross
+ *
+ */
+@State(Scope.Thread)
+public class PrefsBenchmark extends BenchmarkBase {
+	private static final String STACK_NAME = "jmh-benchmark";
+
+	/**
+	 * Save the stack
+	 */
+	@Benchmark
+	public int saveStack() {
+		Prefs.SaveStack(engine, engine.calcStack, STACK_NAME, "1");
+		return engine.calcStack.size();
+	}
+
+	/**
+	 * Restore a stack saved at the start of the trial
+	 */
+	@Benchmark
+	public int restoreStack() {
+		return Prefs.RestoreStack(engine, STACK_NAME, "2").size();
+	}
+
+	@Setup(Level.Trial)
+	public void SetupSavedStack() {
+		Prefs.SaveStack(engine, Fill(depth), STACK_NAME, "2");
+	}
+
+}
@@ -0,0 +1,65 @@
+/******************************************************************************
+ * RPNCalc
+ * 
+ * RPNCalc is is an easy to use console based RPN calculator
+ * 
+ *  Copyright (c) 2013-2021 Michael Fross
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *           
+ ******************************************************************************/
+package org.fross.rpncalc;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * RenderBenchmark: Drawing the status line and the stack. A full redraw formats every element. An
+ * incremental redraw after one element was pushed only formats that element, but still composes
+ * every row. Either way the frame is written all at once.
+ * 
+ * @author michael.d.fross
+ *
+ */
+@State(Scope.Thread)
+public class RenderBenchmark extends BenchmarkBase {
+
+	/**
+	 * Draw the stack from an empty render cache
+	 */
+	@Benchmark
+	public int fullRender() {
+		Main.renderCache = new RenderCache();
+		Main.DisplayFrame();
+		return Main.frame.length();
+	}
+
+	/**
+	 * Replace line1 and redraw the stack
+	 */
+	@Benchmark
+	public int incrementalRender() {
+		DoubleStack stk = engine.calcStack;
+		stk.set(stk.size() - 1, stk.peek() + 1.0);
+		Main.DisplayFrame();
+		return Main.frame.length();
+	}
+
+}
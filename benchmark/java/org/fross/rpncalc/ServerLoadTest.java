@@ -0,0 +1,183 @@
+/******************************************************************************
+ * RPNCalc
+ * 
+ * RPNCalc is is an easy to use console based RPN calculator
+ * 
+ *  Copyright (c) 2013-2021 Michael Fross
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *           
+ ******************************************************************************/
+package org.fross.rpncalc;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ServerLoadTest: Load test client for the server mode. It opens many sessions at once and has a
+ * pool of threads run a short calculation on them round robin, timing every request from sending
+ * the line to reading the status line. The latency percentiles and throughput are displayed at the
+ * end.
+ * 
+ * Start a server with: java -jar rpncalc.jar -s 7707
+ * 
+ * Then run: mvn -P benchmark test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.fross.rpncalc.ServerLoadTest
+ * -Dexec.args="port sessions requests threads"
+ * 
+ * @author michael.d.fross
+ *
+ */
+public class ServerLoadTest {
+	// Each session runs this over and over. It leaves the stack empty so the sessions don't grow.
+	private static final String[] SCRIPT = { "3", "4", "+", "2", "*", "sqrt", "print", "d" };
+
+	private static final AtomicLong errors = new AtomicLong();
+
+	/**
+	 * Connection: One session and where it is in the script
+	 */
+	private static class Connection {
+		final Socket socket;
+		final OutputStream out;
+		final BufferedReader in;
+		int step = 0;
+
+		Connection(int port) throws IOException {
+			socket = new Socket("127.0.0.1", port);
+			socket.setTcpNoDelay(true);
+			out = socket.getOutputStream();
+			in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+		}
+
+		/**
+		 * Request(): Send the next line of the script and read up to its status line. Returns the
+		 * nanoseconds it took.
+		 */
+		long Request() throws IOException {
+			byte[] line = (SCRIPT[step] + "\n").getBytes(StandardCharsets.UTF_8);
+			step = (step + 1) % SCRIPT.length;
+
+			long start = System.nanoTime();
+			out.write(line);
+			out.flush();
+
+			String reply;
+			while ((reply = in.readLine()) != null) {
+				if (reply.startsWith("ok")) {
+					break;
+				}
+				if (reply.startsWith("err") || reply.startsWith("bye")) {
+					errors.incrementAndGet();
+					break;
+				}
+			}
+			if (reply == null) {
+				throw new IOException("The server closed the connection");
+			}
+			return System.nanoTime() - start;
+		}
+	}
+
+	/**
+	 * main(): Run the load test. Arguments are the port, the number of sessions, the requests sent on
+	 * each session and the number of client threads.
+	 * 
+	 * @param args
+	 * @throws Exception
+	 */
+	public static void main(String[] args) throws Exception {
+		int port = (args.length > 0) ? Integer.parseInt(args[0]) : 7707;
+		int sessions = (args.length > 1) ? Integer.parseInt(args[1]) : 2000;
+		int requests = (args.length > 2) ? Integer.parseInt(args[2]) : 200;
+		int threads = java.lang.Math.min(sessions, (args.length > 3) ? Integer.parseInt(args[3]) : 32);
+
+		// Open every session before any requests are sent so they are all connected at once
+		long connectStart = System.nanoTime();
+		Connection[] connections = new Connection[sessions];
+		for (int i = 0; i < sessions; i++) {
+			connections[i] = new Connection(port);
+		}
+		System.out.println("Opened " + sessions + " sessions in " + (System.nanoTime() - connectStart) / 1000000 + "ms");
+
+		// Each thread owns every threads'th session and cycles through them
+		long[][] latencies = new long[threads][];
+		ArrayList<Thread> workers = new ArrayList<Thread>();
+		for (int t = 0; t < threads; t++) {
+			final int first = t;
+			workers.add(new Thread(() -> {
+				int owned = (sessions - first + threads - 1) / threads;
+				long[] times = new long[owned * requests];
+				int n = 0;
+				try {
+					for (int r = 0; r < requests; r++) {
+						for (int i = first; i < sessions; i += threads) {
+							times[n++] = connections[i].Request();
+						}
+					}
+				} catch (IOException ex) {
+					System.err.println("Session failed: " + ex.getMessage());
+				}
+				latencies[first] = Arrays.copyOf(times, n);
+			}));
+		}
+
+		long start = System.nanoTime();
+		for (Thread worker : workers) {
+			worker.start();
+		}
+		for (Thread worker : workers) {
+			worker.join();
+		}
+		long elapsed = System.nanoTime() - start;
+
+		for (Connection c : connections) {
+			c.socket.close();
+		}
+
+		// Combine the latencies and display the results
+		long[] all = Arrays.stream(latencies).flatMapToLong(Arrays::stream).sorted().toArray();
+		System.out.println("Requests:   " + all.length + " on " + threads + " threads in " + elapsed / 1000000 + "ms");
+		System.out.println("Throughput: " + (long) (all.length / (elapsed / 1e9)) + " requests/s");
+		System.out.println("Errors:     " + errors.get());
+		if (all.length > 0) {
+			System.out.printf("Latency:    p50 %.1fus  p90 %.1fus  p99 %.1fus  p99.9 %.1fus  max %.1fus%n", Percentile(all, 50), Percentile(all, 90),
+					Percentile(all, 99), Percentile(all, 99.9), all[all.length - 1] / 1000.0);
+		}
+	}
+
+	/**
+	 * Percentile(): Return the provided percentile of the sorted nanosecond times in microseconds
+	 * 
+	 * @param sorted
+	 * @param p
+	 * @return
+	 */
+	private static double Percentile(long[] sorted, double p) {
+		int index = (int) java.lang.Math.ceil(p / 100 * sorted.length) - 1;
+		return sorted[java.lang.Math.max(0, java.lang.Math.min(sorted.length - 1, index))] / 1000.0;
+	}
+
+}
@@ -0,0 +1,102 @@
+/******************************************************************************
+ * RPNCalc
+ * 
+ * RPNCalc is is an easy to use console based RPN calculator
+ * 
+ *  Copyright (c) 2013-2021 Michael Fross
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *           
+ ******************************************************************************/
+package org.fross.rpncalc;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * StackOpsBenchmark: The stack manipulation and reduction commands. Each benchmark leaves the stack
+ * at the same depth it started at.
+ * 
+ * @author michael.d.fross
+ *
+ */
+@State(Scope.Thread)
+public class StackOpsBenchmark extends BenchmarkBase {
+
+	/**
+	 * Delete the element in the middle of the stack and push a replacement
+	 */
+	@Benchmark
+	public int deleteMiddle() {
+		DoubleStack stk = engine.calcStack;
+		StackOps.StackDeleteItem(stk, stk.size() / 2);
+		stk.push(42.5);
+		return stk.size();
+	}
+
+	/**
+	 * Delete line1 and push a replacement
+	 */
+	@Benchmark
+	public int deleteTop() {
+		DoubleStack stk = engine.calcStack;
+		StackOps.StackDeleteItem(stk, 0);
+		stk.push(42.5);
+		return stk.size();
+	}
+
+	/**
+	 * Swap line1 with the bottom of the stack
+	 */
+	@Benchmark
+	public double swapTopBottom() {
+		DoubleStack stk = engine.calcStack;
+		StackOps.StackSwapItems(stk, 0, stk.size() - 1);
+		return stk.peek();
+	}
+
+	/**
+	 * Add the stack together keeping the stack. The result is popped back off.
+	 */
+	@Benchmark
+	public double addAllKeep() {
+		StackOps.cmdAddAll(engine, "keep");
+		return engine.calcStack.pop();
+	}
+
+	/**
+	 * Average the stack keeping the stack. The result is popped back off.
+	 */
+	@Benchmark
+	public double averageKeep() {
+		StackOps.cmdAverage(engine, "keep");
+		return engine.calcStack.pop();
+	}
+
+	/**
+	 * Standard deviation of the stack keeping the stack. The result is popped back off.
+	 */
+	@Benchmark
+	public double stdDeviationKeep() {
+		StackOps.cmdStdDeviation(engine, "keep");
+		return engine.calcStack.pop();
+	}
+
+}
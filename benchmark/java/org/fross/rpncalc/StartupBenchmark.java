@@ -0,0 +1,148 @@
+/******************************************************************************
+ * RPNCalc
+ * 
+ * RPNCalc is is an easy to use console based RPN calculator
+ * 
+ *  Copyright (c) 2013-2021 Michael Fross
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *           
+ ******************************************************************************/
+package org.fross.rpncalc;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * StartupBenchmark: Time to first result of one shot runs such as 'rpncalc -e "3 4 + 2 *"', the way
+ * a shell script calls it. Each run starts a new JVM and is timed from starting the process to
+ * reading the first line of the result, and to the process exiting. Runs with the class data sharing
+ * archive built by the package phase are compared with runs without it.
+ * 
+ * Build the jar and archive with: mvn package
+ * 
+ * Then run: mvn -P benchmark test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.fross.rpncalc.StartupBenchmark
+ * -Dexec.args="target/rpncalc.jar target/rpncalc.jsa runs"
+ * 
+ * @author michael.d.fross
+ *
+ */
+public class StartupBenchmark {
+	private static final String EXPRESSION = "3 4 + 2 *";
+	private static final int WARMUP_RUNS = 3;
+
+	/**
+	 * Run(): Start one JVM and return the nanoseconds to its first line of output and to its exit
+	 * 
+	 * @param command
+	 * @return
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	private static long[] Run(ArrayList<String> command) throws IOException, InterruptedException {
+		ProcessBuilder pb = new ProcessBuilder(command);
+		pb.redirectError(ProcessBuilder.Redirect.DISCARD);
+
+		long start = System.nanoTime();
+		Process p = pb.start();
+		BufferedReader in = new BufferedReader(new InputStreamReader(p.getInputStream(), StandardCharsets.UTF_8));
+		String result = in.readLine();
+		long firstResult = System.nanoTime() - start;
+		while (in.readLine() != null) {
+		}
+		int status = p.waitFor();
+		long exit = System.nanoTime() - start;
+
+		if (status != 0 || result == null) {
+			throw new IOException("The run failed with status " + status);
+		}
+		return new long[] { firstResult, exit };
+	}
+
+	/**
+	 * Measure(): Time the provided number of runs and display the percentiles
+	 * 
+	 * @param label
+	 * @param command
+	 * @param runs
+	 * @throws Exception
+	 */
+	private static void Measure(String label, ArrayList<String> command, int runs) throws Exception {
+		for (int i = 0; i < WARMUP_RUNS; i++) {
+			Run(command);
+		}
+
+		long[] firstResult = new long[runs];
+		long[] exit = new long[runs];
+		for (int i = 0; i < runs; i++) {
+			long[] times = Run(command);
+			firstResult[i] = times[0];
+			exit[i] = times[1];
+		}
+		Arrays.sort(firstResult);
+		Arrays.sort(exit);
+
+		System.out.printf("%-12s first result: p50 %.1fms  p90 %.1fms  max %.1fms   exit: p50 %.1fms  p90 %.1fms%n", label, Percentile(firstResult, 50),
+				Percentile(firstResult, 90), firstResult[runs - 1] / 1e6, Percentile(exit, 50), Percentile(exit, 90));
+	}
+
+	/**
+	 * main(): Run the benchmark. Arguments are the jar, the class data sharing archive and the number
+	 * of runs of each kind.
+	 * 
+	 * @param args
+	 * @throws Exception
+	 */
+	public static void main(String[] args) throws Exception {
+		String jar = (args.length > 0) ? args[0] : "target/rpncalc.jar";
+		Path archive = Paths.get((args.length > 1) ? args[1] : "target/rpncalc.jsa");
+		int runs = (args.length > 2) ? Integer.parseInt(args[2]) : 20;
+		String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+
+		ArrayList<String> plain = new ArrayList<String>(Arrays.asList(java, "-jar", jar, "-e", EXPRESSION));
+		Measure("No archive", plain, runs);
+
+		if (Files.exists(archive)) {
+			ArrayList<String> shared = new ArrayList<String>(Arrays.asList(java, "-XX:SharedArchiveFile=" + archive, "-jar", jar, "-e", EXPRESSION));
+			Measure("CDS archive", shared, runs);
+		} else {
+			System.out.println("No class data sharing archive at '" + archive + "'. Build one with: mvn package");
+		}
+	}
+
+	/**
+	 * Percentile(): Return the provided percentile of the sorted nanosecond times in milliseconds
+	 * 
+	 * @param sorted
+	 * @param p
+	 * @return
+	 */
+	private static double Percentile(long[] sorted, double p) {
+		int index = (int) java.lang.Math.ceil(p / 100 * sorted.length) - 1;
+		return sorted[java.lang.Math.max(0, java.lang.Math.min(sorted.length - 1, index))] / 1e6;
+	}
+
+}
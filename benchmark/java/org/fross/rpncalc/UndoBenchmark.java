@@ -0,0 +1,66 @@
+/******************************************************************************
+ * RPNCalc
+ * 
+ * RPNCalc is is an easy to use console based RPN calculator
+ * 
+ *  Copyright (c) 2013-2021 Michael Fross
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *           
+ ******************************************************************************/
+package org.fross.rpncalc;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * UndoBenchmark: Saving the stack to the undo history before a change, and taking it back off with
+ * undo. The undo history is replaced every iteration so the spill file never fills.
+ * 
+ * @author michael.d.fross
+ *
+ */
+@State(Scope.Thread)
+public class UndoBenchmark extends BenchmarkBase {
+
+	/**
+	 * Save the stack to the undo history and change line1 the way a command would
+	 */
+	@Benchmark
+	public int pushAndChange() {
+		DoubleStack stk = engine.calcStack;
+		engine.undoStack.push(stk);
+		stk.set(stk.size() - 1, stk.peek() + 1.0);
+		return engine.undoStack.size();
+	}
+
+	/**
+	 * Save the stack, change line1 and undo the change
+	 */
+	@Benchmark
+	public double pushChangeUndo() {
+		DoubleStack stk = engine.calcStack;
+		engine.undoStack.push(stk);
+		stk.set(stk.size() - 1, stk.peek() + 1.0);
+		StackOps.cmdUndo(engine);
+		return engine.calcStack.peek();
+	}
+
+}
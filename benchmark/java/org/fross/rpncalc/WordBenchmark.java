@@ -0,0 +1,75 @@
+/******************************************************************************
+ * RPNCalc
+ * 
+ * RPNCalc is is an easy to use console based RPN calculator
+ * 
+ *  Copyright (c) 2013-2021 Michael Fross
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *           
+ ******************************************************************************/
+package org.fross.rpncalc;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * WordBenchmark: A user defined word that loops a million times, compared with the same loop
+ * written directly against DoubleStack and Math. Both leave the stack depth unchanged.
+ * 
+ * @author michael.d.fross
+ *
+ */
+@State(Scope.Thread)
+public class WordBenchmark extends BenchmarkBase {
+	private static final int PASSES = 1000000;
+
+	@Setup(Level.Trial)
+	public void DefineWords() {
+		engine.Execute(": benchsumsq 0 swap times i i * + loop ;");
+	}
+
+	@TearDown(Level.Trial)
+	public void ForgetWords() {
+		engine.Execute("forget benchsumsq");
+	}
+
+	@Benchmark
+	public boolean wordLoop() {
+		return engine.Execute(PASSES + " benchsumsq d");
+	}
+
+	@Benchmark
+	public double primitiveLoop() {
+		DoubleStack stk = engine.calcStack;
+		stk.push(0);
+		for (int i = 0; i < PASSES; i++) {
+			stk.push(i);
+			stk.push(i);
+			Math.Multiply(stk);
+			Math.Add(stk);
+		}
+		return stk.pop();
+	}
+
+}
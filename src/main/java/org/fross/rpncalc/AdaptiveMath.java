@@ -0,0 +1,318 @@
+/******************************************************************************
+ * RPNCalc
+ * 
+ * RPNCalc is is an easy to use console based RPN calculator
+ * 
+ *  Copyright (c) 2013-2021 Michael Fross
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *           
+ ******************************************************************************/
+package org.fross.rpncalc;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+
+/**
+ * AdaptiveMath: The adaptive precision versions of the operands and the stack sums. Numbers stay
+ * doubles, and an operation keeps the double result when it can show that result is exact. Only when
+ * it isn't is the operation done again in BigDecimal on the decimal values the numbers were entered
+ * as, rounded to the precision's number of significant digits. That keeps 0.1 + 0.2 from becoming
+ * 0.30000000000000004 and long chains of additions from drifting, while whole numbers and binary
+ * fractions never leave the double fast path.
+ * 
+ * The double result is kept when both numbers are exactly the decimals they were entered as, which
+ * is true of whole numbers and of fractions such as 3/4 with a small power of two below them, and the
+ * operation's rounding error is zero. That error can be found exactly with a couple more double
+ * operations (TwoSum and a fused multiply add). Sums of the whole stack use a compensated sum and a
+ * bound on its error, and are only redone in BigDecimal when the bound is too wide to know the
+ * rounded result.
+ * 
+ * @author michael.d.fross
+ *
+ */
+public class AdaptiveMath {
+	// Class Constants
+	public static final int DEFAULT_DIGITS = 15;
+	public static final int MAX_DIGITS = 17;				// A double holds no more than 17 significant digits
+	private static final double U = 0x1p-53;				// Largest relative rounding error of a double operation
+	private static final double EXACT_INTEGER_LIMIT = 0x1p52;
+	private static final double EXACT_FRACTION_LIMIT = 0x1p20;	// Below this a multiple of 1/1024 is exactly its decimal
+
+	/**
+	 * QueryMathContext(): Return the MathContext for the provided number of significant digits.
+	 * Throws IllegalArgumentException if it isn't between 1 and MAX_DIGITS.
+	 * 
+	 * @param digits
+	 * @return
+	 */
+	public static MathContext QueryMathContext(int digits) {
+		if (digits < 1 || digits > MAX_DIGITS) {
+			throw new IllegalArgumentException("The precision must be between 1 and " + MAX_DIGITS + " digits");
+		}
+		return new MathContext(digits, RoundingMode.HALF_EVEN);
+	}
+
+	/**
+	 * Add(): Return a + b
+	 * 
+	 * @param a
+	 * @param b
+	 * @param mc
+	 * @return
+	 */
+	public static double Add(double a, double b, MathContext mc) {
+		double s = a + b;
+
+		// TwoSum: the exact rounding error of s
+		double bv = s - a;
+		double err = (a - (s - bv)) + (b - bv);
+		if ((err == 0.0 && IsDecimal(a) && IsDecimal(b)) || Double.isFinite(s) == false) {
+			return s;
+		}
+		return Decimal(a).add(Decimal(b), mc).doubleValue();
+	}
+
+	/**
+	 * Subtract(): Return a - b
+	 * 
+	 * @param a
+	 * @param b
+	 * @param mc
+	 * @return
+	 */
+	public static double Subtract(double a, double b, MathContext mc) {
+		return Add(a, -b, mc);
+	}
+
+	/**
+	 * Multiply(): Return a * b
+	 * 
+	 * @param a
+	 * @param b
+	 * @param mc
+	 * @return
+	 */
+	public static double Multiply(double a, double b, MathContext mc) {
+		double p = a * b;
+		if (Double.isFinite(p) == false || (java.lang.Math.fma(a, b, -p) == 0.0 && IsDecimal(a) && IsDecimal(b))) {
+			return p;
+		}
+		return Decimal(a).multiply(Decimal(b), mc).doubleValue();
+	}
+
+	/**
+	 * Divide(): Return a / b
+	 * 
+	 * @param a
+	 * @param b
+	 * @param mc
+	 * @return
+	 */
+	public static double Divide(double a, double b, MathContext mc) {
+		double q = a / b;
+		if (b == 0.0 || Double.isFinite(q) == false || (java.lang.Math.fma(-q, b, a) == 0.0 && IsDecimal(a) && IsDecimal(b))) {
+			return q;
+		}
+		return Decimal(a).divide(Decimal(b), mc).doubleValue();
+	}
+
+	/**
+	 * Power(): Return base ^ power. Whole number powers of whole numbers that a double holds exactly
+	 * stay doubles and other whole number powers are done in BigDecimal. Fractional powers are
+	 * irrational in general so the double result is kept.
+	 * 
+	 * @param base
+	 * @param power
+	 * @param mc
+	 * @return
+	 */
+	public static double Power(double base, double power, MathContext mc) {
+		double p = java.lang.Math.pow(base, power);
+		if (Double.isFinite(p) == false || power != java.lang.Math.rint(power) || java.lang.Math.abs(power) > 999999999) {
+			return p;
+		}
+		if (base == java.lang.Math.rint(base) && power >= 0 && java.lang.Math.abs(p) < EXACT_INTEGER_LIMIT && p == java.lang.Math.rint(p)) {
+			return p;
+		}
+
+		try {
+			return Decimal(base).pow((int) power, mc).doubleValue();
+		} catch (ArithmeticException ex) {
+			return p;
+		}
+	}
+
+	/**
+	 * Sum(): Return the sum of the stack rounded to the precision, or NaN or an infinity if the stack
+	 * holds one or the sum overflows
+	 * 
+	 * @param stk
+	 * @param mc
+	 * @return
+	 */
+	public static double Sum(DoubleStack stk, MathContext mc) {
+		BigDecimal sum = SumDecimal(stk, mc);
+		return (sum == null) ? stk.QuerySum() : sum.doubleValue();
+	}
+
+	/**
+	 * Mean(): Return the mean of the stack rounded to the precision
+	 * 
+	 * @param stk
+	 * @param mc
+	 * @return
+	 */
+	public static double Mean(DoubleStack stk, MathContext mc) {
+		BigDecimal sum = SumDecimal(stk, mc);
+		if (sum == null) {
+			return stk.QueryMean();
+		}
+		return sum.divide(BigDecimal.valueOf(stk.size()), mc).doubleValue();
+	}
+
+	/**
+	 * StdDeviation(): Return the population standard deviation of the stack rounded to the precision.
+	 * The differences from the mean are summed in double with compensation in a second pass.
+	 * 
+	 * @param stk
+	 * @param mc
+	 * @return
+	 */
+	public static double StdDeviation(DoubleStack stk, MathContext mc) {
+		double mean = Mean(stk, mc);
+		double sum = 0.0;
+		double compensation = 0.0;
+
+		int size = stk.size();
+		for (int c = 0; c < stk.chunkCount(); c++) {
+			double[] chunk = stk.chunk(c);
+			int n = java.lang.Math.min(DoubleStack.CHUNK_SIZE, size - (c << DoubleStack.CHUNK_SHIFT));
+			for (int i = 0; i < n; i++) {
+				double d = chunk[i] - mean;
+				double x = d * d;
+				double t = sum + x;
+				compensation += (sum >= x) ? (sum - t) + x : (x - t) + sum;
+				sum = t;
+			}
+		}
+
+		return Round(java.lang.Math.sqrt((sum + compensation) / size), mc);
+	}
+
+	/**
+	 * Round(): Round a double to the precision
+	 * 
+	 * @param x
+	 * @param mc
+	 * @return
+	 */
+	public static double Round(double x, MathContext mc) {
+		if (Double.isFinite(x) == false) {
+			return x;
+		}
+		return new BigDecimal(x).round(mc).doubleValue();
+	}
+
+	/**
+	 * SumDecimal(): Return the sum of the decimal values of the stack rounded to the precision, or null
+	 * if it holds a NaN or infinity or the sum overflows.
+	 * 
+	 * A Neumaier compensated sum is found in double first. Each value is within U of its decimal value
+	 * and the compensated sum is within 2U of the sum of the doubles plus a term in n squared, so if
+	 * both ends of that bound round to the same number of digits that is the answer. Otherwise the
+	 * decimal values are added up exactly.
+	 * 
+	 * @param stk
+	 * @param mc
+	 * @return
+	 */
+	private static BigDecimal SumDecimal(DoubleStack stk, MathContext mc) {
+		double sum = 0.0;
+		double compensation = 0.0;
+		double magnitude = 0.0;
+
+		int size = stk.size();
+		for (int c = 0; c < stk.chunkCount(); c++) {
+			double[] chunk = stk.chunk(c);
+			int n = java.lang.Math.min(DoubleStack.CHUNK_SIZE, size - (c << DoubleStack.CHUNK_SHIFT));
+			for (int i = 0; i < n; i++) {
+				double x = chunk[i];
+				double t = sum + x;
+				compensation += (java.lang.Math.abs(sum) >= java.lang.Math.abs(x)) ? (sum - t) + x : (x - t) + sum;
+				sum = t;
+				magnitude += java.lang.Math.abs(x);
+			}
+		}
+
+		double s = sum + compensation;
+		if (Double.isFinite(s) == false || Double.isFinite(magnitude) == false) {
+			return null;
+		}
+
+		double n = size;
+		double bound = 2 * U * magnitude + 2 * U * java.lang.Math.abs(s) + n * n * U * U * magnitude;
+		BigDecimal low = new BigDecimal(s).subtract(new BigDecimal(bound)).round(mc);
+		BigDecimal high = new BigDecimal(s).add(new BigDecimal(bound)).round(mc);
+		if (low.compareTo(high) == 0) {
+			return high;
+		}
+
+		// Too close to call in double so add the decimal values exactly
+		BigDecimal exact = BigDecimal.ZERO;
+		for (int c = 0; c < stk.chunkCount(); c++) {
+			double[] chunk = stk.chunk(c);
+			int count = java.lang.Math.min(DoubleStack.CHUNK_SIZE, size - (c << DoubleStack.CHUNK_SHIFT));
+			for (int i = 0; i < count; i++) {
+				exact = exact.add(Decimal(chunk[i]));
+			}
+		}
+		return exact.round(mc);
+	}
+
+	/**
+	 * IsDecimal(): Return true if the double is exactly the shortest decimal that reads back as it, so
+	 * a result that is exact in binary is exact in decimal too. Whole numbers a double holds exactly
+	 * qualify, as do multiples of 1/1024 small enough that no shorter decimal is within half a unit of
+	 * them.
+	 * 
+	 * @param x
+	 * @return
+	 */
+	private static boolean IsDecimal(double x) {
+		if (x == java.lang.Math.rint(x)) {
+			return java.lang.Math.abs(x) < EXACT_INTEGER_LIMIT;
+		}
+		double scaled = x * 1024;
+		return scaled == java.lang.Math.rint(scaled) && java.lang.Math.abs(x) < EXACT_FRACTION_LIMIT;
+	}
+
+	/**
+	 * Decimal(): Return the shortest decimal that reads back as the double. This is the number as it
+	 * was entered rather than the binary fraction closest to it.
+	 * 
+	 * @param x
+	 * @return
+	 */
+	private static BigDecimal Decimal(double x) {
+		return BigDecimal.valueOf(x);
+	}
+
+}
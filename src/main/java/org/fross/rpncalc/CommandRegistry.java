@@ -0,0 +1,386 @@
+/******************************************************************************
+ * RPNCalc
+ * 
+ * RPNCalc is is an easy to use console based RPN calculator
+ * 
+ *  Copyright (c) 2013-2021 Michael Fross
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *           
+ ******************************************************************************/
+package org.fross.rpncalc;
+
+import java.util.HashMap;
+import java.util.HashSet;
+
+import org.fross.library.Output;
+import org.fusesource.jansi.Ansi;
+
+/**
+ * CommandRegistry: Maps each command name and alias to the code that executes it. Looking up a
+ * command is a single hash lookup no matter how many commands there are.
+ * 
+ * @author michael.d.fross
+ *
+ */
+public class CommandRegistry {
+	/**
+	 * Command: The code run for a command on the provided engine. cmd is the name it was entered as
+	 * and param is the rest of the input line.
+	 */
+	@FunctionalInterface
+	public interface Command {
+		void Execute(RpnEngine e, String cmd, String param);
+	}
+
+	// Class Variables
+	private static final HashMap<String, Command> commands = new HashMap<String, Command>();
+	private static final HashMap<String, Command> untimed = new HashMap<String, Command>();
+	private static final HashSet<String> caseSensitive = new HashSet<String>();
+	private static final HashSet<String> withParameter = new HashSet<String>();
+
+	static {
+
+		/*********************************************
+		 * Calculator Commands
+		 *********************************************/
+		// Undo
+		Register((e, cmd, param) -> StackOps.cmdUndo(e), "undo", "u");
+
+		// Flip Sign
+		Register((e, cmd, param) -> StackOps.cmdFlipSign(e), "flip", "f");
+
+		// Clear Screen and Stack
+		Register((e, cmd, param) -> StackOps.cmdClear(e), "clear", "c");
+
+		// Clean the screen and redisplay the stack
+		Register((e, cmd, param) -> StackOps.cmdClean(e), "clean", "cl");
+
+		// Delete
+		RegisterWithParameter((e, cmd, param) -> {
+			// If Parameter is empty, delete the value on the top of the stack
+			if (param.isEmpty())
+				StackOps.cmdDelete(e, "1");
+			else
+				StackOps.cmdDelete(e, param);
+		}, "delete", "del", "d");
+
+		// Percent
+		Register((e, cmd, param) -> {
+			Output.debugPrint("Create a percent by dividing by 100");
+			e.undoStack.push(e.calcStack);
+			e.calcStack.push(e.calcStack.pop() / 100);
+		}, "%");
+
+		// Swap Elements in a stack
+		RegisterWithParameter((e, cmd, param) -> StackOps.cmdSwapElements(e, param), "swap", "s");
+
+		// Square Root
+		Register((e, cmd, param) -> StackOps.cmdSqrt(e), "sqrt");
+
+		// Round
+		RegisterWithParameter((e, cmd, param) -> StackOps.cmdRound(e, param), "round");
+
+		// AddAll
+		RegisterWithParameter((e, cmd, param) -> StackOps.cmdAddAll(e, param), "aa");
+
+		// Modulus
+		Register((e, cmd, param) -> StackOps.cmdMod(e), "mod");
+
+		// Average
+		RegisterWithParameter((e, cmd, param) -> StackOps.cmdAverage(e, param), "mean", "average", "avg");
+
+		// Standard Deviation
+		RegisterWithParameter((e, cmd, param) -> StackOps.cmdStdDeviation(e, param), "sd");
+
+		// Minimum & Maximum
+		RegisterWithParameter((e, cmd, param) -> StackOps.cmdMinimum(e, param), "min");
+		RegisterWithParameter((e, cmd, param) -> StackOps.cmdMaximum(e, param), "max");
+
+		// Copy Item
+		Register((e, cmd, param) -> StackOps.cmdCopy(e), "copy");
+
+		// Natural (base e) Logarithm
+		Register((e, cmd, param) -> StackOps.cmdLog(e), "log");
+
+		// Base10 Logarithm
+		Register((e, cmd, param) -> StackOps.cmdLog10(e), "log10");
+
+		// Integer
+		Register((e, cmd, param) -> StackOps.cmdInteger(e), "int");
+
+		// Absolute Value
+		Register((e, cmd, param) -> StackOps.cmdAbsoluteValue(e), "abs");
+
+		// Random Number Generation
+		RegisterWithParameter((e, cmd, param) -> StackOps.cmdRandom(e, param), "rand", "random");
+
+		// Dice
+		RegisterWithParameter((e, cmd, param) -> StackOps.cmdDice(e, param), "dice");
+
+		/*********************************************
+		 * Conversions
+		 *********************************************/
+		// Fraction
+		RegisterWithParameter((e, cmd, param) -> StackOps.cmdFraction(e, param), "frac", "fraction");
+
+		// Convert inches to millimeters
+		Register((e, cmd, param) -> StackOps.cmdConvert2MM(e), "in2mm", "2mm");
+
+		// Convert millimeters to inches
+		Register((e, cmd, param) -> StackOps.cmdConvert2IN(e), "mm2in", "2in");
+
+		// Convert to Radians
+		Register((e, cmd, param) -> StackOps.cmdRadian(e), "deg2rad", "2rad");
+
+		// Convert to Degrees
+		Register((e, cmd, param) -> StackOps.cmdDegree(e), "rad2deg", "2deg");
+
+		/*********************************************
+		 * Trigonometry Functions
+		 *********************************************/
+		// Trigonometry Functions
+		RegisterWithParameter((e, cmd, param) -> StackOps.cmdTrig(e, cmd, param), "tan", "sin", "cos");
+
+		// Arc-Trigonometry Functions
+		RegisterWithParameter((e, cmd, param) -> StackOps.cmdArcTrig(e, cmd, param), "atan", "asin", "acos");
+
+		// Hypotenuse
+		Register((e, cmd, param) -> StackOps.cmdHypotenuse(e), "hypot", "hypotenuse");
+
+		/*********************************************
+		 * Whole Stack Operations
+		 *********************************************/
+		// Apply an operation to every element on the stack
+		RegisterWithParameter((e, cmd, param) -> StackOps.cmdMap(e, param), "map");
+
+		/*********************************************
+		 * Memory Functions
+		 *********************************************/
+		RegisterWithParameter((e, cmd, param) -> StackOps.cmdMem(e, param), "memory", "mem");
+
+		/*********************************************
+		 * Constants
+		 *********************************************/
+		// Add PI
+		Register((e, cmd, param) -> {
+			e.undoStack.push(e.calcStack);
+			e.Message(Ansi.Color.CYAN, "The value PI added to the stack");
+			e.calcStack.push(java.lang.Math.PI);
+		}, "pi");
+
+		// Add PHI also known as The Golden Ratio
+		Register((e, cmd, param) -> {
+			e.undoStack.push(e.calcStack);
+			e.Message(Ansi.Color.CYAN, "Phi, the golden ratio, added to the stack");
+			e.calcStack.push(1.61803398874989);
+		}, "phi");
+
+		// Euler's number
+		Register((e, cmd, param) -> {
+			e.undoStack.push(e.calcStack);
+			e.Message(Ansi.Color.CYAN, "Euler's number (e) to the stack");
+			e.calcStack.push(2.7182818284590452353602874713527);
+		}, "euler");
+
+		/*********************************************
+		 * Operational Commands
+		 *********************************************/
+		// List
+		// Supported commands are "stacks" | "mem" | "undo" | "words"
+		RegisterWithParameter((e, cmd, param) -> StackOps.cmdList(e, param), "list");
+
+		// Load
+		RegisterWithParameter((e, cmd, param) -> StackOps.cmdLoad(e, param), "load");
+
+		// Import a file of numbers onto the stack. File names keep their case.
+		RegisterCaseSensitive((e, cmd, param) -> StackOps.cmdImport(e, param), "import");
+
+		// Export a stack or the memory slots to a CSV or binary file
+		RegisterCaseSensitive((e, cmd, param) -> StackOps.cmdExport(e, param), "export");
+
+		// Swap Stack
+		Register((e, cmd, param) -> StackOps.cmdSwapStack(e), "ss");
+
+		// Define or forget a user word
+		RegisterWithParameter((e, cmd, param) -> e.words.Define(e, param), ":");
+		RegisterWithParameter((e, cmd, param) -> e.words.Forget(e, param), "forget");
+
+		// Print
+		RegisterWithParameter((e, cmd, param) -> StackOps.cmdPrint(e, param), "print");
+
+		// Debug Toggle
+		Register((e, cmd, param) -> StackOps.cmdDebug(e), "debug");
+
+		// Command and preferences statistics
+		RegisterWithParameter((e, cmd, param) -> StackOps.cmdStats(e, param), "stats");
+
+		// Display Alignment
+		RegisterWithParameter((e, cmd, param) -> {
+			try {
+				StackOps.cmdAlign(e, param.charAt(0));
+			} catch (StringIndexOutOfBoundsException ex) {
+				e.PrintError("ERROR: Must provide an alignment value of 'l'eft, 'd'ecimal, or 'r'ight");
+			}
+		}, "a");
+
+		// Adaptive precision
+		RegisterWithParameter((e, cmd, param) -> StackOps.cmdPrecision(e, param), "precision", "prec");
+
+		// Version
+		Register((e, cmd, param) -> {
+			e.Message(Ansi.Color.YELLOW, "Version: v" + Main.VERSION);
+			e.Message(Ansi.Color.CYAN, Main.COPYRIGHT);
+		}, "ver", "version");
+
+		// Help
+		Register((e, cmd, param) -> Help.Display(e), "h", "?", "help");
+
+		// Clear & Exit
+		Register((e, cmd, param) -> {
+			e.calcStack.clear();
+			Output.debugPrint("Exiting Command Loop");
+			e.exitRequested = true;
+		}, "cx");
+
+		// Exit
+		Register((e, cmd, param) -> {
+			Output.debugPrint("Exiting Command Loop");
+			e.exitRequested = true;
+		}, "x", "exit");
+
+		/*********************************************
+		 * Operands
+		 *********************************************/
+		Register((e, cmd, param) -> StackOps.cmdOperand(e, cmd), "+");
+		Register((e, cmd, param) -> StackOps.cmdOperand(e, cmd), "-");
+		Register((e, cmd, param) -> StackOps.cmdOperand(e, cmd), "*");
+		Register((e, cmd, param) -> StackOps.cmdOperand(e, cmd), "/");
+		Register((e, cmd, param) -> StackOps.cmdOperand(e, cmd), "^");
+	}
+
+	/**
+	 * Register(): Map the provided command and all of its aliases to the code that executes it. Every
+	 * run of it is timed in the Metrics and is a flight recorder event under its first name.
+	 * 
+	 * @param command
+	 * @param names
+	 */
+	private static void Register(Command command, String... names) {
+		String statName = names[0];
+		Metrics.Stat stat = Metrics.Stat(Metrics.KIND_COMMAND, statName);
+		Command timed = (e, cmd, param) -> {
+			FlightRecorder.CommandEvent event = FlightRecorder.IsRunning() ? new FlightRecorder.CommandEvent() : null;
+			if (event != null) {
+				event.begin();
+			}
+			long startTime = System.nanoTime();
+			long startBytes = Metrics.AllocatedBytes();
+			try {
+				command.Execute(e, cmd, param);
+			} finally {
+				stat.Record(startTime, startBytes);
+				if (event != null) {
+					event.end();
+				}
+				if (event != null && event.shouldCommit()) {
+					event.name = statName;
+					event.kind = Metrics.KIND_COMMAND;
+					event.stackDepth = e.calcStack.size();
+					event.commit();
+				}
+			}
+		};
+
+		for (String name : names) {
+			commands.put(name, timed);
+			untimed.put(name, command);
+		}
+	}
+
+	/**
+	 * RegisterWithParameter(): Register a command that uses the rest of the line as its parameter. A
+	 * line starting with one of them is never run as a Program.
+	 * 
+	 * @param command
+	 * @param names
+	 */
+	private static void RegisterWithParameter(Command command, String... names) {
+		Register(command, names);
+		for (String name : names) {
+			withParameter.add(name);
+		}
+	}
+
+	/**
+	 * RegisterCaseSensitive(): Register a command that is given its parameter exactly as it was
+	 * entered instead of in lower case
+	 * 
+	 * @param command
+	 * @param names
+	 */
+	private static void RegisterCaseSensitive(Command command, String... names) {
+		RegisterWithParameter(command, names);
+		for (String name : names) {
+			caseSensitive.add(name);
+		}
+	}
+
+	/**
+	 * IsCaseSensitive(): Return true if the command takes its parameter as it was entered
+	 * 
+	 * @param name
+	 * @return
+	 */
+	public static boolean IsCaseSensitive(String name) {
+		return caseSensitive.contains(name);
+	}
+
+	/**
+	 * TakesParameter(): Return true if the command uses the rest of the line as its parameter
+	 * 
+	 * @param name
+	 * @return
+	 */
+	public static boolean TakesParameter(String name) {
+		return withParameter.contains(name);
+	}
+
+	/**
+	 * Lookup(): Return the command registered under the provided name or null if there isn't one
+	 * 
+	 * @param name
+	 * @return
+	 */
+	public static Command Lookup(String name) {
+		return commands.get(name);
+	}
+
+	/**
+	 * LookupUntimed(): Return the command registered under the provided name without the timing
+	 * Lookup() adds, or null if there isn't one. Used where the caller is timed instead.
+	 * 
+	 * @param name
+	 * @return
+	 */
+	public static Command LookupUntimed(String name) {
+		return untimed.get(name);
+	}
+
+}
@@ -0,0 +1,661 @@
+/******************************************************************************
+ * RPNCalc
+ * 
+ * RPNCalc is is an easy to use console based RPN calculator
+ * 
+ *  Copyright (c) 2013-2021 Michael Fross
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *           
+ ******************************************************************************/
+package org.fross.rpncalc;
+
+import java.util.Arrays;
+import java.util.EmptyStackException;
+
+/**
+ * DoubleStack: A stack of primitive doubles. It replaces java.util.Stack<Double> which is
+ * synchronized and boxes every value pushed onto it. Index 0 is the bottom of the stack and size()-1
+ * is the top (line1), the same as java.util.Stack.
+ * 
+ * The values are held in fixed size chunks that are shared copy-on-write between a stack and the
+ * snapshots taken from it. snapshot() is O(1): it only marks the chunks as shared. The first write to
+ * a shared chunk copies that one chunk, so an undo snapshot of a large stack costs a chunk or two
+ * instead of a copy of every element.
+ * 
+ * Running statistics of the elements (a compensated sum, Welford's mean and sum of squared
+ * differences, the minimum and the maximum) are kept up to date as values are pushed, popped and
+ * replaced so that sum, mean, standard deviation, minimum and maximum can be read in O(1). When they
+ * can't be updated in place, such as when the minimum is popped, they are rebuilt with a single scan
+ * the next time they are asked for. Very large stacks are scanned in parallel.
+ * 
+ * This class is not thread safe.
+ * 
+ * @author michael.d.fross
+ * 
+ */
+public class DoubleStack {
+	// Class Constants
+	static final int CHUNK_SHIFT = 10;
+	static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+	static final int CHUNK_MASK = CHUNK_SIZE - 1;
+	private static final int MIN_CHUNK_LENGTH = 8;
+	private static final double[][] EMPTY_CHUNKS = {};
+	private static final Object[] EMPTY_OWNERS = {};
+	private static final int STATS_RESCAN_SLACK = 1024;
+	private static final int MAX_REPLACED_CHUNKS = 64;
+
+	// Class Variables
+	private double[][] chunks = EMPTY_CHUNKS;
+	private Object[] owners = EMPTY_OWNERS;			// Chunk c may be written in place only if owners[c] == owner
+	private Object owner = new Object();
+	private boolean sharedDirectory = false;		// chunks[] and owners[] are shared with a snapshot
+	private int size = 0;
+	private int lowestChange = 0;					// Lowest index written since the last ClearChanges()
+	private int[] replacedChunks = null;			// Chunks given a new array since ClearReplacedChunks()
+	private int replacedCount = 0;					// -1 once there were too many to keep track of
+
+	// Running statistics. They are only used while statsValid is true, otherwise a scan rebuilds them.
+	private StackStatistics stats = new StackStatistics();
+	private boolean statsValid = true;
+	private boolean extremesValid = true;
+	private int removalsSinceScan = 0;				// Removing values lets rounding error build up
+
+	/**
+	 * DoubleStack(): Create an empty stack
+	 */
+	public DoubleStack() {
+	}
+
+	/**
+	 * DoubleStack(): Create a stack populated with the provided values. The last array element will be
+	 * on the top of the stack.
+	 * 
+	 * @param src
+	 */
+	public DoubleStack(double[] src) {
+		int numChunks = (src.length + CHUNK_MASK) >>> CHUNK_SHIFT;
+		chunks = new double[numChunks][];
+		owners = new Object[numChunks];
+		for (int c = 0; c < numChunks; c++) {
+			int from = c << CHUNK_SHIFT;
+			chunks[c] = Arrays.copyOfRange(src, from, from + java.lang.Math.min(CHUNK_SIZE, src.length - from));
+			owners[c] = owner;
+		}
+		size = src.length;
+
+		// Leave the statistics until they are needed
+		statsValid = false;
+		extremesValid = false;
+	}
+
+	/**
+	 * DoubleStack(): Create a snapshot sharing the chunk directory of another stack
+	 * 
+	 * @param chunks
+	 * @param owners
+	 * @param size
+	 */
+	private DoubleStack(double[][] chunks, Object[] owners, int size) {
+		this.chunks = chunks;
+		this.owners = owners;
+		this.sharedDirectory = true;
+		this.size = size;
+		this.statsValid = false;
+		this.extremesValid = false;
+	}
+
+	/**
+	 * size(): Return the number of elements in the stack
+	 * 
+	 * @return
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * isEmpty(): Return true if there are no elements on the stack
+	 * 
+	 * @return
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * push(): Add the value to the top of the stack
+	 * 
+	 * @param value
+	 */
+	public void push(double value) {
+		lowestChange = java.lang.Math.min(lowestChange, size);
+		writableChunk(size >>> CHUNK_SHIFT, (size & CHUNK_MASK) + 1)[size & CHUNK_MASK] = value;
+		size++;
+		AddToStats(value);
+	}
+
+	/**
+	 * pushAll(): Add count values from the array to the top of the stack in order. The last one ends
+	 * up on the top.
+	 * 
+	 * @param src
+	 * @param offset
+	 * @param count
+	 */
+	public void pushAll(double[] src, int offset, int count) {
+		if (offset < 0 || count < 0 || offset + count > src.length) {
+			throw new ArrayIndexOutOfBoundsException(offset + count);
+		}
+		lowestChange = java.lang.Math.min(lowestChange, size);
+
+		// Adding more values than are already on the stack costs the same as a scan later
+		boolean addToStats = statsValid && count <= size;
+
+		while (count > 0) {
+			int c = size >>> CHUNK_SHIFT;
+			int from = size & CHUNK_MASK;
+			int n = java.lang.Math.min(count, CHUNK_SIZE - from);
+			System.arraycopy(src, offset, writableChunk(c, from + n), from, n);
+
+			if (addToStats == true) {
+				for (int i = offset; i < offset + n; i++) {
+					size++;
+					AddToStats(src[i]);
+				}
+			} else {
+				size += n;
+			}
+			offset += n;
+			count -= n;
+		}
+
+		if (addToStats == false) {
+			InvalidateStats();
+		}
+	}
+
+	/**
+	 * pop(): Remove and return the value on the top of the stack
+	 * 
+	 * @return
+	 */
+	public double pop() {
+		if (size == 0) {
+			throw new EmptyStackException();
+		}
+		size--;
+		double value = chunks[size >>> CHUNK_SHIFT][size & CHUNK_MASK];
+		RemoveFromStats(value);
+		return value;
+	}
+
+	/**
+	 * peek(): Return the value on the top of the stack without removing it
+	 * 
+	 * @return
+	 */
+	public double peek() {
+		if (size == 0) {
+			throw new EmptyStackException();
+		}
+		return get(size - 1);
+	}
+
+	/**
+	 * get(): Return the value at the provided index. Index 0 is the bottom of the stack.
+	 * 
+	 * @param index
+	 * @return
+	 */
+	public double get(int index) {
+		if (index < 0 || index >= size) {
+			throw new ArrayIndexOutOfBoundsException(index);
+		}
+		return chunks[index >>> CHUNK_SHIFT][index & CHUNK_MASK];
+	}
+
+	/**
+	 * set(): Replace the value at the provided index. Index 0 is the bottom of the stack.
+	 * 
+	 * @param index
+	 * @param value
+	 */
+	public void set(int index, double value) {
+		double replaced = get(index);
+		store(index, value);
+
+		// Take the old value out of the statistics as if it was popped and then push the new one
+		size--;
+		RemoveFromStats(replaced);
+		size++;
+		AddToStats(value);
+	}
+
+	/**
+	 * swap(): Exchange the values at the two provided indexes. Index 0 is the bottom of the stack. The
+	 * statistics don't change as the same values are still on the stack.
+	 * 
+	 * @param index1
+	 * @param index2
+	 */
+	public void swap(int index1, int index2) {
+		double value1 = get(index1);
+		double value2 = get(index2);
+		store(index1, value2);
+		store(index2, value1);
+	}
+
+	/**
+	 * remove(): Remove the value at the provided index and shift everything above it down one
+	 * 
+	 * @param index
+	 * @return
+	 */
+	public double remove(int index) {
+		double removed = get(index);
+		for (int i = index; i < size - 1; i++) {
+			store(i, get(i + 1));
+		}
+		size--;
+		RemoveFromStats(removed);
+		return removed;
+	}
+
+	/**
+	 * truncate(): Remove elements from the top of the stack until it holds newSize elements
+	 * 
+	 * @param newSize
+	 */
+	public void truncate(int newSize) {
+		if (newSize < 0 || newSize > size) {
+			throw new ArrayIndexOutOfBoundsException(newSize);
+		}
+
+		// Take the values out of the statistics one at a time unless it is quicker to rescan what is left
+		if (size - newSize <= newSize) {
+			while (size > newSize) {
+				pop();
+			}
+		} else {
+			size = newSize;
+			InvalidateStats();
+		}
+	}
+
+	/**
+	 * clear(): Remove all elements from the stack
+	 */
+	public void clear() {
+		chunks = EMPTY_CHUNKS;
+		owners = EMPTY_OWNERS;
+		sharedDirectory = false;
+		size = 0;
+		lowestChange = 0;
+		ResetStats();
+	}
+
+	/**
+	 * snapshot(): Return a copy of this stack in O(1). The copy shares every chunk with this stack and
+	 * neither of them can change what the other sees.
+	 * 
+	 * @return
+	 */
+	public DoubleStack snapshot() {
+		// Give up ownership of every chunk so the next write to any of them makes a private copy
+		owner = new Object();
+		sharedDirectory = true;
+		DoubleStack snap = new DoubleStack(chunks, owners, size);
+
+		// The snapshot holds the same values so it takes the statistics as they are
+		snap.stats = stats.Copy();
+		snap.statsValid = statsValid;
+		snap.extremesValid = extremesValid;
+		snap.removalsSinceScan = removalsSinceScan;
+		return snap;
+	}
+
+	/**
+	 * toArray(): Return the stack contents as a new array. Index 0 is the bottom of the stack.
+	 * 
+	 * @return
+	 */
+	public double[] toArray() {
+		double[] result = new double[size];
+		for (int c = 0, from = 0; from < size; c++, from += CHUNK_SIZE) {
+			System.arraycopy(chunks[c], 0, result, from, java.lang.Math.min(CHUNK_SIZE, size - from));
+		}
+		return result;
+	}
+
+	/**
+	 * QuerySum(): Return the sum of every element on the stack. It is a compensated sum so it is more
+	 * accurate than adding the elements in order.
+	 * 
+	 * @return
+	 */
+	public double QuerySum() {
+		UpdateStats();
+		return stats.QuerySum();
+	}
+
+	/**
+	 * QueryMean(): Return the mean of the elements on the stack
+	 * 
+	 * @return
+	 */
+	public double QueryMean() {
+		return (size == 0) ? Double.NaN : QuerySum() / size;
+	}
+
+	/**
+	 * QueryStdDeviation(): Return the population standard deviation of the elements on the stack
+	 * 
+	 * @return
+	 */
+	public double QueryStdDeviation() {
+		// Taking large values back out of the statistics can leave little of the variance that is accurate
+		if (stats.IsAccurate() == false) {
+			InvalidateStats();
+		}
+		UpdateStats();
+		return (size == 0) ? Double.NaN : stats.QueryStdDeviation();
+	}
+
+	/**
+	 * QueryMin(): Return the smallest element on the stack
+	 * 
+	 * @return
+	 */
+	public double QueryMin() {
+		if (size == 0) {
+			throw new EmptyStackException();
+		}
+		UpdateExtremes();
+		return stats.min;
+	}
+
+	/**
+	 * QueryMax(): Return the largest element on the stack
+	 * 
+	 * @return
+	 */
+	public double QueryMax() {
+		if (size == 0) {
+			throw new EmptyStackException();
+		}
+		UpdateExtremes();
+		return stats.max;
+	}
+
+	/**
+	 * QueryLowestChange(): Return the lowest index that has been written since the last call to
+	 * ClearChanges(). Elements below it have not changed. Used to only redraw what changed.
+	 * 
+	 * @return
+	 */
+	public int QueryLowestChange() {
+		return java.lang.Math.min(lowestChange, size);
+	}
+
+	/**
+	 * ClearChanges(): Start tracking changes from the current state of the stack
+	 */
+	public void ClearChanges() {
+		lowestChange = Integer.MAX_VALUE;
+	}
+
+	/**
+	 * QueryReplacedChunks(): Return the indexes of the chunks that were given a new array since
+	 * ClearReplacedChunks(), possibly more than once, or null if there were too many to keep track of.
+	 * Every other chunk is the same array it was then.
+	 * 
+	 * @return
+	 */
+	int[] QueryReplacedChunks() {
+		if (replacedCount < 0) {
+			return null;
+		}
+		return (replacedCount == 0) ? new int[0] : Arrays.copyOf(replacedChunks, replacedCount);
+	}
+
+	/**
+	 * ClearReplacedChunks(): Start keeping track of the chunks given a new array from here on
+	 */
+	void ClearReplacedChunks() {
+		replacedCount = 0;
+	}
+
+	/**
+	 * chunkCount(): Return the number of chunks holding the elements of the stack
+	 * 
+	 * @return
+	 */
+	int chunkCount() {
+		return (size + CHUNK_MASK) >>> CHUNK_SHIFT;
+	}
+
+	/**
+	 * chunk(): Return the backing array of the provided chunk. It must not be modified.
+	 * 
+	 * @param c
+	 * @return
+	 */
+	double[] chunk(int c) {
+		return chunks[c];
+	}
+
+	/**
+	 * writableChunk(): Return the backing array of chunk c so its elements can be changed in place. A
+	 * chunk shared with a snapshot is copied first. changed() must be called afterwards.
+	 * 
+	 * @param c
+	 * @return
+	 */
+	double[] writableChunk(int c) {
+		return writableChunk(c, chunks[c].length);
+	}
+
+	/**
+	 * changed(): Record that the elements from the provided index up were changed in place. The
+	 * statistics are rebuilt the next time they are asked for.
+	 * 
+	 * @param from
+	 */
+	void changed(int from) {
+		lowestChange = java.lang.Math.min(lowestChange, from);
+		InvalidateStats();
+	}
+
+	/**
+	 * store(): Write the value at the provided index without touching the statistics
+	 * 
+	 * @param index
+	 * @param value
+	 */
+	private void store(int index, double value) {
+		lowestChange = java.lang.Math.min(lowestChange, index);
+		writableChunk(index >>> CHUNK_SHIFT, (index & CHUNK_MASK) + 1)[index & CHUNK_MASK] = value;
+	}
+
+	/**
+	 * AddToStats(): Include a value that was just pushed in the running statistics
+	 * 
+	 * @param value
+	 */
+	private void AddToStats(double value) {
+		if (statsValid == false) {
+			return;
+		}
+
+		// Infinity and NaN can't be taken back out again so leave them to a scan
+		if (Double.isFinite(value) == false) {
+			InvalidateStats();
+			return;
+		}
+
+		stats.Add(value);
+
+		// Values large enough to overflow are also left to a scan
+		if (Double.isFinite(stats.sum) == false || Double.isFinite(stats.m2) == false) {
+			InvalidateStats();
+		}
+	}
+
+	/**
+	 * RemoveFromStats(): Take a value that was just removed out of the running statistics. size no
+	 * longer includes it.
+	 * 
+	 * @param value
+	 */
+	private void RemoveFromStats(double value) {
+		if (size == 0) {
+			ResetStats();
+			return;
+		}
+		if (statsValid == false) {
+			return;
+		}
+
+		stats.Remove(value);
+
+		// If the minimum or maximum was removed the next one can only be found with a scan
+		if (value <= stats.min || value >= stats.max) {
+			extremesValid = false;
+		}
+
+		// Rounding error builds up as values are taken out, so once as many values have been removed as
+		// are on the stack, rebuild the statistics. That keeps the scans to O(1) per removal on average.
+		removalsSinceScan++;
+		if (removalsSinceScan > size + STATS_RESCAN_SLACK) {
+			InvalidateStats();
+		}
+	}
+
+	/**
+	 * ResetStats(): Set the statistics to those of an empty stack
+	 */
+	private void ResetStats() {
+		stats = new StackStatistics();
+		statsValid = true;
+		extremesValid = true;
+		removalsSinceScan = 0;
+	}
+
+	/**
+	 * InvalidateStats(): Stop maintaining the statistics until they are next asked for
+	 */
+	private void InvalidateStats() {
+		statsValid = false;
+		extremesValid = false;
+	}
+
+	/**
+	 * UpdateStats(): Rebuild the statistics with a scan of the stack if they aren't current. Large
+	 * stacks are scanned in parallel.
+	 */
+	private void UpdateStats() {
+		if (statsValid == true) {
+			return;
+		}
+
+		stats = StackStatistics.Scan(this);
+		removalsSinceScan = 0;
+
+		// With an infinity or a NaN on the stack the results are right but they can't be maintained
+		statsValid = stats.IsAccurate();
+		extremesValid = statsValid;
+	}
+
+	/**
+	 * UpdateExtremes(): Find the minimum and maximum with a scan of the stack if they aren't current
+	 */
+	private void UpdateExtremes() {
+		if (extremesValid == false) {
+			InvalidateStats();
+			UpdateStats();
+		}
+	}
+
+	/**
+	 * writableChunk(): Return chunk c so that it can be written in place and holds at least minLength
+	 * elements. A chunk shared with a snapshot is copied first.
+	 * 
+	 * @param c
+	 * @param minLength
+	 * @return
+	 */
+	private double[] writableChunk(int c, int minLength) {
+		// The chunk directory itself is shared with a snapshot until the first write
+		if (sharedDirectory || c >= chunks.length) {
+			int dirLength = (c < chunks.length) ? chunks.length : java.lang.Math.max(c + 1, chunks.length * 2);
+			chunks = Arrays.copyOf(chunks, dirLength);
+			owners = Arrays.copyOf(owners, dirLength);
+			sharedDirectory = false;
+		}
+
+		double[] chunk = chunks[c];
+		if (chunk == null) {
+			chunk = new double[java.lang.Math.max(MIN_CHUNK_LENGTH, minLength)];
+		} else if (owners[c] != owner || chunk.length < minLength) {
+			// Copy a shared chunk, growing the top chunk toward CHUNK_SIZE as it fills
+			int newLength = chunk.length;
+			if (newLength < minLength) {
+				newLength = java.lang.Math.min(CHUNK_SIZE, java.lang.Math.max(minLength, newLength * 2));
+			}
+			chunk = Arrays.copyOf(chunk, newLength);
+		} else {
+			return chunk;
+		}
+
+		chunks[c] = chunk;
+		owners[c] = owner;
+
+		// Note the new array for QueryReplacedChunks()
+		if (replacedCount >= 0) {
+			if (replacedCount == MAX_REPLACED_CHUNKS) {
+				replacedCount = -1;
+			} else {
+				if (replacedChunks == null) {
+					replacedChunks = new int[8];
+				} else if (replacedCount == replacedChunks.length) {
+					replacedChunks = Arrays.copyOf(replacedChunks, replacedCount * 2);
+				}
+				replacedChunks[replacedCount++] = c;
+			}
+		}
+		return chunk;
+	}
+
+	/**
+	 * toString(): Return the stack in the same format as java.util.Stack. i.e. [1.0, 2.0]
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("[");
+		for (int i = 0; i < size; i++) {
+			if (i > 0) {
+				sb.append(", ");
+			}
+			sb.append(get(i));
+		}
+		return sb.append(']').toString();
+	}
+
+}
@@ -0,0 +1,280 @@
+/******************************************************************************
+ * RPNCalc
+ * 
+ * RPNCalc is is an easy to use console based RPN calculator
+ * 
+ *  Copyright (c) 2013-2021 Michael Fross
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *           
+ ******************************************************************************/
+package org.fross.rpncalc;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * ExportFile: Writes a stack or the memory slots to a CSV or raw binary file that other programs, or
+ * the import command, can read. The values are streamed through a small buffer straight to the file
+ * channel, a chunk of the stack at a time, so even a very large stack is never built into one string.
+ * 
+ * CSV files have one value per line, bottom of the stack first, written in the shortest form that
+ * reads back as exactly the same double. Binary files are raw little-endian doubles.
+ * 
+ * @author michael.d.fross
+ *
+ */
+public class ExportFile {
+	// Class Constants
+	private static final int BUFFER_BYTES = 64 * 1024;
+	private static final int MAX_NUMBER_LENGTH = 32;		// Longest text a double can be written as
+	private static final double FAST_DIGITS_LIMIT = 1e15;		// Values needing more digits go to Double.toString()
+
+	/**
+	 * Export(): Write the stack to the file. Returns the number of values written.
+	 * 
+	 * @param file
+	 * @param stk
+	 * @param binary
+	 * @return
+	 * @throws IOException
+	 */
+	public static long Export(Path file, DoubleStack stk, boolean binary) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			int size = stk.size();
+
+			if (binary == true) {
+				ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+				DoubleBuffer doubles = buf.asDoubleBuffer();
+				for (int c = 0; c < stk.chunkCount(); c++) {
+					int n = java.lang.Math.min(DoubleStack.CHUNK_SIZE, size - (c << DoubleStack.CHUNK_SHIFT));
+					if (doubles.remaining() < n) {
+						WriteDoubles(channel, buf, doubles);
+					}
+					doubles.put(stk.chunk(c), 0, n);
+				}
+				WriteDoubles(channel, buf, doubles);
+
+			} else {
+				byte[] text = new byte[BUFFER_BYTES];
+				int pos = 0;
+				for (int c = 0; c < stk.chunkCount(); c++) {
+					double[] chunk = stk.chunk(c);
+					int n = java.lang.Math.min(DoubleStack.CHUNK_SIZE, size - (c << DoubleStack.CHUNK_SHIFT));
+					for (int i = 0; i < n; i++) {
+						if (pos > text.length - MAX_NUMBER_LENGTH - 1) {
+							WriteFully(channel, ByteBuffer.wrap(text, 0, pos));
+							pos = 0;
+						}
+						pos = WriteNumber(text, pos, chunk[i]);
+						text[pos++] = '\n';
+					}
+				}
+				WriteFully(channel, ByteBuffer.wrap(text, 0, pos));
+			}
+
+			return size;
+		}
+	}
+
+	/**
+	 * ExportMemSlots(): Write the memory slots to the file. A CSV file has a slot,value line for each
+	 * slot in use. A binary file has a double for every slot with empty slots written as NaN. Returns
+	 * the number of slots written.
+	 * 
+	 * @param file
+	 * @param slots
+	 * @param binary
+	 * @return
+	 * @throws IOException
+	 */
+	public static long ExportMemSlots(Path file, Double[] slots, boolean binary) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			long count = 0;
+
+			if (binary == true) {
+				ByteBuffer buf = ByteBuffer.allocate(slots.length * Double.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+				for (int slot = 0; slot < slots.length; slot++) {
+					Double value = slots[slot];
+					buf.putDouble(value == null ? Double.NaN : value);
+					count++;
+				}
+				buf.flip();
+				WriteFully(channel, buf);
+
+			} else {
+				byte[] text = new byte[BUFFER_BYTES];
+				byte[] header = "slot,value\n".getBytes(StandardCharsets.US_ASCII);
+				System.arraycopy(header, 0, text, 0, header.length);
+				int pos = header.length;
+
+				for (int slot = 0; slot < slots.length; slot++) {
+					Double value = slots[slot];
+					if (value == null) {
+						continue;
+					}
+					if (pos > text.length - 2 * MAX_NUMBER_LENGTH - 2) {
+						WriteFully(channel, ByteBuffer.wrap(text, 0, pos));
+						pos = 0;
+					}
+					pos = WriteLong(text, pos, slot);
+					text[pos++] = ',';
+					pos = WriteNumber(text, pos, value);
+					text[pos++] = '\n';
+					count++;
+				}
+				WriteFully(channel, ByteBuffer.wrap(text, 0, pos));
+			}
+
+			return count;
+		}
+	}
+
+	/**
+	 * WriteNumber(): Write the value as text into the array at pos and return the position after it.
+	 * A value that is a whole number of millionths or so, which most typed or measured values are, is
+	 * written directly with the fewest decimal places that read back as the same double. Anything else
+	 * is written by Double.toString(), which also reads back exactly.
+	 * 
+	 * @param text
+	 * @param pos
+	 * @param value
+	 * @return
+	 */
+	static int WriteNumber(byte[] text, int pos, double value) {
+		if (value == 0.0 && Double.doubleToRawLongBits(value) == 0) {
+			text[pos++] = '0';
+			return pos;
+		}
+
+		// Find the fewest decimal places k for which value rounded to k places converts back to value.
+		// The digits and the power of ten are both exact so the division is the same conversion
+		// Double.parseDouble() would make.
+		if (value != 0.0 && java.lang.Math.abs(value) < FAST_DIGITS_LIMIT) {
+			for (int k = 0; k < Tokenizer.POW10.length; k++) {
+				double digits = java.lang.Math.rint(value * Tokenizer.POW10[k]);
+				if (java.lang.Math.abs(digits) >= FAST_DIGITS_LIMIT) {
+					break;
+				}
+				if (digits / Tokenizer.POW10[k] == value) {
+					return WriteDecimal(text, pos, (long) digits, k);
+				}
+			}
+		}
+
+		String s = Double.toString(value);
+		for (int i = 0; i < s.length(); i++) {
+			text[pos++] = (byte) s.charAt(i);
+		}
+		return pos;
+	}
+
+	/**
+	 * WriteDecimal(): Write digits / 10^decimals into the array at pos and return the position after
+	 * it
+	 * 
+	 * @param text
+	 * @param pos
+	 * @param digits
+	 * @param decimals
+	 * @return
+	 */
+	private static int WriteDecimal(byte[] text, int pos, long digits, int decimals) {
+		if (digits < 0) {
+			text[pos++] = '-';
+			digits = -digits;
+		}
+
+		// digits is below 2^53 so with 16 or more decimals it is all fraction
+		long integerPart = 0;
+		long fraction = digits;
+		if (decimals < 16) {
+			long scale = (long) Tokenizer.POW10[decimals];
+			integerPart = digits / scale;
+			fraction = digits % scale;
+		}
+
+		pos = WriteLong(text, pos, integerPart);
+		if (decimals > 0) {
+			text[pos++] = '.';
+
+			// Write the fraction right to left so its leading zeros are kept
+			for (int i = pos + decimals - 1; i >= pos; i--) {
+				text[i] = (byte) ('0' + fraction % 10);
+				fraction /= 10;
+			}
+			pos += decimals;
+		}
+		return pos;
+	}
+
+	/**
+	 * WriteLong(): Write a non-negative number into the array at pos and return the position after it
+	 * 
+	 * @param text
+	 * @param pos
+	 * @param value
+	 * @return
+	 */
+	private static int WriteLong(byte[] text, int pos, long value) {
+		int length = 1;
+		for (long v = value / 10; v > 0; v /= 10) {
+			length++;
+		}
+		for (int i = pos + length - 1; i >= pos; i--) {
+			text[i] = (byte) ('0' + value % 10);
+			value /= 10;
+		}
+		return pos + length;
+	}
+
+	/**
+	 * WriteDoubles(): Write the doubles put in the view of the buffer to the channel and empty it
+	 * 
+	 * @param channel
+	 * @param buf
+	 * @param doubles
+	 * @throws IOException
+	 */
+	private static void WriteDoubles(FileChannel channel, ByteBuffer buf, DoubleBuffer doubles) throws IOException {
+		buf.position(0).limit(doubles.position() * Double.BYTES);
+		WriteFully(channel, buf);
+		doubles.clear();
+	}
+
+	/**
+	 * WriteFully(): Write everything remaining in the buffer to the channel
+	 * 
+	 * @param channel
+	 * @param buf
+	 * @throws IOException
+	 */
+	private static void WriteFully(FileChannel channel, ByteBuffer buf) throws IOException {
+		while (buf.hasRemaining()) {
+			channel.write(buf);
+		}
+	}
+
+}
@@ -0,0 +1,195 @@
+/******************************************************************************
+ * RPNCalc
+ * 
+ * RPNCalc is is an easy to use console based RPN calculator
+ * 
+ *  Copyright (c) 2013-2021 Michael Fross
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *           
+ ******************************************************************************/
+package org.fross.rpncalc;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.text.ParseException;
+
+import jdk.jfr.Category;
+import jdk.jfr.Configuration;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+
+/**
+ * FlightRecorder: JDK Flight Recorder events for the commands, undo levels and saving and restoring
+ * of stacks and memory slots, so the garbage collections, allocations and file I/O in a recording
+ * can be tied to the command that caused them. StartRecording() starts a recording with the settings
+ * bundled in rpncalc.jfc.
+ * 
+ * Loading the first event class makes Java set up the flight recorder, which takes longer than a
+ * whole -e run. So the events are only created once the flight recorder is running. Check
+ * IsRunning() before creating one.
+ * 
+ * A recording can also be started from outside, i.e. with -XX:StartFlightRecording or jcmd. The
+ * events are in the RPNCalc category.
+ * 
+ * @author michael.d.fross
+ *
+ */
+public class FlightRecorder {
+	// Class Constants
+	private static final String SETTINGS = "/rpncalc.jfc";
+
+	/**
+	 * CommandEvent: A command or user defined word run by the calculator
+	 */
+	@Name("org.fross.rpncalc.Command")
+	@Label("Command")
+	@Category("RPNCalc")
+	@Description("A command or user defined word run by the calculator")
+	static class CommandEvent extends Event {
+		@Label("Name")
+		String name;
+
+		@Label("Kind")
+		@Description("command or word")
+		String kind;
+
+		@Label("Stack Depth")
+		@Description("Elements on the stack after the command")
+		int stackDepth;
+	}
+
+	/**
+	 * UndoSnapshotEvent: An undo level was saved. Taking the snapshot copies nothing. The elements a
+	 * level holds that no other level does are the ones copied or written since the level before it.
+	 */
+	@Name("org.fross.rpncalc.UndoSnapshot")
+	@Label("Undo Snapshot")
+	@Category("RPNCalc")
+	@Description("An undo level was saved")
+	static class UndoSnapshotEvent extends Event {
+		@Label("Elements")
+		@Description("Elements on the stack that was saved")
+		int elements;
+
+		@Label("Elements Copied")
+		@Description("Elements in chunks no other undo level holds, copied or written since the level before")
+		long elementsCopied;
+
+		@Label("Levels")
+		int levels;
+
+		@Label("Memory Used")
+		@DataAmount
+		long memoryUsed;
+	}
+
+	/**
+	 * StackIOEvent: A stack was saved to or restored from the preferences and its stack file
+	 */
+	@Name("org.fross.rpncalc.StackIO")
+	@Label("Stack Save or Restore")
+	@Category("RPNCalc")
+	@Description("Prefs.SaveStack or Prefs.RestoreStack")
+	static class StackIOEvent extends Event {
+		@Label("Operation")
+		String operation;
+
+		@Label("Stack")
+		String stackName;
+
+		@Label("Slot")
+		String slot;
+
+		@Label("Elements")
+		int elements;
+
+		@Label("Bytes")
+		@DataAmount
+		long bytes;
+	}
+
+	/**
+	 * SaveMemSlotsEvent: The memory slots were saved to the preferences
+	 */
+	@Name("org.fross.rpncalc.SaveMemSlots")
+	@Label("Save Memory Slots")
+	@Category("RPNCalc")
+	@Description("StackOps.SaveMemSlots")
+	static class SaveMemSlotsEvent extends Event {
+		@Label("Slots")
+		int slots;
+
+		@Label("Slots In Use")
+		int inUse;
+	}
+
+	/**
+	 * IsRunning(): Return true if the flight recorder has been started, either by StartRecording() or
+	 * from outside
+	 * 
+	 * @return
+	 */
+	static boolean IsRunning() {
+		return jdk.jfr.FlightRecorder.isInitialized();
+	}
+
+	/**
+	 * StartRecording(): Start a recording with the bundled settings that is written to the provided
+	 * file when the program exits. Returns false if it can't be started. Errors are reported on the
+	 * provided engine.
+	 * 
+	 * @param e
+	 * @param file
+	 * @return
+	 */
+	public static boolean StartRecording(RpnEngine e, Path file) {
+		try (InputStream in = FlightRecorder.class.getResourceAsStream(SETTINGS)) {
+			if (in == null) {
+				throw new IOException("The recording settings '" + SETTINGS + "' are missing");
+			}
+
+			Configuration settings;
+			try (Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+				settings = Configuration.create(reader);
+			}
+
+			Recording recording = new Recording(settings);
+			recording.setName("RPNCalc");
+			recording.setToDisk(true);
+			recording.setDestination(file);
+			recording.setDumpOnExit(true);
+			recording.start();
+			return true;
+
+		} catch (IOException | ParseException | IllegalStateException | SecurityException ex) {
+			e.PrintError("ERROR: Unable to start the flight recording: " + ex.getMessage());
+			return false;
+		}
+	}
+
+}
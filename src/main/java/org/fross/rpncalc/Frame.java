@@ -0,0 +1,139 @@
+/******************************************************************************
+ * RPNCalc
+ * 
+ * RPNCalc is is an easy to use console based RPN calculator
+ * 
+ *  Copyright (c) 2013-2021 Michael Fross
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *           
+ ******************************************************************************/
+package org.fross.rpncalc;
+
+import java.io.PrintStream;
+
+import org.fusesource.jansi.Ansi;
+
+/**
+ * Frame: Holds everything drawn before the prompt, the status line, the stack and the prompt
+ * itself, so it goes to the terminal in a single write instead of a write for every piece. The
+ * colors are put in the text as ANSI escapes, and only when the color changes, so a frame of white
+ * rows doesn't repeat the same escape on every row.
+ *
+ * @author michael.d.fross
+ *
+ */
+public class Frame {
+	// Class Constants
+	private static final String[] COLOR_CODES = new String[Ansi.Color.values().length];
+	private static final String RESET_CODE = Ansi.ansi().reset().toString();
+	private static final String SPACES = " ".repeat(64);
+
+	// Class Variables
+	private final StringBuilder text = new StringBuilder(4096);
+	private boolean colorEnabled = true;
+	private Ansi.Color currentColor = null;
+
+	static {
+		for (Ansi.Color c : Ansi.Color.values()) {
+			COLOR_CODES[c.ordinal()] = Ansi.ansi().a(Ansi.Attribute.INTENSITY_BOLD).fg(c).toString();
+		}
+	}
+
+	/**
+	 * EnableColor(): Turn the colors on or off. The same as Output.enableColor() for the frame.
+	 * 
+	 * @param enabled
+	 */
+	public void EnableColor(boolean enabled) {
+		colorEnabled = enabled;
+	}
+
+	/**
+	 * Clear(): Start a new frame. The buffer is kept so the next frame doesn't need to grow it again.
+	 */
+	public void Clear() {
+		text.setLength(0);
+		currentColor = null;
+	}
+
+	/**
+	 * Append(): Add the text to the frame in the provided color
+	 * 
+	 * @param color
+	 * @param s
+	 */
+	public void Append(Ansi.Color color, String s) {
+		if (colorEnabled == true && color != currentColor) {
+			text.append(COLOR_CODES[color.ordinal()]);
+			currentColor = color;
+		}
+		text.append(s);
+	}
+
+	/**
+	 * Appendln(): Add the text and a new line to the frame in the provided color
+	 * 
+	 * @param color
+	 * @param s
+	 */
+	public void Appendln(Ansi.Color color, String s) {
+		Append(color, s);
+		text.append(System.lineSeparator());
+	}
+
+	/**
+	 * AppendSpaces(): Add the number of spaces provided. Spaces look the same in any color so the color
+	 * is left as it is.
+	 * 
+	 * @param count
+	 */
+	public void AppendSpaces(int count) {
+		while (count > 0) {
+			int n = java.lang.Math.min(count, SPACES.length());
+			text.append(SPACES, 0, n);
+			count -= n;
+		}
+	}
+
+	/**
+	 * Write(): Send the frame to the provided stream and flush it. The colors are reset at the end so
+	 * what the user types isn't colored.
+	 * 
+	 * @param out
+	 */
+	public void Write(PrintStream out) {
+		if (colorEnabled == true && currentColor != null) {
+			text.append(RESET_CODE);
+			currentColor = null;
+		}
+		out.append(text);
+		out.flush();
+	}
+
+	/**
+	 * length(): Return the number of characters in the frame, including the color escapes
+	 * 
+	 * @return
+	 */
+	public int length() {
+		return text.length();
+	}
+
+}
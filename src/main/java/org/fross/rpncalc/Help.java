@@ -27,7 +27,6 @@
 package org.fross.rpncalc;
 
 import org.fross.library.Format;
-import org.fross.library.Output;
 import org.fusesource.jansi.Ansi;
 
 /**
@@ -38,96 +37,125 @@ import org.fusesource.jansi.Ansi;
  */
 public class Help {
 	/**
-	 * Display(): Show help information
+	 * Display(): Show help information on the provided engine's output
+	 * 
+	 * @param e
 	 */
-	public static void Display() {
+	public static void Display(RpnEngine e) {
 		int helpWidth = 80;
 
-		Output.printColor(Ansi.Color.CYAN, "\n+" + "-".repeat(helpWidth) + "+\n+");
-		Output.printColor(Ansi.Color.WHITE, Format.CenterText(helpWidth, ("RPN Calculator  v" + Main.VERSION)));
-		Output.printColor(Ansi.Color.CYAN, "+\n+");
-		Output.printColor(Ansi.Color.WHITE, Format.CenterText(helpWidth, Main.COPYRIGHT));
-		Output.printColorln(Ansi.Color.CYAN, "+\n+" + "-".repeat(helpWidth) + "+");
-		Output.printColorln(Ansi.Color.CYAN, Format.CenterText(helpWidth, "RPNCalc is a command line Reverse Polish Notation calculator"));
-		Output.printColorln(Ansi.Color.CYAN, Format.CenterText(helpWidth, "https://github.com/frossm/rpncalc"));
+		e.Message(Ansi.Color.CYAN, "\n+" + "-".repeat(helpWidth) + "+");
+		e.Message(Ansi.Color.WHITE, "+" + Format.CenterText(helpWidth, ("RPN Calculator  v" + Main.VERSION)) + "+");
+		e.Message(Ansi.Color.WHITE, "+" + Format.CenterText(helpWidth, Main.COPYRIGHT) + "+");
+		e.Message(Ansi.Color.CYAN, "+" + "-".repeat(helpWidth) + "+");
+		e.Message(Ansi.Color.CYAN, Format.CenterText(helpWidth, "RPNCalc is a command line Reverse Polish Notation calculator"));
+		e.Message(Ansi.Color.CYAN, Format.CenterText(helpWidth, "https://github.com/frossm/rpncalc"));
 
-		Output.printColorln(Ansi.Color.YELLOW, "\nCommand Line Options:");
-		Output.printColorln(Ansi.Color.WHITE, " -l       Load a saved named stack. Create the stack if it does not exist");
-		Output.printColorln(Ansi.Color.WHITE, " -D       Start in debug mode.  Same as using the 'debug' command");
-		Output.printColorln(Ansi.Color.WHITE, " -a [lrd] Alignment of numbers. (l)eft, (r)ight, or (d)ecmimal. Default: left");
-		Output.printColorln(Ansi.Color.WHITE, " -m num   Set the number of memory slots.  Default value is 10");
-		Output.printColorln(Ansi.Color.WHITE, " -w num   Set Width of header / status line.  Default is 70 characters");
-		Output.printColorln(Ansi.Color.WHITE, " -v       Display version information as well as latest GitHub release");
-		Output.printColorln(Ansi.Color.WHITE, " -z       Disable colorized output");
-		Output.printColorln(Ansi.Color.WHITE, " -h | ?   Show this help information.  Either key will work.");
+		e.Message(Ansi.Color.YELLOW, "\nCommand Line Options:");
+		e.Message(Ansi.Color.WHITE, " -l       Load a saved named stack. Create the stack if it does not exist");
+		e.Message(Ansi.Color.WHITE, " -D       Start in debug mode.  Same as using the 'debug' command");
+		e.Message(Ansi.Color.WHITE, " -a [lrd] Alignment of numbers. (l)eft, (r)ight, or (d)ecmimal. Default: left");
+		e.Message(Ansi.Color.WHITE, " -b       Batch mode. Run piped commands without display. Default if stdin isn't a terminal");
+		e.Message(Ansi.Color.WHITE, " -e expr  Evaluate the expression, write the results and exit.  Can be repeated");
+		e.Message(Ansi.Color.WHITE, " -i file  Import a file of numbers onto the stack at startup");
+		e.Message(Ansi.Color.WHITE, " -m num   Set the number of memory slots.  Default value is 10");
+		e.Message(Ansi.Color.WHITE, " -p num   Adaptive precision of num significant digits.  Same as 'precision num'");
+		e.Message(Ansi.Color.WHITE, " -r file  Write a JDK Flight Recorder recording of the session to the file on exit");
+		e.Message(Ansi.Color.WHITE, " -s port  Run as a server for other programs on the provided local port");
+		e.Message(Ansi.Color.WHITE, " -t file  Write the command statistics to the file as JSON on exit");
+		e.Message(Ansi.Color.WHITE, " -u num   Set the undo history memory budget in megabytes.  Default is " + UndoHistory.DEFAULT_BUDGET_MB);
+		e.Message(Ansi.Color.WHITE, " -w num   Set Width of header / status line.  Default is 70 characters");
+		e.Message(Ansi.Color.WHITE, " -v       Display version information as well as latest GitHub release");
+		e.Message(Ansi.Color.WHITE, " -z       Disable colorized output");
+		e.Message(Ansi.Color.WHITE, " -h | ?   Show this help information.  Either key will work.");
 
-		Output.printColorln(Ansi.Color.YELLOW, "\nOperands:");
-		Output.printColorln(Ansi.Color.WHITE, " +    Addition:  Add last two stack elements");
-		Output.printColorln(Ansi.Color.WHITE, " -    Subtraction: Subtract row 1 from row 2");
-		Output.printColorln(Ansi.Color.WHITE, " *    Multiplication: Muliply last two stack items");
-		Output.printColorln(Ansi.Color.WHITE, " /    Division: Divide line2 by line1");
-		Output.printColorln(Ansi.Color.WHITE, " ^    Power:  Calculate line2 to the power of line1");
+		e.Message(Ansi.Color.YELLOW, "\nOperands:");
+		e.Message(Ansi.Color.WHITE, " +    Addition:  Add last two stack elements");
+		e.Message(Ansi.Color.WHITE, " -    Subtraction: Subtract row 1 from row 2");
+		e.Message(Ansi.Color.WHITE, " *    Multiplication: Muliply last two stack items");
+		e.Message(Ansi.Color.WHITE, " /    Division: Divide line2 by line1");
+		e.Message(Ansi.Color.WHITE, " ^    Power:  Calculate line2 to the power of line1");
 
-		Output.printColorln(Ansi.Color.YELLOW, "\nCalculator Commands:");
-		Output.printColorln(Ansi.Color.WHITE, " u            Undo last action");
-		Output.printColorln(Ansi.Color.WHITE, " f            Flip the sign of the element at line1");
-		Output.printColorln(Ansi.Color.WHITE, " c            Clear the screen and empty current stack");
-		Output.printColorln(Ansi.Color.WHITE, " clean        Clear screen but keep the stack values");
-		Output.printColorln(Ansi.Color.WHITE, " d [#]        Delete the line1 value or the line number provided");
-		Output.printColorln(Ansi.Color.WHITE, " s [#] [#]    Swap the last two elments in the stack or the lines provided");
-		Output.printColorln(Ansi.Color.WHITE, " %            Convert line1 into a percentage by multipling it by 0.01");
-		Output.printColorln(Ansi.Color.WHITE, " sqrt         Perform a square root on line1");
-		Output.printColorln(Ansi.Color.WHITE, " round [n]    Round to n decimal places.  Default is 0 decimals");
-		Output.printColorln(Ansi.Color.WHITE, " aa [keep]    Add all stack items. Adding 'keep' will keep existing elements");
-		Output.printColorln(Ansi.Color.WHITE, " mod          Modulus. Perform a division and return the remainder");
-		Output.printColorln(Ansi.Color.WHITE, " avg [keep]   Replace stack with average of values.  'keep' will retain stack");
-		Output.printColorln(Ansi.Color.WHITE, " sd [keep]    Standard deviation of stack items.  'keep' will retain stack");
-		Output.printColorln(Ansi.Color.WHITE, " copy         Copy line1 and add it to the stack");
-		Output.printColorln(Ansi.Color.WHITE, " log | log10  Calculate the natural (base e) or base10 logarithm");
-		Output.printColorln(Ansi.Color.WHITE, " int          Convert line1 to an integer by discarding after the decimal");
-		Output.printColorln(Ansi.Color.WHITE, " abs          Take the absolute value of line1");
-		Output.printColorln(Ansi.Color.WHITE, " rand [L] [H] Random integer between X and Y inclusive.  Default is 1-100");
-		Output.printColorln(Ansi.Color.WHITE, " dice XdY     Roll a Y sided die X times.  Default is 1d6");
+		e.Message(Ansi.Color.YELLOW, "\nCalculator Commands:");
+		e.Message(Ansi.Color.WHITE, " u            Undo last action");
+		e.Message(Ansi.Color.WHITE, " f            Flip the sign of the element at line1");
+		e.Message(Ansi.Color.WHITE, " c            Clear the screen and empty current stack");
+		e.Message(Ansi.Color.WHITE, " clean        Clear screen but keep the stack values");
+		e.Message(Ansi.Color.WHITE, " d [#]        Delete the line1 value or the line number provided");
+		e.Message(Ansi.Color.WHITE, " s [#] [#]    Swap the last two elments in the stack or the lines provided");
+		e.Message(Ansi.Color.WHITE, " %            Convert line1 into a percentage by multipling it by 0.01");
+		e.Message(Ansi.Color.WHITE, " sqrt         Perform a square root on line1");
+		e.Message(Ansi.Color.WHITE, " round [n]    Round to n decimal places.  Default is 0 decimals");
+		e.Message(Ansi.Color.WHITE, " aa [keep]    Add all stack items. Adding 'keep' will keep existing elements");
+		e.Message(Ansi.Color.WHITE, " mod          Modulus. Perform a division and return the remainder");
+		e.Message(Ansi.Color.WHITE, " avg [keep]   Replace stack with average of values.  'keep' will retain stack");
+		e.Message(Ansi.Color.WHITE, " sd [keep]    Standard deviation of stack items.  'keep' will retain stack");
+		e.Message(Ansi.Color.WHITE, " min [keep]   Replace stack with the smallest value.  'keep' will retain stack");
+		e.Message(Ansi.Color.WHITE, " max [keep]   Replace stack with the largest value.  'keep' will retain stack");
+		e.Message(Ansi.Color.WHITE, " copy         Copy line1 and add it to the stack");
+		e.Message(Ansi.Color.WHITE, " log | log10  Calculate the natural (base e) or base10 logarithm");
+		e.Message(Ansi.Color.WHITE, " int          Convert line1 to an integer by discarding after the decimal");
+		e.Message(Ansi.Color.WHITE, " abs          Take the absolute value of line1");
+		e.Message(Ansi.Color.WHITE, " rand [L] [H] Random integer between X and Y inclusive.  Default is 1-100");
+		e.Message(Ansi.Color.WHITE, " dice XdY     Roll a Y sided die X times.  Default is 1d6");
 
-		Output.printColorln(Ansi.Color.YELLOW, "\nConversions:");
-		Output.printColorln(Ansi.Color.WHITE, " frac [base]  Display as a fraction with min provided base. Default base is 64th");
-		Output.printColorln(Ansi.Color.WHITE, " in2mm        Convert line1 from inches into millimeters");
-		Output.printColorln(Ansi.Color.WHITE, " mm2in        Convert line1 from millimeters to inches");
-		Output.printColorln(Ansi.Color.WHITE, " rad2deg      Convert line1 from raidans to degrees");
-		Output.printColorln(Ansi.Color.WHITE, " deg2rad      Convert line1 from degrees to radians");
+		e.Message(Ansi.Color.YELLOW, "\nConversions:");
+		e.Message(Ansi.Color.WHITE, " frac [base]  Display as a fraction with min provided base. Default base is 64th");
+		e.Message(Ansi.Color.WHITE, " in2mm        Convert line1 from inches into millimeters");
+		e.Message(Ansi.Color.WHITE, " mm2in        Convert line1 from millimeters to inches");
+		e.Message(Ansi.Color.WHITE, " rad2deg      Convert line1 from raidans to degrees");
+		e.Message(Ansi.Color.WHITE, " deg2rad      Convert line1 from degrees to radians");
 
-		Output.printColorln(Ansi.Color.YELLOW, "\nTrigonometry Functions:");
-		Output.printColorln(Ansi.Color.WHITE, " sin|cos|tan [rad]    Trig Functions: Angle in degrees unless rad is provided");
-		Output.printColorln(Ansi.Color.WHITE, " asin|acos|atan [rad] Trig Functions: Result in degrees unless rad is provided");
-		Output.printColorln(Ansi.Color.WHITE, " hypot                Returns the hypotenuse using line1 and line2 as the legs");
+		e.Message(Ansi.Color.YELLOW, "\nTrigonometry Functions:");
+		e.Message(Ansi.Color.WHITE, " sin|cos|tan [rad]    Trig Functions: Angle in degrees unless rad is provided");
+		e.Message(Ansi.Color.WHITE, " asin|acos|atan [rad] Trig Functions: Result in degrees unless rad is provided");
+		e.Message(Ansi.Color.WHITE, " hypot                Returns the hypotenuse using line1 and line2 as the legs");
 
-		Output.printColorln(Ansi.Color.YELLOW, "\nMemory Commands:");
-		Output.printColorln(Ansi.Color.WHITE, " mem [X] add   Add line1 to memory slot X. Default slot is 0");
-		Output.printColorln(Ansi.Color.WHITE, " mem [X] copy  Copy number from memory slot X. Default slot is 0");
-		Output.printColorln(Ansi.Color.WHITE, " mem [X] clr   Clear memory from slot X. Default slot0");
-		Output.printColorln(Ansi.Color.WHITE, " mem clearall  Clear all memory slots");
-		Output.printColorln(Ansi.Color.WHITE, " mem copyall   Copy all memory items onto the stack");
+		e.Message(Ansi.Color.YELLOW, "\nWhole Stack Operations:");
+		e.Message(Ansi.Color.WHITE, " map op [x|rad] [n]   Apply op to every element, or the top n. i.e. 'map * 2.5'");
 
-		Output.printColorln(Ansi.Color.YELLOW, "\nConstants:");
-		Output.printColorln(Ansi.Color.WHITE, " pi            Add PI to the stack");
-		Output.printColorln(Ansi.Color.WHITE, " phi           Add the Golden Ratio (phi) to the stack");
-		Output.printColorln(Ansi.Color.WHITE, " euler         Add Euler's number (e) to the stack");
+		e.Message(Ansi.Color.YELLOW, "\nUser Words:");
+		e.Message(Ansi.Color.WHITE, " : name body ;        Define a word. i.e. ': sq dup * ;'  Then use it: '3 sq'");
+		e.Message(Ansi.Color.WHITE, " : name { a b } body ; Parameters are taken off the stack.  i.e. ': area { w h } w h * ;'");
+		e.Message(Ansi.Color.WHITE, " if [else] then       Run if line1 isn't zero.  times loop  Repeat line1 times, 'i' is the pass");
+		e.Message(Ansi.Color.WHITE, " dup drop swap over   Stack words.  < > = push 1 if true, 0 if not");
+		e.Message(Ansi.Color.WHITE, " forget name          Remove a word.  'list words' shows them all");
 
-		Output.printColorln(Ansi.Color.YELLOW, "\nOperational Commands:");
-		Output.printColorln(Ansi.Color.WHITE, " list stacks  Show the list of saved stacks");
-		Output.printColorln(Ansi.Color.WHITE, " list mem     Display contents of the memory slots");
-		Output.printColorln(Ansi.Color.WHITE, " list undo    Show the current undo stack");
-		Output.printColorln(Ansi.Color.WHITE, " ss           Swap primary and secondary stack");
-		Output.printColorln(Ansi.Color.WHITE, " load         Load (or create if needed) a named stack");
-		Output.printColorln(Ansi.Color.WHITE, " a [lrd]      Set display alignment to be (l)eft, (r)ight, or (d)ecmial");
-		Output.printColorln(Ansi.Color.WHITE, " debug        Toggle DEBUG mode on/off");
-		Output.printColorln(Ansi.Color.WHITE, " ver          Display the current version");
-		Output.printColorln(Ansi.Color.WHITE, " h|?          Show this help information.  Either key will work.");
-		Output.printColorln(Ansi.Color.WHITE, " cx|x|exit    Exit Calculator.  'cx' will clear before exiting");
+		e.Message(Ansi.Color.YELLOW, "\nMemory Commands:");
+		e.Message(Ansi.Color.WHITE, " mem [X] add   Add line1 to memory slot X. Default slot is 0");
+		e.Message(Ansi.Color.WHITE, " mem [X] copy  Copy number from memory slot X. Default slot is 0");
+		e.Message(Ansi.Color.WHITE, " mem [X] clr   Clear memory from slot X. Default slot0");
+		e.Message(Ansi.Color.WHITE, " mem clearall  Clear all memory slots");
+		e.Message(Ansi.Color.WHITE, " mem copyall   Copy all memory items onto the stack");
 
-		Output.printColorln(Ansi.Color.YELLOW, "\nNotes:");
-		Output.printColorln(Ansi.Color.WHITE, "  - You can place an operand at the end of a number & execute in one step.");
-		Output.printColorln(Ansi.Color.WHITE, "    Example adding two numbers:   2 <enter> 3+ <enter>   will produce 5.");
-		Output.printColorln(Ansi.Color.CYAN, "  - See GitHub homepage (listed above) for more detailed usage instructions\n");
+		e.Message(Ansi.Color.YELLOW, "\nConstants:");
+		e.Message(Ansi.Color.WHITE, " pi            Add PI to the stack");
+		e.Message(Ansi.Color.WHITE, " phi           Add the Golden Ratio (phi) to the stack");
+		e.Message(Ansi.Color.WHITE, " euler         Add Euler's number (e) to the stack");
+
+		e.Message(Ansi.Color.YELLOW, "\nOperational Commands:");
+		e.Message(Ansi.Color.WHITE, " list stacks  Show the list of saved stacks");
+		e.Message(Ansi.Color.WHITE, " list mem     Display contents of the memory slots");
+		e.Message(Ansi.Color.WHITE, " list undo    Show the current undo stack");
+		e.Message(Ansi.Color.WHITE, " list words   Show the user defined words");
+		e.Message(Ansi.Color.WHITE, " ss           Swap primary and secondary stack");
+		e.Message(Ansi.Color.WHITE, " load         Load (or create if needed) a named stack");
+		e.Message(Ansi.Color.WHITE, " import file  Add the numbers in a text, CSV or binary file to the stack");
+		e.Message(Ansi.Color.WHITE, " export file [csv|bin] [stack|stack2|mem]  Write to a CSV or binary file");
+		e.Message(Ansi.Color.WHITE, " a [lrd]      Set display alignment to be (l)eft, (r)ight, or (d)ecmial");
+		e.Message(Ansi.Color.WHITE, " prec [n|off] Keep results exact to n significant digits, or plain doubles if off");
+		e.Message(Ansi.Color.WHITE, " print [#]    Display line1 or the line provided.  Batch mode results");
+		e.Message(Ansi.Color.WHITE, " debug        Toggle DEBUG mode on/off");
+		e.Message(Ansi.Color.WHITE, " stats [json|clear]  Show the count, time and memory used by each command");
+		e.Message(Ansi.Color.WHITE, " ver          Display the current version");
+		e.Message(Ansi.Color.WHITE, " h|?          Show this help information.  Either key will work.");
+		e.Message(Ansi.Color.WHITE, " cx|x|exit    Exit Calculator.  'cx' will clear before exiting");
+
+		e.Message(Ansi.Color.YELLOW, "\nNotes:");
+		e.Message(Ansi.Color.WHITE, "  - You can place an operand at the end of a number & execute in one step.");
+		e.Message(Ansi.Color.WHITE, "    Example adding two numbers:   2 <enter> 3+ <enter>   will produce 5.");
+		e.Message(Ansi.Color.WHITE, "  - Several commands can be entered on one line and are undone together.");
+		e.Message(Ansi.Color.WHITE, "    Example:   3 4 + 2 * <enter>   will produce 14.");
+		e.Message(Ansi.Color.CYAN, "  - See GitHub homepage (listed above) for more detailed usage instructions\n");
 	}
 }
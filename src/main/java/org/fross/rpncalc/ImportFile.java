@@ -0,0 +1,336 @@
+/******************************************************************************
+ * RPNCalc
+ * 
+ * RPNCalc is is an easy to use console based RPN calculator
+ * 
+ *  Copyright (c) 2013-2021 Michael Fross
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *           
+ ******************************************************************************/
+package org.fross.rpncalc;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * ImportFile: Reads a file of numbers onto a stack. The file is memory mapped a window at a time and
+ * the numbers are parsed straight out of the mapped bytes, so nothing is allocated per number. The
+ * format comes from the file extension:
+ * 
+ * <pre>
+ *   .stack             A stack file saved by RPNCalc
+ *   .bin .f64 .raw     Raw little-endian doubles
+ *   anything else      Text. Numbers separated by spaces, tabs, commas, semicolons or new lines.
+ *                      If the first line isn't numeric it is skipped as a CSV header.
+ * </pre>
+ * 
+ * @author michael.d.fross
+ *
+ */
+public class ImportFile {
+	// Class Constants
+	private static final long WINDOW_BYTES = 64L << 20;
+	private static final long PROGRESS_BYTES = 256L << 20;		// Show progress for files larger than this
+	private static final int MAX_TOKEN_LENGTH = 1024;
+	private static final int BATCH_SIZE = DoubleStack.CHUNK_SIZE;
+
+	/**
+	 * Import(): Add every number in the file to the top of the stack, the first number in the file
+	 * ending up lowest. Returns the number of values added. If the file can't be read the stack may
+	 * be left with some of the values on it.
+	 * 
+	 * @param file
+	 * @param stk
+	 * @param progress - Where to show the progress of a large file, or null
+	 * @return
+	 * @throws IOException
+	 */
+	public static long Import(Path file, DoubleStack stk, RpnEngine.OutputSink progress) throws IOException {
+		String name = file.getFileName().toString().toLowerCase();
+
+		if (name.endsWith(StackFile.EXTENSION)) {
+			DoubleStack src = StackFile.Read(file);
+			double[] values = src.toArray();
+			stk.pushAll(values, 0, values.length);
+			return values.length;
+		}
+
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			if (name.endsWith(".bin") || name.endsWith(".f64") || name.endsWith(".raw")) {
+				return ImportBinary(channel, stk, progress);
+			}
+			return ImportText(channel, stk, progress);
+		}
+	}
+
+	/**
+	 * ImportBinary(): Add the raw little-endian doubles in the file to the stack
+	 * 
+	 * @param channel
+	 * @param stk
+	 * @param progress - Where to show the progress of a large file, or null
+	 * @return
+	 * @throws IOException
+	 */
+	private static long ImportBinary(FileChannel channel, DoubleStack stk, RpnEngine.OutputSink progress) throws IOException {
+		long fileSize = channel.size();
+		if (fileSize % Double.BYTES != 0) {
+			throw new IOException("The size of a raw binary file must be a multiple of " + Double.BYTES + " bytes");
+		}
+
+		double[] batch = new double[BATCH_SIZE];
+		for (long position = 0; position < fileSize; position += WINDOW_BYTES) {
+			long length = java.lang.Math.min(WINDOW_BYTES, fileSize - position);
+			MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+			DoubleBuffer doubles = map.order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+
+			while (doubles.hasRemaining()) {
+				int count = java.lang.Math.min(batch.length, doubles.remaining());
+				doubles.get(batch, 0, count);
+				stk.pushAll(batch, 0, count);
+			}
+			ShowProgress(progress, fileSize, position + length);
+		}
+
+		return fileSize / Double.BYTES;
+	}
+
+	/**
+	 * ImportText(): Parse the numbers in a text file and add them to the stack. A number is never split
+	 * between windows: if one runs into the end of a window the next window starts with it.
+	 * 
+	 * @param channel
+	 * @param stk
+	 * @param progress - Where to show the progress of a large file, or null
+	 * @return
+	 * @throws IOException
+	 */
+	private static long ImportText(FileChannel channel, DoubleStack stk, RpnEngine.OutputSink progress) throws IOException {
+		long fileSize = channel.size();
+		double[] batch = new double[BATCH_SIZE];
+		int batchCount = 0;
+		long count = 0;
+		long lineNumber = 1;
+		long position = 0;
+
+		while (position < fileSize) {
+			long length = java.lang.Math.min(WINDOW_BYTES, fileSize - position);
+			boolean lastWindow = (position + length == fileSize);
+			MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+			int limit = (int) length;
+			int i = 0;
+
+			while (true) {
+				// Skip to the start of the next number
+				byte b = 0;
+				while (i < limit && IsSeparator(b = map.get(i))) {
+					if (b == '\n') {
+						lineNumber++;
+					}
+					i++;
+				}
+				if (i == limit) {
+					break;
+				}
+
+				// Find the end of it. If that is the end of the window, pick it up again in the next one.
+				int start = i;
+				while (i < limit && IsSeparator(map.get(i)) == false) {
+					i++;
+				}
+				if (i == limit && lastWindow == false) {
+					i = start;
+					break;
+				}
+				if (i - start > MAX_TOKEN_LENGTH) {
+					throw new IOException("Line " + lineNumber + " has a value longer than " + MAX_TOKEN_LENGTH + " characters");
+				}
+
+				double value;
+				try {
+					value = ParseNumber(map, start, i);
+				} catch (NumberFormatException ex) {
+					// A first line that isn't a number is taken to be a CSV header
+					if (lineNumber == 1 && count == 0 && batchCount == 0) {
+						while (i < limit && map.get(i) != '\n') {
+							i++;
+						}
+						continue;
+					}
+					throw new IOException("Line " + lineNumber + ": '" + ex.getMessage() + "' is not a number");
+				}
+
+				batch[batchCount++] = value;
+				if (batchCount == batch.length) {
+					stk.pushAll(batch, 0, batchCount);
+					count += batchCount;
+					batchCount = 0;
+				}
+			}
+
+			if (i == 0 && lastWindow == false) {
+				throw new IOException("Line " + lineNumber + " has a value longer than " + MAX_TOKEN_LENGTH + " characters");
+			}
+			position += i;
+			ShowProgress(progress, fileSize, position);
+		}
+
+		stk.pushAll(batch, 0, batchCount);
+		return count + batchCount;
+	}
+
+	/**
+	 * IsSeparator(): Return true if the byte separates two numbers
+	 * 
+	 * @param b
+	 * @return
+	 */
+	private static boolean IsSeparator(byte b) {
+		return b == ' ' || b == '\n' || b == ',' || b == '\t' || b == '\r' || b == ';';
+	}
+
+	/**
+	 * ParseNumber(): Convert the bytes from start to end into a double. An optional sign, digits with
+	 * an optional decimal point and an optional exponent are accepted. Numbers with up to 15 or so
+	 * significant digits and a small exponent are converted directly, which is exact because both the
+	 * digits and the power of ten are exactly representable. Anything else goes through
+	 * Double.parseDouble(). NaN and Infinity are accepted as written by Java. A NumberFormatException
+	 * holding the text is thrown if it isn't a number.
+	 * 
+	 * @param map
+	 * @param start
+	 * @param end
+	 * @return
+	 */
+	static double ParseNumber(MappedByteBuffer map, int start, int end) {
+		int i = start;
+		boolean negative = false;
+		boolean digits = false;
+		boolean decimal = false;
+		boolean tooLong = false;
+		long mantissa = 0;
+		int scale = 0;
+		int exponent = 0;
+
+		byte b = map.get(i);
+		if (b == '-' || b == '+') {
+			negative = (b == '-');
+			i++;
+		}
+
+		for (; i < end; i++) {
+			b = map.get(i);
+			if (b >= '0' && b <= '9') {
+				digits = true;
+				if (mantissa < (1L << 53)) {
+					mantissa = mantissa * 10 + (b - '0');
+					if (decimal == true) {
+						scale++;
+					}
+				} else {
+					tooLong = true;
+				}
+			} else if (b == '.' && decimal == false) {
+				decimal = true;
+			} else {
+				break;
+			}
+		}
+
+		// Exponent
+		if (i < end && digits == true && (b == 'e' || b == 'E')) {
+			i++;
+			boolean negativeExponent = false;
+			if (i < end && (map.get(i) == '-' || map.get(i) == '+')) {
+				negativeExponent = (map.get(i) == '-');
+				i++;
+			}
+			int exponentStart = i;
+			for (; i < end && (b = map.get(i)) >= '0' && b <= '9'; i++) {
+				exponent = java.lang.Math.min(exponent * 10 + (b - '0'), 100000);
+			}
+			if (i == exponentStart) {
+				digits = false;
+			}
+			if (negativeExponent == true) {
+				exponent = -exponent;
+			}
+		}
+
+		if (digits == false || i != end) {
+			// Exports write these as Java does
+			String text = Text(map, start, end);
+			if (text.equals("NaN")) {
+				return Double.NaN;
+			} else if (text.equals("Infinity") || text.equals("+Infinity")) {
+				return Double.POSITIVE_INFINITY;
+			} else if (text.equals("-Infinity")) {
+				return Double.NEGATIVE_INFINITY;
+			}
+			throw new NumberFormatException(text);
+		}
+
+		// Fast path when the digits and the power of ten are both exact
+		int power = exponent - scale;
+		if (tooLong == false && mantissa < (1L << 53) && power > -Tokenizer.POW10.length && power < Tokenizer.POW10.length) {
+			double value = (power < 0) ? mantissa / Tokenizer.POW10[-power] : mantissa * Tokenizer.POW10[power];
+			return negative ? -value : value;
+		}
+
+		return Double.parseDouble(Text(map, start, end));
+	}
+
+	/**
+	 * Text(): Return the bytes from start to end as a string
+	 * 
+	 * @param map
+	 * @param start
+	 * @param end
+	 * @return
+	 */
+	private static String Text(MappedByteBuffer map, int start, int end) {
+		StringBuilder sb = new StringBuilder(end - start);
+		for (int i = start; i < end; i++) {
+			sb.append((char) (map.get(i) & 0xFF));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * ShowProgress(): Display how much of a large file has been imported
+	 * 
+	 * @param progress - Where to show the progress of a large file, or null
+	 * @param fileSize
+	 * @param done
+	 */
+	private static void ShowProgress(RpnEngine.OutputSink progress, long fileSize, long done) {
+		if (progress == null || fileSize <= PROGRESS_BYTES) {
+			return;
+		}
+
+		progress.Progress("Importing: " + (done * 100 / fileSize) + "%", done == fileSize);
+	}
+
+}
@@ -0,0 +1,755 @@
+/******************************************************************************
+ * RPNCalc
+ * 
+ * RPNCalc is is an easy to use console based RPN calculator
+ * 
+ *  Copyright (c) 2013-2021 Michael Fross
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *           
+ ******************************************************************************/
+package org.fross.rpncalc;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+import org.fross.library.Output;
+import org.fusesource.jansi.Ansi;
+
+/**
+ * Journal: A write-ahead journal of the changes made to the stacks and memory slots so they survive
+ * a session that is killed before they are saved.
+ * 
+ * After each command the stacks are compared with snapshots of what was last journaled. Chunks the
+ * two share are skipped without looking at them, so only what changed is compared and written. Each
+ * change is appended as a record:
+ * 
+ * <pre>
+ *   int   Payload length
+ *   byte  Record type (LOAD, STACK, MEM, SWAP)
+ *   ...   Payload
+ *   int   CRC32 of the type and payload
+ * </pre>
+ * 
+ * Records are written to the file as soon as the command finishes. A background thread fsyncs them
+ * no more than every SYNC_INTERVAL_MS so a burst of commands shares a single fsync and the prompt never
+ * waits on the disk.
+ * 
+ * Checkpoint() starts a new journal generation and returns the state at that point for the Persister
+ * to save. The saved stack is marked with the generation it covers, and the older generations are
+ * removed once it has been written. At startup, journals left behind by sessions that are no longer
+ * running are replayed on top of the saved stacks by Recover(), skipping the generations each saved
+ * stack already covers.
+ * 
+ * @author michael.d.fross
+ *
+ */
+public class Journal {
+	// Class Constants
+	public static final long COMPACT_BYTES = 8L * 1024L * 1024L;
+	public static final long SYNC_INTERVAL_MS = 200;
+	private static final byte RECORD_LOAD = 1;		// Payload: short length, UTF-8 stack name
+	private static final byte RECORD_STACK = 2;		// Payload: byte slot, int from, int count, double[count]
+	private static final byte RECORD_MEM = 3;		// Payload: int slot, byte present, double value
+	private static final byte RECORD_SWAP = 4;		// Payload: none
+	private static final int RECORD_OVERHEAD = Integer.BYTES + 1 + Integer.BYTES;
+
+	// Class Variables
+	private final RpnEngine engine;
+	private FileChannel channel = null;
+	private final ArrayList<FileChannel> retiredChannels = new ArrayList<FileChannel>();
+	private Path journalDir = null;
+	private int generation = 0;
+	private int oldestGeneration = 0;
+	private long journalBytes = 0;
+	private ByteBuffer buf = ByteBuffer.allocate(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+	private final CRC32 crc = new CRC32();
+	private int recordStart = 0;
+	private int changeRecords = 0;
+	private boolean changedSinceCheckpoint = false;
+
+	// What was last written to the journal. The secondary stack and the memory slots are null until
+	// they have been read from the preferences.
+	private String baseName = null;
+	private DoubleStack base1 = null;
+	private DoubleStack base2 = null;
+	private Double[] baseMem = null;
+
+	// Background sync thread
+	private Thread syncThread = null;
+	private boolean syncRequested = false;
+	private boolean closed = false;
+
+	/**
+	 * RecoveredStack: The stacks of one named stack as a journal is replayed on top of them
+	 */
+	private static class RecoveredStack {
+		DoubleStack stk1;
+		DoubleStack stk2;
+		int coveredGeneration;		// Records of generations before this are already in the saved copy
+		boolean changed = false;
+	}
+
+	/**
+	 * Journal(): Create a journal of the changes made to the provided engine's stacks and memory slots
+	 * 
+	 * @param engine
+	 */
+	public Journal(RpnEngine engine) {
+		this.engine = engine;
+	}
+
+	/**
+	 * QueryEngine(): Return the engine whose changes are journaled
+	 * 
+	 * @return
+	 */
+	public RpnEngine QueryEngine() {
+		return engine;
+	}
+
+	/**
+	 * Open(): Start journaling the current stacks and memory slots. If the journal can't be created the
+	 * session continues without one and only the changes are tracked.
+	 */
+	public synchronized void Open() {
+		try {
+			journalDir = Files.createDirectories(Prefs.QueryDataDir().resolve("journal"));
+			OpenFile();
+		} catch (IOException ex) {
+			Output.debugPrint("Unable to create the journal.  Continuing without one: " + ex.getMessage());
+			channel = null;
+		}
+
+		baseName = null;
+		Record();
+
+		if (channel != null) {
+			syncThread = new Thread(this::SyncLoop, "rpncalc-journal-sync");
+			syncThread.setDaemon(true);
+			syncThread.start();
+		}
+	}
+
+	/**
+	 * Record(): Append the changes made since the last call to the journal. Called after every
+	 * command.
+	 */
+	public synchronized void Record() {
+		int changesBefore = changeRecords;
+
+		String name = engine.loadedStack;
+		if (name.equals(baseName) == false) {
+			// A different stack was loaded. Its contents are already saved so only the name is needed.
+			PutLoad(name);
+			baseName = name;
+			base1 = engine.calcStack.snapshot();
+			base2 = engine.IsStack2Restored() ? engine.calcStack2.snapshot() : null;
+			engine.TakeRestoredStack2();
+		} else {
+			// Once the secondary stack is read its changes are found by comparing it with what was read
+			if (base2 == null && engine.IsStack2Restored()) {
+				base2 = engine.TakeRestoredStack2();
+				if (base2 == null) {
+					base2 = new DoubleStack();
+				}
+			}
+
+			// Swapping the primary and secondary stacks leaves their chunks untouched
+			if (base2 != null && SameChunks(engine.calcStack, base2) && SameChunks(engine.calcStack2, base1) && SameChunks(engine.calcStack, base1) == false) {
+				PutSwap();
+				DoubleStack temp = base1;
+				base1 = base2;
+				base2 = temp;
+			}
+
+			if (PutStackChanges((byte) 1, engine.calcStack, base1)) {
+				base1 = engine.calcStack.snapshot();
+			}
+			if (base2 != null && PutStackChanges((byte) 2, engine.calcStack2, base2)) {
+				base2 = engine.calcStack2.snapshot();
+			}
+		}
+
+		// Memory slots. Like the secondary stack they are compared with what was read once they are used.
+		if (baseMem == null && engine.IsMemorySlotsRestored()) {
+			baseMem = engine.TakeRestoredMemorySlots();
+		}
+		if (engine.IsMemorySlotsRestored()) {
+			int numSlots = engine.memorySlots.length;
+			if (baseMem == null || baseMem.length != numSlots) {
+				baseMem = new Double[numSlots];
+			}
+			for (int i = 0; i < numSlots; i++) {
+				Double value = engine.memorySlots[i];
+				if (Objects.equals(value, baseMem[i]) == false) {
+					PutMem(i, value);
+					baseMem[i] = value;
+				}
+			}
+		}
+
+		Flush();
+
+		// Let the persister know there is something new to save, and report what it couldn't save
+		if (changeRecords != changesBefore) {
+			changedSinceCheckpoint = true;
+			engine.persister.Changed(journalBytes > COMPACT_BYTES);
+		}
+		engine.persister.ReportErrors();
+	}
+
+	/**
+	 * Checkpoint(): Start a new journal generation and return the state at the start of it to be saved.
+	 * Returns null if nothing has changed since the last checkpoint.
+	 * 
+	 * @return
+	 */
+	public synchronized Persister.Checkpoint Checkpoint() {
+		if (changedSinceCheckpoint == false) {
+			return null;
+		}
+		changedSinceCheckpoint = false;
+
+		if (channel != null) {
+			// The sync thread forces and closes the old file so this doesn't wait on the disk
+			retiredChannels.add(channel);
+			generation++;
+			try {
+				OpenFile();
+				PutLoad(baseName);
+				Flush();
+			} catch (IOException ex) {
+				Output.debugPrint("Unable to start a new journal.  Continuing without one: " + ex.getMessage());
+				channel = null;
+			}
+		}
+
+		return new Persister.Checkpoint(baseName, base1, base2, (baseMem != null) ? baseMem.clone() : null, generation);
+	}
+
+	/**
+	 * QueryJournalId(): Return the id a saved stack is marked with when it covers every generation of
+	 * this session's journal before the provided one
+	 * 
+	 * @param gen
+	 * @return
+	 */
+	public String QueryJournalId(int gen) {
+		return ProcessHandle.current().pid() + "-" + gen;
+	}
+
+	/**
+	 * RemoveBefore(): Remove the journal files of the generations before the provided one. Called once
+	 * the checkpoint taken at the start of that generation has been saved.
+	 * 
+	 * @param gen
+	 */
+	public synchronized void RemoveBefore(int gen) {
+		for (; oldestGeneration < gen; oldestGeneration++) {
+			try {
+				Files.deleteIfExists(JournalFile(oldestGeneration));
+			} catch (IOException ex) {
+				Output.debugPrint("Unable to remove the old journal: " + ex.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Close(): Stop journaling and remove the journal. Called after the stacks and memory slots have
+	 * been saved, at which point nothing in the journal is needed.
+	 */
+	public void Close() {
+		synchronized (this) {
+			closed = true;
+			notifyAll();
+		}
+
+		if (syncThread != null) {
+			try {
+				syncThread.join();
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		synchronized (this) {
+			if (channel != null) {
+				CloseQuietly(channel);
+				channel = null;
+			}
+			RemoveBefore(generation + 1);
+		}
+	}
+
+	/**
+	 * Recover(): Replay the journals of sessions that ended without saving on top of the saved stacks
+	 * and memory slots, save the result, and remove the journals. Called at startup before the stacks
+	 * are restored. Errors and the number of changes recovered are reported on the provided engine.
+	 * 
+	 * A journal is only removed once what was recovered from it is saved and flushed. The saved stacks
+	 * are marked as covering the whole journal, so if it is left behind, replaying it again doesn't
+	 * apply its changes twice.
+	 * 
+	 * @param e
+	 */
+	public static void Recover(RpnEngine e) {
+		// Group the journal files by the session that wrote them, in generation order
+		TreeMap<Long, TreeMap<Integer, Path>> sessions = new TreeMap<Long, TreeMap<Integer, Path>>();
+		try {
+			Path dir = Prefs.QueryDataDir().resolve("journal");
+			if (Files.isDirectory(dir) == false) {
+				return;
+			}
+
+			try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "journal-*-*.log")) {
+				for (Path file : files) {
+					String[] fields = file.getFileName().toString().replace(".log", "").split("-");
+					try {
+						long pid = Long.parseLong(fields[1]);
+						int gen = Integer.parseInt(fields[2]);
+						sessions.computeIfAbsent(pid, k -> new TreeMap<Integer, Path>()).put(gen, file);
+					} catch (NumberFormatException | ArrayIndexOutOfBoundsException ex) {
+						Output.debugPrint("Ignoring unknown file in the journal directory: " + file);
+					}
+				}
+			}
+		} catch (IOException ex) {
+			Output.debugPrint("Unable to read the journal directory: " + ex.getMessage());
+			return;
+		}
+
+		for (Long pid : sessions.keySet()) {
+			// Leave the journals of sessions that are still running alone
+			if (ProcessHandle.of(pid).map(ProcessHandle::isAlive).orElse(false) == true) {
+				continue;
+			}
+
+			int errorsBefore = e.QueryErrorCount();
+			int replayed = Replay(e, pid, sessions.get(pid));
+			Prefs.Flush(e);
+			if (e.QueryErrorCount() != errorsBefore) {
+				e.PrintError("ERROR: The changes recovered from an interrupted session could not be saved.  They will be recovered again next time");
+				continue;
+			}
+			if (replayed > 0) {
+				e.Message(Ansi.Color.CYAN, "Recovered " + replayed + " changes from an interrupted session");
+			}
+
+			for (Path file : sessions.get(pid).values()) {
+				try {
+					Files.deleteIfExists(file);
+				} catch (IOException ex) {
+					e.PrintError("ERROR: Unable to remove journal '" + file + "': " + ex.getMessage());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Replay(): Apply the records in a session's journal files to the saved stacks and memory slots and
+	 * save the result. The records of a stack in a generation its saved copy already covers are
+	 * skipped. Reading a file stops at the first incomplete or damaged record, which is where the session
+	 * was killed. Each stack that changed is saved and marked as covering every generation of the
+	 * journal. Returns the number of records applied.
+	 * 
+	 * @param e
+	 * @param pid
+	 * @param files
+	 * @return
+	 */
+	private static int Replay(RpnEngine e, long pid, TreeMap<Integer, Path> files) {
+		LinkedHashMap<String, RecoveredStack> stacks = new LinkedHashMap<String, RecoveredStack>();
+		RecoveredStack current = null;
+		int replayed = 0;
+		CRC32 crc = new CRC32();
+
+		Double[] memSlots = new Double[e.memorySlots.length];
+		StackOps.RestoreMemSlots(e, memSlots);
+
+		for (int gen : files.keySet()) {
+			Path file = files.get(gen);
+			Output.debugPrint("Replaying journal '" + file + "'");
+			try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+				MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+				map.order(ByteOrder.LITTLE_ENDIAN);
+
+				while (map.remaining() >= RECORD_OVERHEAD) {
+					int length = map.getInt();
+					if (length < 0 || map.remaining() < length + 1 + Integer.BYTES) {
+						break;
+					}
+
+					ByteBuffer record = map.slice().order(ByteOrder.LITTLE_ENDIAN);
+					record.limit(length + 1);
+					crc.reset();
+					crc.update(record.duplicate());
+					map.position(map.position() + length + 1);
+					if ((int) crc.getValue() != map.getInt()) {
+						Output.debugPrint("Journal record failed its checksum.  Stopping replay of this file");
+						break;
+					}
+
+					byte type = record.get();
+					boolean covered = current == null || gen < current.coveredGeneration;
+
+					if (type == RECORD_LOAD) {
+						byte[] nameBytes = new byte[record.getShort()];
+						record.get(nameBytes);
+						String name = new String(nameBytes, StandardCharsets.UTF_8);
+
+						// A stack loaded again later in the journal continues from where it was left
+						current = stacks.get(name);
+						if (current == null) {
+							current = new RecoveredStack();
+							current.stk1 = Prefs.RestoreStack(e, name, "1");
+							current.stk2 = Prefs.RestoreStack(e, name, "2");
+							current.coveredGeneration = CoveredGeneration(pid, name);
+							stacks.put(name, current);
+						}
+						continue;
+
+					} else if (type == RECORD_STACK && covered == false) {
+						DoubleStack stk = (record.get() == 1) ? current.stk1 : current.stk2;
+						int from = record.getInt();
+						int count = record.getInt();
+
+						stk.truncate(java.lang.Math.min(from, stk.size()));
+						for (int i = 0; i < count; i++) {
+							stk.push(record.getDouble());
+						}
+						current.changed = true;
+
+					} else if (type == RECORD_SWAP && covered == false) {
+						DoubleStack temp = current.stk1;
+						current.stk1 = current.stk2;
+						current.stk2 = temp;
+						current.changed = true;
+
+					} else if (type == RECORD_MEM) {
+						// Memory slot records hold the value so they are safe to apply again
+						int slot = record.getInt();
+						boolean present = record.get() != 0;
+						double value = record.getDouble();
+						if (slot >= 0 && slot < memSlots.length) {
+							memSlots[slot] = present ? value : null;
+						}
+
+					} else {
+						continue;
+					}
+
+					replayed++;
+				}
+			} catch (IOException | BufferUnderflowException ex) {
+				Output.debugPrint("Unable to replay journal '" + file + "': " + ex.getMessage());
+			}
+		}
+
+		// Mark each stack as covering the whole journal once it is saved, so it is never applied twice
+		String journalId = pid + "-" + (files.lastKey() + 1);
+		for (Map.Entry<String, RecoveredStack> entry : stacks.entrySet()) {
+			RecoveredStack stk = entry.getValue();
+			if (stk.changed == true) {
+				int errorsBefore = e.QueryErrorCount();
+				Prefs.SaveStack(e, stk.stk1, entry.getKey(), "1");
+				Prefs.SaveStack(e, stk.stk2, entry.getKey(), "2");
+				if (e.QueryErrorCount() == errorsBefore) {
+					Prefs.SetJournalCheckpoint(entry.getKey(), journalId);
+				}
+			}
+		}
+		StackOps.SaveMemSlots(e, memSlots);
+
+		return replayed;
+	}
+
+	/**
+	 * CoveredGeneration(): Return the first journal generation of the session that the saved copy of
+	 * the named stack does not already include
+	 * 
+	 * @param pid
+	 * @param name
+	 * @return
+	 */
+	private static int CoveredGeneration(long pid, String name) {
+		String[] id = Prefs.QueryJournalCheckpoint(name).split("-");
+		try {
+			if (id.length == 2 && Long.parseLong(id[0]) == pid) {
+				return Integer.parseInt(id[1]);
+			}
+		} catch (NumberFormatException ex) {
+			Output.debugPrint("Ignoring invalid journal checkpoint '" + Prefs.QueryJournalCheckpoint(name) + "'");
+		}
+		return 0;
+	}
+
+	/**
+	 * JournalFile(): Return the journal file of the provided generation
+	 * 
+	 * @param gen
+	 * @return
+	 */
+	private Path JournalFile(int gen) {
+		return journalDir.resolve("journal-" + ProcessHandle.current().pid() + "-" + gen + ".log");
+	}
+
+	/**
+	 * OpenFile(): Create the journal file for the current generation
+	 * 
+	 * @throws IOException
+	 */
+	private void OpenFile() throws IOException {
+		channel = FileChannel.open(JournalFile(generation), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+		journalBytes = 0;
+	}
+
+	/**
+	 * Flush(): Write the records built up in the buffer to the journal and wake the sync thread. If the
+	 * journal can't be written the session continues without it.
+	 */
+	private void Flush() {
+		buf.flip();
+		if (channel != null && buf.hasRemaining()) {
+			try {
+				while (buf.hasRemaining()) {
+					journalBytes += channel.write(buf);
+				}
+				syncRequested = true;
+				notifyAll();
+			} catch (IOException ex) {
+				Output.debugPrint("Unable to write to the journal.  Continuing without one: " + ex.getMessage());
+				CloseQuietly(channel);
+				channel = null;
+			}
+		}
+		buf.clear();
+	}
+
+	/**
+	 * SyncLoop(): Body of the sync thread. Forces what has been written to disk, then waits so the
+	 * records written in the meantime are covered by the next single fsync.
+	 */
+	private void SyncLoop() {
+		while (true) {
+			FileChannel ch;
+			ArrayList<FileChannel> retired;
+			synchronized (this) {
+				while (syncRequested == false && closed == false) {
+					try {
+						wait();
+					} catch (InterruptedException ex) {
+						return;
+					}
+				}
+				syncRequested = false;
+				ch = channel;
+				retired = new ArrayList<FileChannel>(retiredChannels);
+				retiredChannels.clear();
+			}
+
+			try {
+				for (FileChannel old : retired) {
+					old.force(false);
+					old.close();
+				}
+				if (ch != null) {
+					ch.force(false);
+				}
+			} catch (IOException ex) {
+				Output.debugPrint("Journal sync failed: " + ex.getMessage());
+			}
+
+			synchronized (this) {
+				if (closed == true) {
+					return;
+				}
+			}
+
+			try {
+				Thread.sleep(SYNC_INTERVAL_MS);
+			} catch (InterruptedException ex) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * PutStackChanges(): Add a record for the elements of the stack that differ from the base. Returns
+	 * true if there were any.
+	 * 
+	 * @param slot
+	 * @param stk
+	 * @param base
+	 * @return
+	 */
+	private boolean PutStackChanges(byte slot, DoubleStack stk, DoubleStack base) {
+		int from = CommonPrefix(stk, base);
+		if (from == stk.size() && from == base.size()) {
+			return false;
+		}
+
+		int count = stk.size() - from;
+		BeginRecord(RECORD_STACK, 1 + Integer.BYTES * 2 + count * Double.BYTES);
+		buf.put(slot).putInt(from).putInt(count);
+		for (int i = from; i < stk.size(); i++) {
+			buf.putDouble(stk.get(i));
+		}
+		EndRecord();
+		changeRecords++;
+		return true;
+	}
+
+	/**
+	 * PutMem(): Add a record setting a memory slot. A null value clears it.
+	 * 
+	 * @param slot
+	 * @param value
+	 */
+	private void PutMem(int slot, Double value) {
+		BeginRecord(RECORD_MEM, Integer.BYTES + 1 + Double.BYTES);
+		buf.putInt(slot).put((byte) (value != null ? 1 : 0)).putDouble(value != null ? value : 0.0);
+		EndRecord();
+		changeRecords++;
+	}
+
+	/**
+	 * PutLoad(): Add a record naming the stack the following records apply to
+	 * 
+	 * @param name
+	 */
+	private void PutLoad(String name) {
+		byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+		BeginRecord(RECORD_LOAD, Short.BYTES + nameBytes.length);
+		buf.putShort((short) nameBytes.length).put(nameBytes);
+		EndRecord();
+	}
+
+	/**
+	 * PutSwap(): Add a record swapping the primary and secondary stacks
+	 */
+	private void PutSwap() {
+		BeginRecord(RECORD_SWAP, 0);
+		EndRecord();
+		changeRecords++;
+	}
+
+	/**
+	 * BeginRecord(): Make room for a record with the provided payload length and write its header
+	 * 
+	 * @param type
+	 * @param length
+	 */
+	private void BeginRecord(byte type, int length) {
+		if (buf.remaining() < length + RECORD_OVERHEAD) {
+			ByteBuffer bigger = ByteBuffer.allocate(java.lang.Math.max(buf.capacity() * 2, buf.position() + length + RECORD_OVERHEAD));
+			buf.flip();
+			buf = bigger.order(ByteOrder.LITTLE_ENDIAN).put(buf);
+		}
+		recordStart = buf.position();
+		buf.putInt(length).put(type);
+	}
+
+	/**
+	 * EndRecord(): Write the checksum of the record just added to the buffer
+	 */
+	private void EndRecord() {
+		ByteBuffer record = buf.duplicate();
+		record.flip();
+		record.position(recordStart + Integer.BYTES);
+		crc.reset();
+		crc.update(record);
+		buf.putInt((int) crc.getValue());
+	}
+
+	/**
+	 * CommonPrefix(): Return the number of elements at the bottom of the two stacks that are the same.
+	 * Chunks the stacks share are the same without having to compare them.
+	 * 
+	 * @param a
+	 * @param b
+	 * @return
+	 */
+	static int CommonPrefix(DoubleStack a, DoubleStack b) {
+		int n = java.lang.Math.min(a.size(), b.size());
+		for (int c = 0, from = 0; from < n; c++, from += DoubleStack.CHUNK_SIZE) {
+			double[] chunkA = a.chunk(c);
+			double[] chunkB = b.chunk(c);
+			if (chunkA == chunkB) {
+				continue;
+			}
+
+			int length = java.lang.Math.min(DoubleStack.CHUNK_SIZE, n - from);
+			for (int i = 0; i < length; i++) {
+				if (Double.doubleToRawLongBits(chunkA[i]) != Double.doubleToRawLongBits(chunkB[i])) {
+					return from + i;
+				}
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * SameChunks(): Return true if the two stacks are the same size and share every chunk
+	 * 
+	 * @param a
+	 * @param b
+	 * @return
+	 */
+	private static boolean SameChunks(DoubleStack a, DoubleStack b) {
+		if (a.size() != b.size()) {
+			return false;
+		}
+		for (int c = 0; c < a.chunkCount(); c++) {
+			if (a.chunk(c) != b.chunk(c)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * CloseQuietly(): Close the channel ignoring any error
+	 * 
+	 * @param ch
+	 */
+	private static void CloseQuietly(FileChannel ch) {
+		try {
+			ch.close();
+		} catch (IOException ex) {
+			Output.debugPrint("Unable to close the journal: " + ex.getMessage());
+		}
+	}
+
+}
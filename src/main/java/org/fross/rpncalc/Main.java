@@ -26,11 +26,21 @@
  ******************************************************************************/
 package org.fross.rpncalc;
 
+import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Properties;
 import java.util.Scanner;
-import java.util.Stack;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
 import org.fross.library.Debug;
 import org.fross.library.Format;
@@ -44,7 +54,7 @@ import gnu.getopt.Getopt;
  * Main - Main program execution class
  * 
  * @author michael.d.fross
- *
+ * 
  */
 public class Main {
 
@@ -55,40 +65,300 @@ public class Main {
 	public static String COPYRIGHT;
 
 	// Class Variable
-	@SuppressWarnings("rawtypes")
-	static Stack<Stack> undoStack = new Stack<Stack>();
-	static Stack<Double> calcStack = new Stack<Double>();
-	static Stack<Double> calcStack2 = new Stack<Double>();
-	static char displayAlignment = 'l';
+	static RpnEngine engine = new RpnEngine(new ConsoleOutput());
+	static boolean batchMode = false;
+	static String importFile = null;
+	static int serverPort = -1;
+	static ArrayList<String> expressions = new ArrayList<String>();
+	static Path statsFile = null;
+	static Path recordingFile = null;
+	static RenderCache renderCache = new RenderCache();
+	static Frame frame = new Frame();
+
+	/**
+	 * ConsoleOutput: Sends what the commands display to the console in color
+	 */
+	static class ConsoleOutput implements RpnEngine.OutputSink {
+		@Override
+		public void Message(Ansi.Color color, String text) {
+			Output.printColorln(color, text);
+		}
+
+		@Override
+		public void Error(String text) {
+			Output.printColorln(Ansi.Color.RED, text);
+		}
+
+		@Override
+		public void Print(int line, double value) {
+			Output.printColorln(Ansi.Color.CYAN, "Line " + line + ":  " + value);
+		}
+
+		@Override
+		public void ClearScreen() {
+			Output.clearScreen();
+		}
+
+		@Override
+		public void Progress(String text, boolean finished) {
+			Output.printColor(Ansi.Color.CYAN, "\r" + text);
+			if (finished == true) {
+				Output.printColorln(Ansi.Color.CYAN, "");
+			}
+		}
+	}
+
+	/**
+	 * BatchOutput: In batch mode only the results of print commands, to standard output, and errors, to
+	 * standard error, are written. Everything else the commands display is discarded.
+	 */
+	static class BatchOutput implements RpnEngine.OutputSink {
+		private final PrintStream out;
+		private boolean printUsed = false;
+
+		BatchOutput(PrintStream out) {
+			this.out = out;
+		}
+
+		@Override
+		public void Message(Ansi.Color color, String text) {
+		}
+
+		@Override
+		public void Error(String text) {
+			System.err.println(text);
+		}
+
+		@Override
+		public void Print(int line, double value) {
+			printUsed = true;
+			out.println(value);
+		}
+
+		/**
+		 * QueryPrintUsed(): Return true if a print command has written a result
+		 * 
+		 * @return
+		 */
+		public boolean QueryPrintUsed() {
+			return printUsed;
+		}
+	}
+
+	/**
+	 * RestoredStack: The primary stack read on the restore thread along with any errors reading it. The
+	 * engine isn't thread safe, so the errors are reported on it once the stack has been read.
+	 */
+	static class RestoredStack implements RpnEngine.OutputSink {
+		DoubleStack stack = null;
+		final ArrayList<String> errors = new ArrayList<String>();
+
+		@Override
+		public void Message(Ansi.Color color, String text) {
+		}
+
+		@Override
+		public void Error(String text) {
+			errors.add(text);
+		}
+
+		@Override
+		public void Print(int line, double value) {
+		}
+	}
 
 	/**
-	 * DisplayStatusLine(): Display the last line of the header and the separator line. This is a
-	 * separate function given it also inserts the loaded stack and spaced everything correctly.
+	 * DisplayFrame(): Display the status line, the current stack and the prompt. They are composed
+	 * into the frame first and written to the terminal all at once, which keeps the redraw from
+	 * flickering on a slow connection.
 	 * 
 	 */
-	public static void DisplayStatusLine() {
+	public static void DisplayFrame() {
+		frame.Clear();
+		ComposeStatusLine();
+		ComposeStack();
+		frame.Append(Ansi.Color.YELLOW, "\n>>  ");
+		frame.Write(System.out);
+	}
+
+	/**
+	 * ComposeStatusLine(): Add the last line of the header and the separator line to the frame. This
+	 * is a separate function given it also inserts the loaded stack and spaced everything correctly.
+	 * 
+	 */
+	public static void ComposeStatusLine() {
 		// Format the number of memory slots used
-		String sfMem = String.format("Mem:%02d", StackOps.QueryInUseMemorySlots());
+		String sfMem = String.format("Mem:%02d", StackOps.QueryInUseMemorySlots(engine));
 
-		// Format the undo level to 2 digits. Can't image I'd need over 99 undo levels
-		String sfUndo = String.format("Undo:%02d", Main.undoStack.size());
+		// Format the undo level to 2 digits along with the memory the undo history is holding
+		String sfUndo = String.format("Undo:%02d/%s", engine.undoStack.size(), FormatBytes(engine.undoStack.QueryMemoryUsed()));
 
 		// Determine how many dashes to use after remove space for the undo and stack name
-		int numDashes = PROGRAMWIDTH - 2 - sfMem.length() - sfUndo.length() - Prefs.QueryLoadedStack().length() - 11;
-
-		// Print the StatusLine dashes
-		Output.printColor(Ansi.Color.CYAN, "+");
-		Output.printColor(Ansi.Color.CYAN, "-".repeat(numDashes));
-
-		// Print the StatusLine Data in chunks to be able to better control color output
-		Output.printColor(Ansi.Color.CYAN, "[");
-		Output.printColor(Ansi.Color.WHITE, sfMem);
-		Output.printColor(Ansi.Color.CYAN, "]-[");
-		Output.printColor(Ansi.Color.WHITE, sfUndo);
-		Output.printColor(Ansi.Color.CYAN, "]-[");
-		Output.printColor(Ansi.Color.WHITE, Prefs.QueryLoadedStack() + ":" + Prefs.QueryCurrentStackNum());
-		Output.printColor(Ansi.Color.CYAN, "]-");
-		Output.printColorln(Ansi.Color.CYAN, "+");
+		int numDashes = PROGRAMWIDTH - 2 - sfMem.length() - sfUndo.length() - engine.loadedStack.length() - 11;
+
+		// Add the StatusLine dashes
+		frame.Append(Ansi.Color.CYAN, "+");
+		frame.Append(Ansi.Color.CYAN, "-".repeat(numDashes));
+
+		// Add the StatusLine Data in chunks to be able to better control color output
+		frame.Append(Ansi.Color.CYAN, "[");
+		frame.Append(Ansi.Color.WHITE, sfMem);
+		frame.Append(Ansi.Color.CYAN, "]-[");
+		frame.Append(Ansi.Color.WHITE, sfUndo);
+		frame.Append(Ansi.Color.CYAN, "]-[");
+		frame.Append(Ansi.Color.WHITE, engine.loadedStack + ":" + engine.currentStackNum);
+		frame.Append(Ansi.Color.CYAN, "]-");
+		frame.Appendln(Ansi.Color.CYAN, "+");
+	}
+
+	/**
+	 * FormatBytes(): Return a short human readable version of a byte count. i.e. 512B, 12K, 3.4M
+	 * 
+	 * @param bytes
+	 * @return
+	 */
+	public static String FormatBytes(long bytes) {
+		if (bytes < 1024) {
+			return bytes + "B";
+		} else if (bytes < 1024 * 1024) {
+			return (bytes / 1024) + "K";
+		} else if (bytes < 1024L * 1024 * 1024) {
+			return String.format("%.1fM", bytes / (1024.0 * 1024));
+		}
+		return String.format("%.1fG", bytes / (1024.0 * 1024 * 1024));
+	}
+
+	/**
+	 * ComposeStack(): Add the current stack to the frame using the selected alignment
+	 * 
+	 */
+	public static void ComposeStack() {
+		DoubleStack calcStack = engine.calcStack;
+		char displayAlignment = engine.displayAlignment;
+
+		// Format only what changed since the last time the stack was displayed
+		renderCache.Update(calcStack);
+		int maxDigitsBeforeDecimal = renderCache.QueryMaxDigitsBeforeDecimal();
+
+		// Display the current stack
+		for (int i = 0; i < calcStack.size(); i++) {
+
+			// Add Stack Row Number
+			int lineNum = calcStack.size() - i;
+			String sn = (lineNum < 10 ? "0" : "") + lineNum + ":  ";
+			frame.Append(Ansi.Color.CYAN, sn);
+
+			// Configure the alignment based on the -a: option
+			if (displayAlignment == 'd') {
+				// Put in spaces to align the decimals
+				int decimalLocation = renderCache.QueryDecimalIndex(i);
+				if (maxDigitsBeforeDecimal > decimalLocation) {
+					frame.AppendSpaces(maxDigitsBeforeDecimal - decimalLocation);
+				}
+				sn = renderCache.QueryFormatted(i);
+
+			} else if (displayAlignment == 'r') {
+				// Add a few extra digits to maxDigitsBeforeDecimal
+				sn = renderCache.QueryFormatted(i);
+				int width = maxDigitsBeforeDecimal + 7;
+				if (sn.length() < width) {
+					sn = " ".repeat(width - sn.length()) + sn;
+				}
+
+			} else {
+				sn = renderCache.QueryFormatted(i);
+			}
+
+			frame.Appendln(Ansi.Color.WHITE, sn);
+		}
+	}
+
+	/**
+	 * StdinIsTerminal(): Return true if standard input is a terminal. Only standard input matters so
+	 * redirecting the output, i.e. 'rpncalc > log', still runs interactively. Where /proc isn't
+	 * available System.console() is used, which is also null when standard output is redirected.
+	 * 
+	 * @return
+	 */
+	static boolean StdinIsTerminal() {
+		try {
+			String target = Files.readSymbolicLink(Paths.get("/proc/self/fd/0")).toString();
+			return target.startsWith("/dev/pts/") || target.startsWith("/dev/tty") || target.equals("/dev/console");
+		} catch (IOException | UnsupportedOperationException | SecurityException ex) {
+			return System.console() != null;
+		}
+	}
+
+	/**
+	 * ProcessBatch(): Read commands from standard input and execute them without displaying the stack
+	 * or prompt between them. Only the results of print commands and errors are written. Everything
+	 * else the commands display is discarded unless debug mode is on.
+	 * 
+	 */
+	public static void ProcessBatch() {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
+		String line;
+
+		try {
+			while ((line = reader.readLine()) != null) {
+				engine.Execute(line);
+				engine.journal.Record();
+				if (engine.QueryExitRequested() == true) {
+					break;
+				}
+			}
+		} catch (IOException ex) {
+			engine.PrintError("ERROR: Unable to read from standard input: " + ex.getMessage());
+		}
+	}
+
+	/**
+	 * Evaluate(): One shot mode. Run the expressions on an empty stack and write the results the way
+	 * batch mode does, then return the exit status. Nothing is read from or saved to the preferences,
+	 * no journal is kept and no header is displayed, unless a stack is named with -l. Then that stack
+	 * is loaded first and saved afterwards.
+	 * 
+	 * @param expressions
+	 * @return
+	 */
+	static int Evaluate(ArrayList<String> expressions) {
+		PrintStream stdout = System.out;
+		BatchOutput output = new BatchOutput(stdout);
+		String loadedStack = engine.loadedStack;
+		engine = new RpnEngine(output, engine);
+		if (Debug.query() == false) {
+			System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+		}
+
+		if (loadedStack != null) {
+			Journal.Recover(engine);
+			engine.loadedStack = loadedStack;
+			engine.calcStack = Prefs.RestoreStack(engine, loadedStack, "1");
+			engine.DeferStack2();
+		}
+
+		if (importFile != null) {
+			StackOps.cmdImport(engine, importFile);
+		}
+
+		for (String expression : expressions) {
+			engine.Execute(expression);
+			if (engine.QueryExitRequested() == true) {
+				break;
+			}
+		}
+
+		// Saves the loaded stack if there is one
+		engine.Close();
+
+		System.setOut(stdout);
+		if (output.QueryPrintUsed() == false) {
+			for (int i = 0; i < engine.calcStack.size(); i++) {
+				stdout.println(engine.calcStack.get(i));
+			}
+		}
+		stdout.flush();
+		return engine.QueryErrorCount() == 0 ? 0 : 1;
 	}
 
 	/**
@@ -96,14 +366,8 @@ public class Main {
 	 * 
 	 * @param args
 	 */
-	@SuppressWarnings("unchecked")
 	public static void main(String[] args) {
-		Scanner scanner = new Scanner(System.in);
-		boolean ProcessCommandLoop = true;
 		int optionEntry;
-		String cmdInput = "";		// What the user enters
-		String cmdInputCmd = "";	// The first field. The command.
-		String cmdInputParam = "";	// The remaining string. Parameters
 
 		// Process application level properties file
 		// Update properties from Maven at build time:
@@ -119,35 +383,86 @@ public class Main {
 		}
 
 		// Process Command Line Options and set flags where needed
-		Getopt optG = new Getopt("RPNCalc", args, "Dl:a:m:w:vzh?");
+		Getopt optG = new Getopt("RPNCalc", args, "Dl:a:be:i:m:p:r:s:t:u:w:vzh?");
 		while ((optionEntry = optG.getopt()) != -1) {
 			switch (optionEntry) {
 			case 'D': // Debug Mode
 				Debug.enable();
 				break;
 			case 'l':
-				Prefs.SetLoadedStack(String.valueOf(optG.getOptarg()));
+				engine.loadedStack = String.valueOf(optG.getOptarg());
 				break;
 			case 'a':
 				if (optG.getOptarg().charAt(0) == 'r') {
 					Output.debugPrint("RIGHT alignment selected");
-					displayAlignment = 'r';
+					engine.displayAlignment = 'r';
 				} else if (optG.getOptarg().charAt(0) == 'd') {
 					Output.debugPrint("DECIMAL alignment selected");
-					displayAlignment = 'd';
+					engine.displayAlignment = 'd';
 				} else if (optG.getOptarg().charAt(0) == 'l') {
 					Output.debugPrint("LEFT alignment selected");
-					displayAlignment = 'l';
+					engine.displayAlignment = 'l';
 				} else {
 					Output.printColorln(Ansi.Color.RED, "ERROR: The -a alignment must be either a 'l', 'r', or 'd'");
-					Help.Display();
+					Help.Display(engine);
 					System.exit(0);
 					break;
 				}
 				break;
 
+			case 'b': // Batch Mode
+				batchMode = true;
+				break;
+
+			case 'e': // Evaluate an expression and exit
+				expressions.add(optG.getOptarg());
+				break;
+
+			case 'i': // Import a file of numbers at startup
+				importFile = optG.getOptarg();
+				break;
+
 			case 'm':
-				StackOps.SetMaxMemorySlots(optG.getOptarg());
+				StackOps.SetMaxMemorySlots(engine, optG.getOptarg());
+				break;
+
+			case 'p': // Adaptive precision in significant digits
+				try {
+					engine.mathContext = AdaptiveMath.QueryMathContext(Integer.parseInt(optG.getOptarg()));
+				} catch (IllegalArgumentException ex) {
+					Output.fatalError("Incorrect precision provided: '" + optG.getOptarg() + "'", 2);
+				}
+				break;
+
+			case 'r': // Record JDK Flight Recorder events to a file
+				try {
+					recordingFile = Paths.get(optG.getOptarg());
+				} catch (InvalidPathException ex) {
+					Output.fatalError("Incorrect recording file provided: '" + optG.getOptarg() + "'", 2);
+				}
+				break;
+
+			case 's': // Run as a server on the provided port
+				try {
+					serverPort = Integer.parseInt(optG.getOptarg());
+					if (serverPort < 0 || serverPort > 65535) {
+						throw new NumberFormatException();
+					}
+				} catch (NumberFormatException ex) {
+					Output.fatalError("Incorrect server port provided: '" + optG.getOptarg() + "'", 2);
+				}
+				break;
+
+			case 't': // Write the command statistics to a file on exit
+				try {
+					statsFile = Paths.get(optG.getOptarg());
+				} catch (InvalidPathException ex) {
+					Output.fatalError("Incorrect statistics file provided: '" + optG.getOptarg() + "'", 2);
+				}
+				break;
+
+			case 'u':
+				engine.undoStack.SetBudget(optG.getOptarg());
 				break;
 
 			case 'w':
@@ -174,465 +489,172 @@ public class Main {
 
 			case 'z': // Disable colorized output
 				Output.enableColor(false);
+				frame.EnableColor(false);
 				break;
 
 			case '?': // Help
 			case 'h':
-				Help.Display();
+				Help.Display(engine);
 				System.exit(0);
 				break;
 
 			default:
 				Output.printColorln(Ansi.Color.RED, "ERROR: Unknown Command Line Option: '" + (char) optionEntry + "'");
-				Help.Display();
+				Help.Display(engine);
 				System.exit(0);
 				break;
 			}
 		}
 
-		// Display some useful information about the environment if in Debug Mode
-		Debug.displaySysInfo();
-		Output.debugPrint("Command Line Options");
-		Output.debugPrint("  -D:  " + Debug.query());
-		Output.debugPrint("  -l:  " + Prefs.QueryLoadedStack());
-		Output.debugPrint("  -a:  " + displayAlignment);
-
-		// Restore the items in the memory slots during startup
-		StackOps.RestoreMemSlots();
-
-		// Pull the existing stacks from the preferences if they exist
-		calcStack = Prefs.RestoreStack("1");
-		calcStack2 = Prefs.RestoreStack("2");
-		Output.debugPrint("Elements in the Stack: " + calcStack.size());
-
-		// Display the initial program header information
-		Output.printColorln(Ansi.Color.CYAN, "+" + "-".repeat(PROGRAMWIDTH - 2) + "+");
-		Output.printColorln(Ansi.Color.CYAN, Format.CenterText(PROGRAMWIDTH, "RPN Calculator  v" + VERSION, "|", "|"));
-		Output.printColorln(Ansi.Color.CYAN, Format.CenterText(PROGRAMWIDTH, COPYRIGHT, "|", "|"));
-		Output.printColorln(Ansi.Color.CYAN, Format.CenterText(PROGRAMWIDTH, "Enter command 'h' for help details", "|", "|"));
-
-		// Start Main Command Loop
-		while (ProcessCommandLoop == true) {
-			int maxDigitsBeforeDecimal = 0;
-
-			// Display the dashed status line
-			DisplayStatusLine();
-
-			// Loop through the stack and count the max digits before the decimal for use with the decimal
-			// alignment mode
-			for (int k = 0; k < calcStack.size(); k++) {
-				int decimalIndex = Format.Comma(calcStack.get(k)).indexOf(".");
-				// If current stack item has more digits ahead of decimal make that the max.
-				// Commas are included.
-				if (maxDigitsBeforeDecimal < decimalIndex) {
-					maxDigitsBeforeDecimal = decimalIndex;
-				}
-			}
-
-			// Display the current stack
-			for (int i = 0; i < calcStack.size(); i++) {
+		// Count the bytes each command allocates. Starting the counter takes longer than a one shot run
+		// so those only count them if the statistics are written out.
+		if (expressions.isEmpty() == true || statsFile != null) {
+			Metrics.StartAllocationCounter();
+		}
+		if (statsFile != null) {
+			Metrics.DumpOnExit(statsFile);
+		}
 
-				// Display Stack Row Number
-				String sn = String.format("%02d:  ", calcStack.size() - i);
-				Output.printColor(Ansi.Color.CYAN, sn);
+		// Start the flight recording before any command runs so it sees all of them
+		if (recordingFile != null) {
+			FlightRecorder.StartRecording(engine, recordingFile);
+		}
 
-				// Configure the alignment based on the -a: option
-				if (displayAlignment == 'd') {
-					// Put in spaces to align the decimals
-					int decimalLocation = Format.Comma(calcStack.get(i)).indexOf(".");
-					for (int k = 0; k < maxDigitsBeforeDecimal - decimalLocation; k++) {
-						Output.print(" ");
-					}
-					sn = Format.Comma(calcStack.get(i));
+		// Evaluate the expressions given with -e and exit without the rest of the startup
+		if (expressions.isEmpty() == false) {
+			System.exit(Evaluate(expressions));
+		}
 
-				} else if (displayAlignment == 'r') {
-					// Add a few extra digits to maxDigitsBeforeDecimal
-					sn = String.format("%" + (maxDigitsBeforeDecimal + 7) + "s", Format.Comma(calcStack.get(i)));
+		// When the commands don't come from a terminal no one is typing at a prompt so switch to batch mode
+		if (StdinIsTerminal() == false) {
+			batchMode = true;
+		}
 
-				} else {
-					sn = Format.Comma(calcStack.get(i));
-				}
+		// The stack saved without a name is called default
+		if (engine.loadedStack == null) {
+			engine.loadedStack = "default";
+		}
 
-				// Output.printColorln(Ansi.Color.WHITE, Math.Comma(calcStack.get(i)));
-				Output.printColorln(Ansi.Color.WHITE, sn);
+		// In batch mode the engine's output only keeps the results and errors. Anything else written to
+		// standard output is discarded unless debug mode is on.
+		PrintStream stdout = System.out;
+		BatchOutput batchOutput = null;
+		if (batchMode == true) {
+			batchOutput = new BatchOutput(stdout);
+			String loadedStack = engine.loadedStack;
+			engine = new RpnEngine(batchOutput, engine);
+			engine.loadedStack = loadedStack;
+			if (Debug.query() == false) {
+				System.setOut(new PrintStream(OutputStream.nullOutputStream()));
 			}
+		}
 
-			// Input command from user
-			Output.printColor(Ansi.Color.YELLOW, "\n>>  ");
-			cmdInput = scanner.nextLine();
-
-			// Break each line entered into a command and a parameter string
-			try {
-				String[] ci = cmdInput.toLowerCase().trim().split("\\s+", 2);
-				cmdInputCmd = ci[0];
-				cmdInputParam = ci[1];
-				Output.debugPrint("Entered: '" + cmdInput + "'  Command: '" + cmdInputCmd + "' Parameter: '" + cmdInputParam + "'");
-
-			} catch (ArrayIndexOutOfBoundsException e) {
-				// Ignore if there is no command or parameter entered
-				Output.debugPrint("Entered: '" + cmdInput + "'  Command: '" + cmdInputCmd + "' Parameter: '" + cmdInputParam + "'");
-				if (cmdInputCmd.isEmpty()) {
-					Output.debugPrint("Blank line entered");
-					continue;
-				}
-			}
-
-			// Main switch statement to process user input and call the correct functions
-			switch (cmdInputCmd) {
-
-			/*********************************************
-			 * Calculator Commands
-			 *********************************************/
-			// Undo
-			case "undo":
-			case "u":
-				StackOps.cmdUndo();
-				break;
-
-			// Flip Sign
-			case "flip":
-			case "f":
-				StackOps.cmdFlipSign();
-				break;
-
-			// Clear Screen and Stack
-			case "clear":
-			case "c":
-				StackOps.cmdClear();
-				break;
-
-			// Clean the screen and redisplay the stack
-			case "clean":
-			case "cl":
-				StackOps.cmdClean();
-				break;
-
-			// Delete
-			case "delete":
-			case "del":
-			case "d":
-				// If Parameter is empty, delete the value on the top of the stack
-				if (cmdInputParam.isEmpty())
-					StackOps.cmdDelete("1");
-				else
-					StackOps.cmdDelete(cmdInputParam);
-				break;
-
-			// Percent
-			case "%":
-				Output.debugPrint("Create a percent by dividing by 100");
-				undoStack.push((Stack<Double>) calcStack.clone());
-				calcStack.push(calcStack.pop() / 100);
-				break;
-
-			// Swap Elements in a stack
-			case "swap":
-			case "s":
-				StackOps.cmdSwapElements(cmdInputParam);
-				break;
-
-			// Square Root
-			case "sqrt":
-				StackOps.cmdSqrt();
-				break;
-
-			// Round
-			case "round":
-				StackOps.cmdRound(cmdInputParam);
-				break;
-
-			// AddAll
-			case "aa":
-				StackOps.cmdAddAll(cmdInputParam);
-				break;
-
-			// Modulus
-			case "mod":
-				StackOps.cmdMod();
-				break;
-
-			// Average
-			case "mean":
-			case "average":
-			case "avg":
-				StackOps.cmdAverage(cmdInputParam);
-				break;
-				
-			// Standard Deviation
-			case "sd":
-				StackOps.cmdStdDeviation(cmdInputParam);
-				break;
-				
-			// Copy Item
-			case "copy":
-				StackOps.cmdCopy();
-				break;
-
-			// Natural (base e) Logarithm
-			case "log":
-				StackOps.cmdLog();
-				break;
-
-			// Base10 Logarithm
-			case "log10":
-				StackOps.cmdLog10();
-				break;
-
-			// Integer
-			case "int":
-				StackOps.cmdInteger();
-				break;
-
-			// Absolute Value
-			case "abs":
-				StackOps.cmdAbsoluteValue();
-				break;
-
-			// Random Number Generation
-			case "rand":
-			case "random":
-				StackOps.cmdRandom(cmdInputParam);
-				break;
-
-			// Dice
-			case "dice":
-				StackOps.cmdDice(cmdInputParam);
-				break;
-
-			/*********************************************
-			 * Conversions
-			 *********************************************/
-			// Fraction
-			case "frac":
-			case "fraction":
-				StackOps.cmdFraction(cmdInputParam);
-				break;
-
-			// Convert inches to millimeters
-			case "in2mm":
-			case "2mm":
-				StackOps.cmdConvert2MM();
-				break;
-
-			// Convert millimeters to inches
-			case "mm2in":
-			case "2in":
-				StackOps.cmdConvert2IN();
-				break;
-
-			// Convert to Radians
-			case "deg2rad":
-			case "2rad":
-				StackOps.cmdRadian();
-				break;
-
-			// Convert to Degrees
-			case "rad2deg":
-			case "2deg":
-				StackOps.cmdDegree();
-				break;
-
-			/*********************************************
-			 * Trigonometry Functions
-			 *********************************************/
-			// Trigonometry Functions
-			case "tan":
-			case "sin":
-			case "cos":
-				StackOps.cmdTrig(cmdInputCmd, cmdInputParam);
-				break;
-
-			// Arc-Trigonometry Functions
-			case "atan":
-			case "asin":
-			case "acos":
-				StackOps.cmdArcTrig(cmdInputCmd, cmdInputParam);
-				break;
-
-			// Hypotenuse
-			case "hypot":
-			case "hypotenuse":
-				StackOps.cmdHypotenuse();
-				break;
-
-			/*********************************************
-			 * Memory Functions
-			 *********************************************/
-			case "memory":
-			case "mem":
-				StackOps.cmdMem(cmdInputParam);
-				break;
-
-			/*********************************************
-			 * Constants
-			 *********************************************/
-			// Add PI
-			case "pi":
-				undoStack.push((Stack<Double>) calcStack.clone());
-				Output.printColorln(Ansi.Color.CYAN, "The value PI added to the stack");
-				calcStack.add(java.lang.Math.PI);
-				break;
-
-			// Add PHI also known as The Golden Ratio
-			case "phi":
-				undoStack.push((Stack<Double>) calcStack.clone());
-				Output.printColorln(Ansi.Color.CYAN, "Phi, the golden ratio, added to the stack");
-				calcStack.add(1.61803398874989);
-				break;
-
-			// Euler's number
-			case "euler":
-				undoStack.push((Stack<Double>) calcStack.clone());
-				Output.printColorln(Ansi.Color.CYAN, "Euler's number (e) to the stack");
-				calcStack.add(2.7182818284590452353602874713527);
-				break;
-
-			/*********************************************
-			 * Operational Commands
-			 *********************************************/
-			// List
-			// Supported commands are "stacks" | "mem" | "undo"
-			case "list":
-				StackOps.cmdList(cmdInputParam);
-				break;
-
-			// Load
-			case "load":
-				StackOps.cmdLoad(cmdInputParam);
-				break;
-
-			// Swap Stack
-			case "ss":
-				StackOps.cmdSwapStack();
-				break;
-
-			// Debug Toggle
-			case "debug":
-				StackOps.cmdDebug();
-				break;
-
-			// Display Alignment
-			case "a":
-				try {
-					StackOps.cmdAlign(cmdInputParam.charAt(0));
-				} catch (StringIndexOutOfBoundsException ex) {
-					Output.printColorln(Ansi.Color.RED, "ERROR: Must provide an alignment value of 'l'eft, 'd'ecimal, or 'r'ight");
-				}
-				break;
-
-			// Version
-			case "ver":
-			case "version":
-				Output.printColorln(Ansi.Color.YELLOW, "Version: v" + VERSION);
-				Output.printColorln(Ansi.Color.CYAN, COPYRIGHT);
-				break;
-
-			// Help
-			case "h":
-			case "?":
-			case "help":
-				Help.Display();
-				break;
-
-			// Clear & Exit
-			case "cx":
-				Main.calcStack.clear();
-				Output.debugPrint("Exiting Command Loop");
-				ProcessCommandLoop = false;
-				break;
-
-			// Exit
-			case "x":
-			case "exit":
-				Output.debugPrint("Exiting Command Loop");
-				ProcessCommandLoop = false;
-				break;
-
-			/*********************************************
-			 * Operands
-			 *********************************************/
-			case "+":
-			case "-":
-			case "*":
-			case "/":
-			case "^":
-				StackOps.cmdOperand(cmdInputCmd);
-				break;
-
-			default:
-				// Check for a fraction. If number entered contains a '/' but it's not at the
-				// end, then it must be a fraction.
-				if (cmdInput.contains("/") && !cmdInput.substring(cmdInput.length() - 1).matches("/")) {
-					long fracInteger = 0;
-					double fracDecimalEquiv = 0.0;
-
-					// If there wasn't an integer entered, move the fraction to the parameter
-					// variable
-					if (cmdInputCmd.contains("/")) {
-						cmdInputParam = cmdInputCmd;
-					} else {
-						fracInteger = Long.parseLong(cmdInputCmd);
-					}
-
-					double fracTop = Double.parseDouble(cmdInputParam.substring(0, cmdInputParam.indexOf('/')));
-					double fracBottom = Double.parseDouble(cmdInputParam.substring(cmdInputParam.indexOf('/') + 1));
+		// Display some useful information about the environment if in Debug Mode
+		Debug.displaySysInfo();
+		Output.debugPrint("Command Line Options");
+		Output.debugPrint("  -D:  " + Debug.query());
+		Output.debugPrint("  -l:  " + engine.loadedStack);
+		Output.debugPrint("  -a:  " + engine.displayAlignment);
+		Output.debugPrint("  -b:  " + batchMode);
+
+		// Apply the changes journaled by sessions that ended without saving
+		Journal.Recover(engine);
+
+		// Serve calculator sessions to other programs instead of running one here. Each session is its
+		// own engine so the saved stacks are only loaded when a session asks for them.
+		if (serverPort >= 0) {
+			System.setOut(stdout);
+			Server.Run(serverPort, engine);
+			return;
+		}
 
-					// Divide the fraction and get a decimal equivalent
-					fracDecimalEquiv = fracTop / fracBottom;
+		// The secondary stack and the memory slots are read from the preferences when a command first
+		// uses them. The primary stack is read on another thread while the header is displayed.
+		engine.DeferRestore();
+		String restoreName = engine.loadedStack;
+		FutureTask<RestoredStack> restore = new FutureTask<RestoredStack>(() -> {
+			RestoredStack restored = new RestoredStack();
+			restored.stack = Prefs.RestoreStack(new RpnEngine(restored), restoreName, "1");
+			return restored;
+		});
+		Thread restoreThread = new Thread(restore, "rpncalc-restore");
+		restoreThread.setDaemon(true);
+		restoreThread.start();
 
-					// Simply convert the fraction to a decimal and add it to the stack
-					Output.debugPrint("Fraction Entered: '" + cmdInput + "' Decimal: " + (fracInteger + fracDecimalEquiv));
+		// Display the initial program header information
+		if (batchMode == false) {
+			Output.printColorln(Ansi.Color.CYAN, "+" + "-".repeat(PROGRAMWIDTH - 2) + "+");
+			Output.printColorln(Ansi.Color.CYAN, Format.CenterText(PROGRAMWIDTH, "RPN Calculator  v" + VERSION, "|", "|"));
+			Output.printColorln(Ansi.Color.CYAN, Format.CenterText(PROGRAMWIDTH, COPYRIGHT, "|", "|"));
+			Output.printColorln(Ansi.Color.CYAN, Format.CenterText(PROGRAMWIDTH, "Enter command 'h' for help details", "|", "|"));
+		}
 
-					// Add the decimal number to the stack and continue with next command
-					calcStack.add(fracInteger + fracDecimalEquiv);
+		// Wait for the primary stack
+		try {
+			RestoredStack restored = restore.get();
+			engine.calcStack = restored.stack;
+			for (String msg : restored.errors) {
+				engine.PrintError(msg);
+			}
+		} catch (ExecutionException ex) {
+			engine.PrintError("ERROR: Unable to restore the stack: " + ex.getCause().getMessage());
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+		Output.debugPrint("Elements in the Stack: " + engine.calcStack.size());
+
+		// Journal every change from here on so it survives the session being killed, and save
+		// the changes in the background
+		engine.journal = new Journal(engine);
+		engine.persister = new Persister(engine.journal);
+		engine.journal.Open();
+		engine.persister.Start();
+
+		// Import the file provided on the command line onto the loaded stack
+		if (importFile != null) {
+			StackOps.cmdImport(engine, importFile);
+			engine.journal.Record();
+		}
 
-					// Number entered, add to stack.
-				} else if (cmdInputCmd.matches("^-?\\d*\\.?\\d*")) {
-					// Save to Undo stack
-					undoStack.push((Stack<Double>) calcStack.clone());
+		// Start Main Command Loop
+		if (batchMode == true) {
+			ProcessBatch();
+		} else {
+			Scanner scanner = new Scanner(System.in);
+			while (engine.QueryExitRequested() == false) {
+				// Display the dashed status line, the current stack and the prompt
+				DisplayFrame();
+
+				// Input command from user
+				engine.Execute(scanner.nextLine());
+				engine.journal.Record();
+
+			} // End While Loop
+
+			// Close the scanner
+			scanner.close();
+		}
 
-					Output.debugPrint("Adding number '" + cmdInputCmd + "' onto the stack");
-					calcStack.push(Double.valueOf(cmdInputCmd));
+		// Remove the undo levels that were spilled to disk
+		engine.Close();
 
-					// Handle numbers with a single operand at the end (a NumOp)
-				} else if (cmdInputCmd.matches("^-?\\d*(\\.)?\\d* ?[\\*\\+\\-\\/\\^]")) {
-					// Save to Undo stack
-					undoStack.push((Stack<Double>) calcStack.clone());
+		// Save the stacks and memory slots to the preferences system and wait for it to finish
+		engine.persister.Shutdown();
 
-					Output.debugPrint("CalcStack has " + calcStack.size() + " elements");
-					// Verify stack contains at least one element
-					if (calcStack.size() >= 1) {
-						String TempOp = cmdInputCmd.substring(cmdInputCmd.length() - 1, cmdInputCmd.length());
-						String TempNum = cmdInput.substring(0, cmdInput.length() - 1);
-						Output.debugPrint("NumOp Found: Num= '" + TempNum + "'");
-						Output.debugPrint("NumOp Found: Op = '" + TempOp + "'");
-						calcStack.push(Double.valueOf(TempNum));
-						calcStack = Math.Parse(TempOp, calcStack);
-					} else {
-						Output.printColorln(Ansi.Color.RED, "One number is required for this NumOp function");
-					}
+		// Everything is saved so the journal is no longer needed
+		engine.journal.Close();
 
-				} else {
-					Output.printColorln(Ansi.Color.RED, "Unknown Command: '" + cmdInput + "'");
+		// In batch mode display the final stack unless print commands were used and set the exit status
+		if (batchMode == true) {
+			System.setOut(stdout);
+			if (batchOutput.QueryPrintUsed() == false) {
+				for (int i = 0; i < engine.calcStack.size(); i++) {
+					stdout.println(engine.calcStack.get(i));
 				}
-				break;
 			}
-
-			// Clear input parameters before we start again
-			cmdInputCmd = "";
-			cmdInputParam = "";
-
-		} // End While Loop
-
-		// Close the scanner
-		scanner.close();
-
-		// Save the items in the memory slots to the preferences system
-		StackOps.SaveMemSlots();
-
-		// Save the primary and secondary stacks to the preferences system
-		Prefs.SaveStack(calcStack, "1");
-		Prefs.SaveStack(calcStack2, "2");
+			stdout.flush();
+			System.exit(engine.QueryErrorCount() == 0 ? 0 : 1);
+		}
 
 	} // End Main
 
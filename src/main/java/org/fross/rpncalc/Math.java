@@ -26,48 +26,61 @@
  ******************************************************************************/
 package org.fross.rpncalc;
 
-import java.util.Stack;
+import java.math.MathContext;
 
+import org.fross.library.Debug;
 import org.fross.library.Output;
-import org.fusesource.jansi.Ansi;
 
 /**
  * Math: The math class contains the methods to parse the operands entered and perform the math
  * tasks. It was done strictly so it will be easily to grow the list of functions at a later date.
  * 
  * @author michael.d.fross
- *
+ * 
  */
 public class Math {
 	/**
 	 * Parse Take an operand and a stack and call the right math function.
 	 * 
 	 * @param op  - Operand to process
-	 * @param stk - Stack containing the list of Doubles to process
+	 * @param stk - Stack containing the list of doubles to process
+	 * @return
+	 */
+	public static DoubleStack Parse(String op, DoubleStack stk) {
+		return Parse(op, stk, null);
+	}
+
+	/**
+	 * Parse Take an operand and a stack and call the right math function with the provided adaptive
+	 * precision, or in plain doubles if it's null.
+	 * 
+	 * @param op  - Operand to process
+	 * @param stk - Stack containing the list of doubles to process
+	 * @param mc  - Adaptive precision or null
 	 * @return
 	 */
-	public static Stack<Double> Parse(String op, Stack<Double> stk) {
-		Stack<Double> result = new Stack<Double>();
+	public static DoubleStack Parse(String op, DoubleStack stk, MathContext mc) {
+		DoubleStack result;
 
 		// Addition
 		switch (op) {
 		case "+":
-			result = Add(stk);
+			result = Add(stk, mc);
 			break;
 		case "-":
-			result = Subtract(stk);
+			result = Subtract(stk, mc);
 			break;
 		case "*":
-			result = Multiply(stk);
+			result = Multiply(stk, mc);
 			break;
 		case "/":
-			result = Divide(stk);
+			result = Divide(stk, mc);
 			break;
 		case "^":
-			result = Power(stk);
+			result = Power(stk, mc);
 			break;
 		default:
-			Output.printColorln(Ansi.Color.RED, "ERROR:  Illegal Operand Sent to Math.Parse(): '" + op + "'");
+			throw new IllegalArgumentException("Illegal Operand Sent to Math.Parse(): '" + op + "'");
 		}
 
 		return result;
@@ -79,11 +92,27 @@ public class Math {
 	 * @param stk
 	 * @return
 	 */
-	public static Stack<Double> Add(Stack<Double> stk) {
-		Double b = stk.pop();
-		Double a = stk.pop();
-		Output.debugPrint("Adding: " + a + " + " + b + " = " + (a + b));
-		stk.push(a + b);
+	public static DoubleStack Add(DoubleStack stk) {
+		return Add(stk, null);
+	}
+
+	/**
+	 * Add(): Add the last two numbers on the provided stack with the provided adaptive precision, or in
+	 * plain doubles if it's null. The debug message is only built in debug mode since user words call
+	 * these in tight loops.
+	 * 
+	 * @param stk
+	 * @param mc
+	 * @return
+	 */
+	public static DoubleStack Add(DoubleStack stk, MathContext mc) {
+		double b = stk.pop();
+		double a = stk.pop();
+		double result = (mc == null) ? a + b : AdaptiveMath.Add(a, b, mc);
+		if (Debug.query()) {
+			Output.debugPrint("Adding: " + a + " + " + b + " = " + result);
+		}
+		stk.push(result);
 		return stk;
 	}
 
@@ -93,11 +122,25 @@ public class Math {
 	 * @param stk
 	 * @return
 	 */
-	public static Stack<Double> Subtract(Stack<Double> stk) {
-		Double b = stk.pop();
-		Double a = stk.pop();
-		Output.debugPrint("Subtracting: " + a + " - " + b + " = " + (a - b));
-		stk.push(a - b);
+	public static DoubleStack Subtract(DoubleStack stk) {
+		return Subtract(stk, null);
+	}
+
+	/**
+	 * Subtract(): Subtract the last item from the previous item with the provided adaptive precision
+	 * 
+	 * @param stk
+	 * @param mc
+	 * @return
+	 */
+	public static DoubleStack Subtract(DoubleStack stk, MathContext mc) {
+		double b = stk.pop();
+		double a = stk.pop();
+		double result = (mc == null) ? a - b : AdaptiveMath.Subtract(a, b, mc);
+		if (Debug.query()) {
+			Output.debugPrint("Subtracting: " + a + " - " + b + " = " + result);
+		}
+		stk.push(result);
 		return stk;
 	}
 
@@ -107,11 +150,25 @@ public class Math {
 	 * @param stk
 	 * @return
 	 */
-	public static Stack<Double> Multiply(Stack<Double> stk) {
-		Double b = stk.pop();
-		Double a = stk.pop();
-		Output.debugPrint("Multiplying: " + a + " * " + b + " = " + (a * b));
-		stk.push(a * b);
+	public static DoubleStack Multiply(DoubleStack stk) {
+		return Multiply(stk, null);
+	}
+
+	/**
+	 * Multiply(): Multiply the last two items on the provided stack with the provided adaptive precision
+	 * 
+	 * @param stk
+	 * @param mc
+	 * @return
+	 */
+	public static DoubleStack Multiply(DoubleStack stk, MathContext mc) {
+		double b = stk.pop();
+		double a = stk.pop();
+		double result = (mc == null) ? a * b : AdaptiveMath.Multiply(a, b, mc);
+		if (Debug.query()) {
+			Output.debugPrint("Multiplying: " + a + " * " + b + " = " + result);
+		}
+		stk.push(result);
 		return stk;
 	}
 
@@ -121,11 +178,25 @@ public class Math {
 	 * @param stk
 	 * @return
 	 */
-	public static Stack<Double> Divide(Stack<Double> stk) {
-		Double b = stk.pop();
-		Double a = stk.pop();
-		Output.debugPrint("Dividing: " + a + " / " + b + " = " + (a / b));
-		stk.push(a / b);
+	public static DoubleStack Divide(DoubleStack stk) {
+		return Divide(stk, null);
+	}
+
+	/**
+	 * Divide(): Divide the 2nd to the last stack item by the last with the provided adaptive precision
+	 * 
+	 * @param stk
+	 * @param mc
+	 * @return
+	 */
+	public static DoubleStack Divide(DoubleStack stk, MathContext mc) {
+		double b = stk.pop();
+		double a = stk.pop();
+		double result = (mc == null) ? a / b : AdaptiveMath.Divide(a, b, mc);
+		if (Debug.query()) {
+			Output.debugPrint("Dividing: " + a + " / " + b + " = " + result);
+		}
+		stk.push(result);
 		return stk;
 	}
 
@@ -135,11 +206,25 @@ public class Math {
 	 * @param stk
 	 * @return
 	 */
-	public static Stack<Double> Power(Stack<Double> stk) {
-		Double power = stk.pop();
-		Double base = stk.pop();
-		Output.debugPrint("Base=" + base + "   Power=" + power);
-		stk.push(java.lang.Math.pow(base, power));
+	public static DoubleStack Power(DoubleStack stk) {
+		return Power(stk, null);
+	}
+
+	/**
+	 * Power(): The second to the last item in the stack to the power of the last item with the provided
+	 * adaptive precision
+	 * 
+	 * @param stk
+	 * @param mc
+	 * @return
+	 */
+	public static DoubleStack Power(DoubleStack stk, MathContext mc) {
+		double power = stk.pop();
+		double base = stk.pop();
+		if (Debug.query()) {
+			Output.debugPrint("Base=" + base + "   Power=" + power);
+		}
+		stk.push((mc == null) ? java.lang.Math.pow(base, power) : AdaptiveMath.Power(base, power, mc));
 		return stk;
 	}
 
@@ -182,18 +267,9 @@ public class Math {
 	 * @param stk
 	 * @return
 	 */
-	public static Double Mean(Stack<Double> stk) {
-		Double totalCounter = 0.0;
-		int size = stk.size();
-
-		// Add up the numbers in the stack
-		for (int i = 0; i < size; i++) {
-			totalCounter += stk.get(i);
-		}
-
-		// Return the average
-		return (totalCounter / size);
-
+	public static double Mean(DoubleStack stk) {
+		// The stack keeps a running compensated sum of its elements
+		return stk.QueryMean();
 	}
 
 	/**
@@ -202,15 +278,14 @@ public class Math {
 	 * @param arry
 	 * @return
 	 */
-	public static Double Mean(Double[] arry) {
-		Stack<Double> stk = new Stack<Double>();
-
-		// Convert array into a stack then call Mean again
+	public static double Mean(double[] arry) {
+		// Use a compensated sum so the order of the numbers doesn't change the result
+		StackStatistics stats = new StackStatistics();
 		for (int i = 0; i < arry.length; i++) {
-			stk.add(arry[i]);
+			stats.Add(arry[i]);
 		}
 
-		return (Mean(stk));
+		return (stats.QuerySum() / arry.length);
 	}
 
 }
\ No newline at end of file
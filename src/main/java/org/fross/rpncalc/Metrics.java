@@ -0,0 +1,417 @@
+/******************************************************************************
+ * RPNCalc
+ * 
+ * RPNCalc is is an easy to use console based RPN calculator
+ * 
+ *  Copyright (c) 2013-2021 Michael Fross
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *           
+ ******************************************************************************/
+package org.fross.rpncalc;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.fross.library.Output;
+
+/**
+ * Metrics: Always on counts, latency histograms and allocated bytes of every command, user word and
+ * preferences read or write. Each is a Stat that is looked up once, when its command is registered or
+ * the code using it is loaded. Recording a sample is two clock reads, two reads of the thread's
+ * allocation counter and a few lock free updates, so it costs well under a microsecond.
+ * 
+ * The stats belong to the program rather than to an engine, the same way the commands they time
+ * are registered once for every engine. Under the server each Stat is updated by every session's
+ * worker at once, so the counts and totals are LongAdders, which spread concurrent updates over
+ * separate cells, and a histogram bucket is a single atomic increment. Nothing is locked. 'stats' in
+ * a server session shows and clears the samples of every session.
+ * 
+ * Latencies are kept in a log-linear histogram: every power of two is split into SUB_BUCKETS buckets,
+ * so a percentile is within 1/SUB_BUCKETS of the true value whatever its size. The maximum is exact.
+ * 
+ * Allocated bytes come from the JVM's per-thread allocation counter. Starting it loads the management
+ * classes, which takes longer than a one shot run, so it is started on a background thread by
+ * StartAllocationCounter(). Samples taken before it is ready count no bytes.
+ * 
+ * @author michael.d.fross
+ *
+ */
+public class Metrics {
+	// Class Constants
+	private static final int SUB_BUCKET_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+	public static final String KIND_COMMAND = "command";
+	public static final String KIND_WORD = "word";
+	public static final String KIND_PREFS = "prefs";
+
+	// Class Variables
+	private static final ConcurrentHashMap<String, Stat> stats = new ConcurrentHashMap<String, Stat>();
+	private static final long startTime = System.nanoTime();
+	private static volatile com.sun.management.ThreadMXBean allocationCounter = null;
+
+	/**
+	 * Stat: The samples of one command, word or preferences operation
+	 */
+	public static class Stat {
+		final String kind;
+		final String name;
+		private final LongAdder count = new LongAdder();
+		private final LongAdder totalNanos = new LongAdder();
+		private final LongAccumulator maxNanos = new LongAccumulator(java.lang.Math::max, 0);
+		private final LongAdder allocatedBytes = new LongAdder();
+		private volatile AtomicLongArray buckets = null;	// Created with the first sample
+
+		Stat(String kind, String name) {
+			this.kind = kind;
+			this.name = name;
+		}
+
+		/**
+		 * Record(): Add a sample that started at the provided System.nanoTime() and
+		 * Metrics.AllocatedBytes()
+		 * 
+		 * @param startNanos
+		 * @param startBytes
+		 */
+		public void Record(long startNanos, long startBytes) {
+			long nanos = System.nanoTime() - startNanos;
+			long bytes = (startBytes >= 0) ? AllocatedBytes() - startBytes : 0;
+			Add(nanos, bytes);
+		}
+
+		/**
+		 * Add(): Add a sample that took the provided time and allocated the provided bytes
+		 * 
+		 * @param nanos
+		 * @param bytes
+		 */
+		void Add(long nanos, long bytes) {
+			AtomicLongArray b = buckets;
+			if (b == null) {
+				b = CreateBuckets();
+			}
+			b.incrementAndGet(BucketIndex(java.lang.Math.max(0, nanos)));
+			count.increment();
+			totalNanos.add(nanos);
+			maxNanos.accumulate(nanos);
+			allocatedBytes.add(java.lang.Math.max(0, bytes));
+		}
+
+		/**
+		 * CreateBuckets(): Return the histogram, creating it if another thread hasn't already
+		 * 
+		 * @return
+		 */
+		private synchronized AtomicLongArray CreateBuckets() {
+			if (buckets == null) {
+				buckets = new AtomicLongArray(BUCKETS);
+			}
+			return buckets;
+		}
+
+		/**
+		 * QueryCount(): Return the number of samples
+		 * 
+		 * @return
+		 */
+		public long QueryCount() {
+			return count.sum();
+		}
+
+		/**
+		 * QueryTotalNanos(): Return the total time of all the samples
+		 * 
+		 * @return
+		 */
+		public long QueryTotalNanos() {
+			return totalNanos.sum();
+		}
+
+		/**
+		 * QueryMaxNanos(): Return the longest sample
+		 * 
+		 * @return
+		 */
+		public long QueryMaxNanos() {
+			return maxNanos.get();
+		}
+
+		/**
+		 * QueryAllocatedBytes(): Return the bytes allocated by all the samples
+		 * 
+		 * @return
+		 */
+		public long QueryAllocatedBytes() {
+			return allocatedBytes.sum();
+		}
+
+		/**
+		 * QueryPercentile(): Return the latency the provided fraction of the samples took no longer
+		 * than. The result is the upper bound of the histogram bucket it falls in, but never more than
+		 * the maximum. Samples recorded while it runs may or may not be counted.
+		 * 
+		 * @param fraction
+		 * @return
+		 */
+		public long QueryPercentile(double fraction) {
+			AtomicLongArray b = buckets;
+			if (b == null) {
+				return 0;
+			}
+
+			// Take a copy so the total and the walk see the same samples
+			long[] copy = new long[BUCKETS];
+			long total = 0;
+			for (int i = 0; i < BUCKETS; i++) {
+				copy[i] = b.get(i);
+				total += copy[i];
+			}
+			if (total == 0) {
+				return 0;
+			}
+
+			long max = maxNanos.get();
+			long target = java.lang.Math.max(1, (long) java.lang.Math.ceil(fraction * total));
+			long seen = 0;
+			for (int i = 0; i < BUCKETS; i++) {
+				seen += copy[i];
+				if (seen >= target) {
+					return java.lang.Math.min(BucketUpperBound(i), max);
+				}
+			}
+			return max;
+		}
+
+		/**
+		 * Clear(): Remove all of the samples. Samples recorded while it runs may be partly kept.
+		 */
+		void Clear() {
+			buckets = null;
+			count.reset();
+			totalNanos.reset();
+			maxNanos.reset();
+			allocatedBytes.reset();
+		}
+	}
+
+	/**
+	 * Stat(): Return the stat of the provided kind and name, creating it if needed. Look it up once and
+	 * keep it rather than on every sample.
+	 * 
+	 * @param kind
+	 * @param name
+	 * @return
+	 */
+	public static Stat Stat(String kind, String name) {
+		return stats.computeIfAbsent(kind + " " + name, k -> new Stat(kind, name));
+	}
+
+	/**
+	 * AllocatedBytes(): Return the bytes the current thread has allocated, or -1 if the allocation
+	 * counter isn't running. Pass it to Stat.Record() along with the start time.
+	 * 
+	 * @return
+	 */
+	public static long AllocatedBytes() {
+		com.sun.management.ThreadMXBean counter = allocationCounter;
+		if (counter == null) {
+			return -1;
+		}
+		return counter.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/**
+	 * StartAllocationCounter(): Start counting the bytes each sample allocates. The counter is started
+	 * on a background thread. Nothing is counted if the JVM doesn't support it.
+	 */
+	public static void StartAllocationCounter() {
+		Thread t = new Thread(() -> {
+			try {
+				com.sun.management.ThreadMXBean counter = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+				if (counter.isThreadAllocatedMemorySupported()) {
+					counter.setThreadAllocatedMemoryEnabled(true);
+					allocationCounter = counter;
+				}
+			} catch (RuntimeException | LinkageError ex) {
+				Output.debugPrint("Allocated bytes will not be counted: " + ex.getMessage());
+			}
+		}, "rpncalc-metrics");
+		t.setDaemon(true);
+		t.start();
+	}
+
+	/**
+	 * IsCountingAllocations(): Return true once the allocated bytes are being counted
+	 * 
+	 * @return
+	 */
+	public static boolean IsCountingAllocations() {
+		return allocationCounter != null;
+	}
+
+	/**
+	 * QueryStats(): Return the stats that have samples, the ones that took the most time in total first
+	 * 
+	 * @return
+	 */
+	public static ArrayList<Stat> QueryStats() {
+		ArrayList<Stat> list = new ArrayList<Stat>();
+		for (Stat stat : stats.values()) {
+			if (stat.QueryCount() > 0) {
+				list.add(stat);
+			}
+		}
+		list.sort(Comparator.comparingLong(Stat::QueryTotalNanos).reversed());
+		return list;
+	}
+
+	/**
+	 * Clear(): Remove the samples of every stat
+	 */
+	public static void Clear() {
+		for (Stat stat : stats.values()) {
+			stat.Clear();
+		}
+	}
+
+	/**
+	 * ToJson(): Return the stats as a JSON document. Times are in nanoseconds.
+	 * 
+	 * @return
+	 */
+	public static String ToJson() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("{\n");
+		sb.append("  \"uptimeNs\": ").append(System.nanoTime() - startTime).append(",\n");
+		sb.append("  \"allocationsCounted\": ").append(IsCountingAllocations()).append(",\n");
+		sb.append("  \"stats\": [");
+
+		ArrayList<Stat> list = QueryStats();
+		for (int i = 0; i < list.size(); i++) {
+			Stat stat = list.get(i);
+			sb.append((i == 0) ? "\n" : ",\n");
+			sb.append("    {\"kind\": \"").append(stat.kind).append("\", \"name\": \"").append(JsonEscape(stat.name)).append('"');
+			sb.append(", \"count\": ").append(stat.QueryCount());
+			sb.append(", \"totalNs\": ").append(stat.QueryTotalNanos());
+			sb.append(", \"p50Ns\": ").append(stat.QueryPercentile(0.50));
+			sb.append(", \"p99Ns\": ").append(stat.QueryPercentile(0.99));
+			sb.append(", \"maxNs\": ").append(stat.QueryMaxNanos());
+			sb.append(", \"allocatedBytes\": ").append(stat.QueryAllocatedBytes()).append('}');
+		}
+		sb.append(list.isEmpty() ? "]\n" : "\n  ]\n");
+		sb.append("}\n");
+		return sb.toString();
+	}
+
+	/**
+	 * DumpOnExit(): Write the stats as JSON to the provided file when the program ends, however it
+	 * ends
+	 * 
+	 * @param file
+	 */
+	public static void DumpOnExit(Path file) {
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			try {
+				Files.write(file, ToJson().getBytes(StandardCharsets.UTF_8));
+			} catch (IOException ex) {
+				System.err.println("ERROR: Unable to write the statistics to '" + file + "': " + ex.getMessage());
+			}
+		}, "rpncalc-metrics-dump"));
+	}
+
+	/**
+	 * FormatNanos(): Return a duration in the largest unit that keeps it above one
+	 * 
+	 * @param nanos
+	 * @return
+	 */
+	public static String FormatNanos(long nanos) {
+		if (nanos < 1000) {
+			return nanos + "ns";
+		} else if (nanos < 1000000) {
+			return String.format("%.1fus", nanos / 1e3);
+		} else if (nanos < 1000000000) {
+			return String.format("%.1fms", nanos / 1e6);
+		}
+		return String.format("%.2fs", nanos / 1e9);
+	}
+
+	/**
+	 * BucketIndex(): Return the histogram bucket of a latency. Values below SUB_BUCKETS have a bucket
+	 * each. Above that each power of two is split into SUB_BUCKETS buckets.
+	 * 
+	 * @param nanos
+	 * @return
+	 */
+	static int BucketIndex(long nanos) {
+		if (nanos < SUB_BUCKETS) {
+			return (int) nanos;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+		int subBucket = (int) (nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+	}
+
+	/**
+	 * BucketUpperBound(): Return the largest latency that falls in the provided histogram bucket
+	 * 
+	 * @param index
+	 * @return
+	 */
+	static long BucketUpperBound(int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+		int shift = index / SUB_BUCKETS - 1;
+		long lower = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+		return lower + (1L << shift) - 1;
+	}
+
+	/**
+	 * JsonEscape(): Escape the characters that can't appear as they are in a JSON string
+	 * 
+	 * @param s
+	 * @return
+	 */
+	private static String JsonEscape(String s) {
+		StringBuilder sb = new StringBuilder();
+		for (char c : s.toCharArray()) {
+			if (c == '"' || c == '\\') {
+				sb.append('\\').append(c);
+			} else if (c < 0x20) {
+				sb.append(String.format("\\u%04x", (int) c));
+			} else {
+				sb.append(c);
+			}
+		}
+		return sb.toString();
+	}
+
+}
@@ -0,0 +1,311 @@
+/******************************************************************************
+ * RPNCalc
+ * 
+ * RPNCalc is is an easy to use console based RPN calculator
+ * 
+ *  Copyright (c) 2013-2021 Michael Fross
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *           
+ ******************************************************************************/
+package org.fross.rpncalc;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+
+import org.fross.library.Output;
+import org.fusesource.jansi.Ansi;
+
+/**
+ * Persister: Saves the stacks and memory slots on a background thread so the command loop never
+ * waits on the preferences system or the disk.
+ * 
+ * What is saved is a Checkpoint: O(1) snapshots of both stacks and a copy of the memory slots taken
+ * by the Journal at the start of a journal generation. Changes are coalesced: once the first unsaved
+ * change is SAVE_DELAY_MS old, or SAVE_CHANGES changes have been made, a single checkpoint covering
+ * all of them is written. Explicit requests, such as the save when another stack is loaded, replace
+ * any earlier request for the same stack that hasn't been written yet.
+ * 
+ * Checkpoints are written one at a time in the order they were taken, so an older state can never
+ * overwrite a newer one. Once written, the journal generations before it are no longer needed.
+ * 
+ * The engine isn't thread safe, so errors saving aren't reported on it from the background thread.
+ * They are collected and ReportErrors() reports them on the engine's own thread.
+ * 
+ * @author michael.d.fross
+ *
+ */
+public class Persister {
+	// Class Constants
+	public static final long SAVE_DELAY_MS = 5000;
+	public static final int SAVE_CHANGES = 1000;
+
+	// Class Variables
+	private final Journal journal;
+	private final ArrayList<Checkpoint> queue = new ArrayList<Checkpoint>();
+	private Checkpoint inFlight = null;
+	private Thread thread = null;
+	private long firstChangeTime = 0;
+	private int changes = 0;
+	private boolean saveNow = false;
+	private boolean stopping = false;
+	private final ArrayList<String> errors = new ArrayList<String>();
+
+	// Engine the saves report their errors on. It only collects them for ReportErrors().
+	private final RpnEngine errorCollector = new RpnEngine(new RpnEngine.OutputSink() {
+		@Override
+		public void Message(Ansi.Color color, String text) {
+		}
+
+		@Override
+		public void Error(String text) {
+			synchronized (Persister.this) {
+				errors.add(text);
+			}
+		}
+
+		@Override
+		public void Print(int line, double value) {
+		}
+	});
+
+	/**
+	 * Checkpoint: The state of one named stack and the memory slots at the start of a journal
+	 * generation. The stacks are snapshots and are never modified. The secondary stack and the memory
+	 * slots are null if they haven't been read from the preferences, so the saved copy is current.
+	 */
+	public static class Checkpoint {
+		final String name;
+		final DoubleStack stk1;
+		final DoubleStack stk2;
+		final Double[] memSlots;
+		final int generation;
+
+		Checkpoint(String name, DoubleStack stk1, DoubleStack stk2, Double[] memSlots, int generation) {
+			this.name = name;
+			this.stk1 = stk1;
+			this.stk2 = stk2;
+			this.memSlots = memSlots;
+			this.generation = generation;
+		}
+	}
+
+	/**
+	 * Persister(): Create a persister that saves the checkpoints taken by the provided journal. Errors
+	 * are reported on the journal's engine by ReportErrors().
+	 * 
+	 * @param journal
+	 */
+	public Persister(Journal journal) {
+		this.journal = journal;
+	}
+
+	/**
+	 * Start(): Start the background thread. It is a daemon so a session that ends without calling
+	 * Shutdown() isn't kept alive by it. The journal covers anything it didn't get to save.
+	 */
+	public void Start() {
+		thread = new Thread(this::SaveLoop, "rpncalc-persister");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Changed(): Note that the stacks or memory slots changed. If urgent is set, the journal has grown
+	 * large and a checkpoint is taken right away.
+	 * 
+	 * @param urgent
+	 */
+	public synchronized void Changed(boolean urgent) {
+		if (changes++ == 0) {
+			// Wake the thread so it starts timing the save delay
+			firstChangeTime = System.currentTimeMillis();
+			notifyAll();
+		}
+		if (urgent == true || changes >= SAVE_CHANGES) {
+			saveNow = true;
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Request(): Queue a checkpoint to be written. An unwritten checkpoint of the same stack is
+	 * replaced by it.
+	 * 
+	 * @param cp
+	 */
+	public synchronized void Request(Checkpoint cp) {
+		if (cp == null) {
+			return;
+		}
+
+		for (Iterator<Checkpoint> i = queue.iterator(); i.hasNext();) {
+			if (i.next().name.equals(cp.name)) {
+				i.remove();
+			}
+		}
+		queue.add(cp);
+		notifyAll();
+	}
+
+	/**
+	 * QueryPending(): Return the newest checkpoint of the named stack that has not been written yet, or
+	 * null if there isn't one. Loading a stack must use it instead of what is saved.
+	 * 
+	 * @param name
+	 * @return
+	 */
+	public synchronized Checkpoint QueryPending(String name) {
+		for (int i = queue.size() - 1; i >= 0; i--) {
+			if (queue.get(i).name.equals(name)) {
+				return queue.get(i);
+			}
+		}
+		if (inFlight != null && inFlight.name.equals(name)) {
+			return inFlight;
+		}
+		return null;
+	}
+
+	/**
+	 * ReportErrors(): Report the errors saving since the last call on the journal's engine. Called from
+	 * the engine's thread between commands.
+	 */
+	public void ReportErrors() {
+		ArrayList<String> reported;
+		synchronized (this) {
+			if (errors.isEmpty()) {
+				return;
+			}
+			reported = new ArrayList<String>(errors);
+			errors.clear();
+		}
+
+		for (String msg : reported) {
+			journal.QueryEngine().PrintError(msg);
+		}
+	}
+
+	/**
+	 * Shutdown(): Write a final checkpoint along with everything still queued and stop the background
+	 * thread. Returns once it is all saved and any errors have been reported.
+	 */
+	public void Shutdown() {
+		synchronized (this) {
+			stopping = true;
+			notifyAll();
+		}
+
+		if (thread != null) {
+			try {
+				thread.join();
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+			thread = null;
+		} else {
+			// Never started. Save on this thread instead.
+			Request(journal.Checkpoint());
+			WriteQueue();
+		}
+
+		ReportErrors();
+	}
+
+	/**
+	 * SaveLoop(): Body of the background thread. Waits until a save is due, takes a checkpoint and
+	 * writes it with anything else that is queued.
+	 */
+	private void SaveLoop() {
+		while (true) {
+			boolean takeCheckpoint;
+			boolean exit;
+
+			synchronized (this) {
+				while (true) {
+					long now = System.currentTimeMillis();
+					boolean due = saveNow == true || (changes > 0 && now - firstChangeTime >= SAVE_DELAY_MS);
+					if (due == true || stopping == true || queue.isEmpty() == false) {
+						takeCheckpoint = due == true || stopping == true;
+						exit = stopping;
+						break;
+					}
+
+					try {
+						wait(changes > 0 ? java.lang.Math.max(1, SAVE_DELAY_MS - (now - firstChangeTime)) : 0);
+					} catch (InterruptedException ex) {
+						return;
+					}
+				}
+
+				if (takeCheckpoint == true) {
+					changes = 0;
+					saveNow = false;
+				}
+			}
+
+			// The journal is locked while the checkpoint is taken so do it outside of this lock
+			if (takeCheckpoint == true) {
+				Request(journal.Checkpoint());
+			}
+			WriteQueue();
+
+			if (exit == true) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * WriteQueue(): Write the queued checkpoints in order, then let the journal remove the generations
+	 * they cover. If a checkpoint can't be saved its generations are kept so they can be recovered.
+	 */
+	private void WriteQueue() {
+		while (true) {
+			synchronized (this) {
+				if (queue.isEmpty()) {
+					inFlight = null;
+					return;
+				}
+				inFlight = queue.remove(0);
+			}
+
+			Output.debugPrint("Saving stack '" + inFlight.name + "' at journal generation " + inFlight.generation);
+			RpnEngine e = errorCollector;
+			int errorsBefore = e.QueryErrorCount();
+			Prefs.SaveStack(e, inFlight.stk1, inFlight.name, "1");
+			if (inFlight.stk2 != null) {
+				Prefs.SaveStack(e, inFlight.stk2, inFlight.name, "2");
+			}
+			if (inFlight.memSlots != null) {
+				StackOps.SaveMemSlots(e, inFlight.memSlots);
+			}
+			if (e.QueryErrorCount() != errorsBefore) {
+				continue;
+			}
+			Prefs.SetJournalCheckpoint(inFlight.name, journal.QueryJournalId(inFlight.generation));
+			Prefs.Flush(e);
+
+			if (e.QueryErrorCount() == errorsBefore) {
+				journal.RemoveBefore(inFlight.generation);
+			}
+		}
+	}
+
+}
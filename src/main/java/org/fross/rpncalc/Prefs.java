@@ -28,15 +28,23 @@
 /* Current Defined Preferences:
  *   MoneyMode/Boolean:  Determine if RPNCalc should start in money mode
  *   Persistent/Boolean:  Should the calc keep it's stack persistent between runs
- *   Stack/Double:  A saved list of everything in the stack
+ *   StackFile/String:  The binary stack file holding the saved stack
+ *   StackElements/Integer:  Number of elements in the saved stack
+ *   JournalCheckpoint/String:  The journal generation the saved stack includes
+ *   Stack/Double:  One key per element for stacks saved by older versions
+ *   words/<name>/String:  The body of each user defined word
  */
 
 package org.fross.rpncalc;
 
-import java.util.Stack;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.prefs.BackingStoreException;
 import java.util.prefs.Preferences;
-import org.fusesource.jansi.Ansi;
 import org.fross.library.Output;
 
 /**
@@ -44,62 +52,59 @@ import org.fross.library.Output;
  * stacks between sessions.
  * 
  * @author michael.d.fross
- *
+ * 
  */
 public class Prefs {
 	// Class Constants
 	private static final String PREFS_PATH = "/org/fross/rpn/stacks";
+	private static final String WORDS_PATH = "/org/fross/rpn/words";
 
 	// Class Variables
-	private static Preferences prefs = Preferences.userRoot().node(PREFS_PATH);
-	private static String currentLoadedStack = "default";
-	private static int currentStackNum = 1;
-
-	public static int QueryCurrentStackNum() {
-		return currentStackNum;
-	}
+	private static final Preferences prefs = Preferences.userRoot().node(PREFS_PATH);
+	private static final Preferences wordPrefs = Preferences.userRoot().node(WORDS_PATH);
+	private static final Metrics.Stat saveStackStat = Metrics.Stat(Metrics.KIND_PREFS, "SaveStack");
+	private static final Metrics.Stat restoreStackStat = Metrics.Stat(Metrics.KIND_PREFS, "RestoreStack");
+	private static final Metrics.Stat flushStat = Metrics.Stat(Metrics.KIND_PREFS, "Flush");
 
-	public static void ToggleCurrentStackNum() {
-		if (currentStackNum == 1)
-			currentStackNum = 2;
-		else
-			currentStackNum = 1;
-	}
-	
 	/**
 	 * QueryStacks(): Return a string array of all current stacks
+	 * @param e
 	 * @return
 	 */
-	public static String[] QueryStacks() {
+	public static String[] QueryStacks(RpnEngine e) {
 		String[] stacks = {};
 		Preferences prefsQuery = Preferences.userRoot().node(PREFS_PATH);
 		
 		try {
 			stacks = prefsQuery.childrenNames();
 		} catch (BackingStoreException ex) {
-			Output.printColor(Ansi.Color.RED,  "Error Reading Stacks from Java Preferences");
+			e.PrintError("Error Reading Stacks from Java Preferences");
 		}
 		
 		return(stacks);
 	}
 
 	/**
-	 * QueryLoadedStack(): Returns the name of the current stack that is in use The loaded stack name is
-	 * important for saving and restoring data from the preferences system
+	 * QueryDataDir(): Return the directory where RPNCalc keeps data files that are too large for the
+	 * preferences system. The directory is created if it does not exist.
+	 * 
+	 * Windows: %LOCALAPPDATA%\rpncalc Everything else: $XDG_DATA_HOME/rpncalc or ~/.local/share/rpncalc
 	 * 
 	 * @return
+	 * @throws IOException
 	 */
-	public static String QueryLoadedStack() {
-		return currentLoadedStack;
-	}
+	public static Path QueryDataDir() throws IOException {
+		Path dataDir;
 
-	/**
-	 * SetLoadedStack(): Name the current stack that is being used
-	 * 
-	 * @param s
-	 */
-	public static void SetLoadedStack(String s) {
-		currentLoadedStack = s;
+		if (System.getProperty("os.name").toLowerCase().startsWith("win") && System.getenv("LOCALAPPDATA") != null) {
+			dataDir = Paths.get(System.getenv("LOCALAPPDATA"), "rpncalc");
+		} else if (System.getenv("XDG_DATA_HOME") != null && !System.getenv("XDG_DATA_HOME").isBlank()) {
+			dataDir = Paths.get(System.getenv("XDG_DATA_HOME"), "rpncalc");
+		} else {
+			dataDir = Paths.get(System.getProperty("user.home"), ".local", "share", "rpncalc");
+		}
+
+		return Files.createDirectories(dataDir);
 	}
 
 	/**
@@ -153,58 +158,260 @@ public class Prefs {
 	}
 
 	/**
-	 * SaveStack(): Save the provided stack into the preferences system
+	 * Flush(): Force the RPNCalc preferences to be written to the backing store. The preferences
+	 * system otherwise writes them at some later time, which may never come if the session is killed.
 	 * 
+	 * @param e - Engine to report an error on
+	 */
+	public static void Flush(RpnEngine e) {
+		long startTime = System.nanoTime();
+		long startBytes = Metrics.AllocatedBytes();
+		try {
+			Preferences.userRoot().node("/org/fross/rpn").flush();
+		} catch (BackingStoreException ex) {
+			e.PrintError("ERROR: Unable to write the preferences: " + ex.getMessage());
+		}
+		flushStat.Record(startTime, startBytes);
+	}
+
+	/**
+	 * SaveWord(): Save the body of a user defined word
+	 * 
+	 * @param name
+	 * @param source
+	 */
+	public static void SaveWord(String name, String source) {
+		wordPrefs.put(name, source);
+	}
+
+	/**
+	 * RemoveWord(): Remove a user defined word
+	 * 
+	 * @param name
+	 */
+	public static void RemoveWord(String name) {
+		wordPrefs.remove(name);
+	}
+
+	/**
+	 * QueryWord(): Return the body of a user defined word or null if there isn't one
+	 * 
+	 * @param name
+	 * @return
+	 */
+	public static String QueryWord(String name) {
+		return wordPrefs.get(name, null);
+	}
+
+	/**
+	 * QueryWords(): Return the names of all user defined words
+	 * 
+	 * @param e
+	 * @return
+	 */
+	public static String[] QueryWords(RpnEngine e) {
+		String[] words = {};
+
+		try {
+			words = wordPrefs.keys();
+		} catch (BackingStoreException ex) {
+			e.PrintError("Error Reading Words from Java Preferences");
+		}
+
+		return words;
+	}
+
+	/**
+	 * SetJournalCheckpoint(): Mark the saved copy of the named stack with the journal id it covers
+	 * 
+	 * @param stackName
+	 * @param journalId
+	 */
+	public static void SetJournalCheckpoint(String stackName, String journalId) {
+		Preferences.userRoot().node(PREFS_PATH + "/" + stackName).put("JournalCheckpoint", journalId);
+	}
+
+	/**
+	 * QueryJournalCheckpoint(): Return the journal id the saved copy of the named stack covers or an
+	 * empty string if it hasn't been marked
+	 * 
+	 * @param stackName
+	 * @return
+	 */
+	public static String QueryJournalCheckpoint(String stackName) {
+		return Preferences.userRoot().node(PREFS_PATH + "/" + stackName).get("JournalCheckpoint", "");
+	}
+
+	/**
+	 * SaveStack(): Save the provided stack to its binary stack file. The preferences system only keeps
+	 * the element count and the name of the file so the stack still shows up in the list of stacks. If
+	 * the file can't be written the elements are saved into the preferences system one key per element
+	 * as older versions did.
+	 * 
+	 * This may be called from a background thread. Saves are serialized so two of them never write the
+	 * same stack file at once.
+	 * 
+	 * @param e         - Engine to report an error on
 	 * @param stk       - Stack to Save
+	 * @param stackName - Name of the stack to save it as
 	 * @param stackSlot - Stack Save slot number. Should be default, 1, or 2.
 	 */
-	public static void SaveStack(Stack<Double> stk, String stackSlot) {
-		Output.debugPrint("SaveStack: " + PREFS_PATH + "/" + QueryLoadedStack() + "/" + stackSlot);
+	public static synchronized void SaveStack(RpnEngine e, DoubleStack stk, String stackName, String stackSlot) {
+		FlightRecorder.StackIOEvent event = FlightRecorder.IsRunning() ? new FlightRecorder.StackIOEvent() : null;
+		if (event != null) {
+			event.begin();
+		}
+		long startTime = System.nanoTime();
+		long startBytes = Metrics.AllocatedBytes();
+		Output.debugPrint("SaveStack: " + PREFS_PATH + "/" + stackName + "/" + stackSlot);
+		Preferences p = Preferences.userRoot().node(PREFS_PATH + "/" + stackName + "/" + stackSlot);
 
-		// Override the default stack location with the provided one
-		prefs = Preferences.userRoot().node(PREFS_PATH + "/" + QueryLoadedStack() + "/" + stackSlot);
+		// Write the stack file before touching the preferences so a failure doesn't lose the old stack
+		String stackFile = null;
+		try {
+			Path file = StackFile.QueryPath(stackName, stackSlot);
+			StackFile.Write(file, stk);
+			stackFile = file.toString();
+			Output.debugPrint("  - Saved " + stk.size() + " elements to '" + stackFile + "'");
+		} catch (IOException ex) {
+			e.PrintError("ERROR: Could not write the stack file. Saving to the preferences system instead");
+			e.PrintError(ex.getMessage());
+		}
 
-		// Lets clear out any stack prefs that may exist
+		// Lets clear out any stack prefs that may exist. This also removes the per element keys of
+		// stacks saved by older versions once they have been written to a stack file.
 		try {
-			prefs.clear();
-		} catch (BackingStoreException e) {
-			Output.printColorln(Ansi.Color.RED, "ERROR: Could not clear current preferences in Stack #1");
-			Output.printColorln(Ansi.Color.RED, e.getMessage());
+			p.clear();
+		} catch (BackingStoreException ex) {
+			e.PrintError("ERROR: Could not clear current preferences in Stack #1");
+			e.PrintError(ex.getMessage());
 		}
 
 		// Save number of elements to key StackElements
-		prefs.putInt("StackElements", (int) stk.size());
+		p.putInt("StackElements", stk.size());
 
-		// Loop through each member of the stack and save it to the preferences
-		for (int i = 0; i <= stk.size() - 1; i++) {
-			Output.debugPrint("  - Saving #" + (stk.size() - i) + ":  " + stk.elementAt(i));
-			Set("Stack" + i, stk.elementAt(i));
+		if (stackFile != null) {
+			p.put("StackFile", stackFile);
+		} else {
+			// Loop through each member of the stack and save it to the preferences
+			for (int i = 0; i <= stk.size() - 1; i++) {
+				Output.debugPrint("  - Saving #" + (stk.size() - i) + ":  " + stk.get(i));
+				p.putDouble("Stack" + i, stk.get(i));
+			}
 		}
 
+		saveStackStat.Record(startTime, startBytes);
+		CommitStackIOEvent(event, "save", stackName, stackSlot, stk, stackFile);
 	}
 
 	/**
-	 * RestoreStack(): Read the stack, as designated by the stack slot (1 or 2) from the preferences
-	 * system
+	 * RestoreStack(): Read the stack, as designated by the stack name and slot (1 or 2). If the
+	 * preferences point at a stack file it is read from there. Otherwise the stack was saved one key per
+	 * element by an older version and it is read from the preferences system. It will be migrated to a
+	 * stack file the next time it's saved.
 	 * 
+	 * @param e         - Engine to report an error on
+	 * @param stackName - Name of the stack to read
 	 * @param stackSlot - The slot (default, 1, or 2) to pull from.
 	 * @return
 	 */
-	public static Stack<Double> RestoreStack(String stackSlot) {
-		Output.debugPrint("RestoreStack: " + PREFS_PATH + "/" + QueryLoadedStack() + "/" + stackSlot);
+	public static synchronized DoubleStack RestoreStack(RpnEngine e, String stackName, String stackSlot) {
+		FlightRecorder.StackIOEvent event = FlightRecorder.IsRunning() ? new FlightRecorder.StackIOEvent() : null;
+		if (event != null) {
+			event.begin();
+		}
+		long startTime = System.nanoTime();
+		long startBytes = Metrics.AllocatedBytes();
+		DoubleStack stk = null;
+		try {
+			stk = ReadStack(e, stackName, stackSlot);
+			return stk;
+		} finally {
+			restoreStackStat.Record(startTime, startBytes);
+			String stackFile = Preferences.userRoot().node(PREFS_PATH + "/" + stackName + "/" + stackSlot).get("StackFile", null);
+			CommitStackIOEvent(event, "restore", stackName, stackSlot, stk, stackFile);
+		}
+	}
+
+	/**
+	 * CommitStackIOEvent(): End the flight recorder event for a SaveStack() or RestoreStack() and commit
+	 * it if a recording wants it. The bytes are the size of the stack file, or zero if the stack is only
+	 * in the preferences system. The event is null if the flight recorder isn't running.
+	 * 
+	 * @param event
+	 * @param operation
+	 * @param stackName
+	 * @param stackSlot
+	 * @param stk       - The stack saved or restored. Null if the restore failed
+	 * @param stackFile - The stack file or null if there isn't one
+	 */
+	private static void CommitStackIOEvent(FlightRecorder.StackIOEvent event, String operation, String stackName, String stackSlot, DoubleStack stk,
+			String stackFile) {
+		if (event == null) {
+			return;
+		}
+
+		event.end();
+		if (!event.shouldCommit()) {
+			return;
+		}
+
+		event.operation = operation;
+		event.stackName = stackName;
+		event.slot = stackSlot;
+		event.elements = (stk == null) ? 0 : stk.size();
+		if (stackFile != null) {
+			try {
+				event.bytes = Files.size(Paths.get(stackFile));
+			} catch (IOException | InvalidPathException ex) {
+				event.bytes = 0;
+			}
+		}
+		event.commit();
+	}
+
+	/**
+	 * ReadStack(): Read the stack for RestoreStack()
+	 * 
+	 * @param e
+	 * @param stackName
+	 * @param stackSlot
+	 * @return
+	 */
+	private static DoubleStack ReadStack(RpnEngine e, String stackName, String stackSlot) {
+		Output.debugPrint("RestoreStack: " + PREFS_PATH + "/" + stackName + "/" + stackSlot);
+		Preferences p = Preferences.userRoot().node(PREFS_PATH + "/" + stackName + "/" + stackSlot);
+		String stackFile = p.get("StackFile", null);
+
+		if (stackFile != null) {
+			try {
+				DoubleStack stk = StackFile.Read(Paths.get(stackFile));
+				Output.debugPrint("  - Restored " + stk.size() + " elements from '" + stackFile + "'");
+				return stk;
+			} catch (IOException | InvalidPathException ex) {
+				e.PrintError("ERROR: Could not read the stack file. Starting with an empty stack");
+				e.PrintError(ex.getMessage());
+
+				// Keep the damaged file so it isn't overwritten when the stack is saved
+				try {
+					Files.move(Paths.get(stackFile), Paths.get(stackFile + ".corrupt"), StandardCopyOption.REPLACE_EXISTING);
+				} catch (IOException | InvalidPathException ex2) {
+					Output.debugPrint("Unable to rename the damaged stack file: " + ex2.getMessage());
+				}
+				return new DoubleStack();
+			}
+		}
 
-		// Override the default stack location with the provided one
-		prefs = Preferences.userRoot().node(PREFS_PATH + "/" + QueryLoadedStack() + "/" + stackSlot);
-		int numElements = prefs.getInt("StackElements", 0);
-		Stack<Double> stk = new Stack<Double>();
+		int numElements = p.getInt("StackElements", 0);
+		double[] values = new double[numElements];
 
 		Output.debugPrint("Restoring Stack:");
 		for (int i = 0; i <= numElements - 1; i++) {
-			stk.push(prefs.getDouble("Stack" + i, 0.0));
-			Output.debugPrint("  - Restoring #" + (numElements - i) + ":  " + stk.elementAt(i));
+			values[i] = p.getDouble("Stack" + i, 0.0);
+			Output.debugPrint("  - Restoring #" + (numElements - i) + ":  " + values[i]);
 		}
 
-		return stk;
+		return new DoubleStack(values);
 	}
 
 }
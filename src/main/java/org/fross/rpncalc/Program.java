@@ -0,0 +1,251 @@
+/******************************************************************************
+ * RPNCalc
+ * 
+ * RPNCalc is is an easy to use console based RPN calculator
+ * 
+ *  Copyright (c) 2013-2021 Michael Fross
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *           
+ ******************************************************************************/
+package org.fross.rpncalc;
+
+import java.util.ArrayList;
+import java.util.Set;
+
+import org.fross.library.Output;
+
+/**
+ * Program: An input line holding more than one command, such as '3 4 + 2 *', parsed into the steps
+ * it runs from left to right. Numbers, fractions and NumOps are converted and commands looked up once
+ * when the line is parsed, so running a cached program again does no tokenizing.
+ * 
+ * A line is only a program if its first word isn't a command that takes a parameter. 'd 3' and
+ * 'mem 2 add' still run as a command and its parameter. Commands inside a program run without one.
+ * An integer followed by a fraction, i.e. '1 3/4', is a single mixed number. A line calling a user
+ * defined word is always a program, even on its own, so the word is undone and rolled back as one.
+ * 
+ * Undo can't be part of a program. The line is a single undo level of its own, so undo inside it
+ * would take levels from before the line that rolling it back can't put back.
+ * 
+ * @author michael.d.fross
+ *
+ */
+public class Program {
+	// Class Constants
+	private static final Set<String> NOT_IN_PROGRAMS = Set.of("u", "undo");
+
+	// Class Variables
+	private final Step[] steps;
+
+	/**
+	 * Step: One number, NumOp or command of a program
+	 */
+	private static class Step {
+		final String name;							// Command name, or null for a number
+		final CommandRegistry.Command command;		// Command to run, or null for a number or NumOp
+		final double value;
+		final String op;							// Operand of a NumOp, or null
+		final UserWords.Word word;					// User defined word to call, or null
+		final Metrics.Stat stat;					// Timing of the user defined word, or null
+
+		Step(String name, CommandRegistry.Command command, double value, String op) {
+			this(name, command, value, op, null);
+		}
+
+		Step(String name, CommandRegistry.Command command, double value, String op, UserWords.Word word) {
+			this.name = name;
+			this.command = command;
+			this.value = value;
+			this.op = op;
+			this.word = word;
+			this.stat = (word != null) ? Metrics.Stat(Metrics.KIND_WORD, name) : null;
+		}
+	}
+
+	/**
+	 * Program(): Create a program from its parsed steps
+	 * 
+	 * @param steps
+	 */
+	private Program(Step[] steps) {
+		this.steps = steps;
+	}
+
+	/**
+	 * Parse(): Parse the input line into a program. Returns null if the line holds a single command or
+	 * starts with a command that takes a parameter, so it should be run as before. Throws
+	 * IllegalArgumentException naming the first word that isn't a number, NumOp, command or user word,
+	 * or is a command that can't be part of a program.
+	 * 
+	 * @param cmdInput
+	 * @param userWords - The engine's user defined words
+	 * @return
+	 */
+	public static Program Parse(String cmdInput, UserWords userWords) {
+		String line = cmdInput.toLowerCase();
+		int end = Tokenizer.TrimEnd(line);
+		int start = Tokenizer.SkipWhitespace(line, 0);
+
+		// Single commands and commands with a parameter are left to the caller
+		int firstEnd = Tokenizer.SkipToken(line, start);
+		String first = line.substring(start, firstEnd);
+		if (Tokenizer.SkipWhitespace(line, firstEnd) >= end) {
+			if (CommandRegistry.Lookup(first) != null || Tokenizer.IsNumber(first) || Tokenizer.IsNumOp(first) || IsFraction(first)) {
+				return null;
+			}
+			UserWords.Word w = userWords.Lookup(first);
+			return (w == null) ? null : new Program(new Step[] { new Step(first, null, 0.0, null, w) });
+		}
+		if (CommandRegistry.TakesParameter(first)) {
+			return null;
+		}
+
+		ArrayList<String> words = new ArrayList<String>();
+		while (start < end) {
+			int wordEnd = Tokenizer.SkipToken(line, start);
+			words.add(line.substring(start, wordEnd));
+			start = Tokenizer.SkipWhitespace(line, wordEnd);
+		}
+
+		ArrayList<Step> steps = new ArrayList<Step>(words.size());
+		for (int i = 0; i < words.size(); i++) {
+			String word = words.get(i);
+
+			CommandRegistry.Command command = CommandRegistry.Lookup(word);
+			if (command != null) {
+				if (NOT_IN_PROGRAMS.contains(word)) {
+					throw new IllegalArgumentException("'" + word + "' can't be used with other commands on a line.  Use it on a line of its own");
+				}
+				steps.add(new Step(word, command, 0.0, null));
+
+			} else if (IsFraction(word)) {
+				steps.add(new Step(null, null, ParseFraction(word), null));
+
+			} else if (Tokenizer.IsNumber(word)) {
+				double value = Tokenizer.ParseNumber(word);
+
+				// An integer followed by a fraction is a mixed number
+				if (word.indexOf('.') == -1 && i + 1 < words.size() && IsFraction(words.get(i + 1))) {
+					value += ParseFraction(words.get(++i));
+				}
+				steps.add(new Step(null, null, value, null));
+
+			} else if (Tokenizer.IsNumOp(word)) {
+				double value = Tokenizer.ParseNumber(word.substring(0, word.length() - 1));
+				steps.add(new Step(word, null, value, word.substring(word.length() - 1)));
+
+			} else if (userWords.Lookup(word) != null) {
+				steps.add(new Step(word, null, 0.0, null, userWords.Lookup(word)));
+
+			} else {
+				throw new IllegalArgumentException("Unknown Command: '" + word + "'");
+			}
+		}
+
+		return new Program(steps.toArray(new Step[0]));
+	}
+
+	/**
+	 * Run(): Run each step of the program on the engine, stopping at the first one that reports an
+	 * error or ends the session. Undo snapshots and rolling back are left to the caller.
+	 * 
+	 * @param e
+	 */
+	public void Run(RpnEngine e) {
+		int errorsBefore = e.QueryErrorCount();
+		boolean exitBefore = e.QueryExitRequested();
+
+		for (Step step : steps) {
+			if (step.word != null) {
+				Output.debugPrint("Program step: word '" + step.name + "'");
+				FlightRecorder.CommandEvent event = FlightRecorder.IsRunning() ? new FlightRecorder.CommandEvent() : null;
+				if (event != null) {
+					event.begin();
+				}
+				long startTime = System.nanoTime();
+				long startBytes = Metrics.AllocatedBytes();
+				e.words.Use(step.word);
+				e.words.Call(e, step.word);
+				step.stat.Record(startTime, startBytes);
+				if (event != null) {
+					event.end();
+				}
+				if (event != null && event.shouldCommit()) {
+					event.name = step.name;
+					event.kind = Metrics.KIND_WORD;
+					event.stackDepth = e.calcStack.size();
+					event.commit();
+				}
+
+			} else if (step.command != null) {
+				Output.debugPrint("Program step: '" + step.name + "'");
+				step.command.Execute(e, step.name, "");
+
+			} else if (step.op != null) {
+				Output.debugPrint("Program step: NumOp '" + step.name + "'");
+				if (e.calcStack.isEmpty()) {
+					e.PrintError("One number is required for this NumOp function");
+				} else {
+					e.calcStack.push(step.value);
+					e.calcStack = Math.Parse(step.op, e.calcStack, e.mathContext);
+				}
+
+			} else {
+				e.calcStack.push(step.value);
+			}
+
+			if (e.QueryErrorCount() != errorsBefore || e.QueryExitRequested() != exitBefore) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * size(): Return the number of steps in the program
+	 * 
+	 * @return
+	 */
+	public int size() {
+		return steps.length;
+	}
+
+	/**
+	 * IsFraction(): Return true if the word is a fraction such as 3/4
+	 * 
+	 * @param word
+	 * @return
+	 */
+	static boolean IsFraction(String word) {
+		int slash = word.indexOf('/');
+		return slash > 0 && Tokenizer.IsNumber(word.substring(0, slash)) && Tokenizer.IsNumber(word.substring(slash + 1));
+	}
+
+	/**
+	 * ParseFraction(): Return the decimal value of a word accepted by IsFraction()
+	 * 
+	 * @param word
+	 * @return
+	 */
+	static double ParseFraction(String word) {
+		int slash = word.indexOf('/');
+		return Tokenizer.ParseNumber(word.substring(0, slash)) / Tokenizer.ParseNumber(word.substring(slash + 1));
+	}
+
+}
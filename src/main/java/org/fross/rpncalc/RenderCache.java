@@ -0,0 +1,158 @@
+/******************************************************************************
+ * RPNCalc
+ * 
+ * RPNCalc is is an easy to use console based RPN calculator
+ * 
+ *  Copyright (c) 2013-2021 Michael Fross
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *           
+ ******************************************************************************/
+package org.fross.rpncalc;
+
+import java.util.Arrays;
+
+import org.fross.library.Format;
+
+/**
+ * RenderCache: Holds the comma formatted text of every stack element so the stack display only
+ * formats the elements that were pushed or changed since it was last drawn. The maximum number of
+ * characters before the decimal, used for decimal and right alignment, is maintained incrementally
+ * from a count of how many rows have each decimal position.
+ *
+ * @author michael.d.fross
+ *
+ */
+public class RenderCache {
+	// Class Variables
+	private String[] formatted = new String[16];
+	private long[] formattedBits = new long[16];	// Raw bits of the value each string was formatted from
+	private int[] decimalIndex = new int[16];
+	private int cachedSize = 0;
+	private int[] decimalIndexCounts = new int[32];	// decimalIndexCounts[d + 1] rows have their decimal at d
+	private int maxDigitsBeforeDecimal = 0;
+	private DoubleStack lastStack = null;
+
+	/**
+	 * Update(): Bring the cache in line with the provided stack. If it is the same stack that was last
+	 * drawn only the elements it reports as changed are looked at. Otherwise every element is compared
+	 * with the cached value, which is still far cheaper than formatting it.
+	 * 
+	 * @param stk
+	 */
+	public void Update(DoubleStack stk) {
+		int size = stk.size();
+		int from = (stk == lastStack) ? stk.QueryLowestChange() : 0;
+
+		// Forget rows that are no longer on the stack
+		for (int i = size; i < cachedSize; i++) {
+			RemoveDecimalIndex(decimalIndex[i]);
+			formatted[i] = null;
+		}
+
+		if (size > formatted.length) {
+			int newLength = java.lang.Math.max(size, formatted.length * 2);
+			formatted = Arrays.copyOf(formatted, newLength);
+			formattedBits = Arrays.copyOf(formattedBits, newLength);
+			decimalIndex = Arrays.copyOf(decimalIndex, newLength);
+		}
+
+		// Format what was pushed or changed
+		for (int i = from; i < size; i++) {
+			double value = stk.get(i);
+			long bits = Double.doubleToRawLongBits(value);
+
+			if (formatted[i] != null) {
+				if (formattedBits[i] == bits) {
+					continue;
+				}
+				RemoveDecimalIndex(decimalIndex[i]);
+			}
+
+			formatted[i] = Format.Comma(value);
+			formattedBits[i] = bits;
+			decimalIndex[i] = formatted[i].indexOf(".");
+			AddDecimalIndex(decimalIndex[i]);
+		}
+
+		cachedSize = size;
+		lastStack = stk;
+		stk.ClearChanges();
+	}
+
+	/**
+	 * QueryFormatted(): Return the comma formatted text of the element at the provided index
+	 * 
+	 * @param index
+	 * @return
+	 */
+	public String QueryFormatted(int index) {
+		return formatted[index];
+	}
+
+	/**
+	 * QueryDecimalIndex(): Return the location of the decimal in the formatted element
+	 * 
+	 * @param index
+	 * @return
+	 */
+	public int QueryDecimalIndex(int index) {
+		return decimalIndex[index];
+	}
+
+	/**
+	 * QueryMaxDigitsBeforeDecimal(): Return the most characters before the decimal of any element.
+	 * Commas are included.
+	 * 
+	 * @return
+	 */
+	public int QueryMaxDigitsBeforeDecimal() {
+		return maxDigitsBeforeDecimal;
+	}
+
+	/**
+	 * AddDecimalIndex(): Count a row with its decimal at the provided location
+	 * 
+	 * @param d
+	 */
+	private void AddDecimalIndex(int d) {
+		if (d + 1 >= decimalIndexCounts.length) {
+			decimalIndexCounts = Arrays.copyOf(decimalIndexCounts, d + 32);
+		}
+		decimalIndexCounts[d + 1]++;
+		if (d > maxDigitsBeforeDecimal) {
+			maxDigitsBeforeDecimal = d;
+		}
+	}
+
+	/**
+	 * RemoveDecimalIndex(): Stop counting a row with its decimal at the provided location
+	 * 
+	 * @param d
+	 */
+	private void RemoveDecimalIndex(int d) {
+		decimalIndexCounts[d + 1]--;
+
+		// If that was the last of the widest rows, drop down to the next widest
+		while (maxDigitsBeforeDecimal > 0 && decimalIndexCounts[maxDigitsBeforeDecimal + 1] == 0) {
+			maxDigitsBeforeDecimal--;
+		}
+	}
+
+}
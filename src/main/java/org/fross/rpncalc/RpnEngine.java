@@ -0,0 +1,569 @@
+/******************************************************************************
+ * RPNCalc
+ * 
+ * RPNCalc is is an easy to use console based RPN calculator
+ * 
+ *  Copyright (c) 2013-2021 Michael Fross
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *           
+ ******************************************************************************/
+package org.fross.rpncalc;
+
+import java.math.MathContext;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.fross.library.Output;
+import org.fusesource.jansi.Ansi;
+
+/**
+ * RpnEngine: One calculator. It owns its stacks, undo history, memory slots and settings, and sends
+ * everything its commands display to the OutputSink it was given, so any number of engines can run
+ * in one program, each on its own thread, without sharing anything. The interactive calculator, batch
+ * mode and each server session are all an engine with a different sink.
+ * 
+ * <pre>
+ *   RpnEngine engine = new RpnEngine(RpnEngine.SILENT);
+ *   engine.Execute("3");
+ *   engine.Execute("4");
+ *   engine.Execute("+");
+ *   double result = engine.QueryTop();
+ * </pre>
+ * 
+ * A line holding more than one command, such as '3 4 + 2 *', runs as a Program. The whole line is
+ * one undo level, and if any of its commands fails the stacks and memory slots are put back the way
+ * they were before the line. The most recently used programs are kept parsed.
+ * 
+ * An engine isn't thread safe itself. Use each engine from one thread at a time.
+ * 
+ * @author michael.d.fross
+ *
+ */
+public class RpnEngine {
+	// Class Constants
+	public static final int PROGRAM_CACHE_SIZE = 256;
+
+	/**
+	 * OutputSink: Where an engine sends what its commands display
+	 */
+	public interface OutputSink {
+		/**
+		 * Message(): Informational text such as a confirmation or a listing
+		 */
+		void Message(Ansi.Color color, String text);
+
+		/**
+		 * Error(): A command failed
+		 */
+		void Error(String text);
+
+		/**
+		 * Print(): The value on the provided line was asked for with the print command
+		 */
+		void Print(int line, double value);
+
+		/**
+		 * ClearScreen(): The clear and clean commands clear the screen if there is one
+		 */
+		default void ClearScreen() {
+		}
+
+		/**
+		 * Progress(): Progress of a long running command. finished is set with the last update.
+		 */
+		default void Progress(String text, boolean finished) {
+		}
+	}
+
+	// Sink that discards everything. The results are read from the engine.
+	public static final OutputSink SILENT = new OutputSink() {
+		@Override
+		public void Message(Ansi.Color color, String text) {
+		}
+
+		@Override
+		public void Error(String text) {
+		}
+
+		@Override
+		public void Print(int line, double value) {
+		}
+	};
+
+	// Calculator state. The commands in StackOps work on these directly.
+	DoubleStack calcStack = new DoubleStack();
+	DoubleStack calcStack2 = new DoubleStack();
+	UndoHistory undoStack = new UndoHistory();
+	Double[] memorySlots = new Double[StackOps.DEFAULT_MEMORY_SLOTS];
+	String loadedStack = null;				// Named stack from the preferences, or null if it isn't saved
+	int currentStackNum = 1;
+	char displayAlignment = 'l';
+	MathContext mathContext = null;			// Adaptive precision of the operands, or null for plain doubles
+	boolean exitRequested = false;
+	final UserWords words = new UserWords();
+
+	// Persistence of the loaded stack. Only the interactive calculator journals its changes.
+	Journal journal = null;
+	Persister persister = null;
+
+	// Saved state that is read from the preferences the first time a command uses it. Until then the
+	// saved copy is current, so it is neither journaled nor saved. The journal takes the state as it
+	// was read as the base to compare the changes with.
+	private boolean stack2Pending = false;
+	private boolean memorySlotsPending = false;
+	private DoubleStack restoredStack2 = null;
+	private Double[] restoredMemorySlots = null;
+
+	// Class Variables
+	private final OutputSink output;
+	private int errorCount = 0;
+	private String lastError = null;
+
+	// Parsed program lines in least to most recently used order
+	private final LinkedHashMap<String, Program> programCache = new LinkedHashMap<String, Program>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Program> eldest) {
+			return size() > PROGRAM_CACHE_SIZE;
+		}
+	};
+
+	/**
+	 * RpnEngine(): Create an engine with empty stacks that sends its output to the provided sink
+	 * 
+	 * @param output
+	 */
+	public RpnEngine(OutputSink output) {
+		this.output = output;
+	}
+
+	/**
+	 * RpnEngine(): Create an engine with empty stacks and the same number of memory slots, undo budget
+	 * and alignment as another one
+	 * 
+	 * @param output
+	 * @param settings
+	 */
+	public RpnEngine(OutputSink output, RpnEngine settings) {
+		this.output = output;
+		this.undoStack = new UndoHistory(settings.undoStack);
+		this.memorySlots = new Double[settings.memorySlots.length];
+		this.displayAlignment = settings.displayAlignment;
+		this.mathContext = settings.mathContext;
+	}
+
+	/**
+	 * Execute(): Parse the provided input line and execute it. Returns false if the command reported an
+	 * error. QueryExitRequested() tells if the command asked to end the session.
+	 * 
+	 * @param cmdInput
+	 * @return
+	 */
+	public boolean Execute(String cmdInput) {
+		words.StartLine();
+		boolean result = ExecuteLine(cmdInput);
+
+		// Let the user know if the undo history had to drop its oldest levels
+		int discarded = undoStack.TakeDiscardedLevels();
+		if (discarded > 0) {
+			Message(Ansi.Color.YELLOW, "The undo history is full.  The oldest " + discarded + " undo levels were discarded");
+		}
+
+		return result;
+	}
+
+	/**
+	 * ExecuteLine(): Parse and execute the provided input line for Execute()
+	 * 
+	 * @param cmdInput
+	 * @return
+	 */
+	private boolean ExecuteLine(String cmdInput) {
+		int errorsBefore = errorCount;
+
+		// Lines holding more than one command or calling a user word run as a single transaction
+		Program program = programCache.get(cmdInput);
+		if (program == null) {
+			try {
+				program = Program.Parse(cmdInput, words);
+			} catch (IllegalArgumentException ex) {
+				PrintError(ex.getMessage());
+				return false;
+			}
+			if (program != null) {
+				programCache.put(cmdInput, program);
+			}
+		}
+		if (program != null) {
+			return ExecuteProgram(program);
+		}
+
+		String cmdInputCmd = "";	// The first field. The command.
+		String cmdInputParam = "";	// The remaining string. Parameters
+
+		// Break each line entered into a command and a parameter string
+		String line = cmdInput.toLowerCase();
+		int cmdStart = Tokenizer.SkipWhitespace(line, 0);
+		int cmdEnd = Tokenizer.SkipToken(line, cmdStart);
+		int paramStart = Tokenizer.SkipWhitespace(line, cmdEnd);
+		int paramEnd = Tokenizer.TrimEnd(line);
+
+		cmdInputCmd = line.substring(cmdStart, cmdEnd);
+		if (paramStart < paramEnd) {
+			cmdInputParam = line.substring(paramStart, paramEnd);
+		}
+		Output.debugPrint("Entered: '" + cmdInput + "'  Command: '" + cmdInputCmd + "' Parameter: '" + cmdInputParam + "'");
+
+		// Ignore if there is no command entered
+		if (cmdInputCmd.isEmpty()) {
+			Output.debugPrint("Blank line entered");
+			return true;
+		}
+
+		// Look up the command in the registry and execute it
+		CommandRegistry.Command command = CommandRegistry.Lookup(cmdInputCmd);
+		if (command != null) {
+			// Some commands, such as import, need the parameter as it was typed
+			if (CommandRegistry.IsCaseSensitive(cmdInputCmd) && paramStart < paramEnd) {
+				int rawStart = Tokenizer.SkipWhitespace(cmdInput, Tokenizer.SkipToken(cmdInput, Tokenizer.SkipWhitespace(cmdInput, 0)));
+				cmdInputParam = cmdInput.substring(rawStart, Tokenizer.TrimEnd(cmdInput));
+			}
+			command.Execute(this, cmdInputCmd, cmdInputParam);
+			return errorCount == errorsBefore;
+		}
+
+		// Check for a fraction. If number entered contains a '/' but it's not at the
+		// end, then it must be a fraction.
+		if (cmdInput.indexOf('/') != -1 && cmdInput.charAt(cmdInput.length() - 1) != '/') {
+			long fracInteger = 0;
+			double fracDecimalEquiv = 0.0;
+
+			// If there wasn't an integer entered, move the fraction to the parameter
+			// variable
+			if (cmdInputCmd.indexOf('/') != -1) {
+				cmdInputParam = cmdInputCmd;
+			} else {
+				fracInteger = Long.parseLong(cmdInputCmd);
+			}
+
+			double fracTop = Double.parseDouble(cmdInputParam.substring(0, cmdInputParam.indexOf('/')));
+			double fracBottom = Double.parseDouble(cmdInputParam.substring(cmdInputParam.indexOf('/') + 1));
+
+			// Divide the fraction and get a decimal equivalent
+			fracDecimalEquiv = fracTop / fracBottom;
+
+			// Simply convert the fraction to a decimal and add it to the stack
+			Output.debugPrint("Fraction Entered: '" + cmdInput + "' Decimal: " + (fracInteger + fracDecimalEquiv));
+
+			// Add the decimal number to the stack and continue with next command
+			calcStack.push(fracInteger + fracDecimalEquiv);
+
+			// Number entered, add to stack.
+		} else if (Tokenizer.IsNumber(cmdInputCmd)) {
+			// Save to Undo stack
+			undoStack.push(calcStack);
+
+			Output.debugPrint("Adding number '" + cmdInputCmd + "' onto the stack");
+			calcStack.push(Tokenizer.ParseNumber(cmdInputCmd));
+
+			// Handle numbers with a single operand at the end (a NumOp)
+		} else if (Tokenizer.IsNumOp(cmdInputCmd)) {
+			// Save to Undo stack
+			undoStack.push(calcStack);
+
+			Output.debugPrint("CalcStack has " + calcStack.size() + " elements");
+			// Verify stack contains at least one element
+			if (calcStack.size() >= 1) {
+				String TempOp = cmdInputCmd.substring(cmdInputCmd.length() - 1, cmdInputCmd.length());
+				String TempNum = cmdInputCmd.substring(0, cmdInputCmd.length() - 1);
+				Output.debugPrint("NumOp Found: Num= '" + TempNum + "'");
+				Output.debugPrint("NumOp Found: Op = '" + TempOp + "'");
+				calcStack.push(Tokenizer.ParseNumber(TempNum));
+				calcStack = Math.Parse(TempOp, calcStack, mathContext);
+			} else {
+				PrintError("One number is required for this NumOp function");
+			}
+
+		} else {
+			PrintError("Unknown Command: '" + cmdInput + "'");
+		}
+
+		return errorCount == errorsBefore;
+	}
+
+	/**
+	 * ExecuteProgram(): Run a program as one change. Its commands don't save undo levels of their own.
+	 * If one of them fails, the stacks and memory slots are put back the way they were and no undo
+	 * level is saved. Otherwise the stack from before the line is saved as a single undo level.
+	 * 
+	 * @param program
+	 * @return
+	 */
+	private boolean ExecuteProgram(Program program) {
+		int errorsBefore = errorCount;
+		DoubleStack before1 = calcStack.snapshot();
+		DoubleStack before2 = calcStack2.snapshot();
+		Double[] memBefore = memorySlots.clone();
+		boolean stack2PendingBefore = stack2Pending;
+		boolean memorySlotsPendingBefore = memorySlotsPending;
+		int stackNumBefore = currentStackNum;
+		boolean exitBefore = exitRequested;
+
+		Output.debugPrint("Running a program of " + program.size() + " steps");
+		undoStack.Suspend();
+		try {
+			program.Run(this);
+		} catch (RuntimeException ex) {
+			PrintError("ERROR:  " + ((ex.getMessage() != null) ? ex.getMessage() : ex.getClass().getSimpleName()));
+		} finally {
+			undoStack.Resume();
+		}
+
+		if (errorCount != errorsBefore) {
+			Output.debugPrint("Program failed.  Rolling the stacks back to before the line");
+			calcStack = before1;
+			calcStack2 = before2;
+			System.arraycopy(memBefore, 0, memorySlots, 0, java.lang.Math.min(memBefore.length, memorySlots.length));
+			stack2Pending = stack2PendingBefore;
+			memorySlotsPending = memorySlotsPendingBefore;
+			currentStackNum = stackNumBefore;
+			exitRequested = exitBefore;
+			return false;
+		}
+
+		undoStack.push(before1);
+		return true;
+	}
+
+	/**
+	 * PrintError(): Report an error. Errors are counted so batch mode can return a failing exit status.
+	 * 
+	 * @param msg
+	 */
+	public void PrintError(String msg) {
+		errorCount++;
+		lastError = msg;
+		output.Error(msg);
+	}
+
+	/**
+	 * Message(): Display informational text
+	 * 
+	 * @param color
+	 * @param text
+	 */
+	public void Message(Ansi.Color color, String text) {
+		output.Message(color, text);
+	}
+
+	/**
+	 * QueryOutput(): Return the sink the engine's output goes to
+	 * 
+	 * @return
+	 */
+	public OutputSink QueryOutput() {
+		return output;
+	}
+
+	/**
+	 * QueryTop(): Return the value on the top of the stack. Throws EmptyStackException if the stack is
+	 * empty.
+	 * 
+	 * @return
+	 */
+	public double QueryTop() {
+		return calcStack.peek();
+	}
+
+	/**
+	 * QueryStack(): Return a copy of the current stack. It is taken in O(1) and doesn't change as the
+	 * engine continues.
+	 * 
+	 * @return
+	 */
+	public DoubleStack QueryStack() {
+		return calcStack.snapshot();
+	}
+
+	/**
+	 * QueryMemorySlot(): Return the value in the provided memory slot or null if it is empty
+	 * 
+	 * @param slot
+	 * @return
+	 */
+	public Double QueryMemorySlot(int slot) {
+		return MemorySlots()[slot];
+	}
+
+	/**
+	 * DeferRestore(): Read the secondary stack of the loaded stack and the memory slots from the
+	 * preferences the first time a command uses them instead of now
+	 */
+	void DeferRestore() {
+		DeferStack2();
+		memorySlotsPending = true;
+	}
+
+	/**
+	 * DeferStack2(): Read the secondary stack of the loaded stack from the preferences the first time a
+	 * command uses it instead of now. There is nothing to read if the stack isn't a saved one.
+	 */
+	void DeferStack2() {
+		calcStack2 = new DoubleStack();
+		stack2Pending = loadedStack != null;
+	}
+
+	/**
+	 * SetStack2(): Replace the secondary stack with one that doesn't need to be read
+	 * 
+	 * @param stk
+	 */
+	void SetStack2(DoubleStack stk) {
+		calcStack2 = stk;
+		stack2Pending = false;
+		restoredStack2 = null;
+	}
+
+	/**
+	 * Stack2(): Return the secondary stack. It is read from the preferences if this is the first time
+	 * it's used.
+	 * 
+	 * @return
+	 */
+	DoubleStack Stack2() {
+		if (stack2Pending == true) {
+			stack2Pending = false;
+			calcStack2 = Prefs.RestoreStack(this, loadedStack, "2");
+			if (journal != null) {
+				restoredStack2 = calcStack2.snapshot();
+			}
+		}
+		return calcStack2;
+	}
+
+	/**
+	 * MemorySlots(): Return the memory slots. They are read from the preferences if this is the first
+	 * time they are used.
+	 * 
+	 * @return
+	 */
+	Double[] MemorySlots() {
+		if (memorySlotsPending == true) {
+			memorySlotsPending = false;
+			StackOps.RestoreMemSlots(this, memorySlots);
+			if (journal != null) {
+				restoredMemorySlots = memorySlots.clone();
+			}
+		}
+		return memorySlots;
+	}
+
+	/**
+	 * IsStack2Restored(): Return false while the secondary stack hasn't been read from the preferences
+	 * 
+	 * @return
+	 */
+	boolean IsStack2Restored() {
+		return stack2Pending == false;
+	}
+
+	/**
+	 * IsMemorySlotsRestored(): Return false while the memory slots haven't been read from the
+	 * preferences
+	 * 
+	 * @return
+	 */
+	boolean IsMemorySlotsRestored() {
+		return memorySlotsPending == false;
+	}
+
+	/**
+	 * TakeRestoredStack2(): Return the secondary stack as it was read from the preferences, or null if
+	 * it hasn't been, and forget it
+	 * 
+	 * @return
+	 */
+	DoubleStack TakeRestoredStack2() {
+		DoubleStack stk = restoredStack2;
+		restoredStack2 = null;
+		return stk;
+	}
+
+	/**
+	 * TakeRestoredMemorySlots(): Return the memory slots as they were read from the preferences, or
+	 * null if they haven't been, and forget them
+	 * 
+	 * @return
+	 */
+	Double[] TakeRestoredMemorySlots() {
+		Double[] slots = restoredMemorySlots;
+		restoredMemorySlots = null;
+		return slots;
+	}
+
+	/**
+	 * QueryLoadedStack(): Return the name of the loaded stack, or null if it isn't a saved stack
+	 * 
+	 * @return
+	 */
+	public String QueryLoadedStack() {
+		return loadedStack;
+	}
+
+	/**
+	 * QueryErrorCount(): Return the number of errors reported since the engine was created
+	 * 
+	 * @return
+	 */
+	public int QueryErrorCount() {
+		return errorCount;
+	}
+
+	/**
+	 * QueryLastError(): Return the last error reported or null if there hasn't been one
+	 * 
+	 * @return
+	 */
+	public String QueryLastError() {
+		return lastError;
+	}
+
+	/**
+	 * QueryExitRequested(): Return true once a command has asked to end the session
+	 * 
+	 * @return
+	 */
+	public boolean QueryExitRequested() {
+		return exitRequested;
+	}
+
+	/**
+	 * Close(): Save the loaded named stack, unless the journal saves it, and release what the engine
+	 * holds outside of memory such as the undo spill file
+	 */
+	public void Close() {
+		if (journal == null) {
+			StackOps.SaveLoadedStack(this);
+		}
+		undoStack.Close();
+	}
+
+}
@@ -0,0 +1,585 @@
+/******************************************************************************
+ * RPNCalc
+ * 
+ * RPNCalc is is an easy to use console based RPN calculator
+ * 
+ *  Copyright (c) 2013-2021 Michael Fross
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *           
+ ******************************************************************************/
+package org.fross.rpncalc;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.fross.library.Output;
+import org.fusesource.jansi.Ansi;
+
+/**
+ * Server: Runs RPNCalc as a headless server so other programs can use it without starting a JVM for
+ * every calculation. Clients connect over TCP to the loopback interface and send one command per
+ * line, exactly as it would be typed. Each connection is a session with its own stacks, memory slots
+ * and undo history. After every line the server replies with anything the command printed, followed
+ * by one status line:
+ * 
+ * <pre>
+ *   ok [line1]       The command worked. line1 is the value on the top of the stack, if there is one.
+ *   err message      The command failed
+ *   bye              The session was ended with x, exit or cx and the connection is closed
+ * </pre>
+ * 
+ * A session starts with empty stacks. 'load name' switches it to a named stack from the preferences
+ * so stacks can be shared with other sessions and with the interactive calculator. A named stack is
+ * saved when another one is loaded and when the session ends.
+ * 
+ * The connections are served by one thread with a selector, so thousands of mostly idle connections
+ * cost little more than their sockets. Each session is its own RpnEngine whose output is collected
+ * into the reply. The lines a session sends are run on worker threads, so a long command only holds
+ * up its own session and idle sessions don't hold a thread. The selector stops reading from a
+ * session while its lines run and sends the reply when they are done, which keeps the lines of a
+ * session in order.
+ * 
+ * When the server stops, the lines that are running get SHUTDOWN_WAIT_MS to finish. Lines still
+ * running after that are interrupted, which makes the words they run fail so the line is rolled back.
+ * Every session's engine is closed, saving its named stack, by whichever of the selector or the
+ * worker is last to let go of it.
+ * 
+ * @author michael.d.fross
+ *
+ */
+public class Server {
+	// Class Constants
+	private static final int READ_BUFFER_BYTES = 64 * 1024;
+	private static final int MAX_LINE_LENGTH = 64 * 1024;
+	private static final long SHUTDOWN_WAIT_MS = 10000;
+	private static final long INTERRUPT_WAIT_MS = 2000;		// After SHUTDOWN_WAIT_MS, for interrupted lines to end
+	private static final long MAX_LINE_STEPS = 10000000;	// Word calls and loop passes per line
+
+	// Class Variables
+	private final Selector selector;
+	private final ServerSocketChannel listener;
+	private final RpnEngine settings;
+	private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_BYTES);
+	private final ExecutorService workers;
+	private final ConcurrentLinkedQueue<Session> finished = new ConcurrentLinkedQueue<Session>();
+	private final CountDownLatch stopped = new CountDownLatch(1);
+	private volatile boolean stopping = false;
+
+	/**
+	 * SessionOutput: Collects the values printed and the errors reported by one line of a session.
+	 * Everything else the commands display is discarded.
+	 */
+	private static class SessionOutput implements RpnEngine.OutputSink {
+		final StringBuilder printed = new StringBuilder();
+		final StringBuilder errors = new StringBuilder();
+
+		@Override
+		public void Message(Ansi.Color color, String text) {
+		}
+
+		@Override
+		public void Error(String text) {
+			if (errors.length() > 0) {
+				errors.append("; ");
+			}
+			errors.append(text);
+		}
+
+		@Override
+		public void Print(int line, double value) {
+			printed.append(value).append('\n');
+		}
+
+		void Reset() {
+			printed.setLength(0);
+			errors.setLength(0);
+		}
+	}
+
+	/**
+	 * Session: The calculator of one connection and its partly received input and unsent reply
+	 */
+	private static class Session {
+		final SocketChannel channel;
+		final SelectionKey key;
+		final SessionOutput output = new SessionOutput();
+		final RpnEngine engine;
+		final ByteArrayOutputStream reply = new ByteArrayOutputStream();
+		final ArrayList<String> lines = new ArrayList<String>();	// Complete lines waiting to run
+		byte[] line = new byte[128];
+		int lineLength = 0;
+		boolean lineTooLong = false;
+		ByteBuffer pending = null;			// Reply bytes the client wasn't ready for
+		volatile boolean running = false;	// A worker is running the lines
+		volatile boolean closing = false;
+		boolean closed = false;				// The connection is closed. Guarded by the session.
+		boolean engineClosed = false;		// Guarded by the session
+
+		Session(SocketChannel channel, Selector selector, RpnEngine settings) throws IOException {
+			this.channel = channel;
+			this.engine = new RpnEngine(output, settings);
+			this.engine.words.SetStepLimit(MAX_LINE_STEPS);
+			this.key = channel.register(selector, SelectionKey.OP_READ, this);
+		}
+	}
+
+	/**
+	 * Server(): Listen on the provided port of the loopback interface. Port 0 picks a free port. The
+	 * sessions get the memory slots, undo budget and alignment of the provided engine, which also
+	 * reports the server's own errors. Worker threads are started as sessions need them and end after
+	 * a minute without work.
+	 * 
+	 * @param port
+	 * @param settings
+	 * @throws IOException
+	 */
+	public Server(int port, RpnEngine settings) throws IOException {
+		this.settings = settings;
+		AtomicInteger workerCount = new AtomicInteger();
+		workers = Executors.newCachedThreadPool(r -> {
+			Thread t = new Thread(r, "rpncalc-session-" + workerCount.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		});
+		selector = Selector.open();
+		listener = ServerSocketChannel.open();
+		listener.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1024);
+		listener.configureBlocking(false);
+		listener.register(selector, SelectionKey.OP_ACCEPT);
+	}
+
+	/**
+	 * Run(): Start a server on the provided port and serve sessions until the program is stopped
+	 * 
+	 * @param port
+	 * @param settings
+	 */
+	public static void Run(int port, RpnEngine settings) {
+		Server server = null;
+		try {
+			server = new Server(port, settings);
+		} catch (IOException ex) {
+			Output.fatalError("Unable to listen on port " + port + ": " + ex.getMessage(), 6);
+			return;
+		}
+
+		Output.printColorln(Ansi.Color.CYAN, "RPNCalc server listening on " + server.QueryAddress());
+		Runtime.getRuntime().addShutdownHook(new Thread(server::Stop, "rpncalc-server-shutdown"));
+
+		try {
+			server.Serve();
+		} catch (IOException ex) {
+			settings.PrintError("ERROR:  The server stopped: " + ex.getMessage());
+		}
+	}
+
+	/**
+	 * QueryAddress(): Return the address and port the server is listening on
+	 * 
+	 * @return
+	 */
+	public String QueryAddress() {
+		try {
+			InetSocketAddress address = (InetSocketAddress) listener.getLocalAddress();
+			return address.getAddress().getHostAddress() + ":" + address.getPort();
+		} catch (IOException ex) {
+			return "unknown";
+		}
+	}
+
+	/**
+	 * Serve(): Accept connections and run the lines they send until Stop() is called. The sessions are
+	 * then ended, saving any named stacks they have loaded.
+	 * 
+	 * @throws IOException
+	 */
+	public void Serve() throws IOException {
+		try {
+			while (stopping == false) {
+				selector.select();
+
+				// Send the replies of the sessions whose lines have finished running
+				Session done;
+				while ((done = finished.poll()) != null) {
+					try {
+						if (done.key.isValid()) {
+							Send(done.key, ByteBuffer.wrap(done.reply.toByteArray()));
+						}
+					} catch (IOException ex) {
+						Output.debugPrint("Closing session: " + ex.getMessage());
+						Close(done.key);
+					}
+				}
+
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+
+					try {
+						if (key.isValid() && key.isAcceptable()) {
+							Accept();
+						}
+						if (key.isValid() && key.isWritable()) {
+							Write(key);
+						}
+						if (key.isValid() && key.isReadable()) {
+							Read(key);
+						}
+					} catch (IOException ex) {
+						Output.debugPrint("Closing session: " + ex.getMessage());
+						Close(key);
+					}
+				}
+			}
+
+		} finally {
+			// Let the lines that are running finish before their sessions are ended, then interrupt them
+			workers.shutdown();
+			boolean finishedAll = false;
+			try {
+				finishedAll = workers.awaitTermination(SHUTDOWN_WAIT_MS, TimeUnit.MILLISECONDS);
+				if (finishedAll == false) {
+					Output.debugPrint("Interrupting the sessions that are still running");
+					workers.shutdownNow();
+					finishedAll = workers.awaitTermination(INTERRUPT_WAIT_MS, TimeUnit.MILLISECONDS);
+				}
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+
+			int stillRunning = 0;
+			for (SelectionKey key : selector.keys()) {
+				Session s = (Session) key.attachment();
+				if (s != null && s.running == true) {
+					stillRunning++;
+				}
+				Close(key);
+			}
+			if (finishedAll == false && stillRunning > 0) {
+				settings.PrintError("ERROR:  " + stillRunning + " sessions didn't stop.  Their stacks are saved only if they finish before the program exits");
+			}
+			listener.close();
+			selector.close();
+			Prefs.Flush(settings);
+			stopped.countDown();
+		}
+	}
+
+	/**
+	 * Stop(): Ask the server to end every session and stop, waiting long enough for the running lines
+	 * to finish or be interrupted and for the sessions to be saved
+	 */
+	public void Stop() {
+		stopping = true;
+		selector.wakeup();
+		try {
+			stopped.await(SHUTDOWN_WAIT_MS + INTERRUPT_WAIT_MS + SHUTDOWN_WAIT_MS, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Accept(): Start a session for each waiting connection
+	 * 
+	 * @throws IOException
+	 */
+	private void Accept() throws IOException {
+		SocketChannel channel;
+		while ((channel = listener.accept()) != null) {
+			channel.configureBlocking(false);
+			channel.socket().setTcpNoDelay(true);
+			new Session(channel, selector, settings);
+		}
+	}
+
+	/**
+	 * Read(): Read what the client sent and hand every complete line in it to a worker to run. The
+	 * session isn't read from again until the replies have been sent.
+	 * 
+	 * @param key
+	 * @throws IOException
+	 */
+	private void Read(SelectionKey key) throws IOException {
+		Session s = (Session) key.attachment();
+
+		readBuffer.clear();
+		int bytesRead = s.channel.read(readBuffer);
+		if (bytesRead < 0) {
+			Close(key);
+			return;
+		}
+		readBuffer.flip();
+
+		while (readBuffer.hasRemaining() && s.lineTooLong == false) {
+			byte b = readBuffer.get();
+			if (b == '\n') {
+				int length = s.lineLength;
+				if (length > 0 && s.line[length - 1] == '\r') {
+					length--;
+				}
+				s.lines.add(new String(s.line, 0, length, StandardCharsets.UTF_8));
+				s.lineLength = 0;
+
+			} else if (s.lineLength == MAX_LINE_LENGTH) {
+				s.lineTooLong = true;
+
+			} else {
+				if (s.lineLength == s.line.length) {
+					s.line = Arrays.copyOf(s.line, s.line.length * 2);
+				}
+				s.line[s.lineLength++] = b;
+			}
+		}
+
+		if (s.lines.isEmpty() == false || s.lineTooLong == true) {
+			key.interestOps(0);
+			s.running = true;
+			workers.execute(() -> RunLines(s));
+		}
+	}
+
+	/**
+	 * RunLines(): Body of a worker. Run the lines the session has received and hand the replies back to
+	 * the selector to send.
+	 * 
+	 * @param s
+	 */
+	private void RunLines(Session s) {
+		s.reply.reset();
+		try {
+			for (String line : s.lines) {
+				if (s.closing == true) {
+					break;
+				}
+				Execute(s, line);
+			}
+			if (s.lineTooLong == true && s.closing == false) {
+				Reply(s, "err Lines can't be longer than " + MAX_LINE_LENGTH + " bytes");
+				s.closing = true;
+			}
+		} finally {
+			s.lines.clear();
+
+			// If the connection was closed while the lines ran, the session ends here
+			boolean closed;
+			synchronized (s) {
+				s.running = false;
+				closed = s.closed;
+			}
+			if (closed == true) {
+				CloseEngine(s);
+			} else {
+				finished.add(s);
+				selector.wakeup();
+			}
+		}
+	}
+
+	/**
+	 * Execute(): Run one line of a session and add its reply
+	 * 
+	 * @param s
+	 * @param line
+	 */
+	private void Execute(Session s, String line) {
+		s.output.Reset();
+
+		try {
+			String refused = QueryRefusedCommand(line);
+			if (refused != null) {
+				s.engine.PrintError("ERROR:  '" + refused + "' is not available on the server");
+			} else {
+				s.engine.Execute(line);
+			}
+
+		} catch (RuntimeException ex) {
+			String reason = (ex.getMessage() != null) ? ex.getMessage() : ex.getClass().getSimpleName();
+			s.engine.PrintError("ERROR:  '" + line.trim() + "' failed: " + reason);
+		}
+
+		// Printed values, then the status line
+		byte[] printed = s.output.printed.toString().getBytes(StandardCharsets.UTF_8);
+		s.reply.write(printed, 0, printed.length);
+		if (s.output.errors.length() > 0) {
+			Reply(s, "err " + s.output.errors);
+		} else if (s.engine.QueryExitRequested() == true) {
+			Reply(s, "bye");
+			s.closing = true;
+		} else if (s.engine.calcStack.isEmpty()) {
+			Reply(s, "ok");
+		} else {
+			Reply(s, "ok " + s.engine.calcStack.peek());
+		}
+	}
+
+	/**
+	 * QueryRefusedCommand(): Return the first command in the line that reaches the files or settings
+	 * of the server itself, or changes the user words every session shares, or null if there isn't
+	 * one. Every word of a program line is checked. The parameter of a line starting with a command
+	 * that takes one is not.
+	 * 
+	 * @param line
+	 * @return
+	 */
+	private static String QueryRefusedCommand(String line) {
+		String lower = line.toLowerCase();
+		int end = Tokenizer.TrimEnd(lower);
+		int first = Tokenizer.SkipWhitespace(lower, 0);
+		int start = first;
+
+		while (start < end) {
+			int wordEnd = Tokenizer.SkipToken(lower, start);
+			String word = lower.substring(start, wordEnd);
+
+			switch (word) {
+			case "import":
+			case "export":
+			case "debug":
+			case ":":
+			case "forget":
+				return word;
+			}
+
+			if (start == first && CommandRegistry.TakesParameter(word)) {
+				break;
+			}
+			start = Tokenizer.SkipWhitespace(lower, wordEnd);
+		}
+
+		return null;
+	}
+
+	/**
+	 * Reply(): Add a line to the reply being built for the session
+	 * 
+	 * @param s
+	 * @param text
+	 */
+	private static void Reply(Session s, String text) {
+		byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+		s.reply.write(bytes, 0, bytes.length);
+		s.reply.write('\n');
+	}
+
+	/**
+	 * Send(): Write the reply to the client. Whatever it isn't ready for is kept and the session stops
+	 * reading until it has been sent, so a client that doesn't read can't make the server buffer
+	 * without limit.
+	 * 
+	 * @param key
+	 * @param buf
+	 * @throws IOException
+	 */
+	private void Send(SelectionKey key, ByteBuffer buf) throws IOException {
+		Session s = (Session) key.attachment();
+		s.channel.write(buf);
+
+		if (buf.hasRemaining()) {
+			s.pending = buf;
+			key.interestOps(SelectionKey.OP_WRITE);
+		} else {
+			s.pending = null;
+			if (s.closing == true) {
+				Close(key);
+			} else {
+				key.interestOps(SelectionKey.OP_READ);
+			}
+		}
+	}
+
+	/**
+	 * Write(): Continue sending a reply the client wasn't ready for
+	 * 
+	 * @param key
+	 * @throws IOException
+	 */
+	private void Write(SelectionKey key) throws IOException {
+		Session s = (Session) key.attachment();
+		if (s.pending != null) {
+			Send(key, s.pending);
+		}
+	}
+
+	/**
+	 * Close(): End a session, saving its named stack if it has one. If its lines are still running the
+	 * worker ends the session when they finish.
+	 * 
+	 * @param key
+	 */
+	private void Close(SelectionKey key) {
+		Session s = (Session) key.attachment();
+		key.cancel();
+		if (s == null) {
+			return;
+		}
+
+		boolean running;
+		synchronized (s) {
+			s.closed = true;
+			running = s.running;
+		}
+		if (running == false) {
+			CloseEngine(s);
+		}
+		try {
+			s.channel.close();
+		} catch (IOException ex) {
+			Output.debugPrint("Unable to close the session: " + ex.getMessage());
+		}
+		key.attach(null);
+	}
+
+	/**
+	 * CloseEngine(): Close the engine of a session the first time it is called. Called once nothing is
+	 * running the session's lines.
+	 * 
+	 * @param s
+	 */
+	private static void CloseEngine(Session s) {
+		synchronized (s) {
+			if (s.engineClosed == true) {
+				return;
+			}
+			s.engineClosed = true;
+		}
+
+		s.engine.Close();
+	}
+
+}
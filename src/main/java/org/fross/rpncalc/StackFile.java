@@ -0,0 +1,180 @@
+/******************************************************************************
+ * RPNCalc
+ * 
+ * RPNCalc is is an easy to use console based RPN calculator
+ * 
+ *  Copyright (c) 2013-2021 Michael Fross
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *           
+ ******************************************************************************/
+package org.fross.rpncalc;
+
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * StackFile: Reads and writes a stack as a compact binary file. The layout is a 24 byte header
+ * followed by the raw little-endian doubles, bottom of the stack first:
+ * 
+ * <pre>
+ *   0  int   Magic number "RPNS"
+ *   4  int   Format version
+ *   8  long  Number of elements
+ *  16  long  CRC32 of the element bytes
+ *  24  double[]
+ * </pre>
+ * 
+ * Files are written to a temporary file and then moved into place so an interrupted save never
+ * leaves a partial stack behind. They are read back through a memory mapped view of the file.
+ * 
+ * @author michael.d.fross
+ *
+ */
+public class StackFile {
+	// Class Constants
+	public static final String EXTENSION = ".stack";
+	private static final int MAGIC = 0x534E5052;	// "RPNS" in little-endian byte order
+	private static final int VERSION = 1;
+	private static final int HEADER_BYTES = 24;
+	private static final int WRITE_BUFFER_DOUBLES = DoubleStack.CHUNK_SIZE;
+
+	/**
+	 * QueryPath(): Return the file that holds the provided stack name and slot. The stack name is
+	 * encoded so any name that is valid in the preferences system is a valid file name.
+	 * 
+	 * @param stackName
+	 * @param stackSlot
+	 * @return
+	 * @throws IOException
+	 */
+	public static Path QueryPath(String stackName, String stackSlot) throws IOException {
+		Path dir = Files.createDirectories(Prefs.QueryDataDir().resolve("stacks"));
+		String fileName = URLEncoder.encode(stackName, StandardCharsets.UTF_8).replace("*", "%2A");
+		return dir.resolve(fileName + "-" + stackSlot + EXTENSION);
+	}
+
+	/**
+	 * Write(): Save the stack to the provided file, replacing it if it exists
+	 * 
+	 * @param file
+	 * @param stk
+	 * @throws IOException
+	 */
+	public static void Write(Path file, DoubleStack stk) throws IOException {
+		Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+		ByteBuffer buf = ByteBuffer.allocateDirect(WRITE_BUFFER_DOUBLES * Double.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+		CRC32 crc = new CRC32();
+
+		try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			// Write the elements after the header one chunk at a time
+			long position = HEADER_BYTES;
+			for (int c = 0; c < stk.chunkCount(); c++) {
+				int length = java.lang.Math.min(DoubleStack.CHUNK_SIZE, stk.size() - (c << DoubleStack.CHUNK_SHIFT));
+				buf.clear();
+				buf.asDoubleBuffer().put(stk.chunk(c), 0, length);
+				buf.limit(length * Double.BYTES);
+				crc.update(buf.duplicate());
+				position += WriteFully(channel, buf, position);
+			}
+
+			// The header goes last so it carries the checksum
+			buf.clear();
+			buf.putInt(MAGIC).putInt(VERSION).putLong(stk.size()).putLong(crc.getValue());
+			buf.flip();
+			WriteFully(channel, buf, 0);
+			channel.force(true);
+		}
+
+		Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Read(): Load a stack from the provided file. An IOException is thrown if the file is not a stack
+	 * file or fails its checksum.
+	 * 
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	public static DoubleStack Read(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long fileSize = channel.size();
+			if (fileSize < HEADER_BYTES) {
+				throw new IOException("'" + file + "' is too short to be a stack file");
+			}
+
+			MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+			map.order(ByteOrder.LITTLE_ENDIAN);
+
+			if (map.getInt(0) != MAGIC) {
+				throw new IOException("'" + file + "' is not a stack file");
+			}
+			if (map.getInt(4) != VERSION) {
+				throw new IOException("'" + file + "' is stack file version " + map.getInt(4) + ". Only version " + VERSION + " is supported");
+			}
+
+			long numElements = map.getLong(8);
+			if (numElements < 0 || numElements > Integer.MAX_VALUE || HEADER_BYTES + numElements * Double.BYTES != fileSize) {
+				throw new IOException("'" + file + "' is truncated or has an invalid element count");
+			}
+
+			// Verify the checksum before trusting any of the elements
+			map.position(HEADER_BYTES);
+			ByteBuffer data = map.slice().order(ByteOrder.LITTLE_ENDIAN);
+			CRC32 crc = new CRC32();
+			crc.update(data.duplicate());
+			if (crc.getValue() != map.getLong(16)) {
+				throw new IOException("'" + file + "' failed its checksum");
+			}
+
+			double[] values = new double[(int) numElements];
+			data.asDoubleBuffer().get(values);
+			return new DoubleStack(values);
+		}
+	}
+
+	/**
+	 * WriteFully(): Write the entire buffer at the provided file position and return the bytes written
+	 * 
+	 * @param channel
+	 * @param buf
+	 * @param position
+	 * @return
+	 * @throws IOException
+	 */
+	private static long WriteFully(FileChannel channel, ByteBuffer buf, long position) throws IOException {
+		long written = 0;
+		while (buf.hasRemaining()) {
+			written += channel.write(buf, position + written);
+		}
+		return written;
+	}
+
+}
@@ -0,0 +1,303 @@
+/******************************************************************************
+ * RPNCalc
+ * 
+ * RPNCalc is is an easy to use console based RPN calculator
+ * 
+ *  Copyright (c) 2013-2021 Michael Fross
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *           
+ ******************************************************************************/
+package org.fross.rpncalc;
+
+/**
+ * StackMap: Applies one operation to every element in a range of the stack in a single pass. Each
+ * operation has its own loop over a chunk's backing array. The loops are kept simple so the JIT can
+ * turn the arithmetic ones into vector instructions.
+ * 
+ * <pre>
+ *   Scalar operations    + - * / ^ mod        x op operand
+ *   Unary operations     sqrt log log10 abs flip int 2mm 2in 2rad 2deg
+ *   Angle operations     sin cos tan asin acos atan
+ * </pre>
+ * 
+ * @author michael.d.fross
+ *
+ */
+public class StackMap {
+	// Kinds of operation returned by QueryKind()
+	static final int UNKNOWN = -1;
+	static final int UNARY = 0;
+	static final int SCALAR = 1;		// Takes a number as its operand
+	static final int ANGLE = 2;			// Trig functions. The operand converts to or from radians.
+
+	/**
+	 * QueryKind(): Return the kind of operation op is, or UNKNOWN if it isn't one
+	 * 
+	 * @param op
+	 * @return
+	 */
+	static int QueryKind(String op) {
+		switch (op) {
+		case "+":
+		case "-":
+		case "*":
+		case "/":
+		case "^":
+		case "mod":
+			return SCALAR;
+
+		case "sqrt":
+		case "log":
+		case "log10":
+		case "abs":
+		case "flip":
+		case "int":
+		case "2mm":
+		case "in2mm":
+		case "2in":
+		case "mm2in":
+		case "2rad":
+		case "deg2rad":
+		case "2deg":
+		case "rad2deg":
+			return UNARY;
+
+		case "sin":
+		case "cos":
+		case "tan":
+		case "asin":
+		case "acos":
+		case "atan":
+			return ANGLE;
+
+		default:
+			return UNKNOWN;
+		}
+	}
+
+	/**
+	 * QueryAngleScale(): Return the operand for an angle operation. sin, cos and tan multiply their
+	 * argument by it and the arc functions multiply their result by it, so in degrees it converts to
+	 * or from radians and in radians it is 1.
+	 * 
+	 * @param op
+	 * @param radians
+	 * @return
+	 */
+	static double QueryAngleScale(String op, boolean radians) {
+		if (radians == true) {
+			return 1.0;
+		}
+		return op.startsWith("a") ? (180 / java.lang.Math.PI) : (java.lang.Math.PI / 180);
+	}
+
+	/**
+	 * Map(): Apply the operation to the top count elements of the stack. The elements are changed in
+	 * place a chunk at a time, so only the chunks they are in are copied if they are shared with an
+	 * undo snapshot.
+	 * 
+	 * @param stk
+	 * @param count
+	 * @param op
+	 * @param operand
+	 */
+	public static void Map(DoubleStack stk, int count, String op, double operand) {
+		if (QueryKind(op) == UNKNOWN) {
+			throw new IllegalArgumentException("Unknown operation: '" + op + "'");
+		}
+		if (count < 0 || count > stk.size()) {
+			throw new ArrayIndexOutOfBoundsException(count);
+		}
+		if (count == 0) {
+			return;
+		}
+
+		int from = stk.size() - count;
+		int end = stk.size();
+		for (int c = from >>> DoubleStack.CHUNK_SHIFT; (c << DoubleStack.CHUNK_SHIFT) < end; c++) {
+			int base = c << DoubleStack.CHUNK_SHIFT;
+			int start = java.lang.Math.max(from, base) - base;
+			int stop = java.lang.Math.min(end - base, DoubleStack.CHUNK_SIZE);
+			Apply(stk.writableChunk(c), start, stop, op, operand);
+		}
+		stk.changed(from);
+	}
+
+	/**
+	 * Apply(): Apply the operation to the array elements from start up to end
+	 * 
+	 * @param a
+	 * @param start
+	 * @param end
+	 * @param op
+	 * @param operand
+	 */
+	static void Apply(double[] a, int start, int end, String op, double operand) {
+		switch (op) {
+		case "+":
+			for (int i = start; i < end; i++) {
+				a[i] = a[i] + operand;
+			}
+			break;
+
+		case "-":
+			for (int i = start; i < end; i++) {
+				a[i] = a[i] - operand;
+			}
+			break;
+
+		case "*":
+			for (int i = start; i < end; i++) {
+				a[i] = a[i] * operand;
+			}
+			break;
+
+		case "/":
+			for (int i = start; i < end; i++) {
+				a[i] = a[i] / operand;
+			}
+			break;
+
+		case "^":
+			// Squaring is common and pow(x, 2) is exactly x * x
+			if (operand == 2.0) {
+				for (int i = start; i < end; i++) {
+					a[i] = a[i] * a[i];
+				}
+			} else {
+				for (int i = start; i < end; i++) {
+					a[i] = java.lang.Math.pow(a[i], operand);
+				}
+			}
+			break;
+
+		case "mod":
+			for (int i = start; i < end; i++) {
+				a[i] = a[i] % operand;
+			}
+			break;
+
+		case "sqrt":
+			for (int i = start; i < end; i++) {
+				a[i] = java.lang.Math.sqrt(a[i]);
+			}
+			break;
+
+		case "log":
+			for (int i = start; i < end; i++) {
+				a[i] = java.lang.Math.log(a[i]);
+			}
+			break;
+
+		case "log10":
+			for (int i = start; i < end; i++) {
+				a[i] = java.lang.Math.log10(a[i]);
+			}
+			break;
+
+		case "abs":
+			for (int i = start; i < end; i++) {
+				a[i] = java.lang.Math.abs(a[i]);
+			}
+			break;
+
+		case "flip":
+			for (int i = start; i < end; i++) {
+				a[i] = -a[i];
+			}
+			break;
+
+		case "int":
+			// Drop the fraction, rounding toward zero
+			for (int i = start; i < end; i++) {
+				a[i] = (a[i] < 0) ? java.lang.Math.ceil(a[i]) : java.lang.Math.floor(a[i]);
+			}
+			break;
+
+		case "2mm":
+		case "in2mm":
+			for (int i = start; i < end; i++) {
+				a[i] = a[i] * 25.4;
+			}
+			break;
+
+		case "2in":
+		case "mm2in":
+			for (int i = start; i < end; i++) {
+				a[i] = a[i] / 25.4;
+			}
+			break;
+
+		case "2rad":
+		case "deg2rad":
+			for (int i = start; i < end; i++) {
+				a[i] = a[i] * (java.lang.Math.PI / 180);
+			}
+			break;
+
+		case "2deg":
+		case "rad2deg":
+			for (int i = start; i < end; i++) {
+				a[i] = a[i] * (180 / java.lang.Math.PI);
+			}
+			break;
+
+		case "sin":
+			for (int i = start; i < end; i++) {
+				a[i] = java.lang.Math.sin(a[i] * operand);
+			}
+			break;
+
+		case "cos":
+			for (int i = start; i < end; i++) {
+				a[i] = java.lang.Math.cos(a[i] * operand);
+			}
+			break;
+
+		case "tan":
+			for (int i = start; i < end; i++) {
+				a[i] = java.lang.Math.tan(a[i] * operand);
+			}
+			break;
+
+		case "asin":
+			for (int i = start; i < end; i++) {
+				a[i] = java.lang.Math.asin(a[i]) * operand;
+			}
+			break;
+
+		case "acos":
+			for (int i = start; i < end; i++) {
+				a[i] = java.lang.Math.acos(a[i]) * operand;
+			}
+			break;
+
+		case "atan":
+			for (int i = start; i < end; i++) {
+				a[i] = java.lang.Math.atan(a[i]) * operand;
+			}
+			break;
+
+		default:
+			throw new IllegalArgumentException("Unknown operation: '" + op + "'");
+		}
+	}
+
+}
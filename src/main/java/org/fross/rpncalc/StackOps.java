@@ -26,9 +26,13 @@
  ******************************************************************************/
 package org.fross.rpncalc;
 
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
-import java.util.Stack;
+import java.nio.file.InvalidPathException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.util.prefs.BackingStoreException;
 import java.util.prefs.Preferences;
 
 import org.fross.library.Debug;
@@ -38,26 +42,28 @@ import org.fusesource.jansi.Ansi;
 public class StackOps {
 	// Class Constants
 	public static final int DEFAULT_DENOMINATOR = 64;  // Default Smallest Fraction Denominator
-	private static final int DEFAULT_MEMORY_SLOTS = 10;	 // Number of memory slots available for mem command
+	static final int DEFAULT_MEMORY_SLOTS = 10;	 // Number of memory slots available for mem command
 
 	// Class Variables
-	private static Double[] memorySlots = new Double[DEFAULT_MEMORY_SLOTS];
+	private static final Metrics.Stat saveMemSlotsStat = Metrics.Stat(Metrics.KIND_PREFS, "SaveMemSlots");
+	private static final Metrics.Stat restoreMemSlotsStat = Metrics.Stat(Metrics.KIND_PREFS, "RestoreMemSlots");
 
 	/**
 	 * SetMaxMemorySlots(): Sets the number of memory slot available to be used
 	 * 
-	 * @param numSlots
+	 * @param e
+	 * @param slots
 	 */
-	public static void SetMaxMemorySlots(String slots) {
+	public static void SetMaxMemorySlots(RpnEngine e, String slots) {
 		try {
 			int numSlots = Integer.parseInt(slots);
 
 			// Ensure we always have at least one memory slot
 			if (numSlots >= 1) {
-				memorySlots = new Double[numSlots];
+				e.memorySlots = new Double[numSlots];
 			} else {
-				Output.printColorln(Ansi.Color.RED, "Error: There must be at least 1 memory slot.  Setting to 1.");
-				memorySlots = new Double[1];
+				e.PrintError("Error: There must be at least 1 memory slot.  Setting to 1.");
+				e.memorySlots = new Double[1];
 			}
 
 		} catch (NumberFormatException ex) {
@@ -68,13 +74,28 @@ public class StackOps {
 	/**
 	 * QueryInUseMemorySlots(): Return the number of memory slots being used
 	 * 
+	 * @param e
 	 * @return
 	 */
-	public static int QueryInUseMemorySlots() {
+	public static int QueryInUseMemorySlots(RpnEngine e) {
 		int inUseCounter = 0;
 
-		for (int i = 0; i < memorySlots.length; i++) {
-			if (memorySlots[i] != null)
+		// Until the memory slots are used count the ones saved instead of reading them all
+		if (e.IsMemorySlotsRestored() == false) {
+			try {
+				for (String key : Preferences.userRoot().node("/org/fross/rpn/memoryslots").keys()) {
+					int slot = Integer.parseInt(key);
+					if (slot >= 0 && slot < e.memorySlots.length)
+						inUseCounter++;
+				}
+			} catch (BackingStoreException | NumberFormatException ex) {
+				Output.debugPrint("Unable to count the saved memory slots: " + ex.getMessage());
+			}
+			return inUseCounter;
+		}
+
+		for (int i = 0; i < e.memorySlots.length; i++) {
+			if (e.memorySlots[i] != null)
 				inUseCounter++;
 		}
 
@@ -82,10 +103,19 @@ public class StackOps {
 	}
 
 	/**
-	 * SaveMemSlots(): Save the memory slots to the preferences system
+	 * SaveMemSlots(): Save the provided copy of the memory slots to the preferences system. Errors are
+	 * reported on the provided engine.
 	 * 
+	 * @param e
+	 * @param slots
 	 */
-	public static void SaveMemSlots() {
+	public static void SaveMemSlots(RpnEngine e, Double[] slots) {
+		FlightRecorder.SaveMemSlotsEvent event = FlightRecorder.IsRunning() ? new FlightRecorder.SaveMemSlotsEvent() : null;
+		if (event != null) {
+			event.begin();
+		}
+		long startTime = System.nanoTime();
+		long startBytes = Metrics.AllocatedBytes();
 		Preferences p = Preferences.userRoot().node("/org/fross/rpn/memoryslots");
 
 		Output.debugPrint("Saving Memory Slots:");
@@ -93,74 +123,78 @@ public class StackOps {
 			// Clear out any slots in the store in prep for writing the current slots
 			p.clear();
 
-			for (int i = 0; i < StackOps.memorySlots.length; i++) {
-				if (memorySlots[i] != null) {
-					Output.debugPrint("  - Slot #" + i + ":  " + memorySlots[i]);
-					p.putDouble(Integer.toString(i), memorySlots[i]);
+			for (int i = 0; i < slots.length; i++) {
+				if (slots[i] != null) {
+					Output.debugPrint("  - Slot #" + i + ":  " + slots[i]);
+					p.putDouble(Integer.toString(i), slots[i]);
 				}
 			}
 		} catch (Exception ex) {
-			Output.printColorln(Ansi.Color.RED, "Error: Unable to save memory slots to preferences successfully");
+			e.PrintError("Error: Unable to save memory slots to preferences successfully");
 		}
 
 		Output.debugPrint("");
+		saveMemSlotsStat.Record(startTime, startBytes);
+
+		if (event != null) {
+			event.end();
+		}
+		if (event != null && event.shouldCommit()) {
+			int inUse = 0;
+			for (Double slot : slots) {
+				if (slot != null) {
+					inUse++;
+				}
+			}
+			event.slots = slots.length;
+			event.inUse = inUse;
+			event.commit();
+		}
 	}
 
 	/**
-	 * RestoreMemSlots(): Restore the contents of the memory slots from the preferences system.
-	 * Typically done at startup
+	 * RestoreMemSlots(): Restore the contents of the provided memory slots from the preferences system.
+	 * Done the first time the memory slots are used. Only the slots that were saved are read, so it
+	 * doesn't matter how many slots there are. Errors are reported on the provided engine.
 	 * 
+	 * @param e
+	 * @param slots
 	 */
-	public static void RestoreMemSlots() {
+	public static void RestoreMemSlots(RpnEngine e, Double[] slots) {
+		long startTime = System.nanoTime();
+		long startBytes = Metrics.AllocatedBytes();
 		Preferences p = Preferences.userRoot().node("/org/fross/rpn/memoryslots");
 
 		Output.debugPrint("Restoring Memory Slots:");
 		try {
-			for (int i = 0; i < StackOps.memorySlots.length; i++) {
-				if (p.getDouble(Integer.toString(i), Double.MAX_VALUE) != Double.MAX_VALUE) {
-					Output.debugPrint("  - Slot #" + i + "  " + p.getDouble(Integer.toString(i), Double.MAX_VALUE));
-					memorySlots[i] = p.getDouble(Integer.toString(i), Double.MAX_VALUE);
+			for (String key : p.keys()) {
+				int slot = Integer.parseInt(key);
+				if (slot >= 0 && slot < slots.length) {
+					slots[slot] = p.getDouble(key, 0.0);
+					Output.debugPrint("  - Slot #" + slot + "  " + slots[slot]);
 				}
 			}
 		} catch (Exception ex) {
-			Output.printColorln(Ansi.Color.RED, "Error: Unable to restore memory slots from preferences");
+			e.PrintError("Error: Unable to restore memory slots from preferences");
 		}
 
 		Output.debugPrint("");
+		restoreMemSlotsStat.Record(startTime, startBytes);
 	}
 
 	/**
 	 * StackDeleteItem(): Delete a stack element
 	 * 
 	 * @param stk
-	 * @param lineToDelete
+	 * @param elementToDelete - Offset from the top of the stack. 0 is line1
 	 * @return
 	 */
-	public static Stack<Double> StackDeleteItem(Stack<Double> stk, int elementToDelete) {
-		Stack<Double> tempStack = new Stack<Double>();
-
-		// Copy the elements in the stack to a temporary stack except for the one to
-		// delete
-		try {
-			for (int i = 0; i <= elementToDelete; i++) {
-				if (i != elementToDelete) {
-					Output.debugPrint("Moving line:    #" + (i + 1) + " [" + stk.peek() + "] to a temp stack");
-					tempStack.push(stk.pop());
-				} else {
-					Output.debugPrint("Skipping Line:  #" + (i + 1) + " [" + stk.peek() + "] as it's being deleted");
-					stk.pop();
-				}
-			}
-		} catch (Exception ex) {
-			Output.debugPrint(ex.getMessage());
-		}
-
-		// Copy the elements in the temp stack back to the main one
+	public static DoubleStack StackDeleteItem(DoubleStack stk, int elementToDelete) {
+		// Convert the offset from the top of the stack into an index and remove it
 		try {
-			while (tempStack.size() > 0) {
-				Output.debugPrint("Restore Value:  " + tempStack.peek());
-				stk.push(tempStack.pop());
-			}
+			int index = stk.size() - 1 - elementToDelete;
+			Output.debugPrint("Deleting Line:  #" + (elementToDelete + 1) + " [" + stk.get(index) + "]");
+			stk.remove(index);
 		} catch (Exception ex) {
 			Output.debugPrint(ex.getMessage());
 		}
@@ -171,41 +205,18 @@ public class StackOps {
 	/**
 	 * StackSwapItems(): Swap two elements in the stack
 	 * 
-	 * Approach: Empty the stack into an array. Replace the existing values with the swapped values.
-	 * Then recreate the stack.
-	 * 
 	 * @param stk
-	 * @param item1
-	 * @param item2
+	 * @param item1 - Offset from the top of the stack. 0 is line1
+	 * @param item2 - Offset from the top of the stack. 0 is line1
 	 * @return
 	 */
-	public static Stack<Double> StackSwapItems(Stack<Double> stk, int item1, int item2) {
-		int stkSize = stk.size();
-		Double tempArray[] = new Double[stkSize];
-		Double value1;
-		Double value2;
-
-		// Populate the array with the contents of the stack
-		Output.debugPrint("Size of Stack is: " + stkSize);
-		for (int i = 0; i < stkSize; i++) {
-			// System.out.println("i = " + i);
-			Output.debugPrint("Backup: Array[" + i + "] = " + stk.peek());
-			tempArray[i] = stk.pop();
-		}
-
-		// Grab the initial values
-		value1 = tempArray[item1];
-		value2 = tempArray[item2];
+	public static DoubleStack StackSwapItems(DoubleStack stk, int item1, int item2) {
+		int index1 = stk.size() - 1 - item1;
+		int index2 = stk.size() - 1 - item2;
 
-		// Swap with the new values
-		tempArray[item1] = value2;
-		tempArray[item2] = value1;
-
-		// Recreate the stack
-		for (int i = stkSize - 1; i >= 0; i--) {
-			Output.debugPrint("Restore: Array[" + i + "] = " + tempArray[i] + " -> Stack");
-			stk.push(tempArray[i]);
-		}
+		// Swap the values in place
+		Output.debugPrint("Swapping: [" + stk.get(index1) + "] and [" + stk.get(index2) + "]");
+		stk.swap(index1, index2);
 
 		return (stk);
 	}
@@ -213,15 +224,18 @@ public class StackOps {
 	/**
 	 * cmdUndo(): Undo last change be restoring the last stack from the undo stack
 	 */
-	@SuppressWarnings("unchecked")
-	public static void cmdUndo() {
+	public static void cmdUndo(RpnEngine e) {
 		Output.debugPrint("Undoing last command");
 
-		if (Main.undoStack.size() >= 1) {
+		if (e.undoStack.size() >= 1) {
 			// Replace current stack with the last one on the undo stack
-			Main.calcStack = (Stack<Double>) Main.undoStack.pop().clone();
+			try {
+				e.calcStack = e.undoStack.pop();
+			} catch (IllegalStateException ex) {
+				e.PrintError("ERROR: " + ex.getMessage());
+			}
 		} else {
-			Output.printColorln(Ansi.Color.RED, "Error: Already at oldest change");
+			e.PrintError("Error: Already at oldest change");
 		}
 	}
 
@@ -229,38 +243,36 @@ public class StackOps {
 	 * cmdFlipSign(): Change the sign of the last element in the stack
 	 * 
 	 */
-	@SuppressWarnings("unchecked")
-	public static void cmdFlipSign() {
+	public static void cmdFlipSign(RpnEngine e) {
 		// Save to undo stack
-		Main.undoStack.push((Stack<Double>) Main.calcStack.clone());
+		e.undoStack.push(e.calcStack);
 
 		Output.debugPrint("Changing sign of last stack element");
-		if (!Main.calcStack.isEmpty())
-			Main.calcStack.push(Main.calcStack.pop() * -1);
+		if (!e.calcStack.isEmpty())
+			e.calcStack.push(e.calcStack.pop() * -1);
 	}
 
 	/**
 	 * cmdClear(): Clear the current stack and the screen
 	 */
-	@SuppressWarnings("unchecked")
-	public static void cmdClear() {
+	public static void cmdClear(RpnEngine e) {
 		// Save to undo stack
-		Main.undoStack.push((Stack<Double>) Main.calcStack.clone());
+		e.undoStack.push(e.calcStack);
 
 		Output.debugPrint("Clearing Stack");
-		Main.calcStack.clear();
+		e.calcStack.clear();
 
 		// Rather than printing several hundred new lines, use the JANSI clear screen
-		Output.clearScreen();
+		e.QueryOutput().ClearScreen();
 	}
 
 	/**
 	 * cmdClean(): Clean the screen by clearing it and then showing existing stack
 	 */
-	public static void cmdClean() {
+	public static void cmdClean(RpnEngine e) {
 		Output.debugPrint("Cleaning Screen");
 		// Rather than printing several hundred new lines, use the JANSI clear screen
-		Output.clearScreen();
+		e.QueryOutput().ClearScreen();
 	}
 
 	/**
@@ -268,33 +280,32 @@ public class StackOps {
 	 * 
 	 * @param item
 	 */
-	@SuppressWarnings("unchecked")
-	public static void cmdDelete(String arg) {
+	public static void cmdDelete(RpnEngine e, String arg) {
 		int lineToDelete = 0;
 		try {
 			lineToDelete = Integer.parseInt(arg);
 		} catch (NumberFormatException ex) {
-			Output.printColorln(Ansi.Color.RED, "Line number provided can not be deleted: '" + arg + "'");
+			e.PrintError("Line number provided can not be deleted: '" + arg + "'");
 			return;
 		}
 
 		// Save to undo stack
-		Main.undoStack.push((Stack<Double>) Main.calcStack.clone());
+		e.undoStack.push(e.calcStack);
 
 		// Determine the line number to delete
 		Output.debugPrint("Line to Delete: " + lineToDelete);
 		try {
 			// Ensure the number entered is is valid
-			if (lineToDelete < 1 || lineToDelete > Main.calcStack.size()) {
-				Output.printColorln(Ansi.Color.RED, "Invalid line number entered: " + lineToDelete);
+			if (lineToDelete < 1 || lineToDelete > e.calcStack.size()) {
+				e.PrintError("Invalid line number entered: " + lineToDelete);
 			} else {
 				Output.debugPrint("Deleting line number: " + lineToDelete);
-				Main.calcStack = StackOps.StackDeleteItem(Main.calcStack, (lineToDelete - 1));
+				e.calcStack = StackOps.StackDeleteItem(e.calcStack, (lineToDelete - 1));
 			}
 
-		} catch (Exception e) {
-			Output.printColorln(Ansi.Color.RED, "Error parsing line number for element delete: '" + lineToDelete + "'");
-			Output.debugPrint(e.getMessage());
+		} catch (Exception ex) {
+			e.PrintError("Error parsing line number for element delete: '" + lineToDelete + "'");
+			Output.debugPrint(ex.getMessage());
 		}
 	}
 
@@ -303,14 +314,13 @@ public class StackOps {
 	 * 
 	 * @param param
 	 */
-	@SuppressWarnings("unchecked")
-	public static void cmdSwapElements(String param) {
+	public static void cmdSwapElements(RpnEngine e, String param) {
 		// Default is to swap last two stack items
 		int item1 = 1;
 		int item2 = 2;
 
 		// Save to undo stack
-		Main.undoStack.push((Stack<Double>) Main.calcStack.clone());
+		e.undoStack.push(e.calcStack);
 
 		// Determine the source and destination elements
 		try {
@@ -319,21 +329,21 @@ public class StackOps {
 				item2 = Integer.parseInt(param.substring(0).trim().split("\\s")[1]);
 			}
 
-		} catch (NumberFormatException e) {
-			Output.printColorln(Ansi.Color.RED, "Error parsing line number for stack swap: '" + item1 + "' and '" + item2 + "'");
+		} catch (NumberFormatException ex) {
+			e.PrintError("Error parsing line number for stack swap: '" + item1 + "' and '" + item2 + "'");
 			return;
 
-		} catch (Exception e) {
-			Output.printColorln(Ansi.Color.RED, "ERROR:\n" + e.getMessage());
+		} catch (Exception ex) {
+			e.PrintError("ERROR:\n" + ex.getMessage());
 		}
 
 		// Make sure the numbers are valid
-		if (item1 < 1 || item1 > Main.calcStack.size() || item2 < 1 || item2 > Main.calcStack.size()) {
-			Output.printColorln(Ansi.Color.RED, "Invalid element entered.  Must be between 1 and " + Main.calcStack.size());
+		if (item1 < 1 || item1 > e.calcStack.size() || item2 < 1 || item2 > e.calcStack.size()) {
+			e.PrintError("Invalid element entered.  Must be between 1 and " + e.calcStack.size());
 		} else {
 			Output.debugPrint("Swapping #" + item1 + " and #" + item2 + " stack items");
 
-			Main.calcStack = StackOps.StackSwapItems(Main.calcStack, (item1 - 1), (item2) - 1);
+			e.calcStack = StackOps.StackSwapItems(e.calcStack, (item1 - 1), (item2) - 1);
 		}
 	}
 
@@ -341,19 +351,18 @@ public class StackOps {
 	 * cmdSqrt(): Take the square root of the number at the top of the stack
 	 * 
 	 */
-	@SuppressWarnings("unchecked")
-	public static void cmdSqrt() {
+	public static void cmdSqrt(RpnEngine e) {
 		// Verify we have an item on the stack
-		if (Main.calcStack.isEmpty()) {
-			Output.printColorln(Ansi.Color.RED, "ERROR:  There are no items on the stack.");
+		if (e.calcStack.isEmpty()) {
+			e.PrintError("ERROR:  There are no items on the stack.");
 			return;
 		}
 
 		// Save to undo stack
-		Main.undoStack.push((Stack<Double>) Main.calcStack.clone());
+		e.undoStack.push(e.calcStack);
 
 		Output.debugPrint("Taking the square root of the last stack item");
-		Main.calcStack.push(java.lang.Math.sqrt(Main.calcStack.pop()));
+		e.calcStack.push(java.lang.Math.sqrt(e.calcStack.pop()));
 	}
 
 	/**
@@ -363,26 +372,25 @@ public class StackOps {
 	 * 
 	 * @param arg
 	 */
-	@SuppressWarnings("unchecked")
-	public static void cmdRound(String arg) {
+	public static void cmdRound(RpnEngine e, String arg) {
 		int decimalPlaces = 0;
 		BigDecimal bd;
 
 		// Ensure we have something on the stack
-		if (Main.calcStack.isEmpty()) {
-			Output.printColorln(Ansi.Color.RED, "ERROR:  There must be at least one item on the stack");
+		if (e.calcStack.isEmpty()) {
+			e.PrintError("ERROR:  There must be at least one item on the stack");
 			return;
 		}
 
 		// Save to undo stack
-		Main.undoStack.push((Stack<Double>) Main.calcStack.clone());
+		e.undoStack.push(e.calcStack);
 
 		// Convert the arg to the number of decimal places
 		try {
 			decimalPlaces = Integer.parseInt(arg);
 			// Ensure a negative number is not provdied for decimal points to round
 			if (decimalPlaces <= 0) {
-				Output.printColorln(Ansi.Color.RED, "ERROR:  '" + arg + "' not a valid number of decimal places");
+				e.PrintError("ERROR:  '" + arg + "' not a valid number of decimal places");
 				return;
 			}
 
@@ -391,74 +399,84 @@ public class StackOps {
 				decimalPlaces = 0;
 			} else {
 				// Error out for any non-valid characters
-				Output.printColorln(Ansi.Color.RED, "ERROR:  '" + arg + "' not a valid number of decimal places");
+				e.PrintError("ERROR:  '" + arg + "' not a valid number of decimal places");
 				return;
 			}
 		}
 
 		// Round the top of stack item and return that result to the stack
-		bd = new BigDecimal(Main.calcStack.pop());
+		bd = new BigDecimal(e.calcStack.pop());
 		bd = bd.setScale(decimalPlaces, RoundingMode.HALF_UP);
-		Main.calcStack.push(bd.doubleValue());
+		e.calcStack.push(bd.doubleValue());
 	}
 
 	/**
-	 * cmdAddAll(): Add everything on the stack together and return the result to the stack
+	 * cmdPrecision(): Set the adaptive precision of the operands and stack sums to the provided number
+	 * of significant digits, or turn it off. Without a parameter the current precision is shown.
 	 * 
+	 * @param e
 	 * @param arg
 	 */
-	@SuppressWarnings("unchecked")
-	public static void cmdAddAll(String arg) {
-		// Save to undo stack
-		Main.undoStack.push((Stack<Double>) Main.calcStack.clone());
-
-		// Determine if we should keep or clear the stack upon adding
-		boolean keepFlag = false;
-		try {
-			// Just check if the provided command starts with 'k'. That should be enough
-			if (arg.toLowerCase().charAt(0) == 'k') {
-				keepFlag = true;
+	public static void cmdPrecision(RpnEngine e, String arg) {
+		if (arg.isEmpty()) {
+			if (e.mathContext == null) {
+				e.Message(Ansi.Color.CYAN, "Precision is off.  Numbers are plain doubles");
+			} else {
+				e.Message(Ansi.Color.CYAN, "Precision is " + e.mathContext.getPrecision() + " significant digits");
 			}
-		} catch (StringIndexOutOfBoundsException ex) {
-			keepFlag = false;
+			return;
 		}
 
-		// Counter to hold the accumulating total
-		Double totalCounter = 0.0;
+		if (arg.equals("off")) {
+			e.mathContext = null;
+			return;
+		}
 
-		// If the 'keep' flag was sent, get the stack items instead of using pop
-		if (keepFlag == true) {
-			for (int i = 0; i < Main.calcStack.size(); i++) {
-				totalCounter += Main.calcStack.get(i);
-			}
-		} else {
-			// Loop through the stack items popping them off until there is nothing left
-			while (Main.calcStack.empty() == false) {
-				totalCounter += Main.calcStack.pop();
-			}
+		try {
+			e.mathContext = AdaptiveMath.QueryMathContext(arg.equals("on") ? AdaptiveMath.DEFAULT_DIGITS : Integer.parseInt(arg));
+		} catch (NumberFormatException ex) {
+			e.PrintError("ERROR:  Precision must be a number of digits, 'on' or 'off': '" + arg + "'");
+		} catch (IllegalArgumentException ex) {
+			e.PrintError("ERROR:  " + ex.getMessage());
 		}
+	}
+
+	/**
+	 * cmdAddAll(): Add everything on the stack together and return the result to the stack
+	 * 
+	 * @param arg
+	 */
+	public static void cmdAddAll(RpnEngine e, String arg) {
+		// Save to undo stack
+		e.undoStack.push(e.calcStack);
+
+		// The stack keeps a running total so nothing needs to be added up here unless the precision is set
+		double totalCounter = (e.mathContext == null) ? e.calcStack.QuerySum() : AdaptiveMath.Sum(e.calcStack, e.mathContext);
+
+		// If we are not going to keep the stack (the default) clear it
+		if (QueryKeepFlag(arg) == false)
+			e.calcStack.clear();
 
 		// Add result back to the stack
-		Main.calcStack.push(totalCounter);
+		e.calcStack.push(totalCounter);
 	}
 
 	/**
 	 * cmdMod(): Divide and place the modulus onto the stack
 	 */
-	@SuppressWarnings("unchecked")
-	public static void cmdMod() {
+	public static void cmdMod(RpnEngine e) {
 		// Ensure we have something on the stack
-		if (Main.calcStack.isEmpty()) {
-			Output.printColorln(Ansi.Color.RED, "ERROR:  There must be at least one item on the stack");
+		if (e.calcStack.isEmpty()) {
+			e.PrintError("ERROR:  There must be at least one item on the stack");
 			return;
 		}
 
 		// Save to undo stack
-		Main.undoStack.push((Stack<Double>) Main.calcStack.clone());
-		Double b = Main.calcStack.pop();
-		Double a = Main.calcStack.pop();
+		e.undoStack.push(e.calcStack);
+		double b = e.calcStack.pop();
+		double a = e.calcStack.pop();
 		Output.debugPrint("Modulus: " + a + " % " + b + " = " + (a % b));
-		Main.calcStack.push(a % b);
+		e.calcStack.push(a % b);
 	}
 
 	/**
@@ -466,37 +484,25 @@ public class StackOps {
 	 * 
 	 * @param arg
 	 */
-	@SuppressWarnings("unchecked")
-	public static void cmdAverage(String arg) {
+	public static void cmdAverage(RpnEngine e, String arg) {
 		// Ensure we have enough numbers on the stack
-		if (Main.calcStack.size() < 2) {
-			Output.printColorln(Ansi.Color.RED, "ERROR:  Average requires at least two items on the stack");
+		if (e.calcStack.size() < 2) {
+			e.PrintError("ERROR:  Average requires at least two items on the stack");
 			return;
 		}
 
 		// Save to undo stack
-		Main.undoStack.push((Stack<Double>) Main.calcStack.clone());
-
-		// Determine if we should keep or clear the stack
-		boolean keepFlag = false;
-		try {
-			// Just check if the provided command starts with 'k'. That should be enough
-			if (arg.toLowerCase().charAt(0) == 'k') {
-				keepFlag = true;
-			}
-		} catch (StringIndexOutOfBoundsException ex) {
-			keepFlag = false;
-		}
+		e.undoStack.push(e.calcStack);
 
 		// Calculate the mean
-		Double mean = Math.Mean(Main.calcStack);
+		double mean = (e.mathContext == null) ? e.calcStack.QueryMean() : AdaptiveMath.Mean(e.calcStack, e.mathContext);
 
 		// If we are not going to keep the stack (the default) clear it
-		if (keepFlag == false)
-			Main.calcStack.clear();
+		if (QueryKeepFlag(arg) == false)
+			e.calcStack.clear();
 
 		// Add the average to the stack
-		Main.calcStack.push(mean);
+		e.calcStack.push(mean);
 	}
 
 	/**
@@ -506,136 +512,168 @@ public class StackOps {
 	 * 
 	 * @param arg
 	 */
-	@SuppressWarnings("unchecked")
-	public static void cmdStdDeviation(String arg) {
+	public static void cmdStdDeviation(RpnEngine e, String arg) {
 		// Ensure we have enough numbers on the stack
-		if (Main.calcStack.size() < 2) {
-			Output.printColorln(Ansi.Color.RED, "ERROR:  Standard Deviation requires at least two items on the stack");
+		if (e.calcStack.size() < 2) {
+			e.PrintError("ERROR:  Standard Deviation requires at least two items on the stack");
 			return;
 		}
 
 		// Save to undo stack
-		Main.undoStack.push((Stack<Double>) Main.calcStack.clone());
+		e.undoStack.push(e.calcStack);
 
-		// Determine if we should keep or clear the stack
-		boolean keepFlag = false;
-		try {
-			// Just check if the provided command starts with 'k'. That should be enough
-			if (arg.toLowerCase().charAt(0) == 'k') {
-				keepFlag = true;
-			}
-		} catch (StringIndexOutOfBoundsException ex) {
-			keepFlag = false;
-		}
-
-		// Step1: Get the mean
-		Double mean1 = Math.Mean(Main.calcStack);
-		Output.debugPrint("Inital mean of the numbers: " + mean1);
-
-		// Step2: For each number: subtract the mean from the number and square the result
-		Double[] stdArray = new Double[Main.calcStack.size()];
-		for (int i = 0; i < Main.calcStack.size(); i++) {
-			stdArray[i] = java.lang.Math.pow((Main.calcStack.get(i) - mean1), 2);
-		}
-		
-		// Step3: Work out the mean of those squared differences
-		Double mean2 = Math.Mean(stdArray);
-		Output.debugPrint("Secondary mean of (number-mean)^2: " + mean2);
-		
-		if (keepFlag == false) 
-			Main.calcStack.clear();
-		
-		// Step4: Take the square root of that result and push onto the stack
-		Double result = java.lang.Math.sqrt(mean2);
-		Main.calcStack.push(result);
+		// The stack maintains a running mean and sum of squared differences from it (Welford's method)
+		double result = (e.mathContext == null) ? e.calcStack.QueryStdDeviation() : AdaptiveMath.StdDeviation(e.calcStack, e.mathContext);
+		Output.debugPrint("Standard deviation of " + e.calcStack.size() + " items: " + result);
+
+		// If we are not going to keep the stack (the default) clear it
+		if (QueryKeepFlag(arg) == false)
+			e.calcStack.clear();
+
+		// Push the result onto the stack
+		e.calcStack.push(result);
+	}
+
+	/**
+	 * cmdMinimum(): Find the smallest value on the stack
+	 * 
+	 * @param arg
+	 */
+	public static void cmdMinimum(RpnEngine e, String arg) {
+		// Ensure we have something on the stack
+		if (e.calcStack.isEmpty()) {
+			e.PrintError("ERROR:  Minimum requires at least one item on the stack");
+			return;
+		}
+
+		// Save to undo stack
+		e.undoStack.push(e.calcStack);
+
+		double result = e.calcStack.QueryMin();
+
+		// If we are not going to keep the stack (the default) clear it
+		if (QueryKeepFlag(arg) == false)
+			e.calcStack.clear();
+
+		e.calcStack.push(result);
+	}
+
+	/**
+	 * cmdMaximum(): Find the largest value on the stack
+	 * 
+	 * @param arg
+	 */
+	public static void cmdMaximum(RpnEngine e, String arg) {
+		// Ensure we have something on the stack
+		if (e.calcStack.isEmpty()) {
+			e.PrintError("ERROR:  Maximum requires at least one item on the stack");
+			return;
+		}
+
+		// Save to undo stack
+		e.undoStack.push(e.calcStack);
+
+		double result = e.calcStack.QueryMax();
+
+		// If we are not going to keep the stack (the default) clear it
+		if (QueryKeepFlag(arg) == false)
+			e.calcStack.clear();
+
+		e.calcStack.push(result);
+	}
+
+	/**
+	 * QueryKeepFlag(): Return true if the argument asks for the stack to be kept. Just check if it
+	 * starts with 'k'. That should be enough.
+	 * 
+	 * @param arg
+	 * @return
+	 */
+	private static boolean QueryKeepFlag(String arg) {
+		return arg.isEmpty() == false && Character.toLowerCase(arg.charAt(0)) == 'k';
 	}
 
 	/**
 	 * cmdCopy(): Copy the item at the top of the stack
 	 * 
 	 */
-	@SuppressWarnings("unchecked")
-	public static void cmdCopy() {
+	public static void cmdCopy(RpnEngine e) {
 		// Save to undo stack
-		Main.undoStack.push((Stack<Double>) Main.calcStack.clone());
+		e.undoStack.push(e.calcStack);
 
 		Output.debugPrint("Copying the item at the top of the stack");
-		if (Main.calcStack.size() >= 1) {
-			Main.calcStack.add(Main.calcStack.lastElement());
+		if (e.calcStack.size() >= 1) {
+			e.calcStack.push(e.calcStack.peek());
 		} else {
-			Output.printColorln(Ansi.Color.RED, "ERROR: Must be an item in the stack to copy it");
+			e.PrintError("ERROR: Must be an item in the stack to copy it");
 		}
 	}
 
 	/**
 	 * cmdLog(): Take the natural (base e) logarithm
 	 */
-	@SuppressWarnings("unchecked")
-	public static void cmdLog() {
+	public static void cmdLog(RpnEngine e) {
 		// Save to undo stack
-		Main.undoStack.push((Stack<Double>) Main.calcStack.clone());
+		e.undoStack.push(e.calcStack);
 
-		if (Main.calcStack.size() >= 1) {
-			Output.debugPrint("Taking the natural logarithm of " + Main.calcStack.peek());
-			Main.calcStack.add(java.lang.Math.log(Main.calcStack.pop()));
+		if (e.calcStack.size() >= 1) {
+			Output.debugPrint("Taking the natural logarithm of " + e.calcStack.peek());
+			e.calcStack.push(java.lang.Math.log(e.calcStack.pop()));
 		} else {
-			Output.printColorln(Ansi.Color.RED, "ERROR: Must be at least one item on the stack");
+			e.PrintError("ERROR: Must be at least one item on the stack");
 		}
 	}
 
 	/**
 	 * cmdLog10(): Take base10 logarithm
 	 */
-	@SuppressWarnings("unchecked")
-	public static void cmdLog10() {
+	public static void cmdLog10(RpnEngine e) {
 		// Save to undo stack
-		Main.undoStack.push((Stack<Double>) Main.calcStack.clone());
+		e.undoStack.push(e.calcStack);
 
-		if (Main.calcStack.size() >= 1) {
-			Output.debugPrint("Taking the base 10 logarithm of " + Main.calcStack.peek());
-			Main.calcStack.add(java.lang.Math.log10(Main.calcStack.pop()));
+		if (e.calcStack.size() >= 1) {
+			Output.debugPrint("Taking the base 10 logarithm of " + e.calcStack.peek());
+			e.calcStack.push(java.lang.Math.log10(e.calcStack.pop()));
 		} else {
-			Output.printColorln(Ansi.Color.RED, "ERROR: Must be at least one item on the stack");
+			e.PrintError("ERROR: Must be at least one item on the stack");
 		}
 	}
 
 	/**
 	 * cmdInteger(): Take the integer value of the top stack item
 	 */
-	@SuppressWarnings("unchecked")
-	public static void cmdInteger() {
+	public static void cmdInteger(RpnEngine e) {
 		// Save to undo stack
-		Main.undoStack.push((Stack<Double>) Main.calcStack.clone());
+		e.undoStack.push(e.calcStack);
 
-		if (Main.calcStack.size() >= 1) {
-			Output.debugPrint("Taking the integer of " + Main.calcStack.peek());
-			String stackItemString = Main.calcStack.pop().toString();
+		if (e.calcStack.size() >= 1) {
+			Output.debugPrint("Taking the integer of " + e.calcStack.peek());
+			String stackItemString = Double.toString(e.calcStack.pop());
 			int stackItemInt = Integer.parseInt(stackItemString.substring(0, stackItemString.indexOf(".")));
-			Main.calcStack.add(stackItemInt * 1.0);
+			e.calcStack.push(stackItemInt * 1.0);
 		} else {
-			Output.printColorln(Ansi.Color.RED, "ERROR: Must be at least one item on the stack");
+			e.PrintError("ERROR: Must be at least one item on the stack");
 		}
 	}
 
 	/**
 	 * cmdAbsoluteValue(): Take the absolute value of the top stack item
 	 */
-	@SuppressWarnings("unchecked")
-	public static void cmdAbsoluteValue() {
+	public static void cmdAbsoluteValue(RpnEngine e) {
 		// Save to undo stack
-		Main.undoStack.push((Stack<Double>) Main.calcStack.clone());
+		e.undoStack.push(e.calcStack);
 
-		if (Main.calcStack.size() >= 1) {
-			Output.debugPrint("Taking the absolute value of " + Main.calcStack.peek());
+		if (e.calcStack.size() >= 1) {
+			Output.debugPrint("Taking the absolute value of " + e.calcStack.peek());
 
-			Double value = Main.calcStack.pop();
+			double value = e.calcStack.pop();
 			if (value < 0) {
-				Main.calcStack.add(value * -1);
+				e.calcStack.push(value * -1);
 			} else {
-				Main.calcStack.add(value);
+				e.calcStack.push(value);
 			}
 		} else {
-			Output.printColorln(Ansi.Color.RED, "ERROR: Must be at least one item on the stack");
+			e.PrintError("ERROR: Must be at least one item on the stack");
 		}
 	}
 
@@ -645,14 +683,13 @@ public class StackOps {
 	 * 
 	 * @param param
 	 */
-	@SuppressWarnings("unchecked")
-	public static void cmdRandom(String param) {
+	public static void cmdRandom(RpnEngine e, String param) {
 		int low = 1;
 		int high = 100;
 		int randomNumber = 0;
 
 		// Save to undo stack
-		Main.undoStack.push((Stack<Double>) Main.calcStack.clone());
+		e.undoStack.push(e.calcStack);
 
 		// Parse out the low and high numbers
 		try {
@@ -660,9 +697,9 @@ public class StackOps {
 				low = Integer.parseInt(param.substring(0).trim().split("\\s")[0]);
 				high = Integer.parseInt(param.substring(0).trim().split("\\s")[1]);
 			}
-		} catch (Exception e) {
-			Output.printColorln(Ansi.Color.RED, "Error parsing low and high parameters.  Low: '" + low + "' High: '" + high + "'");
-			Output.printColorln(Ansi.Color.RED, "See usage information in the help page");
+		} catch (Exception ex) {
+			e.PrintError("Error parsing low and high parameters.  Low: '" + low + "' High: '" + high + "'");
+			e.PrintError("See usage information in the help page");
 			return;
 		}
 
@@ -671,7 +708,7 @@ public class StackOps {
 
 		// Verify that the low number <= the high number
 		if (low > high) {
-			Output.printColorln(Ansi.Color.RED, "ERROR: the first number much be less than or equal to the high number");
+			e.PrintError("ERROR: the first number much be less than or equal to the high number");
 			return;
 		}
 
@@ -680,7 +717,7 @@ public class StackOps {
 		randomNumber = new java.util.Random().nextInt((high + 1) - low) + low;
 
 		// Add result to the calculator stack
-		Main.calcStack.push((double) randomNumber);
+		e.calcStack.push((double) randomNumber);
 	}
 
 	/**
@@ -688,13 +725,12 @@ public class StackOps {
 	 * 
 	 * @param param
 	 */
-	@SuppressWarnings("unchecked")
-	public static void cmdDice(String param) {
+	public static void cmdDice(RpnEngine e, String param) {
 		int die = 6;
 		int rolls = 1;
 
 		// Save to undo stack
-		Main.undoStack.push((Stack<Double>) Main.calcStack.clone());
+		e.undoStack.push(e.calcStack);
 
 		// Parse out the die sides and rolls
 		try {
@@ -702,11 +738,11 @@ public class StackOps {
 				rolls = Integer.parseInt(param.substring(0).trim().split("[Dd]")[0]);
 				die = Integer.parseInt(param.substring(0).trim().split("[Dd]")[1]);
 			}
-		} catch (NumberFormatException e) {
-			Output.printColorln(Ansi.Color.RED, "Error parsing die and rolls.  Rolls: '" + rolls + "' Die: '" + die + "'");
+		} catch (NumberFormatException ex) {
+			e.PrintError("Error parsing die and rolls.  Rolls: '" + rolls + "' Die: '" + die + "'");
 			return;
-		} catch (Exception e) {
-			Output.printColorln(Ansi.Color.RED, "ERROR:\n" + e.getMessage());
+		} catch (Exception ex) {
+			e.PrintError("ERROR:\n" + ex.getMessage());
 		}
 
 		// Display Debug Output
@@ -714,16 +750,16 @@ public class StackOps {
 
 		// Verify that the entered numbers are valid
 		if (die <= 0) {
-			Output.printColorln(Ansi.Color.RED, "ERROR: die must have greater than zero sides");
+			e.PrintError("ERROR: die must have greater than zero sides");
 			return;
 		} else if (rolls < 1) {
-			Output.printColorln(Ansi.Color.RED, "ERROR: You have to specify at least 1 roll");
+			e.PrintError("ERROR: You have to specify at least 1 roll");
 			return;
 		}
 
 		// Roll them bones
 		for (int i = 0; i < rolls; i++) {
-			Main.calcStack.push((double) new java.util.Random().nextInt(die) + 1);
+			e.calcStack.push((double) new java.util.Random().nextInt(die) + 1);
 		}
 
 	}
@@ -732,26 +768,24 @@ public class StackOps {
 	 * cmdConvertMM(): Assumes Line1 is in inches and converts to millimeters
 	 * 
 	 */
-	@SuppressWarnings("unchecked")
-	public static void cmdConvert2MM() {
+	public static void cmdConvert2MM(RpnEngine e) {
 		// Save to undo stack
-		Main.undoStack.push((Stack<Double>) Main.calcStack.clone());
+		e.undoStack.push(e.calcStack);
 
 		// Pop off the last value, convert, and push it back
-		Main.calcStack.push(Main.calcStack.pop() * 25.4);
+		e.calcStack.push(e.calcStack.pop() * 25.4);
 	}
 
 	/**
 	 * cmdConvertIN(): Assumes Line1 is in millimeters and converts to inches
 	 * 
 	 */
-	@SuppressWarnings("unchecked")
-	public static void cmdConvert2IN() {
+	public static void cmdConvert2IN(RpnEngine e) {
 		// Save to undo stack
-		Main.undoStack.push((Stack<Double>) Main.calcStack.clone());
+		e.undoStack.push(e.calcStack);
 
 		// Pop off the last value, convert, and push it back
-		Main.calcStack.push(Main.calcStack.pop() / 25.4);
+		e.calcStack.push(e.calcStack.pop() / 25.4);
 	}
 
 	/**
@@ -761,11 +795,11 @@ public class StackOps {
 	 * 
 	 * @param param
 	 */
-	public static void cmdFraction(String param) {
+	public static void cmdFraction(RpnEngine e, String param) {
 		// Make sure the stack is not empty
 		// Verify we have an item on the stack
-		if (Main.calcStack.isEmpty()) {
-			Output.printColorln(Ansi.Color.RED, "ERROR:  There are no items on the stack.");
+		if (e.calcStack.isEmpty()) {
+			e.PrintError("ERROR:  There are no items on the stack.");
 			return;
 		}
 
@@ -777,15 +811,15 @@ public class StackOps {
 			if (!param.isEmpty())
 				denominator = Integer.parseInt(param);
 		} catch (NumberFormatException ex) {
-			Output.printColorln(Ansi.Color.RED, "ERROR: '" + param + "' is not a valid denominator");
+			e.PrintError("ERROR: '" + param + "' is not a valid denominator");
 			return;
 		}
 
 		// Determine the integer portion of the number
-		int integerPart = (int) java.lang.Math.floor(Main.calcStack.peek());
+		int integerPart = (int) java.lang.Math.floor(e.calcStack.peek());
 
 		// Determine the fractional portion as an double
-		double decimalPart = Main.calcStack.peek() - integerPart;
+		double decimalPart = e.calcStack.peek() - integerPart;
 
 		// Convert to a fraction with provided base
 		long numerator = java.lang.Math.round(decimalPart * denominator);
@@ -801,9 +835,9 @@ public class StackOps {
 
 		// Output the fractional display
 		String stackHeader = "-Fraction (1/" + (denominator * gcd) + ")";
-		Output.printColorln(Ansi.Color.YELLOW, "\n" + stackHeader + "-".repeat(Main.PROGRAMWIDTH - stackHeader.length()));
-		Output.printColorln(Ansi.Color.WHITE, " " + Main.calcStack.peek() + " is approximately '" + integerPart + " " + numerator + "/" + denominator + "'");
-		Output.printColorln(Ansi.Color.YELLOW, "-".repeat(Main.PROGRAMWIDTH) + "\n");
+		e.Message(Ansi.Color.YELLOW, "\n" + stackHeader + "-".repeat(Main.PROGRAMWIDTH - stackHeader.length()));
+		e.Message(Ansi.Color.WHITE, " " + e.calcStack.peek() + " is approximately '" + integerPart + " " + numerator + "/" + denominator + "'");
+		e.Message(Ansi.Color.YELLOW, "-".repeat(Main.PROGRAMWIDTH) + "\n");
 	}
 
 	/**
@@ -811,19 +845,18 @@ public class StackOps {
 	 * 
 	 * Formula: radians = degrees (PI/180)
 	 */
-	@SuppressWarnings("unchecked")
-	public static void cmdRadian() {
+	public static void cmdRadian(RpnEngine e) {
 		// Ensure we have something on the stack
-		if (Main.calcStack.isEmpty()) {
-			Output.printColorln(Ansi.Color.RED, "ERROR:  There are no items on the stack.");
+		if (e.calcStack.isEmpty()) {
+			e.PrintError("ERROR:  There are no items on the stack.");
 			return;
 		}
 
 		// Save to undo stack
-		Main.undoStack.push((Stack<Double>) Main.calcStack.clone());
+		e.undoStack.push(e.calcStack);
 
 		// Pull the value, convert and push back
-		Main.calcStack.push(Main.calcStack.pop() * (java.lang.Math.PI / 180));
+		e.calcStack.push(e.calcStack.pop() * (java.lang.Math.PI / 180));
 	}
 
 	/**
@@ -831,19 +864,18 @@ public class StackOps {
 	 * 
 	 * Formula: degrees = radians * (180 / PI)
 	 */
-	@SuppressWarnings("unchecked")
-	public static void cmdDegree() {
+	public static void cmdDegree(RpnEngine e) {
 		// Ensure we have something on the stack
-		if (Main.calcStack.isEmpty()) {
-			Output.printColorln(Ansi.Color.RED, "ERROR:  There are no items on the stack.");
+		if (e.calcStack.isEmpty()) {
+			e.PrintError("ERROR:  There are no items on the stack.");
 			return;
 		}
 
 		// Save to undo stack
-		Main.undoStack.push((Stack<Double>) Main.calcStack.clone());
+		e.undoStack.push(e.calcStack);
 
 		// Pull the value, convert and push back
-		Main.calcStack.push(Main.calcStack.pop() * (180 / java.lang.Math.PI));
+		e.calcStack.push(e.calcStack.pop() * (180 / java.lang.Math.PI));
 	}
 
 	/**
@@ -853,22 +885,21 @@ public class StackOps {
 	 * @param cmd
 	 * @param arg
 	 */
-	@SuppressWarnings("unchecked")
-	public static void cmdTrig(String cmd, String arg) {
+	public static void cmdTrig(RpnEngine e, String cmd, String arg) {
 		// Save to undo stack
-		Main.undoStack.push((Stack<Double>) Main.calcStack.clone());
+		e.undoStack.push(e.calcStack);
 
-		Double angle = null;
+		double angle = 0.0;
 
 		// Ensure we have at least one value on the stack
-		if (Main.calcStack.size() >= 1) {
+		if (e.calcStack.size() >= 1) {
 			try {
-				angle = Main.calcStack.pop();
+				angle = e.calcStack.pop();
 
 				// Calculations are done in radians. Convert if 'rad' is not provided as a parameter
 				if (arg.toLowerCase().charAt(0) != 'r') {
-					Output.printColorln(Ansi.Color.RED, "ERROR: unknown " + cmd + " parameter: '" + arg + "'");
-					Main.calcStack.push(angle);
+					e.PrintError("ERROR: unknown " + cmd + " parameter: '" + arg + "'");
+					e.calcStack.push(angle);
 					return;
 				}
 			} catch (StringIndexOutOfBoundsException ex) {
@@ -876,26 +907,26 @@ public class StackOps {
 			}
 
 		} else {
-			Output.printColorln(Ansi.Color.RED, "ERROR: Must be at least one item on the stack");
+			e.PrintError("ERROR: Must be at least one item on the stack");
 			return;
 		}
 
 		// Push the result back onto the stack
 		switch (cmd) {
 		case "tan":
-			Main.calcStack.add(java.lang.Math.tan(angle));
+			e.calcStack.push(java.lang.Math.tan(angle));
 			break;
 
 		case "sin":
-			Main.calcStack.add(java.lang.Math.sin(angle));
+			e.calcStack.push(java.lang.Math.sin(angle));
 			break;
 
 		case "cos":
-			Main.calcStack.add(java.lang.Math.cos(angle));
+			e.calcStack.push(java.lang.Math.cos(angle));
 			break;
 
 		default:
-			Output.printColorln(Ansi.Color.RED, "ERROR: Could not understand trig command: '" + cmd + "'");
+			e.PrintError("ERROR: Could not understand trig command: '" + cmd + "'");
 			return;
 		}
 	}
@@ -907,53 +938,52 @@ public class StackOps {
 	 * @param cmd
 	 * @param arg
 	 */
-	@SuppressWarnings("unchecked")
-	public static void cmdArcTrig(String cmd, String arg) {
+	public static void cmdArcTrig(RpnEngine e, String cmd, String arg) {
 		// Save to undo stack
-		Main.undoStack.push((Stack<Double>) Main.calcStack.clone());
+		e.undoStack.push(e.calcStack);
 
-		Double result = null;
-		Double originalValue = null;
+		double result = 0.0;
+		double originalValue = 0.0;
 
 		// Ensure we have at least one value on the stack
-		if (Main.calcStack.size() >= 1) {
-			originalValue = Main.calcStack.peek();
+		if (e.calcStack.size() >= 1) {
+			originalValue = e.calcStack.peek();
 
 			// Calculate the arc trig function
 			switch (cmd) {
 			case "asin":
-				result = java.lang.Math.asin(Main.calcStack.pop());
+				result = java.lang.Math.asin(e.calcStack.pop());
 				break;
 
 			case "acos":
-				result = java.lang.Math.acos(Main.calcStack.pop());
+				result = java.lang.Math.acos(e.calcStack.pop());
 				break;
 
 			case "atan":
-				result = java.lang.Math.atan(Main.calcStack.pop());
+				result = java.lang.Math.atan(e.calcStack.pop());
 				break;
 
 			default:
-				Output.printColorln(Ansi.Color.RED, "ERROR: Could not understand trig command: '" + cmd + "'");
-				Main.calcStack.push(originalValue);
+				e.PrintError("ERROR: Could not understand trig command: '" + cmd + "'");
+				e.calcStack.push(originalValue);
 				return;
 			}
 		} else {
-			Output.printColorln(Ansi.Color.RED, "ERROR: Must be at least one item on the stack");
+			e.PrintError("ERROR: Must be at least one item on the stack");
 			return;
 		}
 
 		try {
 			// Display value in degrees or if 'rad' is a parameter, as radians
 			if (arg.toLowerCase().charAt(0) == 'r') {
-				Main.calcStack.push(result);
+				e.calcStack.push(result);
 			} else {
-				Main.calcStack.push(originalValue);
-				Output.printColorln(Ansi.Color.RED, "ERROR: unknown " + cmd + " parameter: '" + arg + "'");
+				e.calcStack.push(originalValue);
+				e.PrintError("ERROR: unknown " + cmd + " parameter: '" + arg + "'");
 			}
 
 		} catch (StringIndexOutOfBoundsException ex) {
-			Main.calcStack.push(java.lang.Math.toDegrees(result));
+			e.calcStack.push(java.lang.Math.toDegrees(result));
 		}
 	}
 
@@ -962,19 +992,85 @@ public class StackOps {
 	 * the triangle legs
 	 * 
 	 */
-	@SuppressWarnings("unchecked")
-	public static void cmdHypotenuse() {
+	public static void cmdHypotenuse(RpnEngine e) {
 		// Ensure we have something on the stack
-		if (Main.calcStack.size() < 2) {
-			Output.printColorln(Ansi.Color.RED, "ERROR:  There must be two items on the stack");
+		if (e.calcStack.size() < 2) {
+			e.PrintError("ERROR:  There must be two items on the stack");
 			return;
 		}
 
 		// Save to undo stack
-		Main.undoStack.push((Stack<Double>) Main.calcStack.clone());
+		e.undoStack.push(e.calcStack);
 
 		// Pop the two values and push the hypotenuse back onto the stack
-		Main.calcStack.push(java.lang.Math.hypot(Main.calcStack.pop(), Main.calcStack.pop()));
+		e.calcStack.push(java.lang.Math.hypot(e.calcStack.pop(), e.calcStack.pop()));
+	}
+
+	/**
+	 * cmdMap(): Apply an operation to every element on the stack, or to the top N elements if a count
+	 * is given. Scalar operations need the number to apply, i.e. 'map * 2.5'. The trig functions work
+	 * in degrees unless 'rad' is given. The whole map is a single undo.
+	 * 
+	 * Format: map OPERATION [NUMBER|rad] [N]
+	 * 
+	 * @param param
+	 */
+	public static void cmdMap(RpnEngine e, String param) {
+		String[] args = param.trim().split("\\s+");
+		String op = args[0];
+		int kind = StackMap.QueryKind(op);
+		int next = 1;
+		double operand = 0.0;
+		int count = e.calcStack.size();
+
+		if (op.isEmpty()) {
+			e.PrintError("ERROR:  Please provide the operation to apply to the stack");
+			return;
+		}
+		if (kind == StackMap.UNKNOWN) {
+			e.PrintError("ERROR:  '" + op + "' can't be applied to the whole stack");
+			return;
+		}
+
+		// The number applied with a scalar operation, or the angle unit for a trig function
+		if (kind == StackMap.SCALAR) {
+			try {
+				operand = Double.parseDouble(args[next++]);
+			} catch (ArrayIndexOutOfBoundsException | NumberFormatException ex) {
+				e.PrintError("ERROR:  'map " + op + "' needs a number to apply to each element");
+				return;
+			}
+		} else if (kind == StackMap.ANGLE) {
+			boolean radians = next < args.length && args[next].charAt(0) == 'r';
+			if (radians == true) {
+				next++;
+			}
+			operand = StackMap.QueryAngleScale(op, radians);
+		}
+
+		// Optional number of elements from the top of the stack
+		if (next < args.length) {
+			try {
+				count = Integer.parseInt(args[next++]);
+			} catch (NumberFormatException ex) {
+				count = -1;
+			}
+			if (count <= 0 || count > e.calcStack.size() || next < args.length) {
+				e.PrintError("ERROR:  '" + param.trim() + "' is not a valid map. The count must be between 1 and the stack size");
+				return;
+			}
+		}
+
+		if (e.calcStack.isEmpty()) {
+			e.PrintError("ERROR:  There are no items on the stack.");
+			return;
+		}
+
+		// Save to undo stack
+		e.undoStack.push(e.calcStack);
+
+		Output.debugPrint("Applying '" + op + "' to the top " + count + " stack elements");
+		StackMap.Map(e.calcStack, count, op, operand);
 	}
 
 	/**
@@ -982,11 +1078,13 @@ public class StackOps {
 	 * 
 	 * @param cmd
 	 */
-	@SuppressWarnings("unchecked")
-	public static void cmdMem(String arg) {
+	public static void cmdMem(RpnEngine e, String arg) {
 		String[] argParse = null;
 		int memSlot = 0;
 
+		// Read the memory slots from the preferences if this is the first time they are used
+		e.MemorySlots();
+
 		// Parse the command string provided. If we can't create an integer from the first
 		// arg then no stack number was provided
 		try {
@@ -1006,8 +1104,8 @@ public class StackOps {
 			Output.debugPrint("Argument Parsing: Memory Command: " + argParse[1]);
 
 			// Ensure provided slot is within range
-			if (memSlot < 0 || memSlot >= memorySlots.length) {
-				Output.printColorln(Ansi.Color.RED, "ERROR: Memory Slot Number must be between 0 and " + (memorySlots.length - 1));
+			if (memSlot < 0 || memSlot >= e.memorySlots.length) {
+				e.PrintError("ERROR: Memory Slot Number must be between 0 and " + (e.memorySlots.length - 1));
 				return;
 			}
 
@@ -1016,26 +1114,26 @@ public class StackOps {
 			// Add the last stack item in the memory slot
 			case "add":
 				// Ensure there is a value to save to the memory slot
-				if (Main.calcStack.size() >= 1) {
-					Output.printColorln(Ansi.Color.CYAN, "Adding '" + Main.calcStack.peek() + "' to Memory Slot #" + memSlot);
-					memorySlots[memSlot] = Main.calcStack.peek();
+				if (e.calcStack.size() >= 1) {
+					e.Message(Ansi.Color.CYAN, "Adding '" + e.calcStack.peek() + "' to Memory Slot #" + memSlot);
+					e.memorySlots[memSlot] = e.calcStack.peek();
 				} else {
-					Output.printColorln(Ansi.Color.RED, "ERROR: There must be at least one value on the stack");
+					e.PrintError("ERROR: There must be at least one value on the stack");
 				}
 				break;
 
 			// Clear the provided slot's value
 			case "clr":
 			case "clear":
-				Output.printColorln(Ansi.Color.CYAN, "Clearing Memory Slot #" + memSlot);
-				memorySlots[memSlot] = null;
+				e.Message(Ansi.Color.CYAN, "Clearing Memory Slot #" + memSlot);
+				e.memorySlots[memSlot] = null;
 				break;
 
 			case "clrall":
 			case "clearall":
-				Output.printColorln(Ansi.Color.CYAN, "Clearing All Memory Slots");
-				for (int i = 0; i < memorySlots.length; i++) {
-					memorySlots[i] = null;
+				e.Message(Ansi.Color.CYAN, "Clearing All Memory Slots");
+				for (int i = 0; i < e.memorySlots.length; i++) {
+					e.memorySlots[i] = null;
 				}
 				break;
 
@@ -1043,35 +1141,35 @@ public class StackOps {
 			case "copy":
 			case "recall":
 				// Save to undo stack
-				Main.undoStack.push((Stack<Double>) Main.calcStack.clone());
+				e.undoStack.push(e.calcStack);
 
-				Output.printColorln(Ansi.Color.CYAN, "Copying values from Memory Slot #" + memSlot);
-				if (memorySlots[memSlot] != null)
-					Main.calcStack.add(memorySlots[memSlot]);
+				e.Message(Ansi.Color.CYAN, "Copying values from Memory Slot #" + memSlot);
+				if (e.memorySlots[memSlot] != null)
+					e.calcStack.push(e.memorySlots[memSlot]);
 				else
-					Output.printColorln(Ansi.Color.RED, "Memory Slot #" + memSlot + " is empty");
+					e.PrintError("Memory Slot #" + memSlot + " is empty");
 				break;
 
 			// Copy everything back onto the stack. Lower number to stop of stack (line 1)
 			case "copyall":
 			case "recallall":
 				// Save to undo stack
-				Main.undoStack.push((Stack<Double>) Main.calcStack.clone());
+				e.undoStack.push(e.calcStack);
 
-				Output.printColorln(Ansi.Color.CYAN, "Copying all memory items to the stack");
-				for (int i = memorySlots.length - 1; i >= 0; i--) {
-					if (memorySlots[i] != null) {
-						Main.calcStack.add(memorySlots[i]);
+				e.Message(Ansi.Color.CYAN, "Copying all memory items to the stack");
+				for (int i = e.memorySlots.length - 1; i >= 0; i--) {
+					if (e.memorySlots[i] != null) {
+						e.calcStack.push(e.memorySlots[i]);
 					}
 				}
 				break;
 
 			default:
 				// Slot was valid number, but unknown mem command
-				Output.printColorln(Ansi.Color.RED, "ERROR: Unknown memory command: '" + argParse[1] + "'");
+				e.PrintError("ERROR: Unknown memory command: '" + argParse[1] + "'");
 			}
 		} catch (Exception ex) {
-			Output.printColorln(Ansi.Color.RED, "Error parsing mem command: 'mem " + arg + "'  See help for mem command usage");
+			e.PrintError("Error parsing mem command: 'mem " + arg + "'  See help for mem command usage");
 		}
 	}
 
@@ -1084,85 +1182,292 @@ public class StackOps {
 	 * 
 	 * undo: List the contents of the undo stack which shows previous stack states
 	 */
-	public static void cmdList(String arg) {
+	public static void cmdList(RpnEngine e, String arg) {
 		switch (arg.toLowerCase()) {
 		case "stacks":
 		case "stack":
-			String[] stks = Prefs.QueryStacks();
+			String[] stks = Prefs.QueryStacks(e);
 
-			Output.printColorln(Ansi.Color.YELLOW, "\n-Saved Stacks" + "-".repeat(Main.PROGRAMWIDTH - 13));
+			e.Message(Ansi.Color.YELLOW, "\n-Saved Stacks" + "-".repeat(Main.PROGRAMWIDTH - 13));
 			for (int i = 0; i < stks.length; i++) {
 				String sn = String.format("%02d:  %s", i, stks[i]);
-				Output.printColorln(Ansi.Color.CYAN, sn);
+				e.Message(Ansi.Color.CYAN, sn);
 			}
-			Output.printColorln(Ansi.Color.YELLOW, "-".repeat(Main.PROGRAMWIDTH) + "\n");
+			e.Message(Ansi.Color.YELLOW, "-".repeat(Main.PROGRAMWIDTH) + "\n");
 			break;
 
 		case "mem":
-			Output.printColorln(Ansi.Color.YELLOW, "\n-Memory Slots" + "-".repeat(Main.PROGRAMWIDTH - 13));
-			for (int i = 0; i < memorySlots.length; i++) {
-				Output.printColorln(Ansi.Color.CYAN, "Slot #" + i + ": " + memorySlots[i]);
+			e.Message(Ansi.Color.YELLOW, "\n-Memory Slots" + "-".repeat(Main.PROGRAMWIDTH - 13));
+			Double[] slots = e.MemorySlots();
+			for (int i = 0; i < slots.length; i++) {
+				e.Message(Ansi.Color.CYAN, "Slot #" + i + ": " + slots[i]);
 			}
-			Output.printColorln(Ansi.Color.YELLOW, "-".repeat(Main.PROGRAMWIDTH) + "\n");
+			e.Message(Ansi.Color.YELLOW, "-".repeat(Main.PROGRAMWIDTH) + "\n");
 			break;
 
 		case "undo":
-			Output.printColorln(Ansi.Color.YELLOW, "\n-Undo Stack" + "-".repeat(Main.PROGRAMWIDTH - 11));
-			for (int i = 0; i < Main.undoStack.size(); i++) {
-				String sn = String.format("%02d:  %s", i + 1, Main.undoStack.get(i));
-				Output.printColorln(Ansi.Color.CYAN, sn);
+			e.Message(Ansi.Color.YELLOW, "\n-Undo Stack" + "-".repeat(Main.PROGRAMWIDTH - 11));
+			int undoLevel = 1;
+			for (DoubleStack stk : e.undoStack) {
+				String sn = String.format("%02d:  %s", undoLevel++, stk);
+				e.Message(Ansi.Color.CYAN, sn);
+			}
+			e.Message(Ansi.Color.YELLOW, "-".repeat(Main.PROGRAMWIDTH) + "\n");
+			break;
+
+		case "words":
+		case "word":
+			e.Message(Ansi.Color.YELLOW, "\n-User Words" + "-".repeat(Main.PROGRAMWIDTH - 11));
+			for (String definition : UserWords.QueryDefinitions(e)) {
+				e.Message(Ansi.Color.CYAN, definition);
 			}
-			Output.printColorln(Ansi.Color.YELLOW, "-".repeat(Main.PROGRAMWIDTH) + "\n");
+			e.Message(Ansi.Color.YELLOW, "-".repeat(Main.PROGRAMWIDTH) + "\n");
 			break;
 
 		default:
-			Output.printColorln(Ansi.Color.RED, "Error:  Unknown list command '" + arg + "'");
+			e.PrintError("Error:  Unknown list command '" + arg + "'");
 		}
 	}
 
 	/**
-	 * cmdLoad(stackToLoad): Load the named stack after saving current stack to prefs
+	 * cmdLoad(stackToLoad): Load the named stack after saving the current one. When the stack is
+	 * journaled it is handed to the persister to save in the background.
 	 * 
 	 * @param stackToLoad
 	 */
-	public static void cmdLoad(String stackToLoad) {
+	public static void cmdLoad(RpnEngine e, String stackToLoad) {
+		if (stackToLoad.isEmpty()) {
+			e.PrintError("ERROR:  Please provide the name of the stack to load");
+			return;
+		}
+
 		// Save current Stack
-		Prefs.SaveStack(Main.calcStack, "1");
-		Prefs.SaveStack(Main.calcStack2, "2");
+		Persister.Checkpoint pending = null;
+		if (e.journal != null) {
+			e.journal.Record();
+			e.persister.Request(e.journal.Checkpoint());
+			pending = e.persister.QueryPending(stackToLoad);
+		} else {
+			SaveLoadedStack(e);
+		}
 
 		// Set new stack
 		Output.debugPrint("Loading new stack: '" + stackToLoad + "'");
-		Prefs.SetLoadedStack(stackToLoad);
+		e.loadedStack = stackToLoad;
+		e.currentStackNum = 1;
+
+		// Load new stack. If it hasn't been saved yet, use the copy waiting to be saved. The secondary
+		// stack is read when it is first used unless the copy waiting to be saved has it.
+		if (pending != null) {
+			e.calcStack = pending.stk1.snapshot();
+		} else {
+			e.calcStack = Prefs.RestoreStack(e, stackToLoad, "1");
+		}
+		if (pending != null && pending.stk2 != null) {
+			e.SetStack2(pending.stk2.snapshot());
+		} else {
+			e.DeferStack2();
+		}
+	}
+
+	/**
+	 * SaveLoadedStack(): Save both stacks of an engine that isn't journaled to its named stack right
+	 * away. Nothing is saved if it hasn't loaded one.
+	 * 
+	 * @param e
+	 */
+	public static void SaveLoadedStack(RpnEngine e) {
+		if (e.loadedStack == null) {
+			return;
+		}
+
+		// A secondary stack that was never read hasn't changed
+		Prefs.SaveStack(e, e.calcStack, e.loadedStack, "1");
+		if (e.IsStack2Restored() == true) {
+			Prefs.SaveStack(e, e.calcStack2, e.loadedStack, "2");
+		}
+		Prefs.Flush(e);
+	}
+
+	/**
+	 * cmdImport(): Add the numbers in a file to the stack as a single change that one undo removes
+	 * 
+	 * @param fileName
+	 */
+	public static void cmdImport(RpnEngine e, String fileName) {
+		// Allow the file name to be quoted
+		if (fileName.length() >= 2 && fileName.startsWith("\"") && fileName.endsWith("\"")) {
+			fileName = fileName.substring(1, fileName.length() - 1);
+		}
+		if (fileName.isEmpty()) {
+			e.PrintError("ERROR:  Please provide the name of the file to import");
+			return;
+		}
+
+		// Keep the stack as it was. It becomes the undo level once the import has worked.
+		DoubleStack before = e.calcStack.snapshot();
+
+		try {
+			long startTime = System.nanoTime();
+			long count = ImportFile.Import(Paths.get(fileName), e.calcStack, e.QueryOutput());
+			long elapsed = (System.nanoTime() - startTime) / 1000000;
+			e.undoStack.push(before);
+			e.Message(Ansi.Color.CYAN, "Imported " + count + " numbers from '" + fileName + "' in " + elapsed + "ms");
+
+		} catch (IOException | InvalidPathException ex) {
+			// Put the stack back the way it was
+			e.calcStack = before;
+			String reason = (ex instanceof NoSuchFileException) ? "File not found" : ex.getMessage();
+			e.PrintError("ERROR:  Unable to import '" + fileName + "': " + reason);
+		}
+	}
+
+	/**
+	 * cmdExport(): Write the primary stack, the secondary stack or the memory slots to a CSV or binary
+	 * file. The parameter is the file name optionally followed by the format (csv or bin) and what to
+	 * export (stack, stack2 or mem). Without a format, .bin, .f64 and .raw files are binary and
+	 * everything else is CSV.
+	 * 
+	 * @param param
+	 */
+	public static void cmdExport(RpnEngine e, String param) {
+		String fileName = param;
+		String format = "";
+		String source = "stack";
+
+		// Take the optional words off the end of the parameter. Whatever is left is the file name.
+		String lastWord = fileName.substring(fileName.lastIndexOf(' ') + 1).toLowerCase();
+		if (lastWord.equals("stack") || lastWord.equals("stack2") || lastWord.equals("mem")) {
+			source = lastWord;
+			fileName = fileName.substring(0, fileName.length() - lastWord.length()).trim();
+			lastWord = fileName.substring(fileName.lastIndexOf(' ') + 1).toLowerCase();
+		}
+		if (lastWord.equals("csv") || lastWord.equals("bin")) {
+			format = lastWord;
+			fileName = fileName.substring(0, fileName.length() - lastWord.length()).trim();
+		}
+
+		// Allow the file name to be quoted
+		if (fileName.length() >= 2 && fileName.startsWith("\"") && fileName.endsWith("\"")) {
+			fileName = fileName.substring(1, fileName.length() - 1);
+		}
+		if (fileName.isEmpty()) {
+			e.PrintError("ERROR:  Please provide the name of the file to export to");
+			return;
+		}
+
+		if (format.isEmpty()) {
+			String lowerName = fileName.toLowerCase();
+			boolean binaryName = lowerName.endsWith(".bin") || lowerName.endsWith(".f64") || lowerName.endsWith(".raw");
+			format = binaryName ? "bin" : "csv";
+		}
+
+		try {
+			long startTime = System.nanoTime();
+			long count;
+			if (source.equals("mem")) {
+				count = ExportFile.ExportMemSlots(Paths.get(fileName), e.MemorySlots(), format.equals("bin"));
+			} else {
+				DoubleStack stk = source.equals("stack2") ? e.Stack2() : e.calcStack;
+				count = ExportFile.Export(Paths.get(fileName), stk, format.equals("bin"));
+			}
+			long elapsed = (System.nanoTime() - startTime) / 1000000;
+			e.Message(Ansi.Color.CYAN, "Exported " + count + " numbers to '" + fileName + "' in " + elapsed + "ms");
 
-		// Load new stack
-		Main.calcStack = Prefs.RestoreStack("1");
-		Main.calcStack2 = Prefs.RestoreStack("2");
+		} catch (IOException | InvalidPathException ex) {
+			e.PrintError("ERROR:  Unable to export to '" + fileName + "': " + ex.getMessage());
+		}
 	}
 
 	/**
 	 * cmdSwapStack(): Swap the primary and secondary stacks
 	 * 
 	 */
-	@SuppressWarnings("unchecked")
-	public static void cmdSwapStack() {
+	public static void cmdSwapStack(RpnEngine e) {
 		// Save to undo stack
-		Main.undoStack.push((Stack<Double>) Main.calcStack.clone());
+		e.undoStack.push(e.calcStack);
 
 		Output.debugPrint("Swapping primary and secondary stack");
-		Stack<Double> calcStackTemp = (Stack<Double>) Main.calcStack.clone();
-		Main.calcStack = (Stack<Double>) Main.calcStack2.clone();
-		Main.calcStack2 = (Stack<Double>) calcStackTemp.clone();
-		Prefs.ToggleCurrentStackNum();
+		DoubleStack calcStackTemp = e.calcStack;
+		e.calcStack = e.Stack2();
+		e.calcStack2 = calcStackTemp;
+		e.currentStackNum = (e.currentStackNum == 1) ? 2 : 1;
+	}
+
+	/**
+	 * cmdPrint(): Print the value of the provided line number. The default is line1. The engine's
+	 * output decides how it is shown. In batch mode it is written to standard output as one of the
+	 * results.
+	 * 
+	 * @param arg
+	 */
+	public static void cmdPrint(RpnEngine e, String arg) {
+		int lineToPrint = 1;
+
+		// Determine the line number to print
+		try {
+			if (!arg.isBlank()) {
+				lineToPrint = Integer.parseInt(arg.trim());
+			}
+		} catch (NumberFormatException ex) {
+			e.PrintError("ERROR: '" + arg + "' is not a valid line number");
+			return;
+		}
+
+		if (lineToPrint < 1 || lineToPrint > e.calcStack.size()) {
+			e.PrintError("Invalid line number entered: " + lineToPrint);
+			return;
+		}
+
+		e.QueryOutput().Print(lineToPrint, e.calcStack.get(e.calcStack.size() - lineToPrint));
+	}
+
+	/**
+	 * cmdStats(): Display the count, latency percentiles and allocated bytes of the commands, user words
+	 * and preferences reads and writes run so far. 'stats json' displays them as JSON and 'stats clear'
+	 * starts counting again.
+	 * 
+	 * @param e
+	 * @param arg
+	 */
+	public static void cmdStats(RpnEngine e, String arg) {
+		switch (arg) {
+		case "":
+			e.Message(Ansi.Color.YELLOW, "\n-Statistics" + "-".repeat(Main.PROGRAMWIDTH - 11));
+			e.Message(Ansi.Color.YELLOW, String.format("%-22s %7s %9s %9s %9s %10s", "Name", "Count", "p50", "p99", "Max", "Alloc/Run"));
+			for (Metrics.Stat stat : Metrics.QueryStats()) {
+				String name = stat.kind.equals(Metrics.KIND_COMMAND) ? stat.name : stat.kind + " " + stat.name;
+				String alloc = Metrics.IsCountingAllocations() ? Main.FormatBytes(stat.QueryAllocatedBytes() / stat.QueryCount()) : "-";
+				e.Message(Ansi.Color.CYAN, String.format("%-22s %7d %9s %9s %9s %10s", name, stat.QueryCount(), Metrics.FormatNanos(stat.QueryPercentile(0.50)),
+						Metrics.FormatNanos(stat.QueryPercentile(0.99)), Metrics.FormatNanos(stat.QueryMaxNanos()), alloc));
+			}
+			e.Message(Ansi.Color.YELLOW, "-".repeat(Main.PROGRAMWIDTH) + "\n");
+			break;
+
+		case "json":
+			for (String line : Metrics.ToJson().split("\n")) {
+				e.Message(Ansi.Color.CYAN, line);
+			}
+			break;
+
+		case "clear":
+			Metrics.Clear();
+			e.Message(Ansi.Color.CYAN, "Statistics cleared");
+			break;
+
+		default:
+			e.PrintError("Error:  Unknown stats command '" + arg + "'.  Use stats, stats json or stats clear");
+		}
 	}
 
 	/**
 	 * cmdDebug(): Toggle debug setting
 	 * 
 	 */
-	public static void cmdDebug() {
+	public static void cmdDebug(RpnEngine e) {
 		if (Debug.query()) {
 			Debug.disable();
-			Output.printColorln(Ansi.Color.RED, "Debug Disabled");
+			e.Message(Ansi.Color.RED, "Debug Disabled");
 		} else {
 			Debug.enable();
 			Output.debugPrint("Debug Enabled");
@@ -1174,13 +1479,13 @@ public class StackOps {
 	 * 
 	 * @param al
 	 */
-	public static void cmdAlign(char al) {
+	public static void cmdAlign(RpnEngine e, char al) {
 		// Validate we have one of the right values
 		if (al != 'l' && al != 'd' && al != 'r') {
-			Output.printColorln(Ansi.Color.RED, "ERROR: Must provide an alignment value of 'l'eft, 'd'ecimal, or 'r'ight");
+			e.PrintError("ERROR: Must provide an alignment value of 'l'eft, 'd'ecimal, or 'r'ight");
 		} else {
 			Output.debugPrint("Setting display alignment to: " + al);
-			Main.displayAlignment = al;
+			e.displayAlignment = al;
 		}
 	}
 
@@ -1188,18 +1493,17 @@ public class StackOps {
 	 * cmdOperand(): An operand was entered such as + or -
 	 * 
 	 */
-	@SuppressWarnings("unchecked")
-	public static void cmdOperand(String Op) {
+	public static void cmdOperand(RpnEngine e, String Op) {
 		// Save to undo stack
-		Main.undoStack.push((Stack<Double>) Main.calcStack.clone());
+		e.undoStack.push(e.calcStack);
 
-		Output.debugPrint("CalcStack has " + Main.calcStack.size() + " elements");
+		Output.debugPrint("CalcStack has " + e.calcStack.size() + " elements");
 		Output.debugPrint("Operand entered: '" + Op + "'");
 		// Verify stack contains at least two elements
-		if (Main.calcStack.size() >= 2) {
-			Main.calcStack = Math.Parse(Op, Main.calcStack);
+		if (e.calcStack.size() >= 2) {
+			e.calcStack = Math.Parse(Op, e.calcStack, e.mathContext);
 		} else {
-			Output.printColorln(Ansi.Color.RED, "Two numbers are required for this operation");
+			e.PrintError("Two numbers are required for this operation");
 		}
 
 	}
@@ -0,0 +1,304 @@
+/******************************************************************************
+ * RPNCalc
+ * 
+ * RPNCalc is is an easy to use console based RPN calculator
+ * 
+ *  Copyright (c) 2013-2021 Michael Fross
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *           
+ ******************************************************************************/
+package org.fross.rpncalc;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * StackStatistics: The count, compensated sum, Welford mean and sum of squared differences, minimum
+ * and maximum of a set of values. These are the running statistics a DoubleStack keeps.
+ * 
+ * Large stacks are scanned in parallel. The stack is always split into the same ranges of chunks no
+ * matter how many threads there are, and the partial results are combined in the same order with
+ * Chan's method, so the result is the same on one core or many.
+ * 
+ * @author michael.d.fross
+ *
+ */
+class StackStatistics {
+	// Class Constants
+	static final int PARALLEL_THRESHOLD = 1 << 18;	// Smaller stacks are scanned on the calling thread
+	private static final int LEAF_CHUNKS = 16;		// Chunks scanned by one task
+	private static final double M2_ERROR_PER_REMOVAL = 4 * java.lang.Math.ulp(1.0);
+	private static final double M2_TOLERANCE = 1e-9;
+
+	// Class Variables
+	long count = 0;
+	double sum = 0.0;								// Neumaier compensated sum is sum + sumCompensation
+	double sumCompensation = 0.0;
+	double mean = 0.0;
+	double m2 = 0.0;
+	double m2Error = 0.0;							// Bound on the rounding error removals have left in m2
+	double min = Double.POSITIVE_INFINITY;
+	double max = Double.NEGATIVE_INFINITY;
+
+	/**
+	 * Scan(): Return the statistics of every element on the stack. Stacks of PARALLEL_THRESHOLD or
+	 * more elements are scanned in parallel in the common fork-join pool.
+	 * 
+	 * @param stk
+	 * @return
+	 */
+	static StackStatistics Scan(DoubleStack stk) {
+		return Scan(stk, stk.size() >= PARALLEL_THRESHOLD ? ForkJoinPool.commonPool() : null);
+	}
+
+	/**
+	 * Scan(): Return the statistics of every element on the stack using the provided pool. With a null
+	 * pool the scan is done on the calling thread.
+	 * 
+	 * @param stk
+	 * @param pool
+	 * @return
+	 */
+	static StackStatistics Scan(DoubleStack stk, ForkJoinPool pool) {
+		ScanTask task = new ScanTask(stk, 0, stk.chunkCount());
+		return (pool == null) ? task.compute() : pool.invoke(task);
+	}
+
+	/**
+	 * Add(): Include a value in the statistics
+	 * 
+	 * @param value
+	 */
+	void Add(double value) {
+		count++;
+		AddToSum(value);
+		double delta = value - mean;
+		mean += delta / count;
+		m2 += delta * (value - mean);
+		min = java.lang.Math.min(min, value);
+		max = java.lang.Math.max(max, value);
+	}
+
+	/**
+	 * Remove(): Take a value back out of the statistics. The minimum and maximum are left as they are.
+	 * 
+	 * @param value
+	 */
+	void Remove(double value) {
+		count--;
+		if (count == 0) {
+			sum = sumCompensation = mean = m2 = m2Error = 0.0;
+			return;
+		}
+
+		// The mean is taken from the compensated sum so the error in it doesn't build up
+		AddToSum(-value);
+		double delta = value - mean;
+		mean = QuerySum() / count;
+		double m2Removed = delta * (value - mean);
+		m2Error += M2_ERROR_PER_REMOVAL * (m2 + java.lang.Math.abs(m2Removed));
+		m2 = java.lang.Math.max(0.0, m2 - m2Removed);
+	}
+
+	/**
+	 * Combine(): Merge the statistics of another set of values into these
+	 * 
+	 * @param other
+	 */
+	void Combine(StackStatistics other) {
+		if (other.count == 0) {
+			return;
+		}
+
+		long n = count + other.count;
+		double delta = other.mean - mean;
+		mean += delta * other.count / n;
+		m2 += other.m2 + delta * delta * count * other.count / n;
+		m2Error += other.m2Error;
+		count = n;
+
+		AddToSum(other.sum);
+		sumCompensation += other.sumCompensation;
+		min = java.lang.Math.min(min, other.min);
+		max = java.lang.Math.max(max, other.max);
+	}
+
+	/**
+	 * Copy(): Return a copy of these statistics
+	 * 
+	 * @return
+	 */
+	StackStatistics Copy() {
+		StackStatistics copy = new StackStatistics();
+		copy.count = count;
+		copy.sum = sum;
+		copy.sumCompensation = sumCompensation;
+		copy.mean = mean;
+		copy.m2 = m2;
+		copy.m2Error = m2Error;
+		copy.min = min;
+		copy.max = max;
+		return copy;
+	}
+
+	/**
+	 * IsAccurate(): Return false if the statistics have overflowed, include an infinity or a NaN, or
+	 * removals have cancelled out most of m2
+	 * 
+	 * @return
+	 */
+	boolean IsAccurate() {
+		return Double.isFinite(sum) && Double.isFinite(m2) && m2Error <= M2_TOLERANCE * m2;
+	}
+
+	/**
+	 * QueryStdDeviation(): Return the population standard deviation
+	 * 
+	 * @return
+	 */
+	double QueryStdDeviation() {
+		return java.lang.Math.sqrt(m2 / count);
+	}
+
+	/**
+	 * QuerySum(): Return the compensated sum
+	 * 
+	 * @return
+	 */
+	double QuerySum() {
+		// Once the sum overflows or hits a NaN the compensation no longer means anything
+		return Double.isFinite(sum) ? sum + sumCompensation : sum;
+	}
+
+	/**
+	 * AddToSum(): Add a value to the sum using Neumaier's variant of Kahan summation
+	 * 
+	 * @param value
+	 */
+	private void AddToSum(double value) {
+		double t = sum + value;
+		if (java.lang.Math.abs(sum) >= java.lang.Math.abs(value)) {
+			sumCompensation += (sum - t) + value;
+		} else {
+			sumCompensation += (value - t) + sum;
+		}
+		sum = t;
+	}
+
+	/**
+	 * ScanTask: Scan a range of chunks, splitting it in half until each task has at most LEAF_CHUNKS
+	 * 
+	 */
+	@SuppressWarnings("serial")
+	private static class ScanTask extends RecursiveTask<StackStatistics> {
+		private final DoubleStack stk;
+		private final int fromChunk;
+		private final int toChunk;
+
+		ScanTask(DoubleStack stk, int fromChunk, int toChunk) {
+			this.stk = stk;
+			this.fromChunk = fromChunk;
+			this.toChunk = toChunk;
+		}
+
+		@Override
+		protected StackStatistics compute() {
+			if (toChunk - fromChunk <= LEAF_CHUNKS) {
+				return ScanLeaf();
+			}
+
+			// Split in the middle and always combine the lower half with the upper half
+			int middle = (fromChunk + toChunk) >>> 1;
+			ScanTask lower = new ScanTask(stk, fromChunk, middle);
+			ScanTask upper = new ScanTask(stk, middle, toChunk);
+			StackStatistics stats;
+			if (getPool() == null) {
+				stats = lower.compute();
+				stats.Combine(upper.compute());
+			} else {
+				upper.fork();
+				stats = lower.compute();
+				stats.Combine(upper.join());
+			}
+			return stats;
+		}
+
+		/**
+		 * ScanLeaf(): Scan the chunks in two passes. The first finds the sum, minimum and maximum and the
+		 * second the squared differences from the mean. It avoids a division for every value and the
+		 * chunks are still in the cache for the second pass.
+		 * 
+		 * @return
+		 */
+		private StackStatistics ScanLeaf() {
+			StackStatistics stats = new StackStatistics();
+			int size = stk.size();
+
+			for (int c = fromChunk; c < toChunk; c++) {
+				double[] chunk = stk.chunk(c);
+				int end = java.lang.Math.min(DoubleStack.CHUNK_SIZE, size - (c << DoubleStack.CHUNK_SHIFT));
+				double min = stats.min;
+				double max = stats.max;
+				for (int i = 0; i < end; i++) {
+					double value = chunk[i];
+					stats.AddToSum(value);
+					min = (value < min) ? value : min;
+					max = (value > max) ? value : max;
+				}
+				stats.min = min;
+				stats.max = max;
+				stats.count += end;
+			}
+
+			// The comparisons skip over a NaN, but like Math.min() and Math.max() a NaN should win. A NaN
+			// would have made the sum NaN as well, so only then is it worth looking again.
+			if (Double.isNaN(stats.sum)) {
+				for (int c = fromChunk; c < toChunk; c++) {
+					double[] chunk = stk.chunk(c);
+					int end = java.lang.Math.min(DoubleStack.CHUNK_SIZE, size - (c << DoubleStack.CHUNK_SHIFT));
+					for (int i = 0; i < end; i++) {
+						stats.min = java.lang.Math.min(stats.min, chunk[i]);
+						stats.max = java.lang.Math.max(stats.max, chunk[i]);
+					}
+				}
+			}
+			if (stats.count == 0) {
+				return stats;
+			}
+			stats.mean = stats.QuerySum() / stats.count;
+
+			// Adding up the differences as well corrects for the rounding in the mean
+			double squares = 0.0;
+			double differences = 0.0;
+			for (int c = fromChunk; c < toChunk; c++) {
+				double[] chunk = stk.chunk(c);
+				int end = java.lang.Math.min(DoubleStack.CHUNK_SIZE, size - (c << DoubleStack.CHUNK_SHIFT));
+				for (int i = 0; i < end; i++) {
+					double delta = chunk[i] - stats.mean;
+					squares += delta * delta;
+					differences += delta;
+				}
+			}
+			stats.m2 = java.lang.Math.max(0.0, squares - differences * differences / stats.count);
+			return stats;
+		}
+	}
+
+}
@@ -0,0 +1,192 @@
+/******************************************************************************
+ * RPNCalc
+ * 
+ * RPNCalc is is an easy to use console based RPN calculator
+ * 
+ *  Copyright (c) 2013-2021 Michael Fross
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *           
+ ******************************************************************************/
+package org.fross.rpncalc;
+
+/**
+ * Tokenizer: Hand written scanning of the input line. It splits the command from its parameters and
+ * recognizes numbers and NumOps without regular expressions, so nothing is compiled or allocated for
+ * each line beyond the strings that are returned.
+ * 
+ * @author michael.d.fross
+ *
+ */
+public class Tokenizer {
+	// Powers of ten that are exactly representable as a double
+	static final double[] POW10 = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20,
+			1e21, 1e22 };
+
+	/**
+	 * SkipWhitespace(): Return the index of the first non whitespace character at or after start
+	 * 
+	 * @param s
+	 * @param start
+	 * @return
+	 */
+	public static int SkipWhitespace(String s, int start) {
+		int i = start;
+		while (i < s.length() && s.charAt(i) <= ' ') {
+			i++;
+		}
+		return i;
+	}
+
+	/**
+	 * SkipToken(): Return the index of the first whitespace character at or after start
+	 * 
+	 * @param s
+	 * @param start
+	 * @return
+	 */
+	public static int SkipToken(String s, int start) {
+		int i = start;
+		while (i < s.length() && s.charAt(i) > ' ') {
+			i++;
+		}
+		return i;
+	}
+
+	/**
+	 * TrimEnd(): Return the index just past the last non whitespace character
+	 * 
+	 * @param s
+	 * @return
+	 */
+	public static int TrimEnd(String s) {
+		int i = s.length();
+		while (i > 0 && s.charAt(i - 1) <= ' ') {
+			i--;
+		}
+		return i;
+	}
+
+	/**
+	 * IsOperator(): Return true if the character is one of the operands + - * / ^
+	 * 
+	 * @param c
+	 * @return
+	 */
+	public static boolean IsOperator(char c) {
+		return c == '+' || c == '-' || c == '*' || c == '/' || c == '^';
+	}
+
+	/**
+	 * IsNumber(): Return true if the string is a decimal number such as 12, -3.5, .25 or 7.
+	 * 
+	 * @param s
+	 * @return
+	 */
+	public static boolean IsNumber(String s) {
+		return ScanNumber(s, 0, s.length());
+	}
+
+	/**
+	 * IsNumOp(): Return true if the string is a number followed by an operand. i.e. 3+ or -2.5*
+	 * 
+	 * @param s
+	 * @return
+	 */
+	public static boolean IsNumOp(String s) {
+		int len = s.length();
+		return len >= 2 && IsOperator(s.charAt(len - 1)) && ScanNumber(s, 0, len - 1);
+	}
+
+	/**
+	 * ScanNumber(): Return true if the characters from start up to end are an optional minus sign,
+	 * digits, and an optional decimal point with at least one digit
+	 * 
+	 * @param s
+	 * @param start
+	 * @param end
+	 * @return
+	 */
+	private static boolean ScanNumber(String s, int start, int end) {
+		int i = start;
+		boolean digits = false;
+		boolean decimal = false;
+
+		if (i < end && s.charAt(i) == '-') {
+			i++;
+		}
+
+		for (; i < end; i++) {
+			char c = s.charAt(i);
+			if (c >= '0' && c <= '9') {
+				digits = true;
+			} else if (c == '.' && decimal == false) {
+				decimal = true;
+			} else {
+				return false;
+			}
+		}
+
+		return digits;
+	}
+
+	/**
+	 * ParseNumber(): Convert a string accepted by IsNumber() into a double. Numbers with up to 15 or
+	 * so significant digits are converted directly, which is exact because both the digits and the
+	 * power of ten are exactly representable. Anything longer goes through Double.parseDouble().
+	 * 
+	 * @param s
+	 * @return
+	 */
+	public static double ParseNumber(String s) {
+		int len = s.length();
+		int i = 0;
+		boolean negative = false;
+		boolean decimal = false;
+		long mantissa = 0;
+		int scale = 0;
+
+		if (len > 0 && s.charAt(0) == '-') {
+			negative = true;
+			i++;
+		}
+
+		for (; i < len; i++) {
+			char c = s.charAt(i);
+			if (c == '.') {
+				decimal = true;
+				continue;
+			}
+
+			mantissa = mantissa * 10 + (c - '0');
+			if (decimal == true) {
+				scale++;
+			}
+
+			// Too many digits for the fast path
+			if (mantissa >= (1L << 53) || scale >= POW10.length) {
+				return Double.parseDouble(s);
+			}
+		}
+
+		double value = mantissa / POW10[scale];
+		return negative ? -value : value;
+	}
+
+}
@@ -0,0 +1,419 @@
+/******************************************************************************
+ * RPNCalc
+ * 
+ * RPNCalc is is an easy to use console based RPN calculator
+ * 
+ *  Copyright (c) 2013-2021 Michael Fross
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *           
+ ******************************************************************************/
+package org.fross.rpncalc;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.fross.library.Output;
+
+/**
+ * UndoHistory: Holds the previous states of the calculator stack. Each level is an O(1) snapshot
+ * that shares its unchanged chunks with the live stack and with the other levels. The memory
+ * retained by the history is tracked per level: each level counts the chunks it doesn't share with
+ * the level before it, which the stack it was taken from keeps track of as it is written, so a push
+ * only looks at the chunks that changed. A chunk array is never put back once a stack has replaced
+ * it, so the levels holding it are always consecutive and no chunk is counted twice.
+ * 
+ * The most recent levels are kept in memory. Once there are more than MEMORY_LEVELS of them, or they
+ * go over the memory budget, the oldest are spilled to an UndoSpillFile in the data directory and
+ * paged back in by pop() when the in memory levels run out. Once the spill file passes
+ * MAX_SPILL_BYTES the oldest half of the levels in it are discarded. TakeDiscardedLevels() tells how
+ * many levels were lost that way so the user can be told.
+ * 
+ * @author michael.d.fross
+ *
+ */
+public class UndoHistory implements Iterable<DoubleStack> {
+	// Class Constants
+	public static final int DEFAULT_BUDGET_MB = 64;
+	public static final int MEMORY_LEVELS = 100;
+	public static final long MAX_SPILL_BYTES = 1L << 30;
+	static final long ARRAY_HEADER_BYTES = 16;
+	static final long LEVEL_OVERHEAD_BYTES = 64;
+
+	// Class Variables
+	private final ArrayDeque<Level> levels = new ArrayDeque<Level>();
+	private DoubleStack source = null;			// Stack the newest level was taken from
+	private long budgetBytes = DEFAULT_BUDGET_MB * 1024L * 1024L;
+	private long bytesUsed = 0;
+	private UndoSpillFile spillFile = null;
+	private boolean suspended = false;
+	private int discardedLevels = 0;
+
+	/**
+	 * Level: An undo level and the memory it holds. newBytes are the chunks the level before it doesn't
+	 * have, or all of them for the oldest level. replacedBytes are the chunks of the level before it
+	 * that this one doesn't have.
+	 */
+	private static class Level {
+		final DoubleStack snap;
+		long fullBytes = 0;
+		long newBytes = 0;
+		long replacedBytes = 0;
+		long newElements = 0;
+
+		Level(DoubleStack snap) {
+			this.snap = snap;
+		}
+	}
+
+	/**
+	 * UndoHistory(): Create an empty undo history with the default memory budget
+	 */
+	public UndoHistory() {
+	}
+
+	/**
+	 * UndoHistory(): Create an empty undo history with the same memory budget as another one
+	 * 
+	 * @param settings
+	 */
+	public UndoHistory(UndoHistory settings) {
+		this.budgetBytes = settings.budgetBytes;
+	}
+
+	/**
+	 * SetBudget(): Set the maximum number of megabytes the undo history may retain
+	 * 
+	 * @param mb
+	 */
+	public void SetBudget(String mb) {
+		try {
+			int budget = Integer.parseInt(mb);
+			if (budget < 1) {
+				throw new NumberFormatException();
+			}
+			budgetBytes = budget * 1024L * 1024L;
+			Evict();
+		} catch (NumberFormatException ex) {
+			Output.fatalError("Could not set the undo memory budget to '" + mb + "' megabytes", 5);
+		}
+	}
+
+	/**
+	 * Suspend(): Ignore pushes until Resume() is called. Used while the commands of a Program run so
+	 * the whole line is a single undo level.
+	 */
+	public void Suspend() {
+		suspended = true;
+	}
+
+	/**
+	 * Resume(): Save pushes as undo levels again
+	 */
+	public void Resume() {
+		suspended = false;
+	}
+
+	/**
+	 * push(): Save a snapshot of the provided stack as the newest undo level. Ignored while suspended.
+	 * 
+	 * @param stk
+	 */
+	public void push(DoubleStack stk) {
+		if (suspended == true) {
+			return;
+		}
+
+		FlightRecorder.UndoSnapshotEvent event = FlightRecorder.IsRunning() ? new FlightRecorder.UndoSnapshotEvent() : null;
+		if (event != null) {
+			event.begin();
+		}
+
+		DoubleStack snap = stk.snapshot();
+		Level prev = levels.peekLast();
+		Level level = (prev == null) ? Full(snap) : Diff(prev, snap, (stk == source) ? stk.QueryReplacedChunks() : null);
+		stk.ClearReplacedChunks();
+		source = stk;
+
+		levels.addLast(level);
+		bytesUsed += DirectoryBytes(snap) + level.newBytes;
+		Evict();
+
+		if (event != null) {
+			event.end();
+		}
+		if (event != null && event.shouldCommit()) {
+			event.elements = snap.size();
+			event.elementsCopied = level.newElements;
+			event.levels = size();
+			event.memoryUsed = bytesUsed;
+			event.commit();
+		}
+	}
+
+	/**
+	 * pop(): Remove and return the newest undo level. The returned stack can be used as the live stack.
+	 * Throws IllegalStateException if a spilled level can't be read back from the disk.
+	 * 
+	 * @return
+	 */
+	public DoubleStack pop() {
+		// Page the newest spilled level back in once the in memory levels are gone
+		if (levels.isEmpty() && spillFile != null) {
+			try {
+				Output.debugPrint("Paging undo level " + spillFile.size() + " in from the spill file");
+				return spillFile.removeLast();
+			} catch (IOException ex) {
+				CloseSpillFile();
+				throw new IllegalStateException("Unable to read undo level from disk: " + ex.getMessage(), ex);
+			}
+		}
+
+		// The caller's stack is no longer the one the newest level was taken from
+		source = null;
+
+		Level level = levels.removeLast();
+		bytesUsed -= DirectoryBytes(level.snap) + level.newBytes;
+		return level.snap;
+	}
+
+	/**
+	 * size(): Return the number of undo levels
+	 * 
+	 * @return
+	 */
+	public int size() {
+		return levels.size() + QuerySpilledLevels();
+	}
+
+	/**
+	 * QuerySpilledLevels(): Return the number of undo levels that are on disk
+	 * 
+	 * @return
+	 */
+	public int QuerySpilledLevels() {
+		return (spillFile == null) ? 0 : spillFile.size();
+	}
+
+	/**
+	 * TakeDiscardedLevels(): Return the number of undo levels that were discarded since this was last
+	 * called, because the spill file was full or couldn't be used
+	 * 
+	 * @return
+	 */
+	public int TakeDiscardedLevels() {
+		int discarded = discardedLevels;
+		discardedLevels = 0;
+		return discarded;
+	}
+
+	/**
+	 * QueryMemoryUsed(): Return the approximate number of bytes the undo history holds in memory
+	 * 
+	 * @return
+	 */
+	public long QueryMemoryUsed() {
+		return bytesUsed;
+	}
+
+	/**
+	 * Close(): Close and remove the spill file. Called as the program exits.
+	 */
+	public void Close() {
+		CloseSpillFile();
+	}
+
+	/**
+	 * iterator(): Iterate over the undo levels from oldest to newest. Spilled levels are read from disk
+	 * one at a time as the iterator reaches them.
+	 */
+	@Override
+	public Iterator<DoubleStack> iterator() {
+		return new Iterator<DoubleStack>() {
+			private final int spilled = QuerySpilledLevels();
+			private final Iterator<Level> inMemory = levels.iterator();
+			private int spillIndex = 0;
+
+			@Override
+			public boolean hasNext() {
+				return spillIndex < spilled || inMemory.hasNext();
+			}
+
+			@Override
+			public DoubleStack next() {
+				if (spillIndex >= spilled) {
+					return inMemory.next().snap;
+				}
+				try {
+					return spillFile.get(spillIndex++);
+				} catch (IOException ex) {
+					throw new NoSuchElementException("Unable to read undo level from disk: " + ex.getMessage());
+				}
+			}
+		};
+	}
+
+	/**
+	 * Evict(): Move the oldest undo levels to the spill file until the in memory history fits in the
+	 * budget. If the spill file can't be written they are discarded. The newest level is always kept in
+	 * memory.
+	 */
+	private void Evict() {
+		while ((levels.size() > MEMORY_LEVELS || bytesUsed > budgetBytes) && levels.size() > 1) {
+			DoubleStack oldest = levels.removeFirst().snap;
+
+			// The next level becomes the oldest and holds everything it shared with this one
+			Level next = levels.peekFirst();
+			bytesUsed -= DirectoryBytes(oldest) + next.replacedBytes;
+			next.newBytes = next.fullBytes;
+			next.replacedBytes = 0;
+
+			try {
+				if (spillFile == null) {
+					spillFile = new UndoSpillFile(Prefs.QueryDataDir());
+				}
+
+				// Once the spill file is full the oldest half of the levels in it are discarded
+				while (spillFile.QueryBytes() > MAX_SPILL_BYTES && spillFile.size() > 0) {
+					int discard = java.lang.Math.max(1, spillFile.size() / 2);
+					Output.debugPrint("Undo spill file is full.  Discarding the oldest " + discard + " undo levels");
+					spillFile.removeFirst(discard);
+					discardedLevels += discard;
+				}
+
+				Output.debugPrint("Spilling oldest undo level to disk");
+				spillFile.append(oldest);
+			} catch (IOException ex) {
+				Output.debugPrint("Unable to spill undo level to disk.  Discarding it: " + ex.getMessage());
+				discardedLevels += 1 + QuerySpilledLevels();
+				CloseSpillFile();
+			}
+		}
+	}
+
+	/**
+	 * CloseSpillFile(): Close the spill file. Any levels still in it are lost.
+	 */
+	private void CloseSpillFile() {
+		if (spillFile != null) {
+			try {
+				spillFile.close();
+			} catch (IOException ex) {
+				Output.debugPrint("Unable to close the undo spill file: " + ex.getMessage());
+			}
+			spillFile = null;
+		}
+	}
+
+	/**
+	 * Full(): Return the level of a snapshot that doesn't follow another one. All of its chunks are new.
+	 * 
+	 * @param snap
+	 * @return
+	 */
+	private static Level Full(DoubleStack snap) {
+		Level level = new Level(snap);
+		for (int c = 0; c < snap.chunkCount(); c++) {
+			level.newBytes += ChunkBytes(snap.chunk(c));
+			level.newElements += snap.chunk(c).length;
+		}
+		level.fullBytes = level.newBytes;
+		return level;
+	}
+
+	/**
+	 * Diff(): Return the level of a snapshot taken after the provided level. Only the chunks in
+	 * replaced, those the stack gave a new array since the previous level was taken, and the chunks one
+	 * of them has past the end of the other are compared. If replaced is null every chunk is.
+	 * 
+	 * @param prev
+	 * @param snap
+	 * @param replaced
+	 * @return
+	 */
+	private static Level Diff(Level prev, DoubleStack snap, int[] replaced) {
+		Level level = new Level(snap);
+		DoubleStack before = prev.snap;
+		int common = java.lang.Math.min(before.chunkCount(), snap.chunkCount());
+
+		if (replaced == null) {
+			for (int c = 0; c < common; c++) {
+				Compare(level, before.chunk(c), snap.chunk(c));
+			}
+		} else {
+			Arrays.sort(replaced);
+			for (int i = 0; i < replaced.length; i++) {
+				int c = replaced[i];
+				if (c < common && (i == 0 || replaced[i - 1] != c)) {
+					Compare(level, before.chunk(c), snap.chunk(c));
+				}
+			}
+		}
+
+		for (int c = common; c < before.chunkCount(); c++) {
+			level.replacedBytes += ChunkBytes(before.chunk(c));
+		}
+		for (int c = common; c < snap.chunkCount(); c++) {
+			level.newBytes += ChunkBytes(snap.chunk(c));
+			level.newElements += snap.chunk(c).length;
+		}
+
+		level.fullBytes = prev.fullBytes - level.replacedBytes + level.newBytes;
+		return level;
+	}
+
+	/**
+	 * Compare(): Count a chunk of the new level against the same chunk of the level before it
+	 * 
+	 * @param level
+	 * @param before
+	 * @param after
+	 */
+	private static void Compare(Level level, double[] before, double[] after) {
+		if (before != after) {
+			level.replacedBytes += ChunkBytes(before);
+			level.newBytes += ChunkBytes(after);
+			level.newElements += after.length;
+		}
+	}
+
+	/**
+	 * ChunkBytes(): Return the memory a chunk takes
+	 * 
+	 * @param chunk
+	 * @return
+	 */
+	private static long ChunkBytes(double[] chunk) {
+		return ARRAY_HEADER_BYTES + 8L * chunk.length;
+	}
+
+	/**
+	 * DirectoryBytes(): Return the memory a level takes apart from its chunks
+	 * 
+	 * @param snap
+	 * @return
+	 */
+	private static long DirectoryBytes(DoubleStack snap) {
+		return LEVEL_OVERHEAD_BYTES + ARRAY_HEADER_BYTES + 8L * snap.chunkCount();
+	}
+
+}
@@ -0,0 +1,361 @@
+/******************************************************************************
+ * RPNCalc
+ * 
+ * RPNCalc is is an easy to use console based RPN calculator
+ * 
+ *  Copyright (c) 2013-2021 Michael Fross
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *           
+ ******************************************************************************/
+package org.fross.rpncalc;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+
+/**
+ * UndoSpillFile: An append-only file of undo levels that no longer fit in memory. Consecutive undo
+ * levels share most of their chunks, so each chunk is written to the file only the first time a level
+ * containing it is spilled. A level's record is its element count followed by the file offset of each
+ * of its chunks. Paging in an old level only reads its record and its own chunks, so the file can
+ * grow past what fits in memory or in a single mapping.
+ * 
+ * Each file gets a unique name, so every engine in the process has its own. It is deleted when it is
+ * closed.
+ * 
+ * @author michael.d.fross
+ *
+ */
+public class UndoSpillFile {
+	// Class Constants
+	private static final int BUFFER_DOUBLES = DoubleStack.CHUNK_SIZE;
+
+	// Class Variables
+	private final FileChannel channel;
+	private final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(BUFFER_DOUBLES * Double.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+	private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(BUFFER_DOUBLES * Double.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+	private final WeakHashMap<double[], Long> chunkOffsets = new WeakHashMap<double[], Long>();
+	private TreeMap<Long, Integer> chunkLengths = new TreeMap<Long, Integer>();	// Doubles in the chunk at each offset
+	private long[] starts = new long[16];		// Where each level's new chunks begin
+	private long[] records = new long[16];		// Where each level's record is
+	private int count = 0;
+	private long writePosition = 0;
+
+	/**
+	 * UndoSpillFile(): Create a new spill file in the provided directory
+	 * 
+	 * @param dir
+	 * @throws IOException
+	 */
+	public UndoSpillFile(Path dir) throws IOException {
+		Path file = Files.createTempFile(dir, "undo-", ".spill");
+		try {
+			channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+		} catch (IOException ex) {
+			Files.deleteIfExists(file);
+			throw ex;
+		}
+	}
+
+	/**
+	 * size(): Return the number of undo levels in the file
+	 * 
+	 * @return
+	 */
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * QueryBytes(): Return the size of the file in bytes
+	 * 
+	 * @return
+	 */
+	public long QueryBytes() {
+		return writePosition;
+	}
+
+	/**
+	 * append(): Write the provided stack to the end of the file. Only its chunks that are not already
+	 * in the file are written.
+	 * 
+	 * @param stk
+	 * @throws IOException
+	 */
+	public void append(DoubleStack stk) throws IOException {
+		if (count == starts.length) {
+			starts = Arrays.copyOf(starts, count * 2);
+			records = Arrays.copyOf(records, count * 2);
+		}
+
+		long start = writePosition;
+		long position = writePosition;
+		long[] offsets = new long[stk.chunkCount()];
+
+		// Write the chunks that haven't been spilled by an earlier level
+		for (int c = 0; c < stk.chunkCount(); c++) {
+			double[] chunk = stk.chunk(c);
+			Long offset = chunkOffsets.get(chunk);
+			if (offset == null) {
+				offset = position;
+				writeBuffer.clear();
+				writeBuffer.asDoubleBuffer().put(chunk);
+				writeBuffer.limit(chunk.length * Double.BYTES);
+				position += WriteFully(writeBuffer, position);
+				chunkOffsets.put(chunk, offset);
+				chunkLengths.put(offset, chunk.length);
+			}
+			offsets[c] = offset;
+		}
+
+		// Followed by the record listing them
+		long record = position;
+		ByteBuffer buf = ByteBuffer.allocate(Integer.BYTES + offsets.length * Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+		buf.putInt(stk.size());
+		buf.asLongBuffer().put(offsets);
+		buf.rewind();
+		position += WriteFully(buf, position);
+
+		starts[count] = start;
+		records[count] = record;
+		count++;
+		writePosition = position;
+	}
+
+	/**
+	 * get(): Read the undo level at the provided index. Index 0 is the oldest level in the file.
+	 * 
+	 * @param index
+	 * @return
+	 * @throws IOException
+	 */
+	public DoubleStack get(int index) throws IOException {
+		if (index < 0 || index >= count) {
+			throw new ArrayIndexOutOfBoundsException(index);
+		}
+
+		int size = ReadSize(records[index]);
+		long[] offsets = ReadOffsets(records[index], size);
+
+		double[] values = new double[size];
+		for (int c = 0, from = 0; from < size; c++, from += DoubleStack.CHUNK_SIZE) {
+			int n = java.lang.Math.min(DoubleStack.CHUNK_SIZE, size - from);
+			readBuffer.clear();
+			readBuffer.limit(n * Double.BYTES);
+			ReadFully(readBuffer, offsets[c]);
+			readBuffer.flip();
+			readBuffer.asDoubleBuffer().get(values, from, n);
+		}
+
+		return new DoubleStack(values);
+	}
+
+	/**
+	 * removeLast(): Read and remove the newest undo level in the file. Its space, and that of the chunks
+	 * first written with it, is reused by the next append.
+	 * 
+	 * @return
+	 * @throws IOException
+	 */
+	public DoubleStack removeLast() throws IOException {
+		DoubleStack stk = get(count - 1);
+		writePosition = starts[--count];
+		chunkOffsets.values().removeIf(offset -> offset >= writePosition);
+		chunkLengths.tailMap(writePosition).clear();
+
+		// Give the disk space back once the file is empty
+		if (count == 0) {
+			channel.truncate(0);
+		}
+
+		return stk;
+	}
+
+	/**
+	 * removeFirst(): Remove the provided number of the oldest undo levels. The chunks and records that
+	 * are kept are moved down over the space of the ones removed, in file order, so a chunk is only
+	 * ever copied to a lower offset that has already been read. The file is then truncated.
+	 * 
+	 * @param n
+	 * @throws IOException
+	 */
+	public void removeFirst(int n) throws IOException {
+		if (n <= 0) {
+			return;
+		}
+		if (n >= count) {
+			count = 0;
+			writePosition = 0;
+			chunkOffsets.clear();
+			chunkLengths.clear();
+			channel.truncate(0);
+			return;
+		}
+
+		// Read the records of the levels that are kept and the chunks they use. Records and chunks are
+		// both put in the map by offset, records as their level and chunks as minus their length.
+		int kept = count - n;
+		int[] sizes = new int[kept];
+		long[][] offsets = new long[kept][];
+		TreeMap<Long, Integer> items = new TreeMap<Long, Integer>();
+		for (int i = 0; i < kept; i++) {
+			sizes[i] = ReadSize(records[n + i]);
+			offsets[i] = ReadOffsets(records[n + i], sizes[i]);
+			items.put(records[n + i], i);
+			for (long offset : offsets[i]) {
+				items.put(offset, -chunkLengths.get(offset));
+			}
+		}
+
+		// Move them down
+		HashMap<Long, Long> moved = new HashMap<Long, Long>();
+		TreeMap<Long, Integer> newLengths = new TreeMap<Long, Integer>();
+		long[] newRecords = new long[kept];
+		long to = 0;
+		for (Map.Entry<Long, Integer> item : items.entrySet()) {
+			long from = item.getKey();
+			if (item.getValue() < 0) {
+				int length = -item.getValue();
+				readBuffer.clear();
+				readBuffer.limit(length * Double.BYTES);
+				ReadFully(readBuffer, from);
+				readBuffer.flip();
+				WriteFully(readBuffer, to);
+				moved.put(from, to);
+				newLengths.put(to, length);
+				to += length * Double.BYTES;
+			} else {
+				int i = item.getValue();
+				ByteBuffer buf = ByteBuffer.allocate(Integer.BYTES + offsets[i].length * Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+				buf.putInt(sizes[i]);
+				for (long offset : offsets[i]) {
+					buf.putLong(moved.get(offset));
+				}
+				buf.flip();
+				newRecords[i] = to;
+				to += WriteFully(buf, to);
+			}
+		}
+
+		// A level's new chunks start where the record before it ends
+		for (int i = 0; i < kept; i++) {
+			starts[i] = (i == 0) ? 0 : newRecords[i - 1] + Integer.BYTES + offsets[i - 1].length * Long.BYTES;
+			records[i] = newRecords[i];
+		}
+		count = kept;
+		writePosition = to;
+		chunkLengths = newLengths;
+		for (Iterator<Map.Entry<double[], Long>> it = chunkOffsets.entrySet().iterator(); it.hasNext();) {
+			Map.Entry<double[], Long> entry = it.next();
+			Long offset = moved.get(entry.getValue());
+			if (offset == null) {
+				it.remove();
+			} else {
+				entry.setValue(offset);
+			}
+		}
+		channel.truncate(writePosition);
+	}
+
+	/**
+	 * close(): Close and delete the file
+	 * 
+	 * @throws IOException
+	 */
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	/**
+	 * ReadSize(): Return the number of elements in the level whose record is at the provided position
+	 * 
+	 * @param record
+	 * @return
+	 * @throws IOException
+	 */
+	private int ReadSize(long record) throws IOException {
+		ByteBuffer buf = ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+		ReadFully(buf, record);
+		return buf.getInt(0);
+	}
+
+	/**
+	 * ReadOffsets(): Return the chunk offsets in the record at the provided position
+	 * 
+	 * @param record
+	 * @param size   - Number of elements in the level
+	 * @return
+	 * @throws IOException
+	 */
+	private long[] ReadOffsets(long record, int size) throws IOException {
+		long[] offsets = new long[(size + DoubleStack.CHUNK_SIZE - 1) / DoubleStack.CHUNK_SIZE];
+		ByteBuffer buf = ByteBuffer.allocate(offsets.length * Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+		ReadFully(buf, record + Integer.BYTES);
+		buf.flip();
+		buf.asLongBuffer().get(offsets);
+		return offsets;
+	}
+
+	/**
+	 * ReadFully(): Fill the buffer from the provided file position
+	 * 
+	 * @param buf
+	 * @param position
+	 * @throws IOException
+	 */
+	private void ReadFully(ByteBuffer buf, long position) throws IOException {
+		long read = 0;
+		while (buf.hasRemaining()) {
+			int n = channel.read(buf, position + read);
+			if (n < 0) {
+				throw new EOFException("Undo spill file ends at " + (position + read));
+			}
+			read += n;
+		}
+	}
+
+	/**
+	 * WriteFully(): Write the entire buffer at the provided file position and return the bytes written
+	 * 
+	 * @param buf
+	 * @param position
+	 * @return
+	 * @throws IOException
+	 */
+	private long WriteFully(ByteBuffer buf, long position) throws IOException {
+		long written = 0;
+		while (buf.hasRemaining()) {
+			written += channel.write(buf, position + written);
+		}
+		return written;
+	}
+
+}
@@ -0,0 +1,712 @@
+/******************************************************************************
+ * RPNCalc
+ * 
+ * RPNCalc is is an easy to use console based RPN calculator
+ * 
+ *  Copyright (c) 2013-2021 Michael Fross
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *           
+ ******************************************************************************/
+package org.fross.rpncalc;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.fross.library.Output;
+import org.fusesource.jansi.Ansi;
+
+/**
+ * UserWords: Words the user has defined from numbers, operands, commands and other words, Forth
+ * style. A word is defined with ': name body ;' and saved in the preferences next to the stacks so
+ * every session can use it. The body may start with parameters in braces, which are taken off the
+ * stack when the word is called and push their value where they are used.
+ * 
+ * <pre>
+ *   : markup 1.25 * ;
+ *   : area { w h } w h * ;
+ *   : sumsq 0 swap times i i * + loop ;
+ *   : clamp0 dup 0 < if drop 0 then ;
+ * </pre>
+ * 
+ * 'if ... else ... then' runs its first part if line1, which it removes, isn't zero. 'times ... loop'
+ * removes line1 and runs its body that many times. Inside it 'i' pushes the number of the current
+ * pass starting at 0. The comparisons &lt; &gt; and = push 1 or 0, and dup, drop, swap and over work
+ * on the top of the stack.
+ * 
+ * Each definition is compiled once into a tree of Code lambdas. Numbers are pushed, the operands
+ * call the Math functions and commands call their registered code directly, so nothing is looked up
+ * by name while a word runs. Calls to other words go through their Word so a word can be redefined
+ * without recompiling its callers. The compiled code of the CACHE_SIZE most recently used words is
+ * kept. Others are compiled again from their saved definition the next time they are called.
+ * 
+ * @author michael.d.fross
+ *
+ */
+public class UserWords {
+	// Class Constants
+	public static final int CACHE_SIZE = 128;
+	public static final int MAX_CALL_DEPTH = 1000;
+	private static final Set<String> KEYWORDS = Set.of(":", ";", "{", "}", "if", "else", "then", "times", "loop", "i", "dup", "drop", "swap", "over", "<", ">", "=");
+	private static final Set<String> NOT_IN_WORDS = Set.of(":", "forget", "load", "import", "export", "debug", "u", "undo");
+
+	// Class Variables
+	private final HashMap<String, Word> words = new HashMap<String, Word>();
+	private int callDepth = 0;
+	private long stepLimit = 0;			// Most word calls and loop passes a line may run, 0 for no limit
+	private long steps = 0;
+
+	// Words with compiled code in least to most recently used order
+	private final LinkedHashMap<String, Word> compiled = new LinkedHashMap<String, Word>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Word> eldest) {
+			if (size() > CACHE_SIZE) {
+				Output.debugPrint("Dropping the compiled code of word '" + eldest.getKey() + "'");
+				eldest.getValue().compiled = null;
+				return true;
+			}
+			return false;
+		}
+	};
+
+	/**
+	 * Code: A compiled piece of a word. locals holds the word's parameters and loop counters. Returns
+	 * false if an error was reported or the session was ended, which stops the word.
+	 */
+	@FunctionalInterface
+	interface Code {
+		boolean Run(RpnEngine e, double[] locals);
+	}
+
+	/**
+	 * Word: A user defined word and its compiled code, or null if it needs to be compiled
+	 */
+	static class Word {
+		final String name;
+		Compiled compiled = null;
+
+		Word(String name) {
+			this.name = name;
+		}
+	}
+
+	/**
+	 * Compiled: The code of a word along with how many parameters it takes and locals it needs
+	 */
+	private static class Compiled {
+		final Code code;
+		final int numParams;
+		final int numLocals;
+
+		Compiled(Code code, int numParams, int numLocals) {
+			this.code = code;
+			this.numParams = numParams;
+			this.numLocals = numLocals;
+		}
+	}
+
+	/**
+	 * Compiler: The state of the definition being compiled
+	 */
+	private static class Compiler {
+		final String name;
+		final String[] tokens;
+		int pos = 0;
+		final HashMap<String, Integer> locals = new HashMap<String, Integer>();
+		int numLocals = 0;
+		final ArrayDeque<Integer> loops = new ArrayDeque<Integer>();
+
+		Compiler(String name, String[] tokens) {
+			this.name = name;
+			this.tokens = tokens;
+		}
+	}
+
+	/**
+	 * Lookup(): Return the word with the provided name or null if there isn't one
+	 * 
+	 * @param name
+	 * @return
+	 */
+	public Word Lookup(String name) {
+		Word w = words.get(name);
+		if (w == null && Prefs.QueryWord(name) != null) {
+			w = new Word(name);
+			words.put(name, w);
+		}
+		return w;
+	}
+
+	/**
+	 * Define(): Compile and save a definition of the form 'name body ;'. Errors are reported on the
+	 * engine and the previous definition, if any, is kept.
+	 * 
+	 * @param e
+	 * @param definition
+	 */
+	public void Define(RpnEngine e, String definition) {
+		String[] tokens = Split(definition);
+		if (tokens.length == 0) {
+			e.PrintError("ERROR:  Usage is ': name body ;'");
+			return;
+		}
+		if (tokens[tokens.length - 1].equals(";") == false) {
+			e.PrintError("ERROR:  The definition must end with ' ;'");
+			return;
+		}
+
+		String name = tokens[0];
+		String source = String.join(" ", Arrays.copyOfRange(tokens, 1, tokens.length - 1));
+		if (IsReserved(name)) {
+			e.PrintError("ERROR:  '" + name + "' is a number, command or keyword and can't be defined");
+			return;
+		}
+
+		Compiled code;
+		try {
+			code = Compile(name, source);
+		} catch (IllegalArgumentException ex) {
+			e.PrintError("ERROR:  " + ex.getMessage());
+			return;
+		}
+
+		Word w = words.computeIfAbsent(name, Word::new);
+		w.compiled = code;
+		compiled.put(name, w);
+		Prefs.SaveWord(name, source);
+		Prefs.Flush(e);
+		e.Message(Ansi.Color.CYAN, "Defined '" + name + "'");
+	}
+
+	/**
+	 * Forget(): Remove a word. Words that call it fail from then on unless it is defined again.
+	 * 
+	 * @param e
+	 * @param name
+	 */
+	public void Forget(RpnEngine e, String name) {
+		if (Prefs.QueryWord(name) == null) {
+			e.PrintError("ERROR:  There is no word named '" + name + "'");
+			return;
+		}
+
+		Word w = words.get(name);
+		if (w != null) {
+			w.compiled = null;
+		}
+		compiled.remove(name);
+		Prefs.RemoveWord(name);
+		Prefs.Flush(e);
+		e.Message(Ansi.Color.CYAN, "Forgot '" + name + "'");
+	}
+
+	/**
+	 * Use(): Mark a word as the most recently used so its compiled code is kept. Called when a word
+	 * is entered on the command line. Calls from other words don't need to.
+	 * 
+	 * @param w
+	 */
+	public void Use(Word w) {
+		if (w.compiled != null) {
+			compiled.get(w.name);
+		}
+	}
+
+	/**
+	 * Call(): Run a word, compiling it first if needed. Its parameters are taken off the stack.
+	 * Returns false if it reported an error or ended the session.
+	 * 
+	 * @param e
+	 * @param w
+	 * @return
+	 */
+	public boolean Call(RpnEngine e, Word w) {
+		Compiled c = w.compiled;
+		if (c == null) {
+			String source = Prefs.QueryWord(w.name);
+			if (source == null) {
+				e.PrintError("ERROR:  Unknown word '" + w.name + "'");
+				return false;
+			}
+			try {
+				c = Compile(w.name, source);
+			} catch (IllegalArgumentException ex) {
+				e.PrintError("ERROR:  Unable to compile '" + w.name + "': " + ex.getMessage());
+				return false;
+			}
+			w.compiled = c;
+			compiled.put(w.name, w);
+		}
+
+		if (callDepth >= MAX_CALL_DEPTH) {
+			e.PrintError("ERROR:  Words were called more than " + MAX_CALL_DEPTH + " deep in '" + w.name + "'");
+			return false;
+		}
+		if (Step(e) == false) {
+			return false;
+		}
+		if (e.calcStack.size() < c.numParams) {
+			e.PrintError("ERROR:  '" + w.name + "' requires " + c.numParams + " numbers");
+			return false;
+		}
+
+		double[] locals = new double[c.numLocals];
+		for (int p = c.numParams - 1; p >= 0; p--) {
+			locals[p] = e.calcStack.pop();
+		}
+
+		callDepth++;
+		try {
+			return c.code.Run(e, locals);
+		} finally {
+			callDepth--;
+		}
+	}
+
+	/**
+	 * SetStepLimit(): Limit how many word calls and loop passes one line may run in total. 0 removes the
+	 * limit, which is the default.
+	 * 
+	 * @param limit
+	 */
+	public void SetStepLimit(long limit) {
+		stepLimit = limit;
+	}
+
+	/**
+	 * StartLine(): Start counting the steps of a new line
+	 */
+	void StartLine() {
+		steps = 0;
+	}
+
+	/**
+	 * Step(): Count a word call or loop pass. Returns false and reports it if the line has run out of
+	 * steps or the thread running it was interrupted, as the server does to sessions still running when
+	 * it stops.
+	 * 
+	 * @param e
+	 * @return
+	 */
+	boolean Step(RpnEngine e) {
+		if (stepLimit > 0 && ++steps > stepLimit) {
+			e.PrintError("ERROR:  The line ran more than " + stepLimit + " word calls and loop passes");
+			return false;
+		}
+		if (Thread.currentThread().isInterrupted()) {
+			e.PrintError("ERROR:  The line was interrupted");
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * QueryDefinitions(): Return the saved definitions as ': name body ;' in name order
+	 * 
+	 * @param e
+	 * @return
+	 */
+	public static String[] QueryDefinitions(RpnEngine e) {
+		String[] names = Prefs.QueryWords(e);
+		Arrays.sort(names);
+		String[] definitions = new String[names.length];
+		for (int i = 0; i < names.length; i++) {
+			definitions[i] = ": " + names[i] + " " + Prefs.QueryWord(names[i]) + " ;";
+		}
+		return definitions;
+	}
+
+	/**
+	 * IsReserved(): Return true if the name can't be used for a word because it means something else
+	 * 
+	 * @param name
+	 * @return
+	 */
+	private static boolean IsReserved(String name) {
+		return KEYWORDS.contains(name) || CommandRegistry.Lookup(name) != null || Tokenizer.IsNumber(name) || Tokenizer.IsNumOp(name) || name.indexOf('/') != -1
+				|| name.startsWith("{");
+	}
+
+	/**
+	 * Split(): Break a definition into its lower case words
+	 * 
+	 * @param s
+	 * @return
+	 */
+	private static String[] Split(String s) {
+		String line = s.toLowerCase();
+		ArrayList<String> tokens = new ArrayList<String>();
+		int end = Tokenizer.TrimEnd(line);
+		int start = Tokenizer.SkipWhitespace(line, 0);
+		while (start < end) {
+			int tokenEnd = Tokenizer.SkipToken(line, start);
+			tokens.add(line.substring(start, tokenEnd));
+			start = Tokenizer.SkipWhitespace(line, tokenEnd);
+		}
+		return tokens.toArray(new String[0]);
+	}
+
+	/**
+	 * Compile(): Compile the body of a word. Throws IllegalArgumentException describing the first
+	 * problem found.
+	 * 
+	 * @param name
+	 * @param source
+	 * @return
+	 */
+	private Compiled Compile(String name, String source) {
+		Compiler c = new Compiler(name, Split(source));
+
+		// Parameters
+		int numParams = 0;
+		if (c.tokens.length > 0 && c.tokens[0].equals("{")) {
+			for (c.pos = 1; c.pos < c.tokens.length && c.tokens[c.pos].equals("}") == false; c.pos++) {
+				String param = c.tokens[c.pos];
+				if (KEYWORDS.contains(param) || Tokenizer.IsNumber(param) || Tokenizer.IsNumOp(param) || param.indexOf('/') != -1 || c.locals.containsKey(param)) {
+					throw new IllegalArgumentException("'" + param + "' can't be used as a parameter name");
+				}
+				c.locals.put(param, c.numLocals++);
+			}
+			if (c.pos == c.tokens.length) {
+				throw new IllegalArgumentException("The parameters are missing their closing '}'");
+			}
+			c.pos++;
+			numParams = c.numLocals;
+		}
+
+		Code code = CompileSequence(c);
+		if (c.pos < c.tokens.length) {
+			throw new IllegalArgumentException("'" + c.tokens[c.pos] + "' without a matching " + (c.tokens[c.pos].equals("loop") ? "'times'" : "'if'"));
+		}
+
+		Output.debugPrint("Compiled word '" + name + "': " + source);
+		return new Compiled(code, numParams, c.numLocals);
+	}
+
+	/**
+	 * CompileSequence(): Compile tokens until the end of the body or an else, then or loop, which is
+	 * left for the caller
+	 * 
+	 * @param c
+	 * @return
+	 */
+	private Code CompileSequence(Compiler c) {
+		ArrayList<Code> body = new ArrayList<Code>();
+
+		while (c.pos < c.tokens.length) {
+			String token = c.tokens[c.pos];
+			if (token.equals("else") || token.equals("then") || token.equals("loop")) {
+				break;
+			}
+			c.pos++;
+
+			if (token.equals("if")) {
+				Code thenPart = CompileSequence(c);
+				Code elsePart = null;
+				if (c.pos < c.tokens.length && c.tokens[c.pos].equals("else")) {
+					c.pos++;
+					elsePart = CompileSequence(c);
+				}
+				Expect(c, "then", "'if' without a matching 'then'");
+				body.add(If(thenPart, elsePart));
+
+			} else if (token.equals("times")) {
+				int slot = c.numLocals++;
+				c.loops.push(slot);
+				Code loopBody = CompileSequence(c);
+				c.loops.pop();
+				Expect(c, "loop", "'times' without a matching 'loop'");
+				body.add(Times(slot, loopBody));
+
+			} else {
+				body.add(CompileToken(c, token));
+			}
+		}
+
+		if (body.size() == 1) {
+			return body.get(0);
+		}
+		Code[] codes = body.toArray(new Code[0]);
+		return (e, locals) -> {
+			for (Code code : codes) {
+				if (code.Run(e, locals) == false) {
+					return false;
+				}
+			}
+			return true;
+		};
+	}
+
+	/**
+	 * Expect(): Step over the expected token or fail with the provided message
+	 * 
+	 * @param c
+	 * @param token
+	 * @param message
+	 */
+	private static void Expect(Compiler c, String token, String message) {
+		if (c.pos >= c.tokens.length || c.tokens[c.pos].equals(token) == false) {
+			throw new IllegalArgumentException(message);
+		}
+		c.pos++;
+	}
+
+	/**
+	 * CompileToken(): Compile a single number, operand, primitive, parameter, word or command
+	 * 
+	 * @param c
+	 * @param token
+	 * @return
+	 */
+	private Code CompileToken(Compiler c, String token) {
+		// Parameters and the loop counter
+		Integer slot = c.locals.get(token);
+		if (token.equals("i")) {
+			if (c.loops.isEmpty()) {
+				throw new IllegalArgumentException("'i' can only be used between 'times' and 'loop'");
+			}
+			slot = c.loops.peek();
+		}
+		if (slot != null) {
+			int s = slot;
+			return (e, locals) -> {
+				e.calcStack.push(locals[s]);
+				return true;
+			};
+		}
+
+		// Primitives
+		switch (token) {
+		case "+":
+			return (e, locals) -> {
+				if (TwoNumbers(e) == false)
+					return false;
+				Math.Add(e.calcStack, e.mathContext);
+				return true;
+			};
+		case "-":
+			return (e, locals) -> {
+				if (TwoNumbers(e) == false)
+					return false;
+				Math.Subtract(e.calcStack, e.mathContext);
+				return true;
+			};
+		case "*":
+			return (e, locals) -> {
+				if (TwoNumbers(e) == false)
+					return false;
+				Math.Multiply(e.calcStack, e.mathContext);
+				return true;
+			};
+		case "/":
+			return (e, locals) -> {
+				if (TwoNumbers(e) == false)
+					return false;
+				Math.Divide(e.calcStack, e.mathContext);
+				return true;
+			};
+		case "^":
+			return (e, locals) -> {
+				if (TwoNumbers(e) == false)
+					return false;
+				Math.Power(e.calcStack, e.mathContext);
+				return true;
+			};
+		case "<":
+			return (e, locals) -> {
+				if (TwoNumbers(e) == false)
+					return false;
+				double b = e.calcStack.pop();
+				e.calcStack.push(e.calcStack.pop() < b ? 1.0 : 0.0);
+				return true;
+			};
+		case ">":
+			return (e, locals) -> {
+				if (TwoNumbers(e) == false)
+					return false;
+				double b = e.calcStack.pop();
+				e.calcStack.push(e.calcStack.pop() > b ? 1.0 : 0.0);
+				return true;
+			};
+		case "=":
+			return (e, locals) -> {
+				if (TwoNumbers(e) == false)
+					return false;
+				e.calcStack.push(e.calcStack.pop() == e.calcStack.pop() ? 1.0 : 0.0);
+				return true;
+			};
+		case "dup":
+			return (e, locals) -> {
+				if (OneNumber(e) == false)
+					return false;
+				e.calcStack.push(e.calcStack.peek());
+				return true;
+			};
+		case "drop":
+			return (e, locals) -> {
+				if (OneNumber(e) == false)
+					return false;
+				e.calcStack.pop();
+				return true;
+			};
+		case "swap":
+			return (e, locals) -> {
+				if (TwoNumbers(e) == false)
+					return false;
+				e.calcStack.swap(e.calcStack.size() - 1, e.calcStack.size() - 2);
+				return true;
+			};
+		case "over":
+			return (e, locals) -> {
+				if (TwoNumbers(e) == false)
+					return false;
+				e.calcStack.push(e.calcStack.get(e.calcStack.size() - 2));
+				return true;
+			};
+		}
+
+		// Numbers, fractions and NumOps
+		if (Tokenizer.IsNumber(token) || Program.IsFraction(token)) {
+			double value = Program.IsFraction(token) ? Program.ParseFraction(token) : Tokenizer.ParseNumber(token);
+			return (e, locals) -> {
+				e.calcStack.push(value);
+				return true;
+			};
+		}
+		if (Tokenizer.IsNumOp(token)) {
+			Code push = CompileToken(c, token.substring(0, token.length() - 1));
+			Code op = CompileToken(c, token.substring(token.length() - 1));
+			return (e, locals) -> {
+				if (OneNumber(e) == false)
+					return false;
+				push.Run(e, locals);
+				return op.Run(e, locals);
+			};
+		}
+
+		// Other words, including this one
+		if (KEYWORDS.contains(token)) {
+			throw new IllegalArgumentException("'" + token + "' is out of place");
+		}
+		Word w = token.equals(c.name) ? words.computeIfAbsent(token, Word::new) : Lookup(token);
+		if (w != null) {
+			return (e, locals) -> Call(e, w);
+		}
+
+		// Commands run with their default parameter. Their time is part of the word's in the metrics, so
+		// a loop in a word doesn't pay for timing each command.
+		CommandRegistry.Command command = CommandRegistry.LookupUntimed(token);
+		if (command != null) {
+			if (NOT_IN_WORDS.contains(token)) {
+				throw new IllegalArgumentException("'" + token + "' can't be used in a word");
+			}
+			return (e, locals) -> {
+				int errorsBefore = e.QueryErrorCount();
+				boolean exitBefore = e.QueryExitRequested();
+				command.Execute(e, token, "");
+				return e.QueryErrorCount() == errorsBefore && e.QueryExitRequested() == exitBefore;
+			};
+		}
+
+		throw new IllegalArgumentException("Unknown word '" + token + "'");
+	}
+
+	/**
+	 * If(): Code that removes line1 and runs the first part if it isn't zero, otherwise the second
+	 * 
+	 * @param thenPart
+	 * @param elsePart - null if there isn't one
+	 * @return
+	 */
+	private static Code If(Code thenPart, Code elsePart) {
+		return (e, locals) -> {
+			if (OneNumber(e) == false)
+				return false;
+			if (e.calcStack.pop() != 0.0) {
+				return thenPart.Run(e, locals);
+			}
+			return (elsePart == null) ? true : elsePart.Run(e, locals);
+		};
+	}
+
+	/**
+	 * Times(): Code that removes line1 and runs the body that many times with the pass number in the
+	 * provided local
+	 * 
+	 * @param slot
+	 * @param body
+	 * @return
+	 */
+	private static Code Times(int slot, Code body) {
+		return (e, locals) -> {
+			if (OneNumber(e) == false)
+				return false;
+			double count = e.calcStack.pop();
+			if (count < 0 || Double.isNaN(count) || Double.isInfinite(count)) {
+				e.PrintError("ERROR:  'times' requires a count of zero or more, not " + count);
+				return false;
+			}
+
+			long n = (long) count;
+			for (long pass = 0; pass < n; pass++) {
+				locals[slot] = pass;
+				if (e.words.Step(e) == false || body.Run(e, locals) == false) {
+					return false;
+				}
+			}
+			return true;
+		};
+	}
+
+	/**
+	 * OneNumber(): Return true if there is at least one number on the stack, otherwise report it
+	 * 
+	 * @param e
+	 * @return
+	 */
+	private static boolean OneNumber(RpnEngine e) {
+		if (e.calcStack.isEmpty()) {
+			e.PrintError("One number is required for this operation");
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * TwoNumbers(): Return true if there are at least two numbers on the stack, otherwise report it
+	 * 
+	 * @param e
+	 * @return
+	 */
+	private static boolean TwoNumbers(RpnEngine e) {
+		if (e.calcStack.size() < 2) {
+			e.PrintError("Two numbers are required for this operation");
+			return false;
+		}
+		return true;
+	}
+
+}
@@ -0,0 +1,152 @@
+/******************************************************************************
+ * RPNCalc
+ * 
+ * RPNCalc is is an easy to use console based RPN calculator
+ * 
+ *  Copyright (c) 2013-2021 Michael Fross
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *           
+ ******************************************************************************/
+package org.fross.rpncalc;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * AdaptiveMathTest: The adaptive operations and stack sums give the decimal answer rounded to the
+ * precision, whether they take the double fast path or fall back to BigDecimal.
+ * 
+ * @author michael.d.fross
+ *
+ */
+public class AdaptiveMathTest {
+	private static final MathContext MC = AdaptiveMath.QueryMathContext(AdaptiveMath.DEFAULT_DIGITS);
+
+	/**
+	 * The results plain doubles get wrong come out as the decimals they should be
+	 */
+	@Test
+	public void decimalResults() {
+		assertEquals(0.3, AdaptiveMath.Add(0.1, 0.2, MC));
+		assertEquals(0.1, AdaptiveMath.Subtract(1.0, 0.9, MC));
+		assertEquals(1.21, AdaptiveMath.Multiply(1.1, 1.1, MC));
+		assertEquals(0.333333333333333, AdaptiveMath.Divide(1.0, 3.0, MC));
+		assertEquals(1.21, AdaptiveMath.Power(1.1, 2.0, MC));
+		assertEquals(0.0, AdaptiveMath.Add(0.1, -0.1, MC));
+	}
+
+	/**
+	 * Whole numbers and binary fractions keep the double result, as do infinities, NaN and fractional
+	 * powers
+	 */
+	@Test
+	public void fastPath() {
+		assertEquals(0.75, AdaptiveMath.Add(0.5, 0.25, MC));
+		assertEquals(12.0, AdaptiveMath.Multiply(3.0, 4.0, MC));
+		assertEquals(0.0009765625, AdaptiveMath.Divide(1.0, 1024.0, MC));
+		assertEquals(1024.0, AdaptiveMath.Power(2.0, 10.0, MC));
+		assertEquals(java.lang.Math.sqrt(2.0), AdaptiveMath.Power(2.0, 0.5, MC));
+		assertEquals(Double.POSITIVE_INFINITY, AdaptiveMath.Divide(1.0, 0.0, MC));
+		assertEquals(Double.POSITIVE_INFINITY, AdaptiveMath.Multiply(1e200, 1e200, MC));
+		assertEquals(Double.NaN, AdaptiveMath.Add(Double.NaN, 1.0, MC));
+	}
+
+	/**
+	 * For random decimals every operation matches BigDecimal on the numbers as they were entered
+	 */
+	@Test
+	public void matchesBigDecimal() {
+		Random random = new Random(2020);
+		for (int n = 0; n < 100000; n++) {
+			double a = RandomDecimal(random);
+			double b = RandomDecimal(random);
+			BigDecimal da = BigDecimal.valueOf(a);
+			BigDecimal db = BigDecimal.valueOf(b);
+			String message = a + " " + b;
+
+			assertEquals(da.add(db, MC).doubleValue(), AdaptiveMath.Add(a, b, MC), message);
+			assertEquals(da.subtract(db, MC).doubleValue(), AdaptiveMath.Subtract(a, b, MC), message);
+			assertEquals(da.multiply(db, MC).doubleValue(), AdaptiveMath.Multiply(a, b, MC), message);
+			assertEquals(da.divide(db, MC).doubleValue(), AdaptiveMath.Divide(a, b, MC), message);
+		}
+	}
+
+	/**
+	 * The sum and mean of a stack are its decimal sum and mean rounded to the precision, including a
+	 * long run of the same fraction
+	 */
+	@Test
+	public void stackSums() {
+		DoubleStack tenths = new DoubleStack();
+		for (int i = 0; i < 100000; i++) {
+			tenths.push(0.1);
+		}
+		assertEquals(10000.0, AdaptiveMath.Sum(tenths, MC));
+		assertEquals(0.1, AdaptiveMath.Mean(tenths, MC));
+		assertEquals(0.0, AdaptiveMath.StdDeviation(tenths, MC));
+
+		Random random = new Random(2021);
+		for (int n = 0; n < 200; n++) {
+			DoubleStack stk = new DoubleStack();
+			BigDecimal exact = BigDecimal.ZERO;
+			int size = 1 + random.nextInt(3000);
+			for (int i = 0; i < size; i++) {
+				double x = (random.nextBoolean() ? 1 : -1) * RandomDecimal(random);
+				stk.push(x);
+				exact = exact.add(BigDecimal.valueOf(x));
+			}
+			assertEquals(exact.round(MC).doubleValue(), AdaptiveMath.Sum(stk, MC), "stack " + n);
+			assertEquals(exact.divide(BigDecimal.valueOf(size), MC).doubleValue(), AdaptiveMath.Mean(stk, MC), "stack " + n);
+		}
+
+		DoubleStack infinite = new DoubleStack(new double[] { 1.0, Double.POSITIVE_INFINITY });
+		assertEquals(Double.POSITIVE_INFINITY, AdaptiveMath.Sum(infinite, MC));
+	}
+
+	/**
+	 * The precision is limited to what a double can hold
+	 */
+	@Test
+	public void precisionRange() {
+		assertEquals(1, AdaptiveMath.QueryMathContext(1).getPrecision());
+		assertEquals(AdaptiveMath.MAX_DIGITS, AdaptiveMath.QueryMathContext(AdaptiveMath.MAX_DIGITS).getPrecision());
+		assertThrows(IllegalArgumentException.class, () -> AdaptiveMath.QueryMathContext(0));
+		assertThrows(IllegalArgumentException.class, () -> AdaptiveMath.QueryMathContext(AdaptiveMath.MAX_DIGITS + 1));
+	}
+
+	/**
+	 * RandomDecimal(): Return a positive decimal of up to six significant digits between 0.000001 and
+	 * 999999, the kind of number that is typed in
+	 * 
+	 * @param random
+	 * @return
+	 */
+	private static double RandomDecimal(Random random) {
+		int digits = 1 + random.nextInt(999999);
+		return BigDecimal.valueOf(digits, random.nextInt(7)).doubleValue();
+	}
+
+}
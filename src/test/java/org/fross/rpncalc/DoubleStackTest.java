@@ -0,0 +1,254 @@
+/******************************************************************************
+ * RPNCalc
+ * 
+ * RPNCalc is is an easy to use console based RPN calculator
+ * 
+ *  Copyright (c) 2013-2021 Michael Fross
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *           
+ ******************************************************************************/
+package org.fross.rpncalc;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.EmptyStackException;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * DoubleStackTest: Snapshots share chunks with the live stack without either seeing the other's
+ * writes, the stack keeps track of which chunks it gave a new array, and the running statistics
+ * match the values on the stack.
+ * 
+ * @author michael.d.fross
+ *
+ */
+public class DoubleStackTest {
+
+	/**
+	 * Writes to the live stack after a snapshot don't change the snapshot, and the reverse
+	 */
+	@Test
+	public void snapshotIsolated() {
+		double[] values = TestData.Values(DoubleStack.CHUNK_SIZE * 2 + 5);
+		DoubleStack stk = new DoubleStack(values);
+		DoubleStack snap = stk.snapshot();
+
+		stk.set(0, 99.0);
+		stk.pop();
+		stk.push(42.0);
+		stk.push(43.0);
+		snap.set(1, -99.0);
+
+		assertArrayEquals(Changed(values, 1, -99.0), snap.toArray());
+		assertEquals(99.0, stk.get(0));
+		assertEquals(values[1], stk.get(1));
+		assertEquals(43.0, stk.peek());
+		assertEquals(values.length + 1, stk.size());
+	}
+
+	/**
+	 * Only the chunk that was written is copied. The others are still shared with the snapshot.
+	 */
+	@Test
+	public void writeCopiesOneChunk() {
+		DoubleStack stk = new DoubleStack(TestData.Values(DoubleStack.CHUNK_SIZE * 3));
+		DoubleStack snap = stk.snapshot();
+
+		stk.set(DoubleStack.CHUNK_SIZE + 7, 1.0);
+
+		assertSame(snap.chunk(0), stk.chunk(0));
+		assertNotSame(snap.chunk(1), stk.chunk(1));
+		assertSame(snap.chunk(2), stk.chunk(2));
+	}
+
+	/**
+	 * A second write to a chunk that was already copied writes in place
+	 */
+	@Test
+	public void copiedChunkWrittenInPlace() {
+		DoubleStack stk = new DoubleStack(TestData.Values(DoubleStack.CHUNK_SIZE));
+		stk.snapshot();
+
+		stk.set(3, 1.0);
+		double[] copy = stk.chunk(0);
+		stk.set(4, 2.0);
+
+		assertSame(copy, stk.chunk(0));
+	}
+
+	/**
+	 * The chunks given a new array are reported until they are cleared, and too many of them is
+	 * reported as null
+	 */
+	@Test
+	public void replacedChunksLogged() {
+		DoubleStack stk = new DoubleStack(TestData.Values(DoubleStack.CHUNK_SIZE * 3));
+		stk.ClearReplacedChunks();
+		stk.snapshot();
+
+		stk.set(DoubleStack.CHUNK_SIZE * 2, 1.0);
+		stk.set(DoubleStack.CHUNK_SIZE * 2 + 1, 2.0);
+		stk.set(0, 3.0);
+		assertArrayEquals(new int[] { 2, 0 }, stk.QueryReplacedChunks());
+
+		stk.ClearReplacedChunks();
+		assertArrayEquals(new int[0], stk.QueryReplacedChunks());
+
+		for (int i = 0; i < 1000; i++) {
+			stk.snapshot();
+			stk.set(0, i);
+		}
+		assertNull(stk.QueryReplacedChunks());
+
+		stk.ClearReplacedChunks();
+		assertArrayEquals(new int[0], stk.QueryReplacedChunks());
+	}
+
+	/**
+	 * The running sum, mean, standard deviation, minimum and maximum match a scan of the stack after
+	 * any mix of pushes, pops, writes, removals, truncations and snapshots
+	 */
+	@Test
+	public void statsMatchScan() {
+		Random random = new Random(2021);
+		DoubleStack stk = new DoubleStack(TestData.Values(500));
+
+		for (int step = 0; step < 20000; step++) {
+			int op = random.nextInt(12);
+			if (op < 5 || stk.size() < 2) {
+				stk.push(random.nextGaussian() * 1000);
+			} else if (op < 7) {
+				stk.pop();
+			} else if (op < 9) {
+				stk.set(random.nextInt(stk.size()), random.nextGaussian() * 1000);
+			} else if (op < 10) {
+				stk.remove(random.nextInt(stk.size()));
+			} else if (op < 11) {
+				stk = stk.snapshot();
+			} else {
+				stk.truncate(stk.size() - random.nextInt(java.lang.Math.min(stk.size(), 50)));
+			}
+
+			if (step % 97 == 0 && stk.size() > 0) {
+				AssertStats(stk, "step " + step);
+			}
+		}
+	}
+
+	/**
+	 * Removing a value much larger than the rest still leaves an accurate standard deviation
+	 */
+	@Test
+	public void statsAfterLargeRemoval() {
+		DoubleStack stk = new DoubleStack(new double[] { 1.0, 2.0, 3.0, 4.0 });
+		stk.push(1e17);
+		stk.QueryStdDeviation();
+		stk.pop();
+
+		AssertStats(stk, "after removing 1e17");
+	}
+
+	/**
+	 * An infinity or NaN on the stack shows in the statistics, and once it is removed they are exact
+	 * again
+	 */
+	@Test
+	public void statsWithNonFinite() {
+		DoubleStack stk = new DoubleStack(new double[] { 1.0, 2.0 });
+		stk.push(Double.POSITIVE_INFINITY);
+		assertEquals(Double.POSITIVE_INFINITY, stk.QueryMax());
+		assertEquals(Double.POSITIVE_INFINITY, stk.QuerySum());
+
+		stk.push(Double.NaN);
+		assertTrue(Double.isNaN(stk.QueryMean()));
+
+		stk.pop();
+		stk.pop();
+		AssertStats(stk, "after removing infinity and NaN");
+	}
+
+	/**
+	 * An empty stack has no minimum or maximum and its mean is NaN
+	 */
+	@Test
+	public void statsEmpty() {
+		DoubleStack stk = new DoubleStack(new double[] { 5.0 });
+		stk.pop();
+
+		assertThrows(EmptyStackException.class, stk::QueryMin);
+		assertThrows(EmptyStackException.class, stk::QueryMax);
+		assertTrue(Double.isNaN(stk.QueryMean()));
+		assertEquals(0.0, stk.QuerySum());
+	}
+
+	/**
+	 * AssertStats(): Check the statistics of the stack against a two pass calculation over its values
+	 * 
+	 * @param stk
+	 * @param message
+	 */
+	private static void AssertStats(DoubleStack stk, String message) {
+		double[] values = stk.toArray();
+		double sum = 0;
+		double min = Double.POSITIVE_INFINITY;
+		double max = Double.NEGATIVE_INFINITY;
+		for (double v : values) {
+			sum += v;
+			min = java.lang.Math.min(min, v);
+			max = java.lang.Math.max(max, v);
+		}
+		double mean = sum / values.length;
+		double squares = 0;
+		for (double v : values) {
+			squares += (v - mean) * (v - mean);
+		}
+		double stdDev = java.lang.Math.sqrt(squares / values.length);
+		double scale = java.lang.Math.max(1.0, java.lang.Math.max(java.lang.Math.abs(min), java.lang.Math.abs(max)));
+
+		assertEquals(sum, stk.QuerySum(), scale * values.length * 1e-12, message);
+		assertEquals(mean, stk.QueryMean(), scale * 1e-12, message);
+		assertEquals(stdDev, stk.QueryStdDeviation(), scale * 1e-9, message);
+		assertEquals(min, stk.QueryMin(), message);
+		assertEquals(max, stk.QueryMax(), message);
+	}
+
+	/**
+	 * Changed(): Return a copy of values with one element changed
+	 * 
+	 * @param values
+	 * @param index
+	 * @param value
+	 * @return
+	 */
+	private static double[] Changed(double[] values, int index, double value) {
+		double[] result = values.clone();
+		result[index] = value;
+		return result;
+	}
+
+}
@@ -0,0 +1,156 @@
+/******************************************************************************
+ * RPNCalc
+ * 
+ * RPNCalc is is an easy to use console based RPN calculator
+ * 
+ *  Copyright (c) 2013-2021 Michael Fross
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *           
+ ******************************************************************************/
+package org.fross.rpncalc;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * ExportFileTest: Exported values read back as exactly the same doubles, in the shortest form for
+ * typical values, and a stack survives an export and import unchanged.
+ * 
+ * @author michael.d.fross
+ *
+ */
+public class ExportFileTest {
+	@TempDir
+	Path dir;
+
+	/**
+	 * Typical values are written with the fewest decimal places that read back exactly
+	 */
+	@Test
+	public void writeShortest() {
+		String[][] cases = { { "0", "0.0" }, { "3", "3.0" }, { "-2.5", "-2.5" }, { "0.1", "0.1" }, { "0.000123", "0.000123" }, { "123456.789", "123456.789" } };
+		for (String[] c : cases) {
+			assertEquals(c[0], Written(Double.parseDouble(c[1])));
+		}
+		assertEquals("-0.0", Written(-0.0));
+		assertEquals("NaN", Written(Double.NaN));
+		assertEquals("-Infinity", Written(Double.NEGATIVE_INFINITY));
+	}
+
+	/**
+	 * Every value written reads back as the same double, whichever way it was written
+	 */
+	@Test
+	public void writeExact() {
+		Random random = new Random(1414);
+		for (int n = 0; n < 200000; n++) {
+			double value;
+			switch (n % 3) {
+			case 0:
+				value = Double.longBitsToDouble(random.nextLong());
+				break;
+			case 1:
+				value = (random.nextInt(2000000000) - 1000000000) / 1000.0;
+				break;
+			default:
+				value = random.nextGaussian() * java.lang.Math.pow(10, random.nextInt(40) - 20);
+				break;
+			}
+			String s = Written(value);
+			assertEquals(Double.doubleToLongBits(value), Double.doubleToLongBits(Double.parseDouble(s)), s);
+		}
+	}
+
+	/**
+	 * A stack larger than the write buffer is written one value per line, bottom first, and imports
+	 * back unchanged as text and as binary
+	 */
+	@Test
+	public void exportRoundTrip() throws IOException {
+		Random random = new Random(1415);
+		double[] values = new double[DoubleStack.CHUNK_SIZE * 9 + 17];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = (i % 2 == 0) ? random.nextGaussian() * 1e6 : java.lang.Math.round(random.nextGaussian() * 1e5) / 100.0;
+		}
+		DoubleStack stk = new DoubleStack(values);
+
+		Path csv = dir.resolve("stack.csv");
+		assertEquals(values.length, ExportFile.Export(csv, stk, false));
+		List<String> lines = Files.readAllLines(csv, StandardCharsets.US_ASCII);
+		assertEquals(values.length, lines.size());
+		assertEquals(Written(values[0]), lines.get(0));
+		DoubleStack fromCsv = new DoubleStack();
+		ImportFile.Import(csv, fromCsv, null);
+		assertArrayEquals(values, fromCsv.toArray());
+
+		Path bin = dir.resolve("stack.bin");
+		assertEquals(values.length, ExportFile.Export(bin, stk, true));
+		assertEquals((long) values.length * Double.BYTES, Files.size(bin));
+		DoubleStack fromBin = new DoubleStack();
+		ImportFile.Import(bin, fromBin, null);
+		assertArrayEquals(values, fromBin.toArray());
+	}
+
+	/**
+	 * Memory slots are written as slot,value lines for the slots in use, or as a double per slot with
+	 * NaN for the empty ones
+	 */
+	@Test
+	public void exportMemSlots() throws IOException {
+		Double[] slots = { 1.5, null, -3.0, null };
+
+		Path csv = dir.resolve("mem.csv");
+		assertEquals(2, ExportFile.ExportMemSlots(csv, slots, false));
+		assertEquals(List.of("slot,value", "0,1.5", "2,-3"), Files.readAllLines(csv, StandardCharsets.US_ASCII));
+
+		Path bin = dir.resolve("mem.bin");
+		assertEquals(4, ExportFile.ExportMemSlots(bin, slots, true));
+		ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(bin)).order(ByteOrder.LITTLE_ENDIAN);
+		assertEquals(1.5, buf.getDouble());
+		assertEquals(Double.NaN, buf.getDouble());
+		assertEquals(-3.0, buf.getDouble());
+		assertEquals(Double.NaN, buf.getDouble());
+	}
+
+	/**
+	 * Written(): Return the text ExportFile writes for a value
+	 * 
+	 * @param value
+	 * @return
+	 */
+	private static String Written(double value) {
+		byte[] text = new byte[64];
+		int length = ExportFile.WriteNumber(text, 0, value);
+		return new String(text, 0, length, StandardCharsets.US_ASCII);
+	}
+
+}
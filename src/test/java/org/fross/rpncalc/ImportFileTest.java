@@ -0,0 +1,167 @@
+/******************************************************************************
+ * RPNCalc
+ * 
+ * RPNCalc is is an easy to use console based RPN calculator
+ * 
+ *  Copyright (c) 2013-2021 Michael Fross
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *           
+ ******************************************************************************/
+package org.fross.rpncalc;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * ImportFileTest: Text and binary files are read onto the stack in order, numbers are converted
+ * exactly, and files that aren't numbers are refused with the line that is wrong.
+ * 
+ * @author michael.d.fross
+ *
+ */
+public class ImportFileTest {
+	@TempDir
+	Path dir;
+
+	/**
+	 * Any of the separators can be mixed, a CSV header is skipped, and exponents, NaN and Infinity are
+	 * read
+	 */
+	@Test
+	public void importText() throws IOException {
+		Path file = Write("values.csv", "x,y\r\n1,-2.5\r\n.25;3e2\t+4E-1\n\n-Infinity NaN Infinity 7.\n");
+		DoubleStack stk = new DoubleStack(new double[] { 99.0 });
+
+		assertEquals(9, ImportFile.Import(file, stk, null));
+		assertArrayEquals(new double[] { 99.0, 1.0, -2.5, 0.25, 300.0, 0.4, Double.NEGATIVE_INFINITY, Double.NaN, Double.POSITIVE_INFINITY, 7.0 },
+				stk.toArray());
+	}
+
+	/**
+	 * Numbers are read as exactly the double Double.parseDouble() would give, whether or not they fit
+	 * the fast path
+	 */
+	@Test
+	public void importTextExact() throws IOException {
+		Random random = new Random(1313);
+		double[] expected = new double[20000];
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < expected.length; i++) {
+			String s;
+			switch (i % 4) {
+			case 0:
+				s = Double.toString(Double.longBitsToDouble(random.nextLong()));
+				break;
+			case 1:
+				s = Long.toString(random.nextLong() % 100000000) + "." + random.nextInt(1000);
+				break;
+			case 2:
+				s = (random.nextInt(2000000) - 1000000) + "e" + (random.nextInt(60) - 30);
+				break;
+			default:
+				s = "0." + Long.toString(java.lang.Math.abs(random.nextLong())) + Long.toString(java.lang.Math.abs(random.nextLong()));
+				break;
+			}
+			expected[i] = Double.parseDouble(s);
+			sb.append(s).append('\n');
+		}
+		Path file = Write("exact.txt", sb.toString());
+		DoubleStack stk = new DoubleStack();
+
+		assertEquals(expected.length, ImportFile.Import(file, stk, null));
+		assertArrayEquals(expected, stk.toArray());
+	}
+
+	/**
+	 * A value that isn't a number after the first line is refused with its line number
+	 */
+	@Test
+	public void importTextRefused() throws IOException {
+		Path file = Write("bad.csv", "1\n2\n3 x4\n");
+		IOException ex = assertThrows(IOException.class, () -> ImportFile.Import(file, new DoubleStack(), null));
+		assertTrue(ex.getMessage().startsWith("Line 3"), ex.getMessage());
+
+		Path tooLong = Write("long.txt", "1 " + "9".repeat(2000) + "\n");
+		assertThrows(IOException.class, () -> ImportFile.Import(tooLong, new DoubleStack(), null));
+	}
+
+	/**
+	 * Raw binary files are little-endian doubles and must be a whole number of them
+	 */
+	@Test
+	public void importBinary() throws IOException {
+		double[] values = TestData.Values(DoubleStack.CHUNK_SIZE * 2 + 3);
+		ByteBuffer buf = ByteBuffer.allocate(values.length * Double.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+		buf.asDoubleBuffer().put(values);
+		Path file = dir.resolve("values.f64");
+		Files.write(file, buf.array());
+		DoubleStack stk = new DoubleStack();
+
+		assertEquals(values.length, ImportFile.Import(file, stk, null));
+		assertArrayEquals(values, stk.toArray());
+
+		Path odd = dir.resolve("odd.bin");
+		Files.write(odd, new byte[13]);
+		assertThrows(IOException.class, () -> ImportFile.Import(odd, new DoubleStack(), null));
+	}
+
+	/**
+	 * A stack file saved by RPNCalc is added to the top of the stack
+	 */
+	@Test
+	public void importStackFile() throws IOException {
+		double[] values = TestData.Values(100);
+		Path file = dir.resolve("saved" + StackFile.EXTENSION);
+		StackFile.Write(file, new DoubleStack(values));
+		DoubleStack stk = new DoubleStack(new double[] { 1.0 });
+
+		assertEquals(values.length, ImportFile.Import(file, stk, null));
+		assertEquals(values.length + 1, stk.size());
+		assertEquals(values[values.length - 1], stk.peek());
+	}
+
+	/**
+	 * Write(): Write text to a file in the temporary directory and return its path
+	 * 
+	 * @param name
+	 * @param text
+	 * @return
+	 * @throws IOException
+	 */
+	private Path Write(String name, String text) throws IOException {
+		Path file = dir.resolve(name);
+		Files.write(file, text.getBytes(StandardCharsets.US_ASCII));
+		return file;
+	}
+
+}
@@ -0,0 +1,272 @@
+/******************************************************************************
+ * RPNCalc
+ * 
+ * RPNCalc is is an easy to use console based RPN calculator
+ * 
+ *  Copyright (c) 2013-2021 Michael Fross
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *           
+ ******************************************************************************/
+package org.fross.rpncalc;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * JournalTest: Changes written to the journal are recovered after the session that wrote them is
+ * killed. A session is killed by copying its journal to the name a session that is no longer running
+ * would have used before the journal is closed.
+ * 
+ * The tests use the preferences and data directory that the build points at target.
+ * 
+ * @author michael.d.fross
+ *
+ */
+public class JournalTest {
+	// Above the largest process id Linux hands out, so this session is never running
+	private static final long KILLED_PID = Integer.MAX_VALUE;
+
+	@BeforeEach
+	public void removeKilledJournals() throws IOException {
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(JournalDir(), "journal-" + KILLED_PID + "-*.log")) {
+			for (Path file : files) {
+				Files.delete(file);
+			}
+		}
+	}
+
+	/**
+	 * Stack and memory slot changes that were never saved are recovered, and the journal is removed
+	 */
+	@Test
+	public void recoversUnsavedChanges() throws IOException {
+		String name = UniqueName("unsaved");
+		RpnEngine e = Engine(name);
+		Journal journal = StartJournal(e);
+
+		double[] values = TestData.Values(DoubleStack.CHUNK_SIZE + 10);
+		e.calcStack.pushAll(values, 0, values.length);
+		journal.Record();
+		e.calcStack.pop();
+		e.calcStack.push(-1.0);
+		journal.Record();
+		e.memorySlots[3] = 42.0;
+		journal.Record();
+
+		Path killed = Kill(journal, 0);
+
+		values[values.length - 1] = -1.0;
+		RpnEngine r = Recover();
+		assertArrayEquals(values, Prefs.RestoreStack(r, name, "1").toArray());
+		Double[] slots = new Double[StackOps.DEFAULT_MEMORY_SLOTS];
+		StackOps.RestoreMemSlots(r, slots);
+		assertEquals(42.0, slots[3]);
+		assertFalse(Files.exists(killed));
+	}
+
+	/**
+	 * A record cut short by the kill is ignored along with anything after it
+	 */
+	@Test
+	public void tornRecord() throws IOException {
+		String name = UniqueName("torn");
+		Path killed = KillAfterTwoChanges(name);
+
+		try (FileChannel channel = FileChannel.open(killed, StandardOpenOption.WRITE)) {
+			channel.truncate(channel.size() - 1);
+		}
+
+		RpnEngine r = Recover();
+		assertArrayEquals(new double[] { 1.0, 2.0, 3.0 }, Prefs.RestoreStack(r, name, "1").toArray());
+		assertFalse(Files.exists(killed));
+	}
+
+	/**
+	 * A record that fails its checksum is ignored along with anything after it
+	 */
+	@Test
+	public void damagedRecord() throws IOException {
+		String name = UniqueName("damaged");
+		Path killed = KillAfterTwoChanges(name);
+
+		// The last byte of the value in the last record, just before its checksum
+		TestData.Overwrite(killed, Files.size(killed) - Integer.BYTES - 1, (byte) 0x55);
+
+		RpnEngine r = Recover();
+		assertArrayEquals(new double[] { 1.0, 2.0, 3.0 }, Prefs.RestoreStack(r, name, "1").toArray());
+	}
+
+	/**
+	 * A swap made after the stacks were saved is replayed on top of them, and replaying a journal that
+	 * was left behind again doesn't swap them back
+	 */
+	@Test
+	public void swapReplayedOnce() throws IOException {
+		String name = UniqueName("swap");
+		RpnEngine e = Engine(name);
+		Journal journal = StartJournal(e);
+
+		e.calcStack.push(1.0);
+		e.calcStack.push(2.0);
+		e.calcStack2.push(3.0);
+		journal.Record();
+
+		// Save the stacks as the persister does, which covers generation 0
+		Persister.Checkpoint cp = journal.Checkpoint();
+		Prefs.SaveStack(e, cp.stk1, name, "1");
+		Prefs.SaveStack(e, cp.stk2, name, "2");
+		Prefs.SetJournalCheckpoint(name, KILLED_PID + "-" + cp.generation);
+
+		DoubleStack temp = e.calcStack;
+		e.calcStack = e.calcStack2;
+		e.calcStack2 = temp;
+		journal.Record();
+
+		byte[] log = Files.readAllBytes(OwnJournal(cp.generation));
+		Path killed = Kill(journal, cp.generation);
+
+		for (int i = 0; i < 2; i++) {
+			RpnEngine r = Recover();
+			assertArrayEquals(new double[] { 3.0 }, Prefs.RestoreStack(r, name, "1").toArray());
+			assertArrayEquals(new double[] { 1.0, 2.0 }, Prefs.RestoreStack(r, name, "2").toArray());
+
+			// As if the journal was left behind after the stacks were saved
+			Files.write(killed, log);
+		}
+	}
+
+	/**
+	 * KillAfterTwoChanges(): Push 1 2 3, then 4, and kill the session. Returns its journal.
+	 * 
+	 * @param name
+	 * @return
+	 * @throws IOException
+	 */
+	private static Path KillAfterTwoChanges(String name) throws IOException {
+		RpnEngine e = Engine(name);
+		Journal journal = StartJournal(e);
+
+		e.calcStack.push(1.0);
+		e.calcStack.push(2.0);
+		e.calcStack.push(3.0);
+		journal.Record();
+		e.calcStack.push(4.0);
+		journal.Record();
+
+		return Kill(journal, 0);
+	}
+
+	/**
+	 * Engine(): Return an engine with the named stack loaded
+	 * 
+	 * @param name
+	 * @return
+	 */
+	private static RpnEngine Engine(String name) {
+		RpnEngine e = new RpnEngine(RpnEngine.SILENT);
+		e.loadedStack = name;
+		return e;
+	}
+
+	/**
+	 * StartJournal(): Start journaling the engine the way the interactive calculator does, without
+	 * saving in the background
+	 * 
+	 * @param e
+	 * @return
+	 */
+	private static Journal StartJournal(RpnEngine e) {
+		e.journal = new Journal(e);
+		e.persister = new Persister(e.journal);
+		e.journal.Open();
+		return e.journal;
+	}
+
+	/**
+	 * Kill(): Copy a generation of the journal to the name a killed session would have left behind,
+	 * then close the journal. Returns the copy.
+	 * 
+	 * @param journal
+	 * @param gen
+	 * @return
+	 * @throws IOException
+	 */
+	private static Path Kill(Journal journal, int gen) throws IOException {
+		Path killed = JournalDir().resolve("journal-" + KILLED_PID + "-" + gen + ".log");
+		Files.copy(OwnJournal(gen), killed);
+		journal.Close();
+		return killed;
+	}
+
+	/**
+	 * Recover(): Run recovery as the calculator does at startup and return its engine
+	 * 
+	 * @return
+	 */
+	private static RpnEngine Recover() {
+		RpnEngine r = new RpnEngine(RpnEngine.SILENT);
+		Journal.Recover(r);
+		assertEquals(0, r.QueryErrorCount());
+		return r;
+	}
+
+	/**
+	 * OwnJournal(): Return the journal file of this process for the provided generation
+	 * 
+	 * @param gen
+	 * @return
+	 * @throws IOException
+	 */
+	private static Path OwnJournal(int gen) throws IOException {
+		return JournalDir().resolve("journal-" + ProcessHandle.current().pid() + "-" + gen + ".log");
+	}
+
+	/**
+	 * JournalDir(): Return the directory the journals are written to
+	 * 
+	 * @return
+	 * @throws IOException
+	 */
+	private static Path JournalDir() throws IOException {
+		return Files.createDirectories(Prefs.QueryDataDir().resolve("journal"));
+	}
+
+	/**
+	 * UniqueName(): Return a stack name no earlier run has saved
+	 * 
+	 * @param prefix
+	 * @return
+	 */
+	private static String UniqueName(String prefix) {
+		return "JournalTest-" + prefix + "-" + System.nanoTime();
+	}
+
+}
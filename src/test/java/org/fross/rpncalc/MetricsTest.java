@@ -0,0 +1,142 @@
+/******************************************************************************
+ * RPNCalc
+ * 
+ * RPNCalc is is an easy to use console based RPN calculator
+ * 
+ *  Copyright (c) 2013-2021 Michael Fross
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *           
+ ******************************************************************************/
+package org.fross.rpncalc;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * MetricsTest: The latency histogram finds percentiles to within its bucket size, and samples
+ * recorded by many threads at once are all counted.
+ * 
+ * @author michael.d.fross
+ *
+ */
+public class MetricsTest {
+
+	/**
+	 * Each latency falls in a bucket whose bounds hold it, and a bucket is no wider than 1/8 of its
+	 * values
+	 */
+	@Test
+	public void buckets() {
+		for (long nanos = 0; nanos < 100000; nanos++) {
+			CheckBucket(nanos);
+		}
+		for (int shift = 17; shift < 63; shift++) {
+			CheckBucket((1L << shift) - 1);
+			CheckBucket(1L << shift);
+			CheckBucket((1L << shift) + 12345);
+		}
+		CheckBucket(Long.MAX_VALUE);
+	}
+
+	/**
+	 * Percentiles of known samples are within a bucket of the true value and never above the maximum
+	 */
+	@Test
+	public void percentiles() {
+		Metrics.Stat stat = new Metrics.Stat(Metrics.KIND_COMMAND, "test");
+		assertEquals(0, stat.QueryPercentile(0.5));
+
+		for (long nanos = 1; nanos <= 1000; nanos++) {
+			stat.Add(nanos * 1000, 10);
+		}
+
+		assertEquals(1000, stat.QueryCount());
+		assertEquals(500500000L, stat.QueryTotalNanos());
+		assertEquals(1000000, stat.QueryMaxNanos());
+		assertEquals(10000, stat.QueryAllocatedBytes());
+		AssertNear(500000, stat.QueryPercentile(0.50));
+		AssertNear(990000, stat.QueryPercentile(0.99));
+		assertEquals(1000000, stat.QueryPercentile(1.0));
+
+		stat.Clear();
+		assertEquals(0, stat.QueryCount());
+		assertEquals(0, stat.QueryMaxNanos());
+		assertEquals(0, stat.QueryPercentile(0.5));
+	}
+
+	/**
+	 * Samples recorded from several threads at once are all counted
+	 */
+	@Test
+	public void concurrentSamples() throws InterruptedException {
+		Metrics.Stat stat = new Metrics.Stat(Metrics.KIND_COMMAND, "concurrent");
+		int threads = 8;
+		int samples = 100000;
+
+		ArrayList<Thread> workers = new ArrayList<Thread>();
+		for (int t = 0; t < threads; t++) {
+			long nanos = (t + 1) * 100;
+			Thread worker = new Thread(() -> {
+				for (int i = 0; i < samples; i++) {
+					stat.Add(nanos, 1);
+				}
+			});
+			workers.add(worker);
+			worker.start();
+		}
+		for (Thread worker : workers) {
+			worker.join();
+		}
+
+		assertEquals((long) threads * samples, stat.QueryCount());
+		assertEquals((long) samples * 100 * threads * (threads + 1) / 2, stat.QueryTotalNanos());
+		assertEquals((long) threads * samples, stat.QueryAllocatedBytes());
+		assertEquals(threads * 100, stat.QueryMaxNanos());
+		assertEquals(threads * 100, stat.QueryPercentile(1.0));
+	}
+
+	/**
+	 * CheckBucket(): Check the bucket of a latency holds it and is narrow enough
+	 * 
+	 * @param nanos
+	 */
+	private static void CheckBucket(long nanos) {
+		int index = Metrics.BucketIndex(nanos);
+		long upper = Metrics.BucketUpperBound(index);
+		long lower = (index == 0) ? 0 : Metrics.BucketUpperBound(index - 1) + 1;
+		assertTrue(lower <= nanos && nanos <= upper, nanos + " in bucket " + index + " [" + lower + ", " + upper + "]");
+		assertTrue(upper - lower <= java.lang.Math.max(0, lower / 8), "bucket " + index + " is too wide");
+	}
+
+	/**
+	 * AssertNear(): Check a percentile is at or just above the true value, within one bucket
+	 * 
+	 * @param expected
+	 * @param actual
+	 */
+	private static void AssertNear(long expected, long actual) {
+		assertTrue(actual >= expected && actual <= expected + expected / 8, "expected about " + expected + " but was " + actual);
+	}
+
+}
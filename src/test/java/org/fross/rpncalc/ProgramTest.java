@@ -0,0 +1,123 @@
+/******************************************************************************
+ * RPNCalc
+ * 
+ * RPNCalc is is an easy to use console based RPN calculator
+ * 
+ *  Copyright (c) 2013-2021 Michael Fross
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *           
+ ******************************************************************************/
+package org.fross.rpncalc;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * ProgramTest: A line of several commands runs as one change. It is a single undo level when it
+ * works and leaves the stacks and the undo history as they were when it fails.
+ * 
+ * @author michael.d.fross
+ *
+ */
+public class ProgramTest {
+	RpnEngine engine;
+
+	@BeforeEach
+	public void start() {
+		engine = new RpnEngine(RpnEngine.SILENT);
+		engine.Execute("1");
+		engine.Execute("2");
+	}
+
+	/**
+	 * A line that works is one undo level, and a single undo takes all of it back
+	 */
+	@Test
+	public void lineIsOneUndoLevel() {
+		assertTrue(engine.Execute("3 4 + 2 *"));
+		assertArrayEquals(new double[] { 1.0, 2.0, 14.0 }, engine.calcStack.toArray());
+		assertEquals(3, engine.undoStack.size());
+
+		assertTrue(engine.Execute("u"));
+		assertArrayEquals(new double[] { 1.0, 2.0 }, engine.calcStack.toArray());
+		assertEquals(2, engine.undoStack.size());
+	}
+
+	/**
+	 * A line that fails part way leaves both stacks and the undo history as they were
+	 */
+	@Test
+	public void failedLineRolledBack() {
+		engine.Execute("3 ss 4 ss");
+		double[] stack1 = engine.calcStack.toArray();
+		double[] stack2 = engine.calcStack2.toArray();
+		int levels = engine.undoStack.size();
+
+		assertFalse(engine.Execute("5 ss 6 * * * *"));
+
+		assertArrayEquals(stack1, engine.calcStack.toArray());
+		assertArrayEquals(stack2, engine.calcStack2.toArray());
+		assertEquals(levels, engine.undoStack.size());
+		assertEquals(1, engine.QueryErrorCount());
+	}
+
+	/**
+	 * Undo can't be part of a line with other commands, so 'u u +' runs nothing and leaves every undo
+	 * level in place
+	 */
+	@Test
+	public void undoRefusedInLine() {
+		assertFalse(engine.Execute("u u +"));
+		assertArrayEquals(new double[] { 1.0, 2.0 }, engine.calcStack.toArray());
+		assertEquals(2, engine.undoStack.size());
+
+		assertFalse(engine.Execute("3 undo"));
+		assertEquals(2, engine.undoStack.size());
+
+		assertTrue(engine.Execute("u"));
+		assertTrue(engine.Execute("u"));
+		assertEquals(0, engine.calcStack.size());
+	}
+
+	/**
+	 * Parsing tells programs from single commands and commands with a parameter, and names the word
+	 * it doesn't know
+	 */
+	@Test
+	public void parse() {
+		UserWords words = new UserWords();
+		assertNull(Program.Parse("+", words));
+		assertNull(Program.Parse("  3.5 ", words));
+		assertNull(Program.Parse("d 3", words));
+		assertEquals(3, Program.Parse("1 3/4 2 *", words).size());
+
+		IllegalArgumentException ex = assertThrows(IllegalArgumentException.class, () -> Program.Parse("1 2 nosuchword", words));
+		assertTrue(ex.getMessage().contains("nosuchword"), ex.getMessage());
+		assertThrows(IllegalArgumentException.class, () -> Program.Parse("1 u", words));
+	}
+
+}
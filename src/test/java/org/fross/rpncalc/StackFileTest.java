@@ -0,0 +1,151 @@
+/******************************************************************************
+ * RPNCalc
+ * 
+ * RPNCalc is is an easy to use console based RPN calculator
+ * 
+ *  Copyright (c) 2013-2021 Michael Fross
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *           
+ ******************************************************************************/
+package org.fross.rpncalc;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * StackFileTest: The header of a stack file, reading back what was written, and the files that are
+ * refused because they are damaged.
+ * 
+ * @author michael.d.fross
+ *
+ */
+public class StackFileTest {
+	@TempDir
+	Path dir;
+
+	/**
+	 * A stack spanning several chunks is read back exactly as it was written
+	 */
+	@Test
+	public void roundTrip() throws IOException {
+		double[] values = TestData.Values(DoubleStack.CHUNK_SIZE * 2 + 17);
+		Path file = dir.resolve("test" + StackFile.EXTENSION);
+
+		StackFile.Write(file, new DoubleStack(values));
+
+		assertArrayEquals(values, StackFile.Read(file).toArray());
+	}
+
+	/**
+	 * An empty stack is just the header
+	 */
+	@Test
+	public void emptyStack() throws IOException {
+		Path file = dir.resolve("empty" + StackFile.EXTENSION);
+
+		StackFile.Write(file, new DoubleStack());
+
+		assertEquals(24, Files.size(file));
+		assertEquals(0, StackFile.Read(file).size());
+	}
+
+	/**
+	 * The header holds the magic number, the version, the element count and the checksum, followed by
+	 * the elements as little-endian doubles
+	 */
+	@Test
+	public void header() throws IOException {
+		double[] values = TestData.Values(5);
+		Path file = dir.resolve("header" + StackFile.EXTENSION);
+
+		StackFile.Write(file, new DoubleStack(values));
+
+		ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(file)).order(ByteOrder.LITTLE_ENDIAN);
+		assertEquals(24 + values.length * Double.BYTES, bytes.capacity());
+		assertEquals("RPNS", new String(bytes.array(), 0, 4, StandardCharsets.US_ASCII));
+		assertEquals(1, bytes.getInt(4));
+		assertEquals(values.length, bytes.getLong(8));
+
+		CRC32 crc = new CRC32();
+		crc.update(bytes.array(), 24, values.length * Double.BYTES);
+		assertEquals(crc.getValue(), bytes.getLong(16));
+		assertEquals(values[4], bytes.getDouble(24 + 4 * Double.BYTES));
+	}
+
+	/**
+	 * Changing a single element fails the checksum
+	 */
+	@Test
+	public void damagedElement() throws IOException {
+		Path file = dir.resolve("damaged" + StackFile.EXTENSION);
+		StackFile.Write(file, new DoubleStack(TestData.Values(100)));
+
+		TestData.Overwrite(file, 24 + 50 * Double.BYTES, (byte) 0x7F);
+
+		IOException ex = assertThrows(IOException.class, () -> StackFile.Read(file));
+		assertTrue(ex.getMessage().contains("checksum"));
+	}
+
+	/**
+	 * A file cut short doesn't match its element count
+	 */
+	@Test
+	public void truncated() throws IOException {
+		Path file = dir.resolve("truncated" + StackFile.EXTENSION);
+		StackFile.Write(file, new DoubleStack(TestData.Values(100)));
+
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+			channel.truncate(Files.size(file) - Double.BYTES);
+		}
+
+		IOException ex = assertThrows(IOException.class, () -> StackFile.Read(file));
+		assertTrue(ex.getMessage().contains("truncated"));
+	}
+
+	/**
+	 * Files that aren't stack files, or are too short to have a header, are refused
+	 */
+	@Test
+	public void notAStackFile() throws IOException {
+		Path file = dir.resolve("other" + StackFile.EXTENSION);
+		StackFile.Write(file, new DoubleStack(TestData.Values(10)));
+		TestData.Overwrite(file, 0, (byte) 'X');
+		assertThrows(IOException.class, () -> StackFile.Read(file));
+
+		Path shortFile = Files.write(dir.resolve("short" + StackFile.EXTENSION), new byte[10]);
+		assertThrows(IOException.class, () -> StackFile.Read(shortFile));
+	}
+
+}
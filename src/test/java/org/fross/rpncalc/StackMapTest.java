@@ -0,0 +1,130 @@
+/******************************************************************************
+ * RPNCalc
+ * 
+ * RPNCalc is is an easy to use console based RPN calculator
+ * 
+ *  Copyright (c) 2013-2021 Michael Fross
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *           
+ ******************************************************************************/
+package org.fross.rpncalc;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.DoubleUnaryOperator;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * StackMapTest: Each map operation gives the same result as applying it to one element at a time,
+ * only the range asked for changes, and undo snapshots keep their values.
+ * 
+ * @author michael.d.fross
+ *
+ */
+public class StackMapTest {
+
+	/**
+	 * Every operation matches the element by element calculation over a range spanning chunks
+	 */
+	@Test
+	public void operationsMatchScalar() {
+		Map<String, DoubleUnaryOperator> ops = new LinkedHashMap<String, DoubleUnaryOperator>();
+		ops.put("+ 3", x -> x + 3);
+		ops.put("- 3", x -> x - 3);
+		ops.put("* 3", x -> x * 3);
+		ops.put("/ 3", x -> x / 3);
+		ops.put("^ 2", x -> java.lang.Math.pow(x, 2));
+		ops.put("^ 0.5", x -> java.lang.Math.pow(x, 0.5));
+		ops.put("mod 3", x -> x % 3);
+		ops.put("sqrt", java.lang.Math::sqrt);
+		ops.put("log", java.lang.Math::log);
+		ops.put("log10", java.lang.Math::log10);
+		ops.put("abs", java.lang.Math::abs);
+		ops.put("flip", x -> -x);
+		ops.put("int", x -> (double) (long) x);
+		ops.put("2mm", x -> x * 25.4);
+		ops.put("mm2in", x -> x / 25.4);
+		ops.put("2rad", java.lang.Math::toRadians);
+		ops.put("rad2deg", java.lang.Math::toDegrees);
+		ops.put("sin", x -> java.lang.Math.sin(x * java.lang.Math.PI / 180));
+		ops.put("atan", x -> java.lang.Math.atan(x) * 180 / java.lang.Math.PI);
+
+		double[] values = TestData.Values(DoubleStack.CHUNK_SIZE * 2 + 50);
+		int count = DoubleStack.CHUNK_SIZE + 100;
+		for (Map.Entry<String, DoubleUnaryOperator> entry : ops.entrySet()) {
+			String[] words = entry.getKey().split(" ");
+			String op = words[0];
+			double operand = (words.length > 1) ? Double.parseDouble(words[1]) : StackMap.QueryAngleScale(op, false);
+
+			DoubleStack stk = new DoubleStack(values);
+			StackMap.Map(stk, count, op, operand);
+
+			double[] expected = values.clone();
+			for (int i = values.length - count; i < values.length; i++) {
+				expected[i] = entry.getValue().applyAsDouble(values[i]);
+			}
+			assertArrayEquals(expected, stk.toArray(), 1e-12, entry.getKey());
+		}
+	}
+
+	/**
+	 * Mapping the stack leaves a snapshot taken before it unchanged and only copies the chunks that
+	 * were mapped
+	 */
+	@Test
+	public void mapKeepsSnapshot() {
+		double[] values = TestData.Values(DoubleStack.CHUNK_SIZE * 3);
+		DoubleStack stk = new DoubleStack(values);
+		DoubleStack snap = stk.snapshot();
+
+		StackMap.Map(stk, 10, "*", 2.0);
+
+		assertArrayEquals(values, snap.toArray());
+		assertSame(snap.chunk(0), stk.chunk(0));
+		assertEquals(values[values.length - 1] * 2.0, stk.peek());
+	}
+
+	/**
+	 * % is percent elsewhere so map doesn't take it as modulus, and an unknown operation or count is
+	 * refused
+	 */
+	@Test
+	public void unknownRefused() {
+		assertEquals(StackMap.UNKNOWN, StackMap.QueryKind("%"));
+		assertEquals(StackMap.SCALAR, StackMap.QueryKind("mod"));
+
+		DoubleStack stk = new DoubleStack(TestData.Values(5));
+		assertThrows(IllegalArgumentException.class, () -> StackMap.Map(stk, 5, "%", 2.0));
+		assertThrows(ArrayIndexOutOfBoundsException.class, () -> StackMap.Map(stk, 6, "+", 1.0));
+
+		RpnEngine engine = new RpnEngine(RpnEngine.SILENT);
+		engine.Execute("7");
+		assertFalse(engine.Execute("map % 2"));
+		assertEquals(7.0, engine.QueryTop());
+	}
+
+}
@@ -0,0 +1,117 @@
+/******************************************************************************
+ * RPNCalc
+ * 
+ * RPNCalc is is an easy to use console based RPN calculator
+ * 
+ *  Copyright (c) 2013-2021 Michael Fross
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *           
+ ******************************************************************************/
+package org.fross.rpncalc;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * TokenizerTest: The hand written scanner accepts the same numbers and NumOps the regular expressions
+ * did and converts numbers exactly as Double.parseDouble() does.
+ * 
+ * @author michael.d.fross
+ *
+ */
+public class TokenizerTest {
+
+	/**
+	 * Numbers are an optional minus sign, digits and an optional decimal point
+	 */
+	@Test
+	public void isNumber() {
+		for (String s : new String[] { "0", "12", "-3.5", ".25", "7.", "-.5", "-0", "123456789012345678901234567890" }) {
+			assertTrue(Tokenizer.IsNumber(s), s);
+		}
+		for (String s : new String[] { "", "-", ".", "-.", "1.2.3", "1e5", "+3", "--1", "1-", "3+", "abc", " 1" }) {
+			assertFalse(Tokenizer.IsNumber(s), s);
+		}
+	}
+
+	/**
+	 * A NumOp is a number followed by one of the operands
+	 */
+	@Test
+	public void isNumOp() {
+		for (String s : new String[] { "3+", "-2.5*", ".5/", "10^", "4-" }) {
+			assertTrue(Tokenizer.IsNumOp(s), s);
+		}
+		for (String s : new String[] { "+", "3", "-+", "3%", "3++", "a+", "" }) {
+			assertFalse(Tokenizer.IsNumOp(s), s);
+		}
+	}
+
+	/**
+	 * ParseNumber() returns the same double as Double.parseDouble(), including numbers too long for the
+	 * fast path
+	 */
+	@Test
+	public void parseNumberExact() {
+		for (String s : new String[] { "0", "-0", "1", "-1", "0.1", "7.", ".25", "3.14159265358979", "9007199254740993", "0.0000000000000000000000123",
+				"123456789.123456789", "-98765.4321" }) {
+			assertEquals(Double.doubleToLongBits(Double.parseDouble(s)), Double.doubleToLongBits(Tokenizer.ParseNumber(s)), s);
+		}
+
+		Random random = new Random(1302);
+		for (int n = 0; n < 100000; n++) {
+			StringBuilder sb = new StringBuilder();
+			if (random.nextBoolean()) {
+				sb.append('-');
+			}
+			int digits = 1 + random.nextInt(20);
+			int point = random.nextInt(digits + 1);
+			for (int d = 0; d < digits; d++) {
+				if (d == point) {
+					sb.append('.');
+				}
+				sb.append((char) ('0' + random.nextInt(10)));
+			}
+			String s = sb.toString();
+			assertEquals(Double.parseDouble(s), Tokenizer.ParseNumber(s), s);
+		}
+	}
+
+	/**
+	 * The skip functions find the bounds of the tokens on a line
+	 */
+	@Test
+	public void skipTokens() {
+		String line = "  12  + \tsin\t ";
+		int start = Tokenizer.SkipWhitespace(line, 0);
+		assertEquals(2, start);
+		assertEquals(4, Tokenizer.SkipToken(line, start));
+		assertEquals(6, Tokenizer.SkipWhitespace(line, 4));
+		assertEquals(12, Tokenizer.TrimEnd(line));
+		assertEquals(line.length(), Tokenizer.SkipWhitespace(line, 12));
+		assertEquals(0, Tokenizer.TrimEnd("   "));
+	}
+
+}
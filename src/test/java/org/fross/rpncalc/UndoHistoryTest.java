@@ -0,0 +1,148 @@
+/******************************************************************************
+ * RPNCalc
+ * 
+ * RPNCalc is is an easy to use console based RPN calculator
+ * 
+ *  Copyright (c) 2013-2021 Michael Fross
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *           
+ ******************************************************************************/
+package org.fross.rpncalc;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.IdentityHashMap;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * UndoHistoryTest: The memory the undo history reports is the memory its levels hold, counting each
+ * shared chunk once, as levels are pushed and popped.
+ * 
+ * @author michael.d.fross
+ *
+ */
+public class UndoHistoryTest {
+	private static final long CHUNK_BYTES = UndoHistory.ARRAY_HEADER_BYTES + 8L * DoubleStack.CHUNK_SIZE;
+
+	/**
+	 * A level that changed one element only adds the chunk holding it
+	 */
+	@Test
+	public void pushCountsChangedChunk() {
+		DoubleStack stk = new DoubleStack(TestData.Values(DoubleStack.CHUNK_SIZE * 4));
+		UndoHistory history = new UndoHistory();
+
+		history.push(stk);
+		long first = history.QueryMemoryUsed();
+		assertEquals(DirectoryBytes(4) + 4 * CHUNK_BYTES, first);
+
+		stk.set(5, 1.0);
+		history.push(stk);
+		assertEquals(first + DirectoryBytes(4) + CHUNK_BYTES, history.QueryMemoryUsed());
+
+		history.pop();
+		assertEquals(first, history.QueryMemoryUsed());
+		history.pop();
+		assertEquals(0, history.QueryMemoryUsed());
+	}
+
+	/**
+	 * After any mix of writes, pushes, pops and levels spilled to disk the memory used matches the
+	 * distinct chunks the levels in memory hold, and undo returns the values that were pushed
+	 */
+	@Test
+	public void memoryMatchesLevels() {
+		Random random = new Random(20131);
+		DoubleStack stk = new DoubleStack(TestData.Values(DoubleStack.CHUNK_SIZE * 3 + 10));
+		UndoHistory history = new UndoHistory();
+
+		for (int step = 0; step < 2000; step++) {
+			int op = random.nextInt(10);
+			if (op < 4 && stk.size() > 0) {
+				stk.set(random.nextInt(stk.size()), step);
+			} else if (op < 6) {
+				stk.push(step);
+			} else if (op < 7 && stk.size() > 0) {
+				stk.pop();
+			} else if (op < 9) {
+				history.push(stk);
+			} else if (history.size() > 0) {
+				// Undo makes the popped level the live stack, as cmdUndo does
+				double[] expected = history.iterator().hasNext() ? Newest(history).toArray() : null;
+				stk = history.pop();
+				assertArrayEquals(expected, stk.toArray());
+			}
+			assertEquals(Counted(history), history.QueryMemoryUsed(), "step " + step);
+		}
+	}
+
+	/**
+	 * DirectoryBytes(): Return the memory a level with the provided number of chunks takes apart from
+	 * the chunks
+	 * 
+	 * @param chunks
+	 * @return
+	 */
+	private static long DirectoryBytes(int chunks) {
+		return UndoHistory.LEVEL_OVERHEAD_BYTES + UndoHistory.ARRAY_HEADER_BYTES + 8L * chunks;
+	}
+
+	/**
+	 * Counted(): Add up the memory of every level still in memory, counting each chunk array once
+	 * 
+	 * @param history
+	 * @return
+	 */
+	private static long Counted(UndoHistory history) {
+		IdentityHashMap<double[], Boolean> seen = new IdentityHashMap<double[], Boolean>();
+		long bytes = 0;
+		int skip = history.QuerySpilledLevels();
+		for (DoubleStack level : history) {
+			if (skip-- > 0) {
+				continue;
+			}
+			bytes += DirectoryBytes(level.chunkCount());
+			for (int c = 0; c < level.chunkCount(); c++) {
+				if (seen.put(level.chunk(c), Boolean.TRUE) == null) {
+					bytes += UndoHistory.ARRAY_HEADER_BYTES + 8L * level.chunk(c).length;
+				}
+			}
+		}
+		return bytes;
+	}
+
+	/**
+	 * Newest(): Return the newest undo level
+	 * 
+	 * @param history
+	 * @return
+	 */
+	private static DoubleStack Newest(UndoHistory history) {
+		DoubleStack newest = null;
+		for (DoubleStack level : history) {
+			newest = level;
+		}
+		return newest;
+	}
+
+}
@@ -0,0 +1,161 @@
+/******************************************************************************
+ * RPNCalc
+ * 
+ * RPNCalc is is an easy to use console based RPN calculator
+ * 
+ *  Copyright (c) 2013-2021 Michael Fross
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *           
+ ******************************************************************************/
+package org.fross.rpncalc;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * UndoSpillFileTest: Chunks shared between undo levels are only written once, and the space of the
+ * levels that are removed is reused or given back.
+ * 
+ * @author michael.d.fross
+ *
+ */
+public class UndoSpillFileTest {
+	private static final int CHUNK_BYTES = DoubleStack.CHUNK_SIZE * Double.BYTES;
+
+	@TempDir
+	Path dir;
+
+	UndoSpillFile spill;
+
+	@BeforeEach
+	public void open() throws IOException {
+		spill = new UndoSpillFile(dir);
+	}
+
+	@AfterEach
+	public void close() throws IOException {
+		spill.close();
+	}
+
+	/**
+	 * A level that only changed its last chunk writes that chunk and its record, not the whole stack
+	 */
+	@Test
+	public void sharedChunksWrittenOnce() throws IOException {
+		DoubleStack stk = new DoubleStack(TestData.Values(DoubleStack.CHUNK_SIZE * 3));
+		DoubleStack level0 = stk.snapshot();
+		spill.append(level0);
+		assertEquals(3 * CHUNK_BYTES + RecordBytes(3), spill.QueryBytes());
+
+		stk.set(stk.size() - 1, -1.0);
+		DoubleStack level1 = stk.snapshot();
+		spill.append(level1);
+		assertEquals(4 * CHUNK_BYTES + 2 * RecordBytes(3), spill.QueryBytes());
+
+		assertEquals(2, spill.size());
+		assertArrayEquals(level0.toArray(), spill.get(0).toArray());
+		assertArrayEquals(level1.toArray(), spill.get(1).toArray());
+	}
+
+	/**
+	 * Removing the newest level gives back its space, and appending it again writes its new chunk again
+	 */
+	@Test
+	public void removeLastReusesSpace() throws IOException {
+		DoubleStack stk = new DoubleStack(TestData.Values(DoubleStack.CHUNK_SIZE * 2));
+		DoubleStack level0 = stk.snapshot();
+		spill.append(level0);
+		long level0Bytes = spill.QueryBytes();
+
+		stk.push(42.0);
+		DoubleStack level1 = stk.snapshot();
+		spill.append(level1);
+		long level1Bytes = spill.QueryBytes();
+
+		assertArrayEquals(level1.toArray(), spill.removeLast().toArray());
+		assertEquals(1, spill.size());
+		assertEquals(level0Bytes, spill.QueryBytes());
+
+		spill.append(level1);
+		assertEquals(level1Bytes, spill.QueryBytes());
+		assertArrayEquals(level0.toArray(), spill.get(0).toArray());
+		assertArrayEquals(level1.toArray(), spill.get(1).toArray());
+
+		spill.removeLast();
+		spill.removeLast();
+		assertEquals(0, spill.size());
+		assertEquals(0, spill.QueryBytes());
+	}
+
+	/**
+	 * Removing the oldest levels keeps the newer ones readable, shrinks the file, and chunks the kept
+	 * levels share are still only written once afterwards
+	 */
+	@Test
+	public void removeFirstCompacts() throws IOException {
+		DoubleStack stk = new DoubleStack(TestData.Values(DoubleStack.CHUNK_SIZE * 3));
+		DoubleStack[] levels = new DoubleStack[4];
+		for (int i = 0; i < levels.length; i++) {
+			stk.set(i * DoubleStack.CHUNK_SIZE / 2, i);
+			levels[i] = stk.snapshot();
+			spill.append(levels[i]);
+		}
+		long bytesBefore = spill.QueryBytes();
+
+		spill.removeFirst(2);
+
+		assertEquals(2, spill.size());
+		assertArrayEquals(levels[2].toArray(), spill.get(0).toArray());
+		assertArrayEquals(levels[3].toArray(), spill.get(1).toArray());
+		assertTrue(spill.QueryBytes() < bytesBefore);
+
+		// Only the changed chunk of the next level is written
+		long bytesAfter = spill.QueryBytes();
+		stk.set(stk.size() - 1, -1.0);
+		DoubleStack level4 = stk.snapshot();
+		spill.append(level4);
+		assertEquals(bytesAfter + CHUNK_BYTES + RecordBytes(3), spill.QueryBytes());
+		assertArrayEquals(level4.toArray(), spill.get(2).toArray());
+
+		spill.removeFirst(5);
+		assertEquals(0, spill.size());
+		assertEquals(0, spill.QueryBytes());
+	}
+
+	/**
+	 * RecordBytes(): Return the size of the record of a level with the provided number of chunks
+	 * 
+	 * @param chunks
+	 * @return
+	 */
+	private static long RecordBytes(int chunks) {
+		return Integer.BYTES + chunks * Long.BYTES;
+	}
+
+}
@@ -0,0 +1,174 @@
+/******************************************************************************
+ * RPNCalc
+ * 
+ * RPNCalc is is an easy to use console based RPN calculator
+ * 
+ *  Copyright (c) 2013-2021 Michael Fross
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *           
+ ******************************************************************************/
+package org.fross.rpncalc;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * UserWordsTest: Words defined with parameters, conditionals, loops and calls to other words give
+ * the results they should, and the ones that are refused or run away are stopped. The words are
+ * saved in the preferences so each one is forgotten afterwards.
+ * 
+ * @author michael.d.fross
+ *
+ */
+public class UserWordsTest {
+	private static final String[] WORDS = { "tsq", "tarea", "tclamp", "tsign", "tsumsq", "tfact", "tdeep", "tinner", "touter", "tspin", "tfail" };
+
+	RpnEngine engine;
+
+	@BeforeEach
+	public void start() {
+		engine = new RpnEngine(RpnEngine.SILENT);
+	}
+
+	@AfterEach
+	public void forget() {
+		for (String name : WORDS) {
+			if (engine.words.Lookup(name) != null) {
+				engine.words.Forget(engine, name);
+			}
+		}
+	}
+
+	/**
+	 * Parameters, if else then, times loop with i, and recursion
+	 */
+	@Test
+	public void controlFlow() {
+		Define(": tsq dup * ;");
+		Define(": tarea { w h } w h * ;");
+		Define(": tclamp dup 0 < if drop 0 then ;");
+		Define(": tsign 0 > if 1 else -1 then ;");
+		Define(": tsumsq 0 swap times i i * + loop ;");
+		Define(": tfact dup 1 > if dup 1 - tfact * then ;");
+
+		assertEquals(9.0, Run("3 tsq"));
+		assertEquals(12.0, Run("3 4 tarea"));
+		assertEquals(0.0, Run("-5 tclamp"));
+		assertEquals(5.0, Run("5 tclamp"));
+		assertEquals(-1.0, Run("-2 tsign"));
+		assertEquals(1.0, Run("2 tsign"));
+		assertEquals(0.0 + 1 + 4 + 9, Run("4 tsumsq"));
+		assertEquals(720.0, Run("6 tfact"));
+	}
+
+	/**
+	 * A word calls the current definition of another word, so redefining it changes its callers
+	 */
+	@Test
+	public void redefineCallee() {
+		Define(": tinner 2 * ;");
+		Define(": touter tinner 1 + ;");
+		assertEquals(7.0, Run("3 touter"));
+
+		Define(": tinner 10 * ;");
+		assertEquals(31.0, Run("3 touter"));
+	}
+
+	/**
+	 * Names that are numbers or commands, commands that can't be in a word, and unbalanced bodies
+	 * are refused without defining anything
+	 */
+	@Test
+	public void definitionsRefused() {
+		String[] refused = { ": 12 dup ;", ": swap dup ;", ": tfail load ;", ": tfail u ;", ": tfail if 1 ;", ": tfail 1 loop ;", ": tfail nosuchword ;" };
+		for (String definition : refused) {
+			int errors = engine.QueryErrorCount();
+			engine.Execute(definition);
+			assertEquals(errors + 1, engine.QueryErrorCount(), definition);
+		}
+		assertNull(engine.words.Lookup("tfail"));
+	}
+
+	/**
+	 * A word that fails or goes too deep leaves the stack as it was before the line
+	 */
+	@Test
+	public void failureRolledBack() {
+		Define(": tfail 1 + + ;");
+		Define(": tdeep 1 + tdeep ;");
+		engine.Execute("5");
+
+		assertFalse(engine.Execute("tfail"));
+		assertArrayEquals(new double[] { 5.0 }, engine.calcStack.toArray());
+
+		assertFalse(engine.Execute("tdeep"));
+		assertArrayEquals(new double[] { 5.0 }, engine.calcStack.toArray());
+	}
+
+	/**
+	 * The step limit stops a line that runs too many loop passes, and each line gets the whole limit
+	 */
+	@Test
+	public void stepLimit() {
+		Define(": tspin times 1 drop loop ;");
+		engine.words.SetStepLimit(1000);
+		engine.Execute("7");
+
+		assertFalse(engine.Execute("5000 tspin"));
+		assertArrayEquals(new double[] { 7.0 }, engine.calcStack.toArray());
+
+		assertTrue(engine.Execute("900 tspin"));
+		assertTrue(engine.Execute("900 tspin"));
+
+		engine.words.SetStepLimit(0);
+		assertTrue(engine.Execute("5000 tspin"));
+	}
+
+	/**
+	 * Define(): Define a word and check it was accepted
+	 * 
+	 * @param definition
+	 */
+	private void Define(String definition) {
+		int errors = engine.QueryErrorCount();
+		engine.Execute(definition);
+		assertEquals(errors, engine.QueryErrorCount(), definition);
+	}
+
+	/**
+	 * Run(): Run a line on an empty stack and return line1
+	 * 
+	 * @param line
+	 * @return
+	 */
+	private double Run(String line) {
+		engine.calcStack.clear();
+		assertTrue(engine.Execute(line), line);
+		return engine.QueryTop();
+	}
+
+}